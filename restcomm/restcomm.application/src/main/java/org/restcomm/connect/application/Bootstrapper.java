@@ -4,6 +4,12 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.media.mscontrol.MsControlException;
 import javax.media.mscontrol.MsControlFactory;
@@ -24,15 +30,19 @@ import org.apache.log4j.Logger;
 import org.mobicents.servlet.sip.SipConnector;
 import org.restcomm.connect.application.config.ConfigurationStringLookup;
 import org.restcomm.connect.commons.Version;
+import org.restcomm.connect.commons.common.http.StatusCallbackQueue;
 import org.restcomm.connect.commons.configuration.RestcommConfiguration;
 import org.restcomm.connect.commons.loader.ObjectFactory;
 import org.restcomm.connect.commons.loader.ObjectInstantiationException;
+import org.restcomm.connect.commons.throttling.AccountLimiter;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.dao.DaoManager;
 import org.restcomm.connect.dao.entities.InstanceId;
 import org.restcomm.connect.dao.entities.shiro.ShiroResources;
 import org.restcomm.connect.extension.controller.ExtensionBootstrapper;
 import org.restcomm.connect.identity.IdentityContext;
 import org.restcomm.connect.monitoringservice.MonitoringService;
+import org.restcomm.connect.monitoringservice.StartupMetrics;
 import org.restcomm.connect.mrb.api.StartMediaResourceBroker;
 import org.restcomm.connect.mscontrol.api.MediaServerControllerFactory;
 import org.restcomm.connect.mscontrol.api.MediaServerInfo;
@@ -66,6 +76,7 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
 
     @Override
     public void destroy() {
+        StatusCallbackQueue.getInstance().stop();
         system.shutdown();
         system.awaitTermination();
     }
@@ -222,13 +233,34 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
         return daoManager;
     }
 
-    private ActorRef monitoringService(final Configuration configuration, final DaoManager daoManager, final ClassLoader loader) {
+    private void usageBackfill(final DaoManager storage) {
+        // Rebuild the usage rollups from the raw CDR and SMS tables without blocking the startup.
+        final Thread backfill = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.currentTimeMillis();
+                try {
+                    storage.getUsageDao().rebuildUsage();
+                    if (logger.isInfoEnabled()) {
+                        logger.info("Usage rollups rebuilt in " + (System.currentTimeMillis() - start) + " ms");
+                    }
+                } catch (Exception exception) {
+                    logger.error("Usage rollups backfill failed: ", exception);
+                }
+            }
+        }, "usage-rollups-backfill");
+        backfill.setDaemon(true);
+        backfill.start();
+    }
+
+    private ActorRef monitoringService(final Configuration configuration, final DaoManager daoManager, final AccountLimiter limiter,
+            final ClassLoader loader) {
         final ActorRef monitoring = system.actorOf(new Props(new UntypedActorFactory() {
             private static final long serialVersionUID = 1L;
 
             @Override
             public UntypedActor create() throws Exception {
-                return new MonitoringService(daoManager);
+                return new MonitoringService(daoManager, limiter);
             }
         }));
         return monitoring;
@@ -239,9 +271,34 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
         return context.getContextPath();
     }
 
+    private ExecutorService startupExecutor() {
+        // Runs the subsystems that do not depend on each other next to the servlet thread.
+        return Executors.newFixedThreadPool(2, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(final Runnable task) {
+                final Thread thread = new Thread(task, "restcomm-startup-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private <T> T await(final Future<T> task) throws ExecutionException {
+        try {
+            return task.get();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(exception);
+        }
+    }
+
     @Override
     public void servletInitialized(SipServletContextEvent event) {
         if (event.getSipServlet().getClass().equals(Bootstrapper.class)) {
+            final StartupTimer timer = new StartupTimer();
+            long phase = timer.begin();
             final ServletContext context = event.getServletContext();
             final String path = context.getRealPath("WEB-INF/conf/restcomm.xml");
             final String extensionConfigurationPath = context.getRealPath("WEB-INF/conf/extensions.xml");
@@ -281,31 +338,89 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
             RestcommConfiguration.createOnce(xml);
             context.setAttribute(Configuration.class.getName(), xml);
             context.setAttribute("ExtensionConfiguration", extensionConf);
+            timer.end("Configuration", phase);
             // Initialize global dependencies.
             final ClassLoader loader = getClass().getClassLoader();
+            final ExecutorService startup = startupExecutor();
+            // Start the storage system in the background, it is the slowest subsystem and the next few do not need it.
+            final Configuration configuration = xml;
+            final XMLConfiguration daoManagerConfiguration = daoManagerConf;
+            final Future<DaoManager> pendingStorage = startup.submit(new Callable<DaoManager>() {
+                @Override
+                public DaoManager call() throws Exception {
+                    final long begin = timer.begin();
+                    try {
+                        return storage(configuration, daoManagerConfiguration, loader);
+                    } finally {
+                        timer.end("Storage", begin);
+                    }
+                }
+            });
             // Create the actor system.
+            phase = timer.begin();
             final Config settings = ConfigFactory.load();
             system = ActorSystem.create("RestComm", settings, loader);
             // Share the actor system with other servlets.
             context.setAttribute(ActorSystem.class.getName(), system);
-            // Create the storage system.
-            DaoManager storage = null;
-            try {
-                storage = storage(xml, daoManagerConf, loader);
-            } catch (final ObjectInstantiationException exception) {
-                logger.error("ObjectInstantiationException during initialization: ", exception);
-            }
-            context.setAttribute(DaoManager.class.getName(), storage);
+            timer.end("ActorSystem", phase);
+            phase = timer.begin();
             //ShiroResources.getInstance().set(DaoManager.class, storage);
             ShiroResources.getInstance().set(Configuration.class, xml.subset("runtime-settings"));
             // Initialize identityContext
             IdentityContext identityContext = new IdentityContext(xml);
             context.setAttribute(IdentityContext.class.getName(), identityContext);
+            // Initialize the in-memory per account limits
+            final AccountLimiter limiter = new AccountLimiter(xml.subset("runtime-settings").subset("account-limits"));
+            context.setAttribute(AccountLimiter.class.getName(), limiter);
+            // Phone numbers are read in the region of their account when they have no country code
+            PhoneNumberNormalizer.getInstance().configure(xml.subset("runtime-settings").subset("phone-numbers"));
+            timer.end("Security", phase);
+            // Status callbacks are journaled and delivered in the background instead of one downloader each
+            final Configuration callbacks = xml.subset("runtime-settings").subset("status-callbacks");
+            if (callbacks.getBoolean("enabled", false)) {
+                phase = timer.begin();
+                StatusCallbackQueue.getInstance().start(callbacks);
+                timer.end("StatusCallbacks", phase);
+            }
+            // Everything from here on needs the storage system.
+            DaoManager storage = null;
+            try {
+                storage = await(pendingStorage);
+            } catch (final ExecutionException exception) {
+                if (exception.getCause() instanceof RuntimeException) {
+                    startup.shutdownNow();
+                    throw (RuntimeException) exception.getCause();
+                }
+                logger.error("Exception during storage initialization: ", exception.getCause());
+            }
+            context.setAttribute(DaoManager.class.getName(), storage);
+
+            // The RVD workspace migration only touches the storage system, run it next to the remaining subsystems.
+            Future<?> pendingMigration = null;
+            Boolean rvdMigrationEnabled = new Boolean(xml.subset("runtime-settings").getString("rvd-workspace-migration-enabled", "true"));
+            if (rvdMigrationEnabled) {
+                pendingMigration = startup.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        final long begin = timer.begin();
+                        //Replicate RVD Projects as database entities
+                        try {
+                            RvdProjectsMigrator rvdProjectMigrator = new RvdProjectsMigrator(context, configuration);
+                            rvdProjectMigrator.executeMigration();
+                        } catch (Exception exception) {
+                            logger.error("RVD Porjects migration failed during initialization: ", exception);
+                        } finally {
+                            timer.end("RvdMigration", begin);
+                        }
+                    }
+                });
+            }
 
             // Create the media gateway.
 
             //Initialize Monitoring Service
-            ActorRef monitoring = monitoringService(xml, storage, loader);
+            phase = timer.begin();
+            ActorRef monitoring = monitoringService(xml, storage, limiter, loader);
             if (monitoring != null) {
                 context.setAttribute(MonitoringService.class.getName(), monitoring);
                 if(logger.isInfoEnabled()) {
@@ -314,8 +429,10 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
             } else {
                 logger.error("Monitoring Service is null");
             }
+            timer.end("Monitoring", phase);
 
             //Initialize Extensions
+            phase = timer.begin();
             Configuration extensionConfiguration = null;
             try {
                 extensionConfiguration = new XMLConfiguration(extensionConfigurationPath);
@@ -329,8 +446,10 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
             } catch (IllegalAccessException | InstantiationException | ClassNotFoundException e) {
                 logger.error("Exception during extension scanner start: "+e.getStackTrace());
             }
+            timer.end("Extensions", phase);
 
             // Create the media server controller factory
+            phase = timer.begin();
             MediaServerControllerFactory mscontrollerFactory = null;
             try {
                 mscontrollerFactory = mediaServerControllerFactory(xml, loader, storage);
@@ -338,17 +457,22 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
                 logger.error("ServletException during initialization: ", exception);
             }
             context.setAttribute(MediaServerControllerFactory.class.getName(), mscontrollerFactory);
+            timer.end("MediaServer", phase);
 
-            Boolean rvdMigrationEnabled = new Boolean(xml.subset("runtime-settings").getString("rvd-workspace-migration-enabled", "true"));
-            if (rvdMigrationEnabled) {
-                //Replicate RVD Projects as database entities
+            // Applications are served only once their RVD projects are migrated.
+            if (pendingMigration != null) {
                 try {
-                    RvdProjectsMigrator rvdProjectMigrator = new RvdProjectsMigrator(context, xml);
-                    rvdProjectMigrator.executeMigration();
-                } catch (Exception exception) {
-                    logger.error("RVD Porjects migration failed during initialization: ", exception);
+                    await(pendingMigration);
+                } catch (final ExecutionException exception) {
+                    logger.error("RVD Porjects migration failed during initialization: ", exception.getCause());
                 }
             }
+            startup.shutdown();
+
+            Boolean usageBackfillEnabled = new Boolean(xml.subset("runtime-settings").getString("usage-rollups-backfill-enabled", "false"));
+            if (usageBackfillEnabled && storage != null) {
+                usageBackfill(storage);
+            }
 
             //Last, print Version and send PING if needed
             Version.printVersion();
@@ -380,6 +504,8 @@ public final class Bootstrapper extends SipServlet implements SipServletListener
                 }
                 sipConnector.setLoadBalancerCustomInformation(loadBalancerCustomInfo);
             }
+            timer.finish();
+            monitoring.tell(new StartupMetrics(timer.getMetrics()), null);
             //Depreciated
 //            Ping ping = new Ping(xml, context);
 //            ping.sendPing();
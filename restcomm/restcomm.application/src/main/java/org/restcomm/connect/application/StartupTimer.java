@@ -0,0 +1,80 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * Records how long each phase of the startup takes, including the phases run on background threads.
+ * Phase durations are reported as StartupTime&lt;Phase&gt; metrics and the whole startup as StartupTime.
+ */
+@ThreadSafe
+final class StartupTimer {
+    static final String METRIC_STARTUP_TIME = "StartupTime";
+
+    private static final Logger logger = Logger.getLogger(StartupTimer.class);
+
+    private final long started;
+    private final Map<String, Long> phases;
+    private long finished;
+
+    StartupTimer() {
+        super();
+        this.started = System.nanoTime();
+        this.phases = new LinkedHashMap<String, Long>();
+    }
+
+    long begin() {
+        return System.nanoTime();
+    }
+
+    synchronized void end(final String phase, final long begin) {
+        phases.put(phase, System.nanoTime() - begin);
+    }
+
+    synchronized void finish() {
+        finished = System.nanoTime();
+        if (logger.isInfoEnabled()) {
+            final StringBuilder buffer = new StringBuilder("Restcomm started in ").append(millis(finished - started)).append(" ms");
+            for (final Map.Entry<String, Long> phase : phases.entrySet()) {
+                buffer.append(", ").append(phase.getKey()).append(" ").append(millis(phase.getValue())).append(" ms");
+            }
+            logger.info(buffer.toString());
+        }
+    }
+
+    synchronized Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new LinkedHashMap<String, Integer>();
+        metrics.put(METRIC_STARTUP_TIME, millis((finished > 0 ? finished : System.nanoTime()) - started));
+        for (final Map.Entry<String, Long> phase : phases.entrySet()) {
+            metrics.put(METRIC_STARTUP_TIME + phase.getKey(), millis(phase.getValue()));
+        }
+        return metrics;
+    }
+
+    private static int millis(final long nanos) {
+        return (int) TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
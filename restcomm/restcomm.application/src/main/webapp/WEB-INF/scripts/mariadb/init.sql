@@ -234,6 +234,17 @@ api_version VARCHAR(10) NOT NULL,
 uri MEDIUMTEXT NOT NULL
 );
 
+CREATE TABLE restcomm_usage_records (
+account_sid VARCHAR(34) NOT NULL,
+category VARCHAR(32) NOT NULL,
+usage_date DATE NOT NULL,
+api_version VARCHAR(10) NOT NULL,
+record_count BIGINT NOT NULL,
+usage_value BIGINT NOT NULL,
+price DECIMAL(19,4) NOT NULL,
+PRIMARY KEY (account_sid, category, usage_date, api_version)
+);
+
 CREATE TABLE restcomm_recordings (
 sid VARCHAR(34) NOT NULL PRIMARY KEY,
 date_created DATETIME NOT NULL,
@@ -384,5 +395,11 @@ CREATE INDEX idx_cdr_conference_sid ON restcomm_call_detail_records (conference_
 /* Create index on restcomm_call_detail_records on conference_sid column */
 CREATE INDEX idx_cdr_conference_status ON restcomm_conference_detail_records (status);
 
+/* Create index on restcomm_call_detail_records on date_created column, for the retention of call detail records */
+CREATE INDEX idx_cdr_date_created ON restcomm_call_detail_records (date_created);
+
 /* Create stored procedure addConferenceDetailRecord  */
 source addConferenceDetailRecord.sql
+
+/* Partition restcomm_call_detail_records by month */
+source partitionCallDetailRecords.sql
@@ -0,0 +1,51 @@
+/* Partitions restcomm_call_detail_records by month. The partitioning column has to be part of every unique key, so
+   the sid alone is no longer enforced unique by the database. Sids are random 128 bit values which Restcomm never
+   reuses, and the key (sid, date_created) still rejects the same record being inserted twice.
+   The rows created before the current month, if any, stay in the partition phistory so splitting pmax later on only
+   ever moves the rows of the months it creates. */
+DELIMITER //
+DROP PROCEDURE IF EXISTS partitionCallDetailRecords;
+CREATE PROCEDURE partitionCallDetailRecords()
+BEGIN
+	IF NOT EXISTS(SELECT * FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA=DATABASE()
+			AND TABLE_NAME='restcomm_call_detail_records' AND PARTITION_NAME IS NOT NULL)
+	THEN
+		ALTER TABLE restcomm_call_detail_records DROP PRIMARY KEY, ADD PRIMARY KEY (sid, date_created);
+		SET @statement = CONCAT('ALTER TABLE restcomm_call_detail_records PARTITION BY RANGE (TO_DAYS(date_created)) ',
+			'(PARTITION phistory VALUES LESS THAN (TO_DAYS(''', DATE_FORMAT(CURDATE(), '%Y-%m-01'), ''')), ',
+			'PARTITION pmax VALUES LESS THAN MAXVALUE)');
+		PREPARE statement FROM @statement;
+		EXECUTE statement;
+		DEALLOCATE PREPARE statement;
+	END IF;
+END //
+
+/* Splits the partition pmax so there is one partition per month up to in_months months ahead */
+DROP PROCEDURE IF EXISTS addCallDetailRecordPartitions;
+CREATE PROCEDURE addCallDetailRecordPartitions(IN in_months INT)
+BEGIN
+	DECLARE v_month DATE DEFAULT DATE_FORMAT(CURDATE(), '%Y-%m-01');
+	DECLARE v_last DATE DEFAULT DATE_ADD(v_month, INTERVAL in_months MONTH);
+	WHILE v_month <= v_last DO
+		IF NOT EXISTS(SELECT * FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA=DATABASE()
+				AND TABLE_NAME='restcomm_call_detail_records' AND PARTITION_NAME=CONCAT('p', DATE_FORMAT(v_month, '%Y%m')))
+		THEN
+			SET @statement = CONCAT('ALTER TABLE restcomm_call_detail_records REORGANIZE PARTITION pmax INTO (PARTITION p',
+				DATE_FORMAT(v_month, '%Y%m'), ' VALUES LESS THAN (TO_DAYS(''', DATE_ADD(v_month, INTERVAL 1 MONTH),
+				''')), PARTITION pmax VALUES LESS THAN MAXVALUE)');
+			PREPARE statement FROM @statement;
+			EXECUTE statement;
+			DEALLOCATE PREPARE statement;
+		END IF;
+		SET v_month = DATE_ADD(v_month, INTERVAL 1 MONTH);
+	END WHILE;
+END //
+DELIMITER ;
+
+CALL partitionCallDetailRecords();
+CALL addCallDetailRecordPartitions(3);
+
+/* Keeps pmax empty so splitting it stays cheap. This needs the event scheduler to be turned on, Restcomm logs a
+   warning at start up when it isn't */
+DROP EVENT IF EXISTS addCallDetailRecordPartitions;
+CREATE EVENT addCallDetailRecordPartitions ON SCHEDULE EVERY 1 MONTH DO CALL addCallDetailRecordPartitions(3);
@@ -0,0 +1,5 @@
+/* Partitions the call detail records of a database created before they were partitioned. The records of the past
+   months all go to the partition phistory and are left there until the archiver removes them. Partitioning copies
+   the whole table, so run this while Restcomm is stopped. The monthly event that adds the partitions ahead only
+   runs with event_scheduler=ON in the server configuration. */
+source partitionCallDetailRecords.sql
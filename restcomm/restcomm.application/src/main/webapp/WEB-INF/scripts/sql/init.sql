@@ -138,6 +138,8 @@ CREATE TABLE "restcomm_call_detail_records" (
 "ms_id" VARCHAR(34)
 );
 
+CREATE INDEX "idx_cdr_date_created" ON "restcomm_call_detail_records" ("date_created");
+
 CREATE TABLE "restcomm_conference_detail_records" (
 "sid" VARCHAR(34) NOT NULL PRIMARY KEY,
 "date_created" DATETIME NOT NULL,
@@ -213,6 +215,17 @@ CREATE TABLE "restcomm_sms_messages" (
 "uri" LONGVARCHAR NOT NULL
 );
 
+CREATE TABLE "restcomm_usage_records" (
+"account_sid" VARCHAR(34) NOT NULL,
+"category" VARCHAR(32) NOT NULL,
+"usage_date" DATE NOT NULL,
+"api_version" VARCHAR(10) NOT NULL,
+"record_count" BIGINT NOT NULL,
+"usage_value" BIGINT NOT NULL,
+"price" DECIMAL(19,4) NOT NULL,
+PRIMARY KEY ("account_sid", "category", "usage_date", "api_version")
+);
+
 CREATE TABLE "restcomm_recordings" (
 "sid" VARCHAR(34) NOT NULL PRIMARY KEY,
 "date_created" DATETIME NOT NULL,
@@ -0,0 +1,24 @@
+/* Adds the usage rollups to a database created before them and fills them from the call detail records and
+   sms messages. Restcomm also does this by itself on its first start against such a database. */
+CREATE TABLE "restcomm_usage_records" (
+"account_sid" VARCHAR(34) NOT NULL,
+"category" VARCHAR(32) NOT NULL,
+"usage_date" DATE NOT NULL,
+"api_version" VARCHAR(10) NOT NULL,
+"record_count" BIGINT NOT NULL,
+"usage_value" BIGINT NOT NULL,
+"price" DECIMAL(19,4) NOT NULL,
+PRIMARY KEY ("account_sid", "category", "usage_date", "api_version")
+);
+
+INSERT INTO "restcomm_usage_records" ("account_sid", "category", "usage_date", "api_version", "record_count", "usage_value", "price")
+SELECT "account_sid", 'calls', CAST("date_created" AS DATE), "api_version", COUNT(1), COALESCE(SUM("duration"),0),
+COALESCE(SUM(CAST("price" AS DECIMAL(19,4))),0)
+FROM "restcomm_call_detail_records"
+GROUP BY "account_sid", CAST("date_created" AS DATE), "api_version";
+
+INSERT INTO "restcomm_usage_records" ("account_sid", "category", "usage_date", "api_version", "record_count", "usage_value", "price")
+SELECT "account_sid", 'sms', CAST("date_created" AS DATE), "api_version", COUNT(1), COUNT("sid"),
+COALESCE(SUM(CAST("price" AS DECIMAL(19,4))),0)
+FROM "restcomm_sms_messages"
+GROUP BY "account_sid", CAST("date_created" AS DATE), "api_version";
@@ -0,0 +1,120 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.sip.SipServletRequest;
+import javax.servlet.sip.SipServletResponse;
+import javax.servlet.sip.SipSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.restcomm.connect.telephony.api.util.B2BUAHelper;
+
+/**
+ * Looks up the linked leg of a B2BUA call, which the call manager does for every in-dialog request and response it
+ * proxies. Sessions and messages are in-memory stand-ins backed by attribute maps, so the benchmark covers the helper
+ * itself; the methods that create and send SIP messages need a running container and are left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class B2BUAHelperBenchmark {
+    // Mirrors B2BUAHelper.B2BUA_LINKED_SESSION.
+    private static final String LINKED_SESSION = "linkedSession";
+
+    private SipServletRequest linked;
+    private SipServletResponse unlinked;
+
+    @Setup
+    public void setup() {
+        final SipSession incoming = session();
+        final SipSession outgoing = session();
+        incoming.setAttribute(LINKED_SESSION, outgoing);
+        outgoing.setAttribute(LINKED_SESSION, incoming);
+        outgoing.setAttribute(B2BUAHelper.B2BUA_LAST_REQUEST, message(SipServletRequest.class, outgoing));
+        outgoing.setAttribute(B2BUAHelper.B2BUA_LAST_RESPONSE, message(SipServletResponse.class, outgoing));
+        linked = message(SipServletRequest.class, incoming);
+        unlinked = message(SipServletResponse.class, session());
+    }
+
+    private static SipSession session() {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        return (SipSession) Proxy.newProxyInstance(SipSession.class.getClassLoader(), new Class<?>[] { SipSession.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] arguments) throws Throwable {
+                        final String name = method.getName();
+                        if ("isValid".equals(name)) {
+                            return true;
+                        } else if ("getAttribute".equals(name)) {
+                            return attributes.get(arguments[0]);
+                        } else if ("setAttribute".equals(name)) {
+                            attributes.put((String) arguments[0], arguments[1]);
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private static <T> T message(final Class<T> type, final SipSession session) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] arguments) throws Throwable {
+                if ("getSession".equals(method.getName())) {
+                    return session;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }));
+    }
+
+    @Benchmark
+    public boolean isB2BUASession() {
+        return B2BUAHelper.isB2BUASession(linked);
+    }
+
+    @Benchmark
+    public SipServletRequest getLinkedRequest() {
+        return B2BUAHelper.getLinkedRequest(linked);
+    }
+
+    @Benchmark
+    public SipServletResponse getLinkedResponse() {
+        return B2BUAHelper.getLinkedResponse(linked);
+    }
+
+    @Benchmark
+    public boolean notB2BUASession() {
+        return B2BUAHelper.isB2BUASession(unlinked);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.restcomm.connect.dao.entities.CallDetailRecord;
+import org.restcomm.connect.dao.entities.CallDetailRecordList;
+import org.restcomm.connect.dao.entities.RestCommResponse;
+import org.restcomm.connect.http.converter.CallDetailRecordConverter;
+import org.restcomm.connect.http.converter.CallDetailRecordListConverter;
+import org.restcomm.connect.http.converter.RestCommResponseConverter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Serializes pages of call detail records to XML and JSON with the converters and settings CallsEndpoint uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CallDetailRecordConverterBenchmark {
+    @Param({ "1", "50", "1000" })
+    public int size;
+
+    private XStream xstream;
+    private Gson gson;
+    private CallDetailRecord cdr;
+    private CallDetailRecordList cdrs;
+
+    @Setup
+    public void setup() {
+        final Configuration configuration = new BaseConfiguration();
+        configuration.setProperty("api-version", Fixtures.API_VERSION);
+        configuration.setProperty("root-uri", "/restcomm");
+        final CallDetailRecordConverter converter = new CallDetailRecordConverter(configuration);
+        final CallDetailRecordListConverter listConverter = new CallDetailRecordListConverter(configuration);
+        listConverter.setCount(size * 10);
+        listConverter.setPage(0);
+        listConverter.setPageSize(size);
+        listConverter.setPathUri("/restcomm/" + Fixtures.API_VERSION + "/Accounts/" + Fixtures.ACCOUNT_SID + "/Calls");
+
+        final GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(CallDetailRecord.class, converter);
+        builder.registerTypeAdapter(CallDetailRecordList.class, listConverter);
+        builder.setPrettyPrinting();
+        gson = builder.create();
+        xstream = new XStream();
+        xstream.alias("RestcommResponse", RestCommResponse.class);
+        xstream.registerConverter(converter);
+        xstream.registerConverter(new RestCommResponseConverter(configuration));
+        xstream.registerConverter(listConverter);
+
+        final List<CallDetailRecord> records = Fixtures.callDetailRecords(size);
+        cdr = records.get(0);
+        cdrs = new CallDetailRecordList(records);
+    }
+
+    @Benchmark
+    public String listToXml() {
+        return xstream.toXML(new RestCommResponse(cdrs));
+    }
+
+    @Benchmark
+    public String listToJson() {
+        return gson.toJson(cdrs);
+    }
+
+    @Benchmark
+    public String recordToXml() {
+        return xstream.toXML(new RestCommResponse(cdr));
+    }
+
+    @Benchmark
+    public String recordToJson() {
+        return gson.toJson(cdr, CallDetailRecord.class);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.CallDetailRecordsDao;
+import org.restcomm.connect.dao.DaoUtils;
+import org.restcomm.connect.dao.entities.CallDetailRecord;
+import org.restcomm.connect.dao.mybatis.MybatisCallDetailRecordsDao;
+
+/**
+ * Reads a page of call detail records from an in-memory HSQLDB database, straight into entities with the typed result
+ * map of call-detail-records.xml, and as maps converted field by field like the DAO used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CallDetailRecordMappingBenchmark {
+    private static final String NAMESPACE = "org.mobicents.servlet.sip.restcomm.dao.CallDetailRecordsDao.";
+    private static final String TABLE = "CREATE TABLE \"restcomm_call_detail_records\" (\"sid\" VARCHAR(34) NOT NULL PRIMARY KEY,"
+            + "\"instanceid\" VARCHAR(255), \"parent_call_sid\" VARCHAR(34), \"date_created\" DATETIME NOT NULL,"
+            + "\"date_updated\" DATETIME NOT NULL, \"account_sid\" VARCHAR(34) NOT NULL, \"sender\" VARCHAR(255) NOT NULL,"
+            + "\"recipient\" VARCHAR(64) NOT NULL, \"phone_number_sid\" VARCHAR(34), \"status\" VARCHAR(20) NOT NULL,"
+            + "\"start_time\" DATETIME, \"end_time\" DATETIME, \"duration\" INT, \"price\" VARCHAR(8),"
+            + "\"direction\" VARCHAR(20) NOT NULL, \"answered_by\" VARCHAR(64), \"api_version\" VARCHAR(10) NOT NULL,"
+            + "\"forwarded_from\" VARCHAR(30), \"caller_name\" VARCHAR(50), \"uri\" LONGVARCHAR NOT NULL,"
+            + "\"call_path\" VARCHAR(255), \"ring_duration\" INT, \"conference_sid\" VARCHAR(34), \"muted\" BOOLEAN,"
+            + "\"start_conference_on_enter\" BOOLEAN, \"end_conference_on_exit\" BOOLEAN, \"on_hold\" BOOLEAN,"
+            + "\"ms_id\" VARCHAR(34))";
+
+    @Param({ "50", "10000" })
+    public int size;
+
+    private SqlSessionFactory sessions;
+    private CallDetailRecordsDao cdrs;
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        final UnpooledDataSource dataSource = new UnpooledDataSource("org.hsqldb.jdbcDriver",
+                "jdbc:hsqldb:mem:cdrs" + size, "sa", "");
+        final Configuration configuration = new Configuration(new Environment("benchmark", new JdbcTransactionFactory(),
+                dataSource));
+        mapper(configuration, "mybatis/call-detail-records.xml");
+        mapper(configuration, "mybatis/maps.xml");
+        sessions = new SqlSessionFactoryBuilder().build(configuration);
+        cdrs = new MybatisCallDetailRecordsDao(sessions);
+
+        final SqlSession session = sessions.openSession();
+        try {
+            final Statement statement = session.getConnection().createStatement();
+            statement.execute("DROP TABLE \"restcomm_call_detail_records\" IF EXISTS");
+            statement.execute(TABLE);
+            statement.close();
+            // straight to the table, the DAO would roll up their usage too
+            for (final CallDetailRecord cdr : Fixtures.callDetailRecords(size)) {
+                session.insert(NAMESPACE + "addCallDetailRecord", cdr);
+            }
+            session.commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void mapper(final Configuration configuration, final String resource) throws IOException {
+        final InputStream input = Resources.getResourceAsStream(resource);
+        try {
+            new XMLMapperBuilder(input, configuration, resource, configuration.getSqlFragments()).parse();
+        } finally {
+            input.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        final SqlSession session = sessions.openSession();
+        try {
+            session.getConnection().createStatement().execute("SHUTDOWN");
+        } finally {
+            session.close();
+        }
+    }
+
+    @Benchmark
+    public List<CallDetailRecord> resultMap() {
+        return cdrs.getCallDetailRecordsByAccountSid(Fixtures.ACCOUNT_SID);
+    }
+
+    @Benchmark
+    public List<CallDetailRecord> maps() {
+        final SqlSession session = sessions.openSession();
+        try {
+            final List<Map<String, Object>> results = session.selectList("maps.getCallDetailRecords",
+                    Fixtures.ACCOUNT_SID.toString());
+            final List<CallDetailRecord> records = new ArrayList<CallDetailRecord>(results.size());
+            for (final Map<String, Object> result : results) {
+                records.add(toCallDetailRecord(result));
+            }
+            return records;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static CallDetailRecord toCallDetailRecord(final Map<String, Object> map) {
+        final String msId = DaoUtils.readString(map.get("ms_id"));
+        final Sid sid = DaoUtils.readSid(map.get("sid"));
+        final String instanceId = DaoUtils.readString(map.get("instanceid"));
+        final Sid parentCallSid = DaoUtils.readSid(map.get("parent_call_sid"));
+        final Sid conferenceSid = DaoUtils.readSid(map.get("conference_sid"));
+        final DateTime dateCreated = DaoUtils.readDateTime(map.get("date_created"));
+        final DateTime dateUpdated = DaoUtils.readDateTime(map.get("date_updated"));
+        final Sid accountSid = DaoUtils.readSid(map.get("account_sid"));
+        final String to = DaoUtils.readString(map.get("recipient"));
+        final String from = DaoUtils.readString(map.get("sender"));
+        final Sid phoneNumberSid = DaoUtils.readSid(map.get("phone_number_sid"));
+        final String status = DaoUtils.readString(map.get("status"));
+        final DateTime startTime = DaoUtils.readDateTime(map.get("start_time"));
+        final DateTime endTime = DaoUtils.readDateTime(map.get("end_time"));
+        final Integer duration = DaoUtils.readInteger(map.get("duration"));
+        final Integer ringDuration = DaoUtils.readInteger(map.get("ring_duration"));
+        final BigDecimal price = DaoUtils.readBigDecimal(map.get("price"));
+        final Currency priceUnit = DaoUtils.readCurrency(map.get("price_unit"));
+        final String direction = DaoUtils.readString(map.get("direction"));
+        final String answeredBy = DaoUtils.readString(map.get("answered_by"));
+        final String apiVersion = DaoUtils.readString(map.get("api_version"));
+        final String forwardedFrom = DaoUtils.readString(map.get("forwarded_from"));
+        final String callerName = DaoUtils.readString(map.get("caller_name"));
+        final URI uri = DaoUtils.readUri(map.get("uri"));
+        final String callPath = DaoUtils.readString(map.get("call_path"));
+        final Boolean muted = DaoUtils.readBoolean(map.get("muted"));
+        final Boolean startConferenceOnEnter = DaoUtils.readBoolean(map.get("start_conference_on_enter"));
+        final Boolean endConferenceOnExit = DaoUtils.readBoolean(map.get("end_conference_on_exit"));
+        final Boolean onHold = DaoUtils.readBoolean(map.get("on_hold"));
+        return new CallDetailRecord(sid, instanceId, parentCallSid, conferenceSid, dateCreated, dateUpdated, accountSid, to,
+                from, phoneNumberSid, status, startTime, endTime, duration, price, priceUnit, direction, answeredBy,
+                apiVersion, forwardedFrom, callerName, uri, callPath, ringDuration, muted, startConferenceOnEnter,
+                endConferenceOnExit, onHold, msId);
+    }
+}
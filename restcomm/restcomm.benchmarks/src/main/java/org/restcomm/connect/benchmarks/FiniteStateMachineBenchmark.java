@@ -0,0 +1,111 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.restcomm.connect.commons.fsm.Action;
+import org.restcomm.connect.commons.fsm.FiniteStateMachine;
+import org.restcomm.connect.commons.fsm.State;
+import org.restcomm.connect.commons.fsm.Transition;
+
+/**
+ * Builds the state machine of a call the way the Call actor does on creation, and walks it through the states of an
+ * answered inbound call. The graph mirrors the one declared in org.restcomm.connect.telephony.Call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FiniteStateMachineBenchmark {
+    private static final String[] STATES = { "uninitialized", "initializing", "waiting for answer", "queued", "ringing",
+            "failing busy", "busy", "not found", "canceling", "canceled", "failing no answer", "no answer", "dialing",
+            "updating media session", "in progress", "joining", "leaving", "stopping", "completed", "failed",
+            "InDialogRequest" };
+
+    private static final String[][] TRANSITIONS = { { "uninitialized", "ringing" }, { "uninitialized", "queued" },
+            { "uninitialized", "canceled" }, { "uninitialized", "completed" }, { "queued", "canceled" },
+            { "queued", "initializing" }, { "ringing", "busy" }, { "ringing", "not found" }, { "ringing", "canceling" },
+            { "ringing", "canceled" }, { "ringing", "failing no answer" }, { "ringing", "failing busy" },
+            { "ringing", "no answer" }, { "ringing", "initializing" }, { "ringing", "updating media session" },
+            { "ringing", "completed" }, { "ringing", "stopping" }, { "ringing", "failed" },
+            { "initializing", "canceling" }, { "initializing", "dialing" }, { "initializing", "failed" },
+            { "initializing", "in progress" }, { "initializing", "waiting for answer" }, { "initializing", "stopping" },
+            { "waiting for answer", "in progress" }, { "waiting for answer", "joining" },
+            { "waiting for answer", "canceling" }, { "waiting for answer", "completed" },
+            { "waiting for answer", "stopping" }, { "dialing", "canceling" }, { "dialing", "stopping" },
+            { "dialing", "failing busy" }, { "dialing", "ringing" }, { "dialing", "failed" },
+            { "dialing", "failing no answer" }, { "dialing", "no answer" }, { "dialing", "updating media session" },
+            { "in progress", "stopping" }, { "in progress", "joining" }, { "in progress", "leaving" },
+            { "in progress", "failed" }, { "in progress", "InDialogRequest" }, { "joining", "in progress" },
+            { "joining", "stopping" }, { "joining", "failed" }, { "leaving", "in progress" }, { "leaving", "stopping" },
+            { "leaving", "failed" }, { "leaving", "completed" }, { "canceling", "canceled" },
+            { "canceling", "completed" }, { "failing busy", "busy" }, { "failing no answer", "no answer" },
+            { "failing no answer", "canceling" }, { "updating media session", "in progress" },
+            { "updating media session", "failed" }, { "stopping", "completed" }, { "stopping", "failed" },
+            { "failed", "completed" }, { "completed", "stopping" }, { "completed", "failed" } };
+
+    private static final String[] ANSWERED_CALL = { "ringing", "initializing", "in progress", "joining", "in progress",
+            "stopping", "completed" };
+
+    private static final Action NO_OP = new Action() {
+        @Override
+        public void execute(final Object message) throws Exception {
+        }
+    };
+
+    private static Map<String, State> states() {
+        final Map<String, State> states = new HashMap<String, State>();
+        for (final String id : STATES) {
+            states.put(id, new State(id, NO_OP, null));
+        }
+        return states;
+    }
+
+    private static FiniteStateMachine build(final Map<String, State> states) {
+        final Set<Transition> transitions = new HashSet<Transition>();
+        for (final String[] transition : TRANSITIONS) {
+            transitions.add(new Transition(states.get(transition[0]), states.get(transition[1])));
+        }
+        return new FiniteStateMachine(states.get("uninitialized"), transitions);
+    }
+
+    @Benchmark
+    public FiniteStateMachine construct() {
+        return build(states());
+    }
+
+    @Benchmark
+    public State answeredCall() throws Exception {
+        final Map<String, State> states = states();
+        final FiniteStateMachine fsm = build(states);
+        final Object event = new Object();
+        for (final String target : ANSWERED_CALL) {
+            fsm.transition(event, states.get(target));
+        }
+        return fsm.state();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.joda.time.DateTime;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.entities.CallDetailRecord;
+
+/**
+ * Loads the documents under src/main/resources and builds the entities the benchmarks work on. Everything is
+ * deterministic so that results from two commits can be compared.
+ */
+final class Fixtures {
+    static final Sid ACCOUNT_SID = new Sid("ACae6e420f425248d6a26948c17a9e2acf");
+    static final String AUTH_TOKEN = "77f8c12cc7b8f8423e5c38b035249166";
+    static final String API_VERSION = "2012-04-24";
+
+    private Fixtures() {
+        super();
+    }
+
+    static byte[] bytes(final String resource) {
+        final InputStream input = Fixtures.class.getResourceAsStream("/" + resource);
+        if (input == null) {
+            throw new IllegalArgumentException("Missing fixture " + resource);
+        }
+        try {
+            return IOUtils.toByteArray(input);
+        } catch (final IOException exception) {
+            throw new IllegalStateException("Could not read fixture " + resource, exception);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    static String text(final String resource) {
+        return new String(bytes(resource));
+    }
+
+    static Sid sid(final String prefix, final int index) {
+        return new Sid(String.format("%s%032x", prefix, index));
+    }
+
+    static CallDetailRecord callDetailRecord(final int index) {
+        final DateTime start = new DateTime(2017, 3, 1, 12, 0, 0).plusMinutes(index);
+        final CallDetailRecord.Builder builder = CallDetailRecord.builder();
+        builder.setSid(sid("CA", index));
+        builder.setInstanceId("ID8deb35fc5121429fa96635aebe3976d2");
+        builder.setParentCallSid(index % 2 == 0 ? null : sid("CA", index - 1));
+        builder.setDateCreated(start);
+        builder.setDateUpdated(start);
+        builder.setAccountSid(ACCOUNT_SID);
+        builder.setTo("+1305555" + String.format("%04d", index % 10000));
+        builder.setFrom("+13055551212");
+        builder.setPhoneNumberSid(sid("PN", 1));
+        builder.setStatus("completed");
+        builder.setStartTime(start);
+        builder.setEndTime(start.plusSeconds(30 + index % 300));
+        builder.setDuration(30 + index % 300);
+        builder.setPrice(new BigDecimal("0.0120"));
+        builder.setPriceUnit(Currency.getInstance("USD"));
+        builder.setDirection(index % 2 == 0 ? "inbound" : "outbound-dial");
+        builder.setAnsweredBy(null);
+        builder.setApiVersion(API_VERSION);
+        builder.setForwardedFrom(null);
+        builder.setCallerName("Alice");
+        builder.setUri(URI.create("/" + API_VERSION + "/Accounts/" + ACCOUNT_SID + "/Calls/" + sid("CA", index) + ".json"));
+        builder.setCallPath("/user/$a" + index);
+        builder.setMuted(false);
+        builder.setStartConferenceOnEnter(true);
+        builder.setEndConferenceOnExit(false);
+        builder.setOnHold(false);
+        builder.setMsId("ID8deb35fc5121429fa96635aebe3976d2");
+        return builder.build();
+    }
+
+    static List<CallDetailRecord> callDetailRecords(final int size) {
+        final List<CallDetailRecord> cdrs = new ArrayList<CallDetailRecord>(size);
+        for (int index = 0; index < size; index++) {
+            cdrs.add(callDetailRecord(index));
+        }
+        return cdrs;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.restcomm.connect.dao.AccountsDao;
+import org.restcomm.connect.dao.entities.Account;
+import org.restcomm.connect.identity.AccountKey;
+import org.restcomm.connect.identity.UserIdentityContext;
+
+/**
+ * Authenticates a REST request with Basic credentials, as every secured endpoint does before it does any work. The
+ * accounts DAO is an in-memory stand-in so only the parsing and the token check are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdentityBenchmark {
+    private static final String PASSWORD = "RestComm";
+
+    private AccountsDao accounts;
+    private HttpServletRequest request;
+
+    @Setup
+    public void setup() {
+        final Account.Builder builder = Account.builder();
+        builder.setSid(Fixtures.ACCOUNT_SID);
+        builder.setEmailAddress("administrator@company.com");
+        builder.setFriendlyName("Default Administrator Account");
+        builder.setType(Account.Type.FULL);
+        builder.setStatus(Account.Status.ACTIVE);
+        builder.setAuthToken(DigestUtils.md5Hex(PASSWORD));
+        builder.setRole("Administrator");
+        final Account account = builder.build();
+        accounts = proxy(AccountsDao.class, "getAccountToAuthenticate", account);
+
+        final String credentials = Fixtures.ACCOUNT_SID + ":" + PASSWORD;
+        final String authorization = "Basic " + Base64.encodeBase64String(credentials.getBytes(Charset.forName("UTF-8")));
+        request = proxy(HttpServletRequest.class, "getHeader", authorization);
+    }
+
+    private static <T> T proxy(final Class<T> type, final String method, final Object result) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method invoked, final Object[] arguments) throws Throwable {
+                if (method.equals(invoked.getName())) {
+                    return result;
+                }
+                throw new UnsupportedOperationException(invoked.getName());
+            }
+        }));
+    }
+
+    @Benchmark
+    public boolean accountKey() {
+        return new AccountKey(Fixtures.ACCOUNT_SID.toString(), PASSWORD, accounts).isVerified();
+    }
+
+    @Benchmark
+    public Account userIdentityContext() {
+        return new UserIdentityContext(request, accounts).getEffectiveAccount();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
+
+/**
+ * Formats the From and To of a call to E.164, with libphonenumber directly as the interpreters used to and through
+ * the shared {@link PhoneNumberNormalizer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PhoneNumberBenchmark {
+    @Param({ "+14155551234", "(415) 555-1234", "sip:alice@127.0.0.1:5080" })
+    public String number;
+
+    private PhoneNumberUtil numbers;
+    private PhoneNumberNormalizer normalizer;
+
+    @Setup
+    public void setup() {
+        numbers = PhoneNumberUtil.getInstance();
+        normalizer = new PhoneNumberNormalizer();
+    }
+
+    @Benchmark
+    public String libphonenumber() {
+        try {
+            return numbers.format(numbers.parse(number, "US"), PhoneNumberFormat.E164);
+        } catch (final NumberParseException ignored) {
+            return number;
+        }
+    }
+
+    @Benchmark
+    public String normalizer() {
+        try {
+            return normalizer.e164(number);
+        } catch (final NumberParseException ignored) {
+            return number;
+        }
+    }
+}
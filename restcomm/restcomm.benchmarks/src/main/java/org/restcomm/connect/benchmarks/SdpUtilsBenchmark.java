@@ -0,0 +1,75 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.restcomm.connect.commons.util.SdpUtils;
+
+/**
+ * Rewrites the connection addresses of SDP offers for NAT, and checks them for WebRTC, as done for every INVITE and
+ * 200 OK that crosses the B2BUA.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SdpUtilsBenchmark {
+    private static final String EXTERNAL_IP = "203.0.113.10";
+
+    @Param({ "offer", "webrtc", "multipart" })
+    public String offer;
+
+    private String contentType;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        if ("offer".equals(offer)) {
+            contentType = "application/sdp";
+            data = Fixtures.bytes("sdp/offer.sdp");
+        } else if ("webrtc".equals(offer)) {
+            contentType = "application/sdp";
+            data = Fixtures.bytes("sdp/webrtc-offer.sdp");
+        } else if ("multipart".equals(offer)) {
+            contentType = "multipart/mixed;boundary=uniqueBoundary";
+            data = Fixtures.bytes("sdp/multipart-offer.txt");
+        } else {
+            throw new IllegalArgumentException("Unknown offer " + offer);
+        }
+    }
+
+    @Benchmark
+    public String patch() throws Exception {
+        return SdpUtils.patch(contentType, data, EXTERNAL_IP);
+    }
+
+    @Benchmark
+    public boolean isWebRTCSDP() throws Exception {
+        return SdpUtils.isWebRTCSDP(contentType, data);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.restcomm.connect.commons.dao.Sid;
+
+/**
+ * Generates, validates and looks up {@link Sid}s. Every call, message and record gets one, and every REST request
+ * parses a few.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SidBenchmark {
+    private static final int ENTRIES = 1024;
+
+    private String text;
+    private Map<Sid, Integer> map;
+    private Sid key;
+
+    @Setup
+    public void setup() {
+        text = Fixtures.sid("CA", 42).toString();
+        map = new HashMap<Sid, Integer>();
+        for (int index = 0; index < ENTRIES; index++) {
+            map.put(Fixtures.sid("CA", index), index);
+        }
+        key = new Sid(Fixtures.sid("CA", ENTRIES / 2).toString());
+    }
+
+    @Benchmark
+    public Sid generate() {
+        return Sid.generate(Sid.Type.CALL);
+    }
+
+    @Benchmark
+    public Sid generateAccount() {
+        return Sid.generate(Sid.Type.ACCOUNT, "administrator@company.com");
+    }
+
+    @Benchmark
+    public Sid parse() {
+        return new Sid(text);
+    }
+
+    @Benchmark
+    public Integer lookup() {
+        return map.get(key);
+    }
+}
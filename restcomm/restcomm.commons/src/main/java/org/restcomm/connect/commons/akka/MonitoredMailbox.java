@@ -0,0 +1,130 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.akka;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+import scala.Option;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+
+import com.typesafe.config.Config;
+
+/**
+ * An unbounded mailbox that keeps count of the messages waiting in every mailbox of the actor system, so a backlog
+ * building up under load shows in the metrics. Enable it for all actors with
+ * <code>akka.actor.default-mailbox.mailbox-type = "org.restcomm.connect.commons.akka.MonitoredMailbox"</code>.
+ */
+@ThreadSafe
+public final class MonitoredMailbox implements MailboxType {
+    public static final String METRIC_MAILBOX_DEPTH = "MailboxDepth";
+    public static final String METRIC_MAX_MAILBOX_DEPTH = "MaxMailboxDepth";
+    public static final String METRIC_MAILBOXES = "Mailboxes";
+
+    private static final AtomicLong queued = new AtomicLong();
+    private static final AtomicInteger maxDepth = new AtomicInteger();
+    private static final AtomicInteger mailboxes = new AtomicInteger();
+    private static volatile boolean enabled;
+
+    public MonitoredMailbox(final ActorSystem.Settings settings, final Config config) {
+        super();
+        enabled = true;
+    }
+
+    @Override
+    public MessageQueue create(final Option<ActorRef> owner, final Option<ActorSystem> system) {
+        mailboxes.incrementAndGet();
+        return new MonitoredMessageQueue();
+    }
+
+    /**
+     * @return the messages waiting in all mailboxes, the deepest single mailbox seen so far and the open mailboxes;
+     *         empty when the mailbox is not configured
+     */
+    public static Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        if (!enabled) {
+            return metrics;
+        }
+        metrics.put(METRIC_MAILBOX_DEPTH, (int) queued.get());
+        metrics.put(METRIC_MAX_MAILBOX_DEPTH, maxDepth.get());
+        metrics.put(METRIC_MAILBOXES, mailboxes.get());
+        return metrics;
+    }
+
+    private static void updateMaxDepth(final int depth) {
+        int max = maxDepth.get();
+        while (depth > max && !maxDepth.compareAndSet(max, depth)) {
+            max = maxDepth.get();
+        }
+    }
+
+    private static final class MonitoredMessageQueue implements MessageQueue {
+        private final Queue<Envelope> queue = new ConcurrentLinkedQueue<Envelope>();
+        // ConcurrentLinkedQueue.size() walks the whole queue
+        private final AtomicInteger depth = new AtomicInteger();
+
+        @Override
+        public void enqueue(final ActorRef receiver, final Envelope handle) {
+            queue.offer(handle);
+            queued.incrementAndGet();
+            updateMaxDepth(depth.incrementAndGet());
+        }
+
+        @Override
+        public Envelope dequeue() {
+            final Envelope handle = queue.poll();
+            if (handle != null) {
+                depth.decrementAndGet();
+                queued.decrementAndGet();
+            }
+            return handle;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return depth.get();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(final ActorRef owner, final MessageQueue deadLetters) {
+            mailboxes.decrementAndGet();
+            Envelope handle;
+            while ((handle = dequeue()) != null) {
+                deadLetters.enqueue(owner, handle);
+            }
+        }
+    }
+}
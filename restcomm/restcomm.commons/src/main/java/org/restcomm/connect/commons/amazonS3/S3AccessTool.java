@@ -34,9 +34,11 @@ import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.StorageClass;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
+import org.restcomm.connect.commons.recording.RecordingStorage;
 
 import javax.activation.MimetypesFileTypeMap;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -48,7 +50,7 @@ import java.util.Date;
  * @author <a href="mailto:gvagenas@gmail.com">gvagenas</a>
  *
  */
-public class S3AccessTool {
+public class S3AccessTool implements RecordingStorage {
 
     private static Logger logger = Logger.getLogger(S3AccessTool.class);
 
@@ -78,6 +80,19 @@ public class S3AccessTool {
         this.testingUrl = testingUrl;
     }
 
+    @Override
+    public URI store(final File file) throws IOException {
+        // in testing mode the file is created on the fly
+        if (!testing && !file.exists()) {
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+        final URI uri = uploadFile(file.toURI().toString());
+        if (uri == null) {
+            throw new IOException("Could not upload " + file.getName() + " to S3");
+        }
+        return uri;
+    }
+
     public URI uploadFile(final String fileToUpload) {
         AWSCredentials credentials =new BasicAWSCredentials(accessKey, securityKey);
         AmazonS3 s3client = new AmazonS3Client(credentials);
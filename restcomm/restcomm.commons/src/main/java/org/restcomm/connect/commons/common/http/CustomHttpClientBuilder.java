@@ -23,9 +23,14 @@ package org.restcomm.connect.commons.common.http;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.restcomm.connect.commons.HttpConnector;
 import org.restcomm.connect.commons.HttpConnectorList;
@@ -37,6 +42,7 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -69,6 +75,52 @@ public class CustomHttpClientBuilder {
         }
     }
 
+    /**
+     * Returns a client backed by a connection pool. Connections are kept alive and reused across requests so it
+     * is meant to be shared and closed only when Restcomm stops.
+     */
+    public static CloseableHttpClient buildPooled(MainConfigurationSet config, int timeout, int maxConnections,
+            int maxConnectionsPerRoute) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setCookieSpec(CookieSpecs.STANDARD).build();
+        SSLConnectionSocketFactory sslsf = SSLConnectionSocketFactory.getSocketFactory();
+        if (config.getSslMode() != SslMode.strict && hasSecureConnector()) {
+            try {
+                SSLContextBuilder builder = new SSLContextBuilder();
+                builder.loadTrustMaterial(null, new TrustSelfSignedStrategy());
+                sslsf = new SSLConnectionSocketFactory(builder.build());
+            } catch (KeyManagementException | NoSuchAlgorithmException | KeyStoreException e) {
+                throw new RuntimeException("Error creating HttpClient", e);
+            }
+        }
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", sslsf).build());
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // re-check connections that have been sitting in the pool for a while before leasing them
+        connectionManager.setValidateAfterInactivity(2000);
+        return HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static boolean hasSecureConnector() {
+        for (HttpConnector connector : UriUtils.getHttpConnectorList().getConnectors()) {
+            if (connector.isSecure()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static HttpClient buildAllowallClient(RequestConfig requestConfig) {
         HttpConnectorList httpConnectorList = UriUtils.getHttpConnectorList();
         HttpClient httpClient = null;
@@ -0,0 +1,541 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.common.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.configuration.RestcommConfiguration;
+
+/**
+ * Delivers the status callbacks of calls and SMS messages in the background, shared by the interpreters.
+ * <p>
+ * Every callback is first written to a journal directory, one small file per callback, so that callbacks that were
+ * not delivered are sent again after a restart. The journal is written and synced by a thread of its own, so the
+ * actor sending a callback never waits for the disk; a callback is delivered once it is journaled. The callbacks of a
+ * call are delivered one at a time, in the order they were sent.
+ * <p>
+ * Deliveries block their worker for up to the timeout, so a host never gets more than max-connections-per-host of
+ * them at once, and that is kept to a quarter of the workers at most: an unreachable customer server holds a few
+ * workers until its requests time out, not all of them, and the callbacks of the other hosts keep going. The
+ * callbacks of a host that has all its deliveries wait aside without a worker and the next one goes when a delivery
+ * to the host ends.
+ * <p>
+ * Failed deliveries are retried with an exponential backoff and jitter. Callbacks that fail max-attempts times, are
+ * older than expiry or are refused with a client error other than 408 and 429 are kept in the journal with a .failed
+ * suffix.
+ */
+@ThreadSafe
+public final class StatusCallbackQueue {
+    public static final String METRIC_CALLBACKS_PENDING = "StatusCallbacksPending";
+    public static final String METRIC_CALLBACKS_DELIVERED = "StatusCallbacksDelivered";
+    public static final String METRIC_CALLBACKS_RETRIED = "StatusCallbacksRetried";
+    public static final String METRIC_CALLBACKS_FAILED = "StatusCallbacksFailed";
+    public static final String METRIC_CALLBACKS_EXPIRED = "StatusCallbacksExpired";
+
+    private static final Logger logger = Logger.getLogger(StatusCallbackQueue.class);
+    private static final String JOB_SUFFIX = ".callback";
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // a host gets at most this share of the workers, so a few unreachable hosts can't hold all of them
+    private static final int WORKERS_PER_HOST_DIVISOR = 4;
+
+    private static final StatusCallbackQueue instance = new StatusCallbackQueue();
+
+    // callbacks waiting behind the one being delivered, by call
+    private final Map<String, Deque<Callback>> calls;
+    private final ConcurrentMap<String, Host> hosts;
+    private final AtomicInteger pending;
+    private final AtomicLong sequence;
+    private final AtomicLong delivered;
+    private final AtomicLong retried;
+    private final AtomicLong failed;
+    private final AtomicLong expired;
+    private volatile File journal;
+    private volatile CloseableHttpClient client;
+    private volatile int maxConnectionsPerHost;
+    private volatile int maxAttempts;
+    private volatile long retryInterval;
+    private volatile long maxRetryInterval;
+    private volatile long expiry;
+    private volatile ScheduledExecutorService executor;
+    // writes the journal entries of new callbacks, one at a time so the callbacks of a call stay in order
+    private volatile ExecutorService writer;
+
+    public StatusCallbackQueue() {
+        super();
+        this.calls = new HashMap<String, Deque<Callback>>();
+        this.hosts = new ConcurrentHashMap<String, Host>();
+        this.pending = new AtomicInteger();
+        this.sequence = new AtomicLong();
+        this.delivered = new AtomicLong();
+        this.retried = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.expired = new AtomicLong();
+    }
+
+    public static StatusCallbackQueue getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param configuration the runtime-settings/status-callbacks settings
+     */
+    public void start(final Configuration configuration) {
+        final String path = configuration.getString("journal");
+        final File journal = path == null || path.isEmpty() ? new File(System.getProperty("java.io.tmpdir"), "restcomm-callbacks")
+                : new File(path);
+        final int workers = configuration.getInt("workers", 8);
+        final int maxConnectionsPerHost = configuration.getInt("max-connections-per-host", 2);
+        final CloseableHttpClient client = CustomHttpClientBuilder.buildPooled(RestcommConfiguration.getInstance().getMain(),
+                configuration.getInt("timeout", 5000), workers, maxConnectionsPerHost);
+        start(journal, client, workers, maxConnectionsPerHost, configuration.getInt("max-attempts", 10),
+                configuration.getLong("retry-interval", 1000), configuration.getLong("max-retry-interval", 300000),
+                TimeUnit.MINUTES.toMillis(configuration.getLong("expiry", 1440)));
+    }
+
+    /**
+     * Starts the workers and resumes the callbacks left in the journal. The client is closed on {@link #stop()}.
+     *
+     * @param maxConnectionsPerHost lowered to a quarter of the workers if it is higher
+     */
+    public synchronized void start(final File journal, final CloseableHttpClient client, final int workers,
+            final int maxConnectionsPerHost, final int maxAttempts, final long retryInterval, final long maxRetryInterval,
+            final long expiry) {
+        this.journal = journal;
+        this.client = client;
+        this.maxConnectionsPerHost = Math.min(maxConnectionsPerHost, Math.max(1, workers / WORKERS_PER_HOST_DIVISOR));
+        if (this.maxConnectionsPerHost < maxConnectionsPerHost) {
+            logger.warn("Lowering max-connections-per-host of the status callbacks from " + maxConnectionsPerHost + " to "
+                    + this.maxConnectionsPerHost + ", a quarter of the " + workers + " workers");
+        }
+        this.maxAttempts = maxAttempts;
+        this.retryInterval = retryInterval;
+        this.maxRetryInterval = maxRetryInterval;
+        this.expiry = expiry;
+        if (!journal.isDirectory() && !journal.mkdirs()) {
+            logger.error("Could not create the status callback journal " + journal.getAbsolutePath());
+        }
+        executor = Executors.newScheduledThreadPool(workers);
+        writer = Executors.newSingleThreadExecutor();
+        final File[] entries = journal.listFiles();
+        if (entries != null) {
+            // entries are named after their sequence, sorting them restores the order of the callbacks of each call
+            Arrays.sort(entries);
+            for (final File entry : entries) {
+                final String name = entry.getName();
+                if (name.endsWith(JOB_SUFFIX) || name.endsWith(FAILED_SUFFIX)) {
+                    try {
+                        final long number = Long.parseLong(name.substring(0, name.indexOf('.')));
+                        if (number >= sequence.get()) {
+                            sequence.set(number + 1);
+                        }
+                    } catch (final NumberFormatException exception) {
+                        continue;
+                    }
+                }
+                if (name.endsWith(JOB_SUFFIX)) {
+                    final Callback callback = read(entry);
+                    if (callback != null) {
+                        pending.incrementAndGet();
+                        submit(callback);
+                    }
+                }
+            }
+        }
+        if (pending.get() > 0 && logger.isInfoEnabled()) {
+            logger.info("Resuming " + pending.get() + " status callbacks");
+        }
+    }
+
+    /**
+     * Journals the callbacks still being sent and stops the workers. Callbacks that were not delivered stay in the
+     * journal.
+     */
+    public synchronized void stop() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+            HttpClientUtils.closeQuietly(client);
+            client = null;
+        }
+        synchronized (calls) {
+            calls.clear();
+        }
+        hosts.clear();
+        pending.set(0);
+    }
+
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Queues a callback and returns right away, before it is journaled.
+     *
+     * @param call the callbacks of a call, or of an SMS message, are delivered in the order they are queued
+     * @return false when the queue is not running, the caller should send the callback itself
+     */
+    public boolean send(final String call, final URI uri, final String method, final List<NameValuePair> parameters) {
+        final ExecutorService writer = this.writer;
+        if (writer == null) {
+            return false;
+        }
+        final long number = sequence.getAndIncrement();
+        final Callback callback = new Callback(String.format("%019d", number), call, uri, method == null ? "POST" : method,
+                URLEncodedUtils.format(parameters, UTF_8), System.currentTimeMillis(), 0);
+        pending.incrementAndGet();
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(callback);
+                    } catch (final IOException exception) {
+                        // still try to deliver it, it just won't survive a restart
+                        logger.error("Could not journal the status callback to " + uri, exception);
+                    }
+                    submit(callback);
+                }
+            });
+        } catch (final RejectedExecutionException exception) {
+            // stopping
+            pending.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public int getPendingCallbacks() {
+        return pending.get();
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_CALLBACKS_PENDING, pending.get());
+        metrics.put(METRIC_CALLBACKS_DELIVERED, (int) delivered.get());
+        metrics.put(METRIC_CALLBACKS_RETRIED, (int) retried.get());
+        metrics.put(METRIC_CALLBACKS_FAILED, (int) failed.get());
+        metrics.put(METRIC_CALLBACKS_EXPIRED, (int) expired.get());
+        return metrics;
+    }
+
+    // counted in pending by the caller
+    private void submit(final Callback callback) {
+        boolean first;
+        synchronized (calls) {
+            Deque<Callback> queue = calls.get(callback.call);
+            if (queue == null) {
+                queue = new ArrayDeque<Callback>();
+                calls.put(callback.call, queue);
+            }
+            queue.add(callback);
+            first = queue.size() == 1;
+        }
+        if (first) {
+            schedule(callback, 0);
+        }
+    }
+
+    // the callback is delivered or given up, the next one of its call can go
+    private void done(final Callback callback) {
+        Callback next = null;
+        synchronized (calls) {
+            final Deque<Callback> queue = calls.get(callback.call);
+            if (queue != null) {
+                queue.poll();
+                next = queue.peek();
+                if (next == null) {
+                    calls.remove(callback.call);
+                }
+            }
+        }
+        pending.decrementAndGet();
+        if (next != null) {
+            schedule(next, 0);
+        }
+    }
+
+    private void schedule(final Callback callback, final long delay) {
+        final ScheduledExecutorService executor = this.executor;
+        if (executor != null && !executor.isShutdown()) {
+            executor.schedule(callback, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void attempt(final Callback callback) {
+        if (System.currentTimeMillis() - callback.created > expiry) {
+            logger.warn("Giving up the status callback to " + callback.uri + " of " + callback.call + ", it expired");
+            expired.incrementAndGet();
+            fail(callback);
+            return;
+        }
+        final Host host = host(callback.uri);
+        // a callback woken by the end of a delivery already has the delivery it waited for
+        if (!callback.admitted && !host.acquire(callback)) {
+            return;
+        }
+        callback.admitted = false;
+        int status = -1;
+        Exception error = null;
+        try {
+            final CloseableHttpResponse response = client.execute(request(callback));
+            try {
+                status = response.getStatusLine().getStatusCode();
+                EntityUtils.consumeQuietly(response.getEntity());
+            } finally {
+                response.close();
+            }
+        } catch (final Exception exception) {
+            error = exception;
+        } finally {
+            final Callback next = host.release();
+            if (next != null) {
+                schedule(next, 0);
+            }
+        }
+        if (error == null && status < 400) {
+            entry(callback.id).delete();
+            delivered.incrementAndGet();
+            done(callback);
+            return;
+        }
+        callback.attempts++;
+        final boolean retryable = error != null || status >= 500 || status == 408 || status == 429;
+        if (!retryable || callback.attempts >= maxAttempts) {
+            final String reason = error != null ? error.getMessage() : "HTTP " + status;
+            logger.error("Giving up the status callback to " + callback.uri + " of " + callback.call + " after "
+                    + callback.attempts + " attempts: " + reason);
+            fail(callback);
+            return;
+        }
+        // half the backoff plus a random part so the callbacks that failed together are not retried together
+        final long backoff = Math.min(retryInterval << Math.min(callback.attempts - 1, 20), maxRetryInterval);
+        final long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        if (logger.isInfoEnabled()) {
+            logger.info("Status callback to " + callback.uri + " failed, retrying in " + delay + " ms: "
+                    + (error != null ? error.getMessage() : "HTTP " + status));
+        }
+        try {
+            write(callback);
+        } catch (final IOException exception) {
+            logger.warn("Could not journal the retry of the status callback to " + callback.uri, exception);
+        }
+        retried.incrementAndGet();
+        schedule(callback, delay);
+    }
+
+    private void fail(final Callback callback) {
+        entry(callback.id).renameTo(new File(journal, callback.id + FAILED_SUFFIX));
+        failed.incrementAndGet();
+        done(callback);
+    }
+
+    private Host host(final URI uri) {
+        final String key = uri.getHost() + ":" + uri.getPort();
+        Host host = hosts.get(key);
+        if (host == null) {
+            final Host created = new Host(maxConnectionsPerHost);
+            host = hosts.putIfAbsent(key, created);
+            if (host == null) {
+                host = created;
+            }
+        }
+        return host;
+    }
+
+    private HttpUriRequest request(final Callback callback) {
+        if ("GET".equalsIgnoreCase(callback.method)) {
+            if (callback.parameters.isEmpty()) {
+                return new HttpGet(callback.uri);
+            }
+            final String separator = callback.uri.getRawQuery() == null ? "?" : "&";
+            return new HttpGet(URI.create(callback.uri.toString() + separator + callback.parameters));
+        }
+        final HttpPost post = new HttpPost(callback.uri);
+        post.setEntity(new UrlEncodedFormEntity(URLEncodedUtils.parse(callback.parameters, UTF_8), UTF_8));
+        return post;
+    }
+
+    private File entry(final String id) {
+        return new File(journal, id + JOB_SUFFIX);
+    }
+
+    private void write(final Callback callback) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("call", callback.call);
+        properties.setProperty("uri", callback.uri.toString());
+        properties.setProperty("method", callback.method);
+        properties.setProperty("parameters", callback.parameters);
+        properties.setProperty("created", Long.toString(callback.created));
+        properties.setProperty("attempts", Integer.toString(callback.attempts));
+        // write aside and rename, a crash never leaves a partial entry behind
+        final File temporary = new File(journal, callback.id + JOB_SUFFIX + ".tmp");
+        final FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            properties.store(output, null);
+            // on disk before the rename makes it an entry
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporary.renameTo(entry(callback.id))) {
+            throw new IOException("Could not rename " + temporary.getAbsolutePath());
+        }
+    }
+
+    private Callback read(final File entry) {
+        final Properties properties = new Properties();
+        try {
+            final InputStream input = new FileInputStream(entry);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+            final String name = entry.getName();
+            return new Callback(name.substring(0, name.length() - JOB_SUFFIX.length()), properties.getProperty("call"),
+                    URI.create(properties.getProperty("uri")), properties.getProperty("method", "POST"),
+                    properties.getProperty("parameters", ""), Long.parseLong(properties.getProperty("created")),
+                    Integer.parseInt(properties.getProperty("attempts", "0")));
+        } catch (final Exception exception) {
+            logger.error("Ignoring unreadable status callback journal entry " + entry.getAbsolutePath(), exception);
+            return null;
+        }
+    }
+
+    // the deliveries a host may still have, and the callbacks waiting for one
+    private static final class Host {
+        private final Deque<Callback> waiting;
+        private int available;
+
+        private Host(final int deliveries) {
+            super();
+            this.waiting = new ArrayDeque<Callback>();
+            this.available = deliveries;
+        }
+
+        /**
+         * @return true when the callback can be delivered now, false when it waits for a delivery to end
+         */
+        private synchronized boolean acquire(final Callback callback) {
+            if (available > 0) {
+                available--;
+                return true;
+            }
+            waiting.add(callback);
+            return false;
+        }
+
+        /**
+         * @return the waiting callback the delivery is handed to, null when none is waiting
+         */
+        private synchronized Callback release() {
+            final Callback next = waiting.poll();
+            if (next == null) {
+                available++;
+            } else {
+                next.admitted = true;
+            }
+            return next;
+        }
+    }
+
+    private final class Callback implements Runnable {
+        private final String id;
+        private final String call;
+        private final URI uri;
+        private final String method;
+        // form encoded
+        private final String parameters;
+        private final long created;
+        // only touched by the worker running the callback
+        private int attempts;
+        // handed a delivery of its host while it was waiting
+        private volatile boolean admitted;
+
+        private Callback(final String id, final String call, final URI uri, final String method, final String parameters,
+                final long created, final int attempts) {
+            super();
+            this.id = id;
+            // callbacks without a call are not ordered
+            this.call = call == null ? id : call;
+            this.uri = uri;
+            this.method = method;
+            this.parameters = parameters;
+            this.created = created;
+            this.attempts = attempts;
+        }
+
+        @Override
+        public void run() {
+            attempt(this);
+        }
+    }
+}
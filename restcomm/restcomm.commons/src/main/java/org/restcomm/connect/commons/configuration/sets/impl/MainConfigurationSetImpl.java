@@ -24,6 +24,7 @@ import org.restcomm.connect.commons.annotations.concurrency.Immutable;
 import org.restcomm.connect.commons.configuration.sets.MainConfigurationSet;
 import org.restcomm.connect.commons.configuration.sources.ConfigurationSource;
 import org.restcomm.connect.commons.common.http.SslMode;
+import org.restcomm.connect.commons.util.UriUtils;
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -145,10 +146,13 @@ public class MainConfigurationSetImpl extends ConfigurationSet implements MainCo
 
     public void setUseHostnameToResolveRelativeUrls(boolean useHostnameToResolveRelativeUrls) {
         this.useHostnameToResolveRelativeUrls = useHostnameToResolveRelativeUrls;
+        // the resolution base depends on it
+        UriUtils.reset();
     }
 
     public void setHostname(String hostname) {
         this.hostname = hostname;
+        UriUtils.reset();
     }
 
     public void setBypassLbForClients(boolean bypassLbForClients) {
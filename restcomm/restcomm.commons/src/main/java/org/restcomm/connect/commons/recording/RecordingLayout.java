@@ -0,0 +1,124 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.recording;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+import org.apache.commons.configuration.Configuration;
+import org.restcomm.connect.commons.annotations.concurrency.Immutable;
+
+/**
+ * Tells where a recording file lives under recordings-path.
+ * <p>
+ * With the sharded layout a file is kept two directory levels down, in directories named after a hash of the file
+ * name (recordings/3f/a2/RE...wav), so that no directory holds more than a few dozen files even with millions of
+ * recordings. Files written before the layout was sharded stay at the top level until they are migrated, so lookups
+ * go through {@link #locate(String)} which checks both places.
+ */
+@Immutable
+public final class RecordingLayout {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String root;
+    private final File directory;
+    private final boolean sharded;
+
+    public RecordingLayout(final String root, final boolean sharded) {
+        super();
+        this.root = root.endsWith("/") ? root : root + "/";
+        this.directory = new File(URI.create(this.root));
+        this.sharded = sharded;
+    }
+
+    /**
+     * @param runtimeSettings the runtime-settings of restcomm.xml
+     */
+    public static RecordingLayout fromConfiguration(final Configuration runtimeSettings) {
+        final String layout = runtimeSettings.getString("recordings-storage.layout", "sharded");
+        return new RecordingLayout(runtimeSettings.getString("recordings-path"), !"flat".equalsIgnoreCase(layout));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * @return the path of the file relative to recordings-path
+     */
+    public String path(final String name) {
+        if (!sharded) {
+            return name;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(name.getBytes(UTF_8));
+        final long hash = crc.getValue();
+        return String.format("%02x/%02x/%s", (hash >> 8) & 0xff, hash & 0xff, name);
+    }
+
+    /**
+     * @return where the file is stored with this layout, whether it exists or not
+     */
+    public File file(final String name) {
+        return new File(directory, path(name));
+    }
+
+    /**
+     * Gives the location a new recording should be written to, creating its directory if needed.
+     */
+    public URI uri(final String name) {
+        if (sharded) {
+            file(name).getParentFile().mkdirs();
+        }
+        return URI.create(root + path(name));
+    }
+
+    /**
+     * @return the file, wherever it is stored, or null if there is no such file
+     */
+    public File locate(final String name) {
+        final File file = file(name);
+        if (file.isFile()) {
+            return file;
+        }
+        final File flat = new File(directory, name);
+        if (sharded && flat.isFile()) {
+            return flat;
+        }
+        // the migrator may have moved the recording into its shard between the two checks
+        if (sharded && file.isFile()) {
+            return file;
+        }
+        return null;
+    }
+
+    /**
+     * @return whether a directory under recordings-path is one of the shards
+     */
+    public static boolean isShard(final String name) {
+        return name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0 && Character.digit(name.charAt(1), 16) >= 0;
+    }
+}
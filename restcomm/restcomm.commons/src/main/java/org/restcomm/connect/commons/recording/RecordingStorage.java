@@ -0,0 +1,37 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Where finished recordings are copied to, like Amazon S3.
+ */
+public interface RecordingStorage {
+    /**
+     * Copies the file to the storage. Called from the upload workers, so it may block.
+     *
+     * @return the URI the recording can be fetched from
+     * @throws IOException if the copy failed and should be retried, including when the file is not there yet
+     */
+    URI store(File file) throws IOException;
+}
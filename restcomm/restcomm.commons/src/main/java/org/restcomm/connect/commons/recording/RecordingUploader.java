@@ -0,0 +1,290 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.recording;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * Uploads finished recordings to a {@link RecordingStorage} in the background.
+ * <p>
+ * Every upload is first written to a journal directory, one small file per recording synced to disk by a single
+ * writer thread, so that uploads that did not complete are picked up again after a restart. The caller never waits
+ * for the disk. A fixed pool of workers drains the queue; failed uploads are
+ * retried with an exponential backoff until the maximum number of attempts is reached, after which the journal
+ * entry is kept with a .failed suffix. The listener learns the new location of each uploaded recording.
+ */
+@ThreadSafe
+public final class RecordingUploader {
+    public static final String METRIC_UPLOADS_PENDING = "RecordingUploadsPending";
+    public static final String METRIC_UPLOADS_COMPLETED = "RecordingUploadsCompleted";
+    public static final String METRIC_UPLOADS_RETRIED = "RecordingUploadsRetried";
+    public static final String METRIC_UPLOADS_FAILED = "RecordingUploadsFailed";
+
+    private static final Logger logger = Logger.getLogger(RecordingUploader.class);
+    private static final String JOB_SUFFIX = ".upload";
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final long MAX_RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Told about each completed upload, from a worker thread.
+     */
+    public interface Listener {
+        void uploaded(String id, URI location);
+    }
+
+    private final File journal;
+    private final RecordingStorage storage;
+    private final int workers;
+    private final int maxAttempts;
+    private final long retryInterval;
+    private final ConcurrentMap<String, Upload> pending;
+    private final AtomicLong completed;
+    private final AtomicLong retried;
+    private final AtomicLong failed;
+    private volatile Listener listener;
+    private volatile ExecutorService writer;
+    private volatile ScheduledExecutorService executor;
+
+    public RecordingUploader(final File journal, final RecordingStorage storage, final int workers, final int maxAttempts,
+            final long retryInterval) {
+        super();
+        this.journal = journal;
+        this.storage = storage;
+        this.workers = workers;
+        this.maxAttempts = maxAttempts;
+        this.retryInterval = retryInterval;
+        this.pending = new ConcurrentHashMap<String, Upload>();
+        this.completed = new AtomicLong();
+        this.retried = new AtomicLong();
+        this.failed = new AtomicLong();
+    }
+
+    /**
+     * Starts the workers and resumes the uploads left in the journal.
+     */
+    public synchronized void start(final Listener listener) {
+        this.listener = listener;
+        if (!journal.isDirectory() && !journal.mkdirs()) {
+            logger.error("Could not create the recording upload journal " + journal.getAbsolutePath());
+        }
+        writer = Executors.newSingleThreadExecutor();
+        executor = Executors.newScheduledThreadPool(workers);
+        final File[] entries = journal.listFiles();
+        if (entries != null) {
+            for (final File entry : entries) {
+                if (entry.getName().endsWith(JOB_SUFFIX)) {
+                    final Upload upload = read(entry);
+                    if (upload != null) {
+                        pending.put(upload.id, upload);
+                        executor.execute(upload);
+                    }
+                }
+            }
+        }
+        if (!pending.isEmpty() && logger.isInfoEnabled()) {
+            logger.info("Resuming " + pending.size() + " recording uploads");
+        }
+    }
+
+    /**
+     * Stops the workers once the queued uploads are journaled. Uploads that did not complete stay in the journal.
+     */
+    public synchronized void stop() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        pending.clear();
+    }
+
+    /**
+     * Queues a recording for upload and returns right away.
+     *
+     * @param id identifies the recording to the listener
+     * @param file URI of the local recording file
+     */
+    public void upload(final String id, final String file) {
+        final Upload upload = new Upload(id, file, 0);
+        final ExecutorService writer = this.writer;
+        if (writer == null) {
+            logger.error("Could not queue the upload of recording " + id + ", the uploader is stopped");
+            return;
+        }
+        pending.put(id, upload);
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(upload);
+                    } catch (final IOException exception) {
+                        // still try to upload it, it just won't survive a restart
+                        logger.error("Could not journal the upload of recording " + upload.id, exception);
+                    }
+                    final ScheduledExecutorService executor = RecordingUploader.this.executor;
+                    if (executor != null && !executor.isShutdown()) {
+                        executor.execute(upload);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException exception) {
+            pending.remove(id);
+            logger.error("Could not queue the upload of recording " + id + ", the uploader is stopped");
+        }
+    }
+
+    public int getPendingUploads() {
+        return pending.size();
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_UPLOADS_PENDING, pending.size());
+        metrics.put(METRIC_UPLOADS_COMPLETED, (int) completed.get());
+        metrics.put(METRIC_UPLOADS_RETRIED, (int) retried.get());
+        metrics.put(METRIC_UPLOADS_FAILED, (int) failed.get());
+        return metrics;
+    }
+
+    private void attempt(final Upload upload) {
+        try {
+            final URI location = storage.store(new File(URI.create(upload.file)));
+            listener.uploaded(upload.id, location);
+            entry(upload.id).delete();
+            pending.remove(upload.id);
+            completed.incrementAndGet();
+        } catch (final Exception exception) {
+            upload.attempts++;
+            if (upload.attempts >= maxAttempts) {
+                logger.error("Giving up the upload of recording " + upload.id + " after " + upload.attempts + " attempts", exception);
+                entry(upload.id).renameTo(new File(journal, upload.id + FAILED_SUFFIX));
+                pending.remove(upload.id);
+                failed.incrementAndGet();
+                return;
+            }
+            final long delay = Math.min(retryInterval << Math.min(upload.attempts - 1, 20), MAX_RETRY_INTERVAL);
+            if (logger.isInfoEnabled()) {
+                logger.info("Upload of recording " + upload.id + " failed, retrying in " + delay + " ms: " + exception.getMessage());
+            }
+            try {
+                write(upload);
+            } catch (final IOException journalException) {
+                logger.warn("Could not journal the retry of recording " + upload.id, journalException);
+            }
+            retried.incrementAndGet();
+            final ScheduledExecutorService executor = this.executor;
+            if (executor != null && !executor.isShutdown()) {
+                executor.schedule(upload, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private File entry(final String id) {
+        return new File(journal, id + JOB_SUFFIX);
+    }
+
+    private void write(final Upload upload) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("id", upload.id);
+        properties.setProperty("file", upload.file);
+        properties.setProperty("attempts", Integer.toString(upload.attempts));
+        // write aside and rename, a crash never leaves a partial entry behind
+        final File temporary = new File(journal, upload.id + JOB_SUFFIX + ".tmp");
+        final FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            properties.store(output, null);
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporary.renameTo(entry(upload.id))) {
+            throw new IOException("Could not rename " + temporary.getAbsolutePath());
+        }
+    }
+
+    private Upload read(final File entry) {
+        final Properties properties = new Properties();
+        try {
+            final InputStream input = new FileInputStream(entry);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+            return new Upload(properties.getProperty("id"), properties.getProperty("file"),
+                    Integer.parseInt(properties.getProperty("attempts", "0")));
+        } catch (final Exception exception) {
+            logger.error("Ignoring unreadable recording upload journal entry " + entry.getAbsolutePath(), exception);
+            return null;
+        }
+    }
+
+    private final class Upload implements Runnable {
+        private final String id;
+        private final String file;
+        // only touched by the worker running the upload
+        private int attempts;
+
+        private Upload(final String id, final String file, final int attempts) {
+            super();
+            this.id = id;
+            this.file = file;
+            this.attempts = attempts;
+        }
+
+        @Override
+        public void run() {
+            attempt(this);
+        }
+    }
+}
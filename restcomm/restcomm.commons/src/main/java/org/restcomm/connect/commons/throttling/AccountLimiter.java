@@ -0,0 +1,207 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.throttling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * Per account outbound SMS and call limits kept entirely in memory.
+ * <p>
+ * Every account gets a token bucket for outbound SMS, a token bucket for outbound call attempts and a counter of
+ * outbound calls in flight. All checks are O(1) and never touch the database. A limit of zero (the default)
+ * disables that check. The limiter is shared through the servlet context under its class name so that
+ * extensions and endpoints can consult it too.
+ */
+@ThreadSafe
+public final class AccountLimiter {
+    public static final String METRIC_SMS_ALLOWED = "LimiterSmsAllowed";
+    public static final String METRIC_SMS_REJECTED = "LimiterSmsRejected";
+    public static final String METRIC_CALLS_ALLOWED = "LimiterCallsAllowed";
+    public static final String METRIC_CALLS_REJECTED = "LimiterCallsRejected";
+    public static final String METRIC_CALLS_IN_FLIGHT = "LimiterCallsInFlight";
+
+    // stands for the calls made without an account, the map of the calls can't hold null
+    private static final String NO_ACCOUNT = "";
+
+    private final long smsPerMinute;
+    private final long callsPerSecond;
+    private final int maxConcurrentCalls;
+    private final ConcurrentMap<String, AccountLimits> accounts;
+    private final ConcurrentMap<Object, String> calls;
+
+    private final AtomicLong smsAllowed;
+    private final AtomicLong smsRejected;
+    private final AtomicLong callsAllowed;
+    private final AtomicLong callsRejected;
+    private final AtomicInteger callsInFlight;
+
+    public AccountLimiter(final Configuration configuration) {
+        this(configuration.getLong("outbound-sms-per-minute", 0), configuration.getLong("outbound-calls-per-second", 0),
+                configuration.getInt("max-concurrent-calls", 0));
+    }
+
+    public AccountLimiter(final long smsPerMinute, final long callsPerSecond, final int maxConcurrentCalls) {
+        super();
+        this.smsPerMinute = smsPerMinute;
+        this.callsPerSecond = callsPerSecond;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.accounts = new ConcurrentHashMap<String, AccountLimits>();
+        this.calls = new ConcurrentHashMap<Object, String>();
+        this.smsAllowed = new AtomicLong();
+        this.smsRejected = new AtomicLong();
+        this.callsAllowed = new AtomicLong();
+        this.callsRejected = new AtomicLong();
+        this.callsInFlight = new AtomicInteger();
+    }
+
+    /**
+     * Takes a permit to send one outbound SMS on behalf of the account.
+     *
+     * @return false if the account exceeded its SMS rate
+     */
+    public boolean tryAcquireSms(final String accountSid) {
+        if (accountSid == null || smsPerMinute <= 0) {
+            smsAllowed.incrementAndGet();
+            return true;
+        }
+        if (limits(accountSid).sms.tryAcquire()) {
+            smsAllowed.incrementAndGet();
+            return true;
+        }
+        smsRejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Takes a permit to start one outbound call on behalf of the account. Every successful acquisition
+     * must be paired with a {@link #releaseCall(String)} once the call is gone.
+     *
+     * @return false if the account exceeded its call rate or its concurrent calls
+     */
+    public boolean tryAcquireCall(final String accountSid) {
+        if (accountSid == null) {
+            callsAllowed.incrementAndGet();
+            callsInFlight.incrementAndGet();
+            return true;
+        }
+        final AccountLimits limits = limits(accountSid);
+        if (maxConcurrentCalls > 0) {
+            int current;
+            do {
+                current = limits.inFlight.get();
+                if (current >= maxConcurrentCalls) {
+                    callsRejected.incrementAndGet();
+                    return false;
+                }
+            } while (!limits.inFlight.compareAndSet(current, current + 1));
+        } else {
+            limits.inFlight.incrementAndGet();
+        }
+        if (limits.calls != null && !limits.calls.tryAcquire()) {
+            limits.inFlight.decrementAndGet();
+            callsRejected.incrementAndGet();
+            return false;
+        }
+        callsAllowed.incrementAndGet();
+        callsInFlight.incrementAndGet();
+        return true;
+    }
+
+    public void releaseCall(final String accountSid) {
+        callsInFlight.decrementAndGet();
+        if (accountSid != null) {
+            final AccountLimits limits = accounts.get(accountSid);
+            if (limits != null) {
+                limits.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Hands the permit taken by {@link #tryAcquireCall(String)} over to the call made with it, to be given back by
+     * {@link #detachCall(Object)} once the call is gone.
+     */
+    public void attachCall(final Object call, final String accountSid) {
+        calls.put(call, accountSid == null ? NO_ACCOUNT : accountSid);
+    }
+
+    /**
+     * Gives back the permit attached to the call, whether or not it was made on behalf of an account.
+     *
+     * @return false if no permit was attached to the call
+     */
+    public boolean detachCall(final Object call) {
+        final String accountSid = calls.remove(call);
+        if (accountSid == null) {
+            return false;
+        }
+        releaseCall(NO_ACCOUNT.equals(accountSid) ? null : accountSid);
+        return true;
+    }
+
+    public int getInFlightCalls(final String accountSid) {
+        final AccountLimits limits = accounts.get(accountSid);
+        return limits == null ? 0 : limits.inFlight.get();
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_SMS_ALLOWED, (int) smsAllowed.get());
+        metrics.put(METRIC_SMS_REJECTED, (int) smsRejected.get());
+        metrics.put(METRIC_CALLS_ALLOWED, (int) callsAllowed.get());
+        metrics.put(METRIC_CALLS_REJECTED, (int) callsRejected.get());
+        metrics.put(METRIC_CALLS_IN_FLIGHT, callsInFlight.get());
+        return metrics;
+    }
+
+    private AccountLimits limits(final String accountSid) {
+        AccountLimits limits = accounts.get(accountSid);
+        if (limits == null) {
+            final AccountLimits created = new AccountLimits();
+            limits = accounts.putIfAbsent(accountSid, created);
+            if (limits == null) {
+                limits = created;
+            }
+        }
+        return limits;
+    }
+
+    private final class AccountLimits {
+        private final TokenBucket sms;
+        private final TokenBucket calls;
+        private final AtomicInteger inFlight;
+
+        private AccountLimits() {
+            super();
+            this.sms = smsPerMinute > 0 ? new TokenBucket(smsPerMinute, smsPerMinute, TimeUnit.MINUTES.toNanos(1)) : null;
+            this.calls = callsPerSecond > 0 ? new TokenBucket(callsPerSecond, callsPerSecond, TimeUnit.SECONDS.toNanos(1)) : null;
+            this.inFlight = new AtomicInteger();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.Configuration;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.dao.Sid;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.NumberParseException.ErrorType;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
+import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
+
+/**
+ * Formats phone numbers to E.164, shared by the interpreters and the REST endpoints.
+ * <p>
+ * Numbers without a country code are read in the region of their account, runtime-settings/phone-numbers/region
+ * entries in restcomm.xml, or in the default region otherwise. Numbers already in E.164 are returned as they are
+ * and SIP URIs are rejected without going through libphonenumber; the others are parsed once and the result, or
+ * the parse error, is remembered until cache-size numbers are, when the cache starts over. The cached parse errors
+ * are thrown again as they are.
+ */
+@ThreadSafe
+public final class PhoneNumberNormalizer {
+    public static final String DEFAULT_REGION = "US";
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static final String UNKNOWN_REGION = "ZZ";
+    private static final Pattern E164 = Pattern.compile("\\+[1-9][0-9]{6,14}");
+
+    private static final PhoneNumberNormalizer instance = new PhoneNumberNormalizer();
+
+    private final PhoneNumberUtil numbers;
+    private final ConcurrentMap<String, Object> cache;
+    private volatile String defaultRegion;
+    private volatile Map<String, String> regions;
+    private volatile int cacheSize;
+
+    public PhoneNumberNormalizer() {
+        super();
+        this.numbers = PhoneNumberUtil.getInstance();
+        this.cache = new ConcurrentHashMap<String, Object>();
+        this.defaultRegion = DEFAULT_REGION;
+        this.regions = Collections.emptyMap();
+        this.cacheSize = DEFAULT_CACHE_SIZE;
+    }
+
+    public static PhoneNumberNormalizer getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param configuration the runtime-settings/phone-numbers settings
+     */
+    public void configure(final Configuration configuration) {
+        final Map<String, String> regions = new HashMap<String, String>();
+        final List<?> accounts = configuration.getList("region[@account]");
+        final List<?> codes = configuration.getList("region");
+        for (int i = 0; i < accounts.size() && i < codes.size(); i++) {
+            regions.put(accounts.get(i).toString(), codes.get(i).toString());
+        }
+        this.defaultRegion = configuration.getString("default-region", DEFAULT_REGION);
+        this.regions = regions;
+        this.cacheSize = configuration.getInt("cache-size", DEFAULT_CACHE_SIZE);
+        cache.clear();
+    }
+
+    /**
+     * @return the region numbers of the account are read in when they have no country code
+     */
+    public String getRegion(final Sid account) {
+        if (account != null) {
+            final String region = regions.get(account.toString());
+            if (region != null) {
+                return region;
+            }
+        }
+        return defaultRegion;
+    }
+
+    public String getDefaultRegion() {
+        return defaultRegion;
+    }
+
+    /**
+     * Formats a number read in the default region.
+     */
+    public String e164(final String number) throws NumberParseException {
+        return e164(number, defaultRegion);
+    }
+
+    /**
+     * Formats a number read in the region of an account.
+     */
+    public String e164(final String number, final Sid account) throws NumberParseException {
+        return e164(number, getRegion(account));
+    }
+
+    /**
+     * Formats a number, read in the given region when it has no country code.
+     *
+     * @throws NumberParseException when the number is not a phone number, a SIP URI for instance
+     */
+    public String e164(final String number, final String region) throws NumberParseException {
+        if (number == null) {
+            throw new NumberParseException(ErrorType.NOT_A_NUMBER, "The phone number supplied was null.");
+        }
+        if (isE164(number)) {
+            return number;
+        }
+        if (isUri(number)) {
+            throw new NumberParseException(ErrorType.NOT_A_NUMBER, number + " is a URI, not a phone number.");
+        }
+        final String key = region + "|" + number;
+        Object result = cache.get(key);
+        if (result == null) {
+            try {
+                result = numbers.format(numbers.parse(number, region), PhoneNumberFormat.E164);
+            } catch (final NumberParseException exception) {
+                result = exception;
+            }
+            if (cache.size() >= cacheSize) {
+                cache.clear();
+            }
+            cache.put(key, result);
+        }
+        if (result instanceof NumberParseException) {
+            throw (NumberParseException) result;
+        }
+        return (String) result;
+    }
+
+    /**
+     * Parses a number, read in the given region when it has no country code. Unlike {@link #e164(String, String)} the
+     * result isn't cached since {@link PhoneNumber} is mutable.
+     */
+    public PhoneNumber parse(final String number, final String region) throws NumberParseException {
+        if (number != null && isUri(number)) {
+            throw new NumberParseException(ErrorType.NOT_A_NUMBER, number + " is a URI, not a phone number.");
+        }
+        return numbers.parse(number, region);
+    }
+
+    /**
+     * @return true for a plus sign followed by a known country code and at most 15 digits
+     */
+    boolean isE164(final String number) {
+        if (!E164.matcher(number).matches()) {
+            return false;
+        }
+        // country codes are prefix free, so at most one of the first three digits is one
+        for (int length = 1; length <= 3; length++) {
+            final int code = Integer.parseInt(number.substring(1, 1 + length));
+            if (!UNKNOWN_REGION.equals(numbers.getRegionCodeForCountryCode(code))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUri(final String number) {
+        return number.indexOf('@') >= 0 || number.startsWith("sip:") || number.startsWith("sips:")
+                || number.startsWith("client:");
+    }
+
+    int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.util;
+
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * Counts the SMS segments needed to carry a text. Texts made only of GSM 03.38 characters use 7 bit encoding,
+ * 160 characters in a single message or 153 per segment when concatenated. Other texts use UCS-2, 70 characters
+ * in a single message or 67 per segment.
+ */
+@ThreadSafe
+public final class SmsSegments {
+    public static final int GSM7_SINGLE = 160;
+    public static final int GSM7_SEGMENT = 153;
+    public static final int UCS2_SINGLE = 70;
+    public static final int UCS2_SEGMENT = 67;
+
+    private static final String GSM7_BASIC = "@£$¥èéùìòÇ\nØø\rÅå"
+            + "Δ_ΦΓΛΩΠΨΣΘΞÆæßÉ"
+            + " !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§"
+            + "¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    // these take two septets, an escape and the character
+    private static final String GSM7_EXTENSION = "\f^{}\\[~]|€";
+
+    private SmsSegments() {
+        super();
+    }
+
+    public static boolean isGsm7(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (GSM7_BASIC.indexOf(c) < 0 && GSM7_EXTENSION.indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of septets the text takes in GSM 7 bit encoding. Only meaningful if isGsm7(text).
+     */
+    public static int septets(final String text) {
+        int septets = 0;
+        for (int i = 0; i < text.length(); i++) {
+            septets += GSM7_EXTENSION.indexOf(text.charAt(i)) < 0 ? 1 : 2;
+        }
+        return septets;
+    }
+
+    public static int count(final String text) {
+        if (text == null || text.isEmpty()) {
+            return 1;
+        }
+        if (isGsm7(text)) {
+            return count(septets(text), GSM7_SINGLE, GSM7_SEGMENT);
+        } else {
+            return count(text.length(), UCS2_SINGLE, UCS2_SEGMENT);
+        }
+    }
+
+    private static int count(final int length, final int single, final int segment) {
+        if (length <= single) {
+            return 1;
+        }
+        return (length + segment - 1) / segment;
+    }
+}
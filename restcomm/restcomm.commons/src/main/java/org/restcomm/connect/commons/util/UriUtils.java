@@ -9,6 +9,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
@@ -22,19 +24,30 @@ import javax.management.ReflectionException;
 import org.apache.log4j.Logger;
 import org.restcomm.connect.commons.HttpConnector;
 import org.restcomm.connect.commons.configuration.RestcommConfiguration;
+import org.restcomm.connect.commons.configuration.sets.MainConfigurationSet;
 import org.restcomm.connect.commons.HttpConnectorList;
 import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
 
 /**
  * Utility class to manipulate URI.
+ * <p>
+ * The base URI used for relative URLs is computed once, from the HTTP connectors of the container and the main
+ * configuration, and resolved URLs are remembered, so resolving never goes to the network after the first call.
+ * Call {@link #reset()} when the connectors or the configuration change.
  * @author Henrique Rosa
  */
 @ThreadSafe
 public final class UriUtils {
 
+    // bound on the number of relative URLs remembered
+    static final int MAX_RESOLVED = 1000;
+
     private static Logger logger = Logger.getLogger(UriUtils.class);
-    private static HttpConnector httpConnector;
-    private static HttpConnectorList httpConnectorList;
+    private static final Object lock = new Object();
+    private static volatile HttpConnectorList httpConnectorList;
+    private static volatile URI base;
+    private static final ConcurrentMap<URI, URI> resolved = new ConcurrentHashMap<URI, URI>();
+
     /**
      * Default constructor.
      */
@@ -99,78 +112,141 @@ public final class UriUtils {
         if (endPoints.isEmpty()) {
             logger.error("Coundn't discover any Http Interfaces");
         }
-        httpConnectorList = new HttpConnectorList(endPoints);
-        return httpConnectorList;
+        return new HttpConnectorList(endPoints);
     }
 
     /**
-     * Resolves a relative URI.
-     * @param address The IP address of the base URI .
-     * @param port The port of the base URI.
-     * @param uri The relative URI
-     * @return The absolute URI
+     * Picks the connector relative URLs are resolved against: the last secure connector if there is one, otherwise the
+     * first connector.
+     * @return the connector or null if there are none
      */
-    public static URI resolve(final URI uri) {
-        if (httpConnector == null) {
-            if (httpConnectorList == null) {
-                try {
-                    httpConnectorList = getHttpConnectors();
-                } catch (MalformedObjectNameException | AttributeNotFoundException | InstanceNotFoundException
-                        | NullPointerException | UnknownHostException | MBeanException | ReflectionException exception) {
-                    logger.error("Exception during HTTP Connectors discovery: ", exception);
-                }
-            }
-            if (httpConnectorList != null && !httpConnectorList.getConnectors().isEmpty()) {
-                List<HttpConnector> connectors = httpConnectorList.getConnectors();
-                Iterator<HttpConnector> iterator = connectors.iterator();
-                while (iterator.hasNext()) {
-                    HttpConnector connector = iterator.next();
-                    if (connector.isSecure()) {
-                        httpConnector = connector;
-                    }
-                }
-                if (httpConnector == null) {
-                    httpConnector = connectors.get(0);
-                }
+    static HttpConnector select(final HttpConnectorList connectorList) {
+        if (connectorList == null || connectorList.getConnectors().isEmpty()) {
+            return null;
+        }
+        final List<HttpConnector> connectors = connectorList.getConnectors();
+        HttpConnector selected = null;
+        for (final HttpConnector connector : connectors) {
+            if (connector.isSecure()) {
+                selected = connector;
             }
         }
+        return selected != null ? selected : connectors.get(0);
+    }
 
-// Since this is a relative URL that we are trying to resolve, we don't care about the public URL.
-//        //HttpConnector address could be a local address while the request came from a public address
-//        String address;
-//        if (httpConnector.getAddress().equalsIgnoreCase(localAddress)) {
-//            address = httpConnector.getAddress();
-//        } else {
-//            address = localAddress;
-//        }
+    /**
+     * Builds the base URI for a connector. This is the only place where the host name of the connector may be looked
+     * up, and it only runs when the base is (re)computed.
+     */
+    static URI base(final HttpConnector connector, final MainConfigurationSet main) {
+        // Since this is a relative URL that we are trying to resolve, we don't care about the public URL.
         String restcommAddress = null;
-        if (RestcommConfiguration.getInstance().getMain().isUseHostnameToResolveRelativeUrls()) {
-            restcommAddress = RestcommConfiguration.getInstance().getMain().getHostname();
+        if (main.isUseHostnameToResolveRelativeUrls()) {
+            restcommAddress = main.getHostname();
             if (restcommAddress == null || restcommAddress.isEmpty()) {
                 try {
-                    InetAddress addr = InetAddress.getByName(httpConnector.getAddress());
+                    InetAddress addr = InetAddress.getByName(connector.getAddress());
                     restcommAddress = addr.getCanonicalHostName();
                 } catch (UnknownHostException e) {
-                    logger.error("Unable to resolve: " + httpConnector + " to hostname: " + e);
-                    restcommAddress = httpConnector.getAddress();
+                    logger.error("Unable to resolve: " + connector + " to hostname: " + e);
+                    restcommAddress = connector.getAddress();
                 }
             }
         } else {
-            restcommAddress = httpConnector.getAddress();
+            restcommAddress = connector.getAddress();
         }
 
-        String base = httpConnector.getScheme()+"://" + restcommAddress + ":" + httpConnector.getPort();
+        String base = connector.getScheme()+"://" + restcommAddress + ":" + connector.getPort();
         try {
-            return resolve(new URI(base), uri);
+            return new URI(base);
         } catch (URISyntaxException e) {
             throw new IllegalArgumentException("Badly formed URI: " + base, e);
         }
     }
 
+    /**
+     * Sets the connectors and configuration relative URLs are resolved with, replacing whatever was discovered before.
+     */
+    static void init(final HttpConnectorList connectors, final MainConfigurationSet main) {
+        synchronized (lock) {
+            final HttpConnector connector = select(connectors);
+            if (connector == null) {
+                throw new IllegalStateException("No HTTP connector to resolve relative URLs against");
+            }
+            httpConnectorList = connectors;
+            resolved.clear();
+            base = base(connector, main);
+            if (logger.isInfoEnabled()) {
+                logger.info("Relative URLs will be resolved against " + base);
+            }
+        }
+    }
+
+    /**
+     * Forgets the base URI and the resolved URLs so they are computed again on the next call. To be used when the
+     * HTTP connectors or the main configuration change.
+     */
+    public static void reset() {
+        synchronized (lock) {
+            base = null;
+            httpConnectorList = null;
+            resolved.clear();
+        }
+    }
+
+    private static URI getBase() {
+        URI result = base;
+        if (result == null) {
+            synchronized (lock) {
+                result = base;
+                if (result == null) {
+                    init(getHttpConnectorList(), RestcommConfiguration.getInstance().getMain());
+                    result = base;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves a relative URI against the HTTP connector of this instance.
+     * @param uri The relative URI
+     * @return The absolute URI
+     */
+    public static URI resolve(final URI uri) {
+        if (uri.isAbsolute()) {
+            return uri;
+        }
+        URI result = resolved.get(uri);
+        if (result == null) {
+            result = resolve(getBase(), uri);
+            if (resolved.size() < MAX_RESOLVED) {
+                resolved.put(uri, result);
+            }
+        }
+        return result;
+    }
+
     public static HttpConnectorList getHttpConnectorList() {
-        if (httpConnectorList == null) {
-            getHttpConnectorList();
+        HttpConnectorList result = httpConnectorList;
+        if (result == null) {
+            synchronized (lock) {
+                result = httpConnectorList;
+                if (result == null) {
+                    try {
+                        result = getHttpConnectors();
+                        httpConnectorList = result;
+                    } catch (MalformedObjectNameException | AttributeNotFoundException | InstanceNotFoundException
+                            | NullPointerException | UnknownHostException | MBeanException | ReflectionException exception) {
+                        logger.error("Exception during HTTP Connectors discovery: ", exception);
+                    }
+                }
+            }
         }
-        return httpConnectorList;
+        return result;
+    }
+
+    static int resolvedCount() {
+        return resolved.size();
     }
 }
@@ -21,6 +21,7 @@ package org.restcomm.connect.commons.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URI;
 
 import javax.sound.sampled.AudioFormat;
@@ -35,6 +36,17 @@ import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
  */
 @ThreadSafe
 public final class WavUtils {
+    private static final int RIFF = 0x46464952;
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746d66;
+    private static final int FACT = 0x74636166;
+    private static final int DATA = 0x61746164;
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xfffe;
+    // a file with more chunks before its data is not worth parsing by hand
+    private static final int MAX_CHUNKS = 32;
+
     private WavUtils() {
         super();
     }
@@ -44,15 +56,25 @@ public final class WavUtils {
     }
 
     public static double getAudioDuration(final File wavFile) throws UnsupportedAudioFileException, IOException {
+        if (wavFile == null || !wavFile.exists()) {
+            return 0;
+        }
+        double duration;
+        try {
+            duration = getHeaderDuration(wavFile);
+        } catch (IOException exception) {
+            // a truncated header, leave it to the fallbacks below
+            duration = -1;
+        }
+        if (duration >= 0) {
+            return duration;
+        }
         AudioInputStream audio = null;
         try {
-            if (wavFile != null && wavFile.exists()) {
-                audio = AudioSystem.getAudioInputStream(wavFile);
-                final AudioFormat format = audio.getFormat();
-                return wavFile.length() / format.getSampleRate() / (format.getSampleSizeInBits() / 8.0) / format.getChannels();
-            }
-            return 0;
-        } catch (UnsupportedAudioFileException exception) {
+            audio = AudioSystem.getAudioInputStream(wavFile);
+            final AudioFormat format = audio.getFormat();
+            return wavFile.length() / format.getSampleRate() / (format.getSampleSizeInBits() / 8.0) / format.getChannels();
+        } catch (UnsupportedAudioFileException | IOException exception) {
             // Return calculation based on MMS defaults
             int sampleRate = 8000;
             int sampleSize = 16;
@@ -64,4 +86,75 @@ public final class WavUtils {
             }
         }
     }
+
+    /**
+     * Computes the duration of a RIFF/WAVE file from its fmt, fact and data chunks, reading only the headers.
+     * Handles PCM, IEEE float, A-law, mu-law and the other formats with a constant byte rate, plain or wrapped
+     * in WAVE_FORMAT_EXTENSIBLE.
+     *
+     * @return the duration in seconds, or -1 if the headers can't be made sense of
+     */
+    public static double getHeaderDuration(final File wavFile) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(wavFile, "r");
+        try {
+            final long length = file.length();
+            if (length < 12 || readInt(file) != RIFF) {
+                return -1;
+            }
+            readInt(file);
+            if (readInt(file) != WAVE) {
+                return -1;
+            }
+            int format = -1;
+            int sampleRate = 0;
+            long byteRate = 0;
+            long samples = -1;
+            for (int chunks = 0; chunks < MAX_CHUNKS && file.getFilePointer() + 8 <= length; chunks++) {
+                final int id = readInt(file);
+                final long size = readInt(file) & 0xffffffffL;
+                final long start = file.getFilePointer();
+                if (id == FMT) {
+                    if (size < 16 || start + 16 > length) {
+                        return -1;
+                    }
+                    format = readShort(file);
+                    readShort(file);
+                    sampleRate = readInt(file);
+                    byteRate = readInt(file) & 0xffffffffL;
+                    if (format == WAVE_FORMAT_EXTENSIBLE && size >= 40) {
+                        // block align, bits per sample, extension size, valid bits, channel mask
+                        file.skipBytes(10);
+                        // the sub format GUID starts with the actual format code
+                        format = readShort(file);
+                    }
+                } else if (id == FACT && size >= 4) {
+                    samples = readInt(file) & 0xffffffffL;
+                } else if (id == DATA) {
+                    if (format < 0 || byteRate == 0) {
+                        return -1;
+                    }
+                    // the size is left at 0 or at its maximum by writers that stopped before finishing the file
+                    final long bytes = size == 0 || start + size > length ? length - start : size;
+                    if (samples >= 0 && sampleRate > 0 && format != WAVE_FORMAT_PCM && format != WAVE_FORMAT_IEEE_FLOAT) {
+                        return (double) samples / sampleRate;
+                    }
+                    return (double) bytes / byteRate;
+                }
+                // chunks are word aligned
+                file.seek(start + size + (size & 1));
+            }
+            return -1;
+        } finally {
+            file.close();
+        }
+    }
+
+    // RIFF is little endian, RandomAccessFile reads big endian
+    private static int readInt(final RandomAccessFile file) throws IOException {
+        return Integer.reverseBytes(file.readInt());
+    }
+
+    private static int readShort(final RandomAccessFile file) throws IOException {
+        return Short.reverseBytes(file.readShort()) & 0xffff;
+    }
 }
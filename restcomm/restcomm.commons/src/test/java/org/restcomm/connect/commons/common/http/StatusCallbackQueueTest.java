@@ -0,0 +1,287 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.common.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.NameValuePair;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class StatusCallbackQueueTest {
+    private File journal;
+    private FlakyServer server;
+    private StatusCallbackQueue queue;
+
+    @Before
+    public void before() throws IOException {
+        journal = new File(System.getProperty("java.io.tmpdir"), "status-callbacks-" + System.nanoTime());
+        server = new FlakyServer(false);
+        queue = new StatusCallbackQueue();
+    }
+
+    @After
+    public void after() throws IOException {
+        queue.stop();
+        server.stop();
+        FileUtils.deleteDirectory(journal);
+    }
+
+    private void start(final int workers, final int maxConnectionsPerHost, final int maxAttempts, final long retryInterval,
+            final long expiry) {
+        queue.start(journal, HttpClients.createDefault(), workers, maxConnectionsPerHost, maxAttempts, retryInterval, 1000,
+                expiry);
+    }
+
+    private static List<NameValuePair> parameters(final String call, final String status) {
+        return new ArrayList<NameValuePair>(Arrays.asList(new BasicNameValuePair("CallSid", call),
+                new BasicNameValuePair("CallStatus", status)));
+    }
+
+    private static void waitForCallbacks(final StatusCallbackQueue queue) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getPendingCallbacks() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, queue.getPendingCallbacks());
+    }
+
+    private int metric(final String name) {
+        return queue.getMetrics().get(name).intValue();
+    }
+
+    @Test
+    public void deliversInTheBackground() throws Exception {
+        start(2, 2, 3, 10, 60000);
+        assertTrue(queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed")));
+        waitForCallbacks(queue);
+        assertEquals(Collections.singletonList("CallSid=CA1&CallStatus=completed"), new ArrayList<String>(server.delivered));
+        assertEquals(1, metric(StatusCallbackQueue.METRIC_CALLBACKS_DELIVERED));
+        assertEquals(0, journal.list().length);
+    }
+
+    @Test
+    public void sendsTheParametersOfGetCallbacksInTheQuery() throws Exception {
+        start(2, 2, 3, 10, 60000);
+        queue.send("CA1", server.uri(), "GET", parameters("CA1", "ringing"));
+        waitForCallbacks(queue);
+        assertEquals(Collections.singletonList("CallSid=CA1&CallStatus=ringing"), new ArrayList<String>(server.delivered));
+    }
+
+    @Test
+    public void isNotRunningUntilStarted() throws Exception {
+        assertTrue(!queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed")));
+        assertEquals(0, server.requests.get());
+    }
+
+    @Test
+    public void failedCallbacksAreRetried() throws Exception {
+        server.fail(503, 503);
+        start(2, 2, 5, 10, 60000);
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed"));
+        waitForCallbacks(queue);
+        assertEquals(3, server.requests.get());
+        assertEquals(1, server.delivered.size());
+        assertEquals(2, metric(StatusCallbackQueue.METRIC_CALLBACKS_RETRIED));
+    }
+
+    @Test
+    public void callbacksOfACallAreDeliveredInOrder() throws Exception {
+        server.fail(500, 500);
+        start(4, 4, 5, 10, 60000);
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "ringing"));
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "in-progress"));
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed"));
+        waitForCallbacks(queue);
+        assertEquals(Arrays.asList("CallSid=CA1&CallStatus=ringing", "CallSid=CA1&CallStatus=in-progress",
+                "CallSid=CA1&CallStatus=completed"), new ArrayList<String>(server.delivered));
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() throws Exception {
+        server.fail(404);
+        start(2, 2, 5, 10, 60000);
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed"));
+        waitForCallbacks(queue);
+        assertEquals(1, server.requests.get());
+        assertEquals(1, metric(StatusCallbackQueue.METRIC_CALLBACKS_FAILED));
+        assertEquals(1, journal.list().length);
+        assertTrue(journal.list()[0].endsWith(".failed"));
+    }
+
+    @Test
+    public void callbacksGiveUpAfterMaxAttempts() throws Exception {
+        server.fail(500, 500, 500, 500);
+        start(2, 2, 2, 10, 60000);
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed"));
+        waitForCallbacks(queue);
+        assertEquals(2, server.requests.get());
+        assertEquals(1, metric(StatusCallbackQueue.METRIC_CALLBACKS_FAILED));
+    }
+
+    @Test
+    public void expiredCallbacksAreNotRetried() throws Exception {
+        server.fail(500, 500, 500, 500);
+        start(2, 2, 10, 100, 50);
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed"));
+        waitForCallbacks(queue);
+        assertEquals(1, metric(StatusCallbackQueue.METRIC_CALLBACKS_EXPIRED));
+        assertEquals(1, metric(StatusCallbackQueue.METRIC_CALLBACKS_FAILED));
+        assertEquals(0, server.delivered.size());
+    }
+
+    @Test
+    public void slowHostsDoNotHoldUpTheOthers() throws Exception {
+        final FlakyServer slow = new FlakyServer(true);
+        try {
+            start(4, 1, 3, 10, 60000);
+            for (int i = 0; i < 3; i++) {
+                queue.send("CA" + i, slow.uri(), "POST", parameters("CA" + i, "completed"));
+            }
+            assertTrue(slow.held.await(5, TimeUnit.SECONDS));
+            queue.send("CA9", server.uri(), "POST", parameters("CA9", "completed"));
+            assertTrue(server.firstDelivery.await(5, TimeUnit.SECONDS));
+            // delivered while the slow host still holds its request
+            assertEquals(1, slow.concurrent.get());
+            assertEquals(0, slow.delivered.size());
+            slow.release.countDown();
+            waitForCallbacks(queue);
+            assertEquals(3, slow.delivered.size());
+            // the slow host never had more than one callback at once
+            assertEquals(1, slow.maxConcurrent.get());
+        } finally {
+            queue.stop();
+            slow.stop();
+        }
+    }
+
+    @Test
+    public void pendingCallbacksSurviveARestart() throws Exception {
+        server.fail(500, 500, 500, 500);
+        start(1, 1, 10, 60000, 60000);
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "ringing"));
+        queue.send("CA1", server.uri(), "POST", parameters("CA1", "completed"));
+        queue.stop();
+        assertEquals(2, journal.list().length);
+
+        server.fail();
+        queue = new StatusCallbackQueue();
+        start(1, 1, 10, 10, 60000);
+        waitForCallbacks(queue);
+        assertEquals(Arrays.asList("CallSid=CA1&CallStatus=ringing", "CallSid=CA1&CallStatus=completed"),
+                new ArrayList<String>(server.delivered));
+        assertEquals(0, journal.list().length);
+    }
+
+    /**
+     * Answers with the planned failures first, then with 200 and the body or query of the request. A holding server
+     * keeps every request until it is released.
+     */
+    private static final class FlakyServer implements HttpHandler {
+        private final HttpServer server;
+        private final boolean hold;
+        private final CountDownLatch held = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch firstDelivery = new CountDownLatch(1);
+        private final Queue<Integer> failures = new ConcurrentLinkedQueue<Integer>();
+        private final Queue<String> delivered = new ConcurrentLinkedQueue<String>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private FlakyServer(final boolean hold) throws IOException {
+            this.hold = hold;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/callback", this);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+        }
+
+        private URI uri() {
+            return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/callback");
+        }
+
+        private void fail(final Integer... statuses) {
+            failures.clear();
+            failures.addAll(Arrays.asList(statuses));
+        }
+
+        private void stop() {
+            release.countDown();
+            server.stop(0);
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final int current = concurrent.incrementAndGet();
+            int max;
+            while (current > (max = maxConcurrent.get()) && !maxConcurrent.compareAndSet(max, current)) {
+                continue;
+            }
+            try {
+                requests.incrementAndGet();
+                if (hold) {
+                    held.countDown();
+                    release.await();
+                }
+                final String body = "GET".equals(exchange.getRequestMethod()) ? exchange.getRequestURI().getRawQuery()
+                        : IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+                final Integer failure = failures.poll();
+                if (failure != null) {
+                    exchange.sendResponseHeaders(failure, -1);
+                } else {
+                    delivered.add(body);
+                    firstDelivery.countDown();
+                    exchange.sendResponseHeaders(200, -1);
+                }
+            } catch (final InterruptedException exception) {
+                exchange.sendResponseHeaders(503, -1);
+            } finally {
+                concurrent.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+}
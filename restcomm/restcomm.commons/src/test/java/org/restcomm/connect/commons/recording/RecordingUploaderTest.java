@@ -0,0 +1,184 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordingUploaderTest {
+    private File root;
+    private File recordings;
+    private File journal;
+    private File bucket;
+
+    @Before
+    public void before() throws IOException {
+        root = new File(System.getProperty("java.io.tmpdir"), "recording-uploader-" + System.nanoTime());
+        recordings = new File(root, "recordings");
+        journal = new File(recordings, "uploads");
+        bucket = new File(root, "bucket");
+        assertTrue(recordings.mkdirs());
+        assertTrue(bucket.mkdirs());
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    private String recording(final String sid) throws IOException {
+        final File file = new File(recordings, sid + ".wav");
+        FileUtils.writeStringToFile(file, "RIFF", "UTF-8");
+        return file.toURI().toString();
+    }
+
+    private static void waitForUploads(final RecordingUploader uploader) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (uploader.getPendingUploads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, uploader.getPendingUploads());
+    }
+
+    @Test
+    public void uploadsInTheBackground() throws Exception {
+        final UploadListener listener = new UploadListener(1);
+        final RecordingUploader uploader = new RecordingUploader(journal, new FileSystemRecordingStorage(bucket), 2, 3, 10);
+        uploader.start(listener);
+        uploader.upload("RE1", recording("RE1"));
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        waitForUploads(uploader);
+        assertEquals(new File(bucket, "RE1.wav").toURI(), listener.locations.get("RE1"));
+        assertEquals(0, journal.list().length);
+        assertEquals(1, uploader.getMetrics().get(RecordingUploader.METRIC_UPLOADS_COMPLETED).intValue());
+        uploader.stop();
+    }
+
+    @Test
+    public void slowStorageDoesNotBlockTheCaller() throws Exception {
+        final UploadListener listener = new UploadListener(1);
+        final RecordingStorage slow = new RecordingStorage() {
+            @Override
+            public URI store(final File file) throws IOException {
+                try {
+                    Thread.sleep(1000);
+                } catch (final InterruptedException exception) {
+                    throw new IOException(exception);
+                }
+                return file.toURI();
+            }
+        };
+        final RecordingUploader uploader = new RecordingUploader(journal, slow, 1, 3, 10);
+        uploader.start(listener);
+        final long start = System.currentTimeMillis();
+        uploader.upload("RE1", recording("RE1"));
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertEquals(1, uploader.getPendingUploads());
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        uploader.stop();
+    }
+
+    @Test
+    public void failedUploadsAreRetried() throws Exception {
+        final UploadListener listener = new UploadListener(1);
+        final AtomicInteger attempts = new AtomicInteger();
+        final RecordingStorage flaky = new RecordingStorage() {
+            @Override
+            public URI store(final File file) throws IOException {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new IOException("storage unavailable");
+                }
+                return file.toURI();
+            }
+        };
+        final RecordingUploader uploader = new RecordingUploader(journal, flaky, 1, 5, 10);
+        uploader.start(listener);
+        uploader.upload("RE1", recording("RE1"));
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertEquals(2, uploader.getMetrics().get(RecordingUploader.METRIC_UPLOADS_RETRIED).intValue());
+        uploader.stop();
+    }
+
+    @Test
+    public void uploadsGiveUpAfterMaxAttempts() throws Exception {
+        final RecordingUploader uploader = new RecordingUploader(journal, new FileSystemRecordingStorage(bucket), 1, 2, 10);
+        uploader.start(new UploadListener(1));
+        // the recording file never shows up
+        uploader.upload("RE1", new File(recordings, "RE1.wav").toURI().toString());
+        waitForUploads(uploader);
+        assertEquals(1, uploader.getMetrics().get(RecordingUploader.METRIC_UPLOADS_FAILED).intValue());
+        assertTrue(new File(journal, "RE1.failed").exists());
+        uploader.stop();
+    }
+
+    @Test
+    public void pendingUploadsSurviveARestart() throws Exception {
+        final RecordingStorage unavailable = new RecordingStorage() {
+            @Override
+            public URI store(final File file) throws IOException {
+                throw new IOException("storage unavailable");
+            }
+        };
+        RecordingUploader uploader = new RecordingUploader(journal, unavailable, 1, 10, 60000);
+        uploader.start(new UploadListener(1));
+        uploader.upload("RE1", recording("RE1"));
+        uploader.upload("RE2", recording("RE2"));
+        uploader.stop();
+        assertEquals(2, journal.list().length);
+
+        final UploadListener listener = new UploadListener(2);
+        uploader = new RecordingUploader(journal, new FileSystemRecordingStorage(bucket), 1, 10, 10);
+        uploader.start(listener);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, listener.locations.size());
+        assertTrue(new File(bucket, "RE2.wav").exists());
+        uploader.stop();
+    }
+
+    private static final class UploadListener implements RecordingUploader.Listener {
+        private final Map<String, URI> locations = new ConcurrentHashMap<String, URI>();
+        private final CountDownLatch done;
+
+        private UploadListener(final int uploads) {
+            this.done = new CountDownLatch(uploads);
+        }
+
+        @Override
+        public void uploaded(final String id, final URI location) {
+            locations.put(id, location);
+            done.countDown();
+        }
+    }
+}
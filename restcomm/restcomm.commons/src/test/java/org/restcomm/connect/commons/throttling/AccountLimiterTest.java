@@ -0,0 +1,77 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.throttling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AccountLimiterTest {
+    private static final String ACCOUNT = "ACae6e420f425248d6a26948c17a9e2acf";
+    private static final String OTHER_ACCOUNT = "AC574d775522c96f9aacacc5ca60c8c74f";
+
+    @Test
+    public void smsRateIsEnforcedPerAccount() {
+        final AccountLimiter limiter = new AccountLimiter(2, 0, 0);
+        assertTrue(limiter.tryAcquireSms(ACCOUNT));
+        assertTrue(limiter.tryAcquireSms(ACCOUNT));
+        assertFalse(limiter.tryAcquireSms(ACCOUNT));
+        assertTrue(limiter.tryAcquireSms(OTHER_ACCOUNT));
+        assertEquals(3, limiter.getMetrics().get(AccountLimiter.METRIC_SMS_ALLOWED).intValue());
+        assertEquals(1, limiter.getMetrics().get(AccountLimiter.METRIC_SMS_REJECTED).intValue());
+    }
+
+    @Test
+    public void concurrentCallsAreReleased() {
+        final AccountLimiter limiter = new AccountLimiter(0, 0, 1);
+        assertTrue(limiter.tryAcquireCall(ACCOUNT));
+        assertFalse(limiter.tryAcquireCall(ACCOUNT));
+        assertEquals(1, limiter.getInFlightCalls(ACCOUNT));
+        limiter.releaseCall(ACCOUNT);
+        assertEquals(0, limiter.getInFlightCalls(ACCOUNT));
+        assertTrue(limiter.tryAcquireCall(ACCOUNT));
+        assertEquals(1, limiter.getMetrics().get(AccountLimiter.METRIC_CALLS_IN_FLIGHT).intValue());
+    }
+
+    @Test
+    public void callsWithoutAccountAreReleased() {
+        final AccountLimiter limiter = new AccountLimiter(0, 0, 1);
+        final Object call = new Object();
+        assertTrue(limiter.tryAcquireCall(null));
+        limiter.attachCall(call, null);
+        assertEquals(1, limiter.getMetrics().get(AccountLimiter.METRIC_CALLS_IN_FLIGHT).intValue());
+        assertTrue(limiter.detachCall(call));
+        assertEquals(0, limiter.getMetrics().get(AccountLimiter.METRIC_CALLS_IN_FLIGHT).intValue());
+        // the call is only released once
+        assertFalse(limiter.detachCall(call));
+        assertEquals(0, limiter.getMetrics().get(AccountLimiter.METRIC_CALLS_IN_FLIGHT).intValue());
+    }
+
+    @Test
+    public void disabledLimitsAlwaysAllow() {
+        final AccountLimiter limiter = new AccountLimiter(0, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquireSms(ACCOUNT));
+            assertTrue(limiter.tryAcquireCall(ACCOUNT));
+        }
+    }
+}
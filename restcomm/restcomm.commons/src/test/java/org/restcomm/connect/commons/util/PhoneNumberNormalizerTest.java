@@ -0,0 +1,116 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+
+/**
+ * Formats the numbers the interpreters and the REST API are given and checks the regions and the cache.
+ */
+public class PhoneNumberNormalizerTest {
+    private static final Sid UK_ACCOUNT = new Sid("ACae6e420f425248d6a26948c17a9e2acf");
+
+    private static PhoneNumberNormalizer normalizer(final String configuration) throws Exception {
+        final XMLConfiguration xml = new XMLConfiguration();
+        xml.load(new StringReader("<phone-numbers>" + configuration + "</phone-numbers>"));
+        final PhoneNumberNormalizer normalizer = new PhoneNumberNormalizer();
+        normalizer.configure(xml);
+        return normalizer;
+    }
+
+    private static void assertNotANumber(final PhoneNumberNormalizer normalizer, final String number) {
+        try {
+            normalizer.e164(number);
+            fail(number + " is not a phone number");
+        } catch (final NumberParseException expected) {
+        }
+    }
+
+    @Test
+    public void nationalFormatsAreReadInTheDefaultRegion() throws Exception {
+        final PhoneNumberNormalizer normalizer = normalizer("");
+        assertEquals("+14155551234", normalizer.e164("4155551234"));
+        assertEquals("+14155551234", normalizer.e164("(415) 555-1234"));
+        assertEquals("+14155551234", normalizer.e164("1-415-555-1234"));
+        assertEquals("+14155551234", normalizer.e164("+1 415 555 1234"));
+        assertEquals("+442079460018", normalizer.e164("+44 20 7946 0018"));
+    }
+
+    @Test
+    public void e164NumbersAreNotParsed() throws Exception {
+        final PhoneNumberNormalizer normalizer = normalizer("");
+        assertEquals("+14155551234", normalizer.e164("+14155551234"));
+        assertEquals("+442079460018", normalizer.e164("+442079460018"));
+        assertEquals(0, normalizer.size());
+        assertTrue(normalizer.isE164("+390612345678"));
+        // no such country code, left to libphonenumber
+        assertTrue(!normalizer.isE164("+999123456789"));
+        assertTrue(!normalizer.isE164("+1415"));
+        assertNotANumber(normalizer, "+999123456789");
+    }
+
+    @Test
+    public void urisAreNotNumbers() throws Exception {
+        final PhoneNumberNormalizer normalizer = normalizer("");
+        assertNotANumber(normalizer, "sip:alice@127.0.0.1:5080");
+        assertNotANumber(normalizer, "alice@127.0.0.1");
+        assertNotANumber(normalizer, "client:alice");
+        assertEquals(0, normalizer.size());
+    }
+
+    @Test
+    public void parseErrorsAreCached() throws Exception {
+        final PhoneNumberNormalizer normalizer = normalizer("");
+        assertNotANumber(normalizer, "not a number");
+        assertNotANumber(normalizer, "not a number");
+        assertEquals(1, normalizer.size());
+    }
+
+    @Test
+    public void accountsHaveTheirOwnRegion() throws Exception {
+        final PhoneNumberNormalizer normalizer = normalizer("<default-region>US</default-region><region account=\""
+                + UK_ACCOUNT + "\">GB</region>");
+        assertEquals("GB", normalizer.getRegion(UK_ACCOUNT));
+        assertEquals("US", normalizer.getRegion(Sid.generate(Sid.Type.ACCOUNT)));
+        assertEquals("US", normalizer.getRegion(null));
+        assertEquals("+442079460018", normalizer.e164("020 7946 0018", UK_ACCOUNT));
+        assertEquals("+14155551234", normalizer.e164("415 555 1234", Sid.generate(Sid.Type.ACCOUNT)));
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        final PhoneNumberNormalizer normalizer = normalizer("<cache-size>2</cache-size>");
+        normalizer.e164("4155551231");
+        normalizer.e164("4155551232");
+        normalizer.e164("4155551233");
+        assertTrue(normalizer.size() <= 2);
+        assertEquals("+14155551232", normalizer.e164("4155551232"));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SmsSegmentsTest {
+
+    private static String repeat(final char c, final int times) {
+        final StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            buffer.append(c);
+        }
+        return buffer.toString();
+    }
+
+    @Test
+    public void gsm7TextIsCountedInSeptets() {
+        assertTrue(SmsSegments.isGsm7("Hello World! @£$"));
+        assertEquals(1, SmsSegments.count(repeat('a', 160)));
+        assertEquals(2, SmsSegments.count(repeat('a', 161)));
+        assertEquals(2, SmsSegments.count(repeat('a', 306)));
+        assertEquals(3, SmsSegments.count(repeat('a', 307)));
+    }
+
+    @Test
+    public void extensionCharactersTakeTwoSeptets() {
+        assertEquals(6, SmsSegments.septets("a{b}"));
+        assertEquals(1, SmsSegments.count(repeat('[', 80)));
+        assertEquals(2, SmsSegments.count(repeat('[', 81)));
+    }
+
+    @Test
+    public void otherTextIsCountedInUcs2Characters() {
+        assertFalse(SmsSegments.isGsm7("Привет"));
+        assertEquals(1, SmsSegments.count(repeat('П', 70)));
+        assertEquals(2, SmsSegments.count(repeat('П', 71)));
+        assertEquals(3, SmsSegments.count(repeat('П', 135)));
+    }
+
+    @Test
+    public void emptyTextTakesOneSegment() {
+        assertEquals(1, SmsSegments.count(""));
+        assertEquals(1, SmsSegments.count(null));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+import org.restcomm.connect.commons.HttpConnector;
+import org.restcomm.connect.commons.HttpConnectorList;
+import org.restcomm.connect.commons.common.http.SslMode;
+import org.restcomm.connect.commons.configuration.sets.MainConfigurationSet;
+import org.restcomm.connect.commons.configuration.sets.impl.MainConfigurationSetImpl;
+
+/**
+ * Checks how relative URLs are resolved against the HTTP connectors, and that resolved URLs are remembered.
+ */
+public class UriUtilsTest {
+    private static final HttpConnector HTTP = new HttpConnector("http", "127.0.0.1", 8080, false);
+    private static final HttpConnector HTTPS = new HttpConnector("https", "127.0.0.1", 8443, true);
+    private static final HttpConnector HTTPS_2 = new HttpConnector("https", "10.0.0.1", 9443, true);
+
+    private static HttpConnectorList connectors(final HttpConnector... connectors) {
+        return new HttpConnectorList(Arrays.asList(connectors));
+    }
+
+    private static MainConfigurationSet main(final boolean useHostname, final String hostname) {
+        return new MainConfigurationSetImpl(SslMode.strict, 5000, useHostname, hostname, null, false);
+    }
+
+    @After
+    public void after() {
+        UriUtils.reset();
+    }
+
+    @Test
+    public void secureConnectorIsPreferred() {
+        assertSame(HTTP, UriUtils.select(connectors(HTTP)));
+        assertSame(HTTPS, UriUtils.select(connectors(HTTP, HTTPS)));
+        // the last secure connector wins
+        assertSame(HTTPS_2, UriUtils.select(connectors(HTTPS, HTTP, HTTPS_2)));
+        assertNull(UriUtils.select(new HttpConnectorList(Collections.<HttpConnector>emptyList())));
+    }
+
+    @Test
+    public void relativeUrlsUseTheConfiguredHostname() {
+        UriUtils.init(connectors(HTTP, HTTPS), main(true, "restcomm.example.com"));
+        assertEquals(URI.create("https://restcomm.example.com:8443/restcomm/demos/hello-play.xml"),
+                UriUtils.resolve(URI.create("/restcomm/demos/hello-play.xml")));
+    }
+
+    @Test
+    public void relativeUrlsUseTheConnectorAddress() {
+        UriUtils.init(connectors(HTTP), main(false, "restcomm.example.com"));
+        assertEquals(URI.create("http://127.0.0.1:8080/restcomm/demos/hello-play.xml"),
+                UriUtils.resolve(URI.create("/restcomm/demos/hello-play.xml")));
+    }
+
+    @Test
+    public void absoluteUrlsAreKept() {
+        // no connector is needed for these
+        final URI uri = URI.create("http://example.com/app.xml");
+        assertSame(uri, UriUtils.resolve(uri));
+        final URI base = URI.create("http://127.0.0.1:8080");
+        assertSame(uri, UriUtils.resolve(base, uri));
+        assertSame(base, UriUtils.resolve(base, base));
+    }
+
+    @Test
+    public void resolvedUrlsAreBounded() {
+        UriUtils.init(connectors(HTTP), main(false, null));
+        for (int i = 0; i < UriUtils.MAX_RESOLVED + 100; i++) {
+            assertEquals(URI.create("http://127.0.0.1:8080/app" + i + ".xml"), UriUtils.resolve(URI.create("/app" + i + ".xml")));
+        }
+        assertEquals(UriUtils.MAX_RESOLVED, UriUtils.resolvedCount());
+    }
+
+    @Test
+    public void changingTheConfigurationResetsTheBase() {
+        final MainConfigurationSetImpl main = new MainConfigurationSetImpl(SslMode.strict, 5000, true, "one.example.com", null, false);
+        UriUtils.init(connectors(HTTP), main);
+        assertEquals(URI.create("http://one.example.com:8080/app.xml"), UriUtils.resolve(URI.create("/app.xml")));
+        main.setHostname("two.example.com");
+        assertEquals(0, UriUtils.resolvedCount());
+        UriUtils.init(connectors(HTTP), main);
+        assertEquals(URI.create("http://two.example.com:8080/app.xml"), UriUtils.resolve(URI.create("/app.xml")));
+    }
+
+    @Test
+    public void resolvedUrlsAreRemembered() {
+        UriUtils.init(connectors(HTTP), main(false, null));
+        final URI[] uris = new URI[100];
+        final URI[] first = new URI[uris.length];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = URI.create("/restcomm/demos/app" + i + ".xml");
+            first[i] = UriUtils.resolve(uris[i]);
+        }
+        // resolving builds a new URI, getting the very same one back means it was remembered
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < uris.length; i++) {
+                assertSame(first[i], UriUtils.resolve(uris[i]));
+            }
+        }
+        assertEquals(uris.length, UriUtils.resolvedCount());
+    }
+
+    @Test
+    public void urlsPastTheBoundAreResolvedEachTime() {
+        UriUtils.init(connectors(HTTP), main(false, null));
+        for (int i = 0; i < UriUtils.MAX_RESOLVED; i++) {
+            UriUtils.resolve(URI.create("/app" + i + ".xml"));
+        }
+        final URI uri = URI.create("/one-too-many.xml");
+        final URI resolved = UriUtils.resolve(uri);
+        assertEquals(resolved, UriUtils.resolve(uri));
+        assertNotSame(resolved, UriUtils.resolve(uri));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.commons.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Computes the duration of WAV files of each format from their headers, and compares the cost with AudioSystem.
+ */
+public class WavUtilsTest {
+    private static final Logger logger = Logger.getLogger(WavUtilsTest.class);
+    private static final double DELTA = 0.0001;
+
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("recording", ".wav");
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    // a RIFF/WAVE file with the given fmt chunk, an optional fact chunk, a LIST chunk of odd size and the data
+    private static byte[] wav(final int format, final int channels, final int sampleRate, final int bitsPerSample,
+            final boolean extensible, final long samples, final int dataBytes, final int dataSize) {
+        final int byteRate = sampleRate * channels * bitsPerSample / 8;
+        final ByteBuffer buffer = ByteBuffer.allocate(200 + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(0).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(extensible ? 40 : 16);
+        buffer.putShort((short) (extensible ? 0xfffe : format)).putShort((short) channels).putInt(sampleRate).putInt(byteRate);
+        buffer.putShort((short) (channels * bitsPerSample / 8)).putShort((short) bitsPerSample);
+        if (extensible) {
+            buffer.putShort((short) 22).putShort((short) bitsPerSample).putInt(3);
+            // KSDATAFORMAT_SUBTYPE_* GUIDs start with the format code
+            buffer.putShort((short) format).put(new byte[] { 0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00, 0x00,
+                    (byte) 0xaa, 0x00, 0x38, (byte) 0x9b, 0x71 });
+        }
+        if (samples >= 0) {
+            buffer.put("fact".getBytes()).putInt(4).putInt((int) samples);
+        }
+        buffer.put("LIST".getBytes()).putInt(5).put(new byte[] { 'I', 'N', 'F', 'O', 0 }).put((byte) 0);
+        buffer.put("data".getBytes()).putInt(dataSize).put(new byte[dataBytes]);
+        buffer.putInt(4, buffer.position() - 8);
+        final byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] wav(final int format, final int channels, final int sampleRate, final int bitsPerSample,
+            final int dataBytes) {
+        return wav(format, channels, sampleRate, bitsPerSample, false, -1, dataBytes, dataBytes);
+    }
+
+    private File write(final byte[] bytes) throws IOException {
+        final FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private double duration(final byte[] bytes) throws Exception {
+        return WavUtils.getAudioDuration(write(bytes));
+    }
+
+    @Test
+    public void pcm() throws Exception {
+        assertEquals(1.0, duration(wav(0x0001, 1, 8000, 16, 16000)), DELTA);
+        assertEquals(0.5, duration(wav(0x0001, 2, 44100, 16, 88200)), DELTA);
+    }
+
+    @Test
+    public void pcmWrittenByAudioSystem() throws Exception {
+        final AudioFormat format = new AudioFormat(8000, 16, 1, true, false);
+        final AudioInputStream audio = new AudioInputStream(new ByteArrayInputStream(new byte[32000]), format, 16000);
+        AudioSystem.write(audio, AudioFileFormat.Type.WAVE, file);
+        assertEquals(2.0, WavUtils.getHeaderDuration(file), DELTA);
+    }
+
+    @Test
+    public void companded() throws Exception {
+        // A-law and mu-law
+        assertEquals(1.5, duration(wav(0x0006, 1, 8000, 8, 12000)), DELTA);
+        assertEquals(1.5, duration(wav(0x0007, 1, 8000, 8, 12000)), DELTA);
+    }
+
+    @Test
+    public void float32() throws Exception {
+        assertEquals(1.0, duration(wav(0x0003, 1, 16000, 32, 64000)), DELTA);
+    }
+
+    @Test
+    public void extensible() throws Exception {
+        assertEquals(0.5, duration(wav(0x0001, 2, 16000, 16, true, -1, 32000, 32000)), DELTA);
+        assertEquals(1.0, duration(wav(0x0007, 1, 8000, 8, true, -1, 8000, 8000)), DELTA);
+    }
+
+    @Test
+    public void compressedUsesTheSampleCount() throws Exception {
+        // GSM 6.10 declares an average byte rate, the fact chunk has the exact number of samples
+        final byte[] bytes = wav(0x0031, 1, 8000, 8, false, 16000, 3300, 3300);
+        assertEquals(2.0, duration(bytes), DELTA);
+    }
+
+    @Test
+    public void unfinishedDataChunk() throws Exception {
+        assertEquals(1.0, duration(wav(0x0001, 1, 8000, 16, false, -1, 16000, 0)), DELTA);
+        assertEquals(1.0, duration(wav(0x0001, 1, 8000, 16, false, -1, 16000, 0xffffffff)), DELTA);
+    }
+
+    @Test
+    public void notAWav() throws Exception {
+        final byte[] bytes = new byte[16000];
+        assertEquals(-1, WavUtils.getHeaderDuration(write(bytes)), DELTA);
+        // falls back to the media server defaults
+        assertEquals(1.0, WavUtils.getAudioDuration(file), DELTA);
+    }
+
+    @Test
+    public void truncatedHeader() throws Exception {
+        // cut in the middle of the WAVE_FORMAT_EXTENSIBLE part of the fmt chunk
+        final byte[] bytes = Arrays.copyOf(wav(0x0001, 1, 8000, 16, true, -1, 16000, 16000), 46);
+        // falls back to the media server defaults
+        assertEquals(46 / 1000.0 / 16, duration(bytes), DELTA);
+    }
+
+    @Test
+    public void headerIsCheaperThanAudioSystem() throws Exception {
+        write(wav(0x0001, 1, 8000, 16, 8000 * 2 * 60));
+        final int iterations = 2000;
+        for (int i = 0; i < iterations; i++) {
+            WavUtils.getHeaderDuration(file);
+            AudioSystem.getAudioInputStream(file).close();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            WavUtils.getHeaderDuration(file);
+        }
+        final long header = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            AudioSystem.getAudioInputStream(file).close();
+        }
+        final long audioSystem = System.nanoTime() - start;
+        logger.info(String.format("WAV duration of a one minute recording: header %.1f us, AudioSystem %.1f us",
+                header / 1000.0 / iterations, audioSystem / 1000.0 / iterations));
+    }
+}
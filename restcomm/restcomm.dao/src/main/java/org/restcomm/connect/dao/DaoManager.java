@@ -19,8 +19,11 @@
  */
 package org.restcomm.connect.dao;
 
+import java.util.Map;
+
 import org.restcomm.connect.commons.Configurable;
 import org.restcomm.connect.commons.LifeCycle;
+import org.restcomm.connect.commons.recording.RecordingUploader;
 
 /**
  * @author quintana.thomas@gmail.com (Thomas Quintana)
@@ -70,4 +73,34 @@ public interface DaoManager extends Configurable, LifeCycle {
 
     ExtensionsConfigurationDao getExtensionsConfigurationDao();
 
+    /**
+     * @return the queue of recordings waiting to be uploaded, null if recordings are only kept locally
+     */
+    RecordingUploader getRecordingUploader();
+
+    /**
+     * @return the background writer behind the notifications DAO, null if notifications are written synchronously
+     */
+    NotificationWriter getNotificationWriter();
+
+    /**
+     * @return the manager of the recording files, null if there is none
+     */
+    RecordingStorageManager getRecordingStorageManager();
+
+    /**
+     * @return the metrics of the statements run against the database, empty if they are not counted
+     */
+    Map<String, Integer> getStatementMetrics();
+
+    /**
+     * @return the state of the database connection pool, empty if restcomm.xml doesn't configure one
+     */
+    Map<String, Integer> getConnectionPoolMetrics();
+
+    /**
+     * @return the progress of the call detail records retention, empty if they are kept forever
+     */
+    Map<String, Integer> getCallDetailRecordArchiveMetrics();
+
 }
@@ -0,0 +1,335 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.entities.Notification;
+
+/**
+ * Writes notifications in the background so that the interpreters hitting a failing application don't each pay
+ * for a database round trip.
+ * <p>
+ * Notifications are queued and inserted in batches, when a batch is full or on a periodic flush. A batch that can't
+ * be written is tried once more with the next flush, then dropped. Identical notifications, same account, call,
+ * request URL, level and error code, are written once per deduplication window; the repeats are only counted and
+ * summarized in one more notification when the window closes. Every call thus keeps its own notifications. When the
+ * queue is full new notifications are dropped. Reads go straight to the wrapped DAO.
+ */
+@ThreadSafe
+public final class NotificationWriter implements NotificationsDao {
+    public static final String METRIC_NOTIFICATIONS_WRITTEN = "NotificationsWritten";
+    public static final String METRIC_NOTIFICATIONS_DEDUPLICATED = "NotificationsDeduplicated";
+    public static final String METRIC_NOTIFICATIONS_DROPPED = "NotificationsDropped";
+    public static final String METRIC_NOTIFICATIONS_QUEUED = "NotificationsQueued";
+
+    private static final Logger logger = Logger.getLogger(NotificationWriter.class);
+
+    private final NotificationsDao notifications;
+    private final int batchSize;
+    private final long flushInterval;
+    private final long deduplicationWindow;
+    private final int maxQueued;
+    // guarded by this
+    private List<Notification> queue;
+    private final Map<String, Repeats> repeats;
+    // the batch the last flush could not write, guarded by flushing
+    private List<Notification> retry;
+    private final AtomicBoolean flushing;
+    private final AtomicBoolean flushRequested;
+    private final AtomicLong written;
+    private final AtomicLong deduplicated;
+    private final AtomicLong dropped;
+    private volatile ScheduledExecutorService executor;
+
+    public NotificationWriter(final NotificationsDao notifications, final Configuration configuration) {
+        this(notifications, configuration.getInt("batch-size", 100), configuration.getLong("flush-interval", 1000),
+                configuration.getLong("deduplication-window", 60000), configuration.getInt("queue-size", 10000));
+    }
+
+    public NotificationWriter(final NotificationsDao notifications, final int batchSize, final long flushInterval,
+            final long deduplicationWindow, final int maxQueued) {
+        super();
+        this.notifications = notifications;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.deduplicationWindow = deduplicationWindow;
+        this.maxQueued = maxQueued;
+        this.queue = new ArrayList<Notification>();
+        this.repeats = new LinkedHashMap<String, Repeats>();
+        this.flushing = new AtomicBoolean();
+        this.flushRequested = new AtomicBoolean();
+        this.written = new AtomicLong();
+        this.deduplicated = new AtomicLong();
+        this.dropped = new AtomicLong();
+    }
+
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background flushes and writes what is still queued.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        closeWindows(Long.MAX_VALUE);
+        flush();
+        // gives a batch the first flush could not write its second try
+        flush();
+    }
+
+    @Override
+    public void addNotification(final Notification notification) {
+        addNotification(notification, System.currentTimeMillis());
+    }
+
+    void addNotification(final Notification notification, final long now) {
+        final boolean full;
+        synchronized (this) {
+            final String key = key(notification);
+            final Repeats repeat = repeats.get(key);
+            if (repeat != null && now - repeat.start < deduplicationWindow) {
+                repeat.count++;
+                deduplicated.incrementAndGet();
+                return;
+            }
+            if (queue.size() >= maxQueued) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (repeat != null) {
+                // the window is over, summarize it before the new one starts
+                repeats.remove(key);
+                summarize(repeat);
+            }
+            // the number of windows is bounded by the queue size, since every window starts with a queued notification
+            if (repeats.size() < maxQueued) {
+                repeats.put(key, new Repeats(notification, now));
+            }
+            queue.add(notification);
+            full = queue.size() >= batchSize;
+        }
+        final ScheduledExecutorService executor = this.executor;
+        // a single pending flush is enough however many notifications fill the batch meanwhile
+        if (full && executor != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                });
+            } catch (final RejectedExecutionException exception) {
+                // stopping, the remaining notifications are written by stop()
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void addNotifications(final List<Notification> notifications) {
+        for (final Notification notification : notifications) {
+            addNotification(notification);
+        }
+    }
+
+    /**
+     * Writes the queued notifications in one batch, after the batch the previous flush could not write if any.
+     */
+    public void flush() {
+        flush(System.currentTimeMillis());
+    }
+
+    void flush(final long now) {
+        // one flush at a time keeps the batches in order
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        flushRequested.set(false);
+        try {
+            closeWindows(now);
+            if (retry != null) {
+                final List<Notification> batch = retry;
+                retry = null;
+                if (!write(batch)) {
+                    dropped.addAndGet(batch.size());
+                    logger.error("Dropped " + batch.size() + " notifications which could not be written twice");
+                }
+            }
+            final List<Notification> batch;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch = queue;
+                queue = new ArrayList<Notification>();
+            }
+            if (!write(batch)) {
+                retry = batch;
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private boolean write(final List<Notification> batch) {
+        try {
+            notifications.addNotifications(batch);
+            written.addAndGet(batch.size());
+            return true;
+        } catch (final Exception exception) {
+            logger.error("Could not write " + batch.size() + " notifications", exception);
+            return false;
+        }
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_NOTIFICATIONS_WRITTEN, (int) written.get());
+        metrics.put(METRIC_NOTIFICATIONS_DEDUPLICATED, (int) deduplicated.get());
+        metrics.put(METRIC_NOTIFICATIONS_DROPPED, (int) dropped.get());
+        synchronized (this) {
+            metrics.put(METRIC_NOTIFICATIONS_QUEUED, queue.size());
+        }
+        return metrics;
+    }
+
+    private synchronized void closeWindows(final long now) {
+        // windows are in the order they started
+        final Iterator<Repeats> iterator = repeats.values().iterator();
+        while (iterator.hasNext()) {
+            final Repeats repeat = iterator.next();
+            if (now != Long.MAX_VALUE && now - repeat.start < deduplicationWindow) {
+                break;
+            }
+            iterator.remove();
+            summarize(repeat);
+        }
+    }
+
+    // guarded by this
+    private void summarize(final Repeats repeat) {
+        if (repeat.count == 0) {
+            return;
+        }
+        if (queue.size() >= maxQueued) {
+            dropped.incrementAndGet();
+            return;
+        }
+        final Notification first = repeat.first;
+        final Sid sid = Sid.generate(Sid.Type.NOTIFICATION);
+        final DateTime now = DateTime.now();
+        final URI uri = first.getUri() == null ? null : URI.create(first.getUri().toString().replace(first.getSid().toString(), sid.toString()));
+        final String text = (first.getMessageText() == null ? "" : first.getMessageText() + " ") + "(repeated " + repeat.count
+                + " more times in " + (deduplicationWindow / 1000) + " seconds)";
+        queue.add(new Notification(sid, now, now, first.getAccountSid(), first.getCallSid(), first.getApiVersion(), first.getLog(),
+                first.getErrorCode(), first.getMoreInfo(), text, now, first.getRequestUrl(), first.getRequestMethod(),
+                first.getRequestVariables(), first.getResponseHeaders(), first.getResponseBody(), uri));
+    }
+
+    private static String key(final Notification notification) {
+        return notification.getAccountSid() + "|" + notification.getCallSid() + "|" + notification.getRequestUrl() + "|"
+                + notification.getLog() + "|" + notification.getErrorCode();
+    }
+
+    @Override
+    public Notification getNotification(final Sid sid) {
+        return notifications.getNotification(sid);
+    }
+
+    @Override
+    public List<Notification> getNotifications(final Sid accountSid) {
+        return notifications.getNotifications(accountSid);
+    }
+
+    @Override
+    public List<Notification> getNotificationsByCall(final Sid callSid) {
+        return notifications.getNotificationsByCall(callSid);
+    }
+
+    @Override
+    public List<Notification> getNotificationsByLogLevel(final int logLevel) {
+        return notifications.getNotificationsByLogLevel(logLevel);
+    }
+
+    @Override
+    public List<Notification> getNotificationsByMessageDate(final DateTime messageDate) {
+        return notifications.getNotificationsByMessageDate(messageDate);
+    }
+
+    @Override
+    public void removeNotification(final Sid sid) {
+        notifications.removeNotification(sid);
+    }
+
+    @Override
+    public void removeNotifications(final Sid accountSid) {
+        notifications.removeNotifications(accountSid);
+    }
+
+    @Override
+    public void removeNotificationsByCall(final Sid callSid) {
+        notifications.removeNotificationsByCall(callSid);
+    }
+
+    // repeats of a notification within the current deduplication window
+    private static final class Repeats {
+        private final Notification first;
+        private final long start;
+        private int count;
+
+        private Repeats(final Notification first, final long start) {
+            this.first = first;
+            this.start = start;
+        }
+    }
+}
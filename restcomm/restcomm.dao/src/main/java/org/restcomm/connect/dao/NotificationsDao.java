@@ -32,6 +32,11 @@ import org.restcomm.connect.commons.dao.Sid;
 public interface NotificationsDao {
     void addNotification(Notification notification);
 
+    /**
+     * Stores several notifications in a single batch.
+     */
+    void addNotifications(List<Notification> notifications);
+
     Notification getNotification(Sid sid);
 
     List<Notification> getNotifications(Sid accountSid);
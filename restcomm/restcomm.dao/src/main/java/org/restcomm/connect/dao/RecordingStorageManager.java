@@ -0,0 +1,314 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.commons.recording.RecordingLayout;
+import org.restcomm.connect.dao.entities.Recording;
+
+/**
+ * Looks after the recording files under recordings-path in the background.
+ * <p>
+ * Recordings left at the top level of the directory by earlier versions are moved to their shard when the layout is
+ * sharded; their URIs don't change since recordings are looked up with {@link RecordingLayout#locate(String)}. The
+ * files are then checked periodically against the recordings table, in batches: files without a row for longer than
+ * the grace period are orphans and are reported, or deleted if configured so, and recordings older than the retention
+ * period of their account are removed along with their row.
+ */
+@ThreadSafe
+public final class RecordingStorageManager {
+    public static final String METRIC_RECORDINGS_MIGRATED = "RecordingsMigrated";
+    public static final String METRIC_RECORDING_ORPHANS = "RecordingOrphans";
+    public static final String METRIC_RECORDING_ORPHANS_DELETED = "RecordingOrphansDeleted";
+    public static final String METRIC_RECORDINGS_EXPIRED = "RecordingsExpired";
+
+    private static final Logger logger = Logger.getLogger(RecordingStorageManager.class);
+    private static final String SUFFIX = ".wav";
+    private static final int BATCH_SIZE = 500;
+    // files still being written by the media server are left alone
+    private static final long MIGRATION_GRACE_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    private final RecordingLayout layout;
+    private final RecordingsDao recordings;
+    private final boolean migrate;
+    private final long maintenanceInterval;
+    private final long orphanGracePeriod;
+    private final boolean deleteOrphans;
+    private final int retentionDays;
+    private final Map<Sid, Integer> accountRetentionDays;
+    private final AtomicLong migrated;
+    private final AtomicLong orphans;
+    private final AtomicLong orphansDeleted;
+    private final AtomicLong expired;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param configuration the recordings-storage settings of restcomm.xml
+     */
+    public RecordingStorageManager(final RecordingLayout layout, final RecordingsDao recordings, final Configuration configuration) {
+        this(layout, recordings, configuration.getBoolean("migrate", true),
+                TimeUnit.MINUTES.toMillis(configuration.getLong("maintenance-interval", 1440)),
+                TimeUnit.MINUTES.toMillis(configuration.getLong("orphan-grace-period", 1440)),
+                configuration.getBoolean("delete-orphans", false), configuration.getInt("retention.days", 0),
+                accountRetentionDays(configuration));
+    }
+
+    public RecordingStorageManager(final RecordingLayout layout, final RecordingsDao recordings, final boolean migrate,
+            final long maintenanceInterval, final long orphanGracePeriod, final boolean deleteOrphans,
+            final int retentionDays, final Map<Sid, Integer> accountRetentionDays) {
+        super();
+        this.layout = layout;
+        this.recordings = recordings;
+        this.migrate = migrate;
+        this.maintenanceInterval = maintenanceInterval;
+        this.orphanGracePeriod = orphanGracePeriod;
+        this.deleteOrphans = deleteOrphans;
+        this.retentionDays = retentionDays;
+        this.accountRetentionDays = accountRetentionDays;
+        this.migrated = new AtomicLong();
+        this.orphans = new AtomicLong();
+        this.orphansDeleted = new AtomicLong();
+        this.expired = new AtomicLong();
+    }
+
+    private static Map<Sid, Integer> accountRetentionDays(final Configuration configuration) {
+        final Map<Sid, Integer> days = new HashMap<Sid, Integer>();
+        final List<Object> sids = configuration.getList("retention.account[@sid]");
+        final List<Object> values = configuration.getList("retention.account[@days]");
+        for (int i = 0; i < sids.size() && i < values.size(); i++) {
+            days.put(new Sid(sids.get(i).toString()), Integer.parseInt(values.get(i).toString()));
+        }
+        return days;
+    }
+
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        if (migrate && layout.isSharded()) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        migrate();
+                    } catch (final Exception exception) {
+                        logger.error("Could not migrate the recordings to the sharded layout", exception);
+                    }
+                }
+            });
+        }
+        if (maintenanceInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        maintain();
+                    } catch (final Exception exception) {
+                        logger.error("Could not check the recordings against the data store", exception);
+                    }
+                }
+            }, maintenanceInterval, maintenanceInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            // a sweep over millions of files is not worth waiting for, it starts over next time
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Moves the recordings found at the top level of recordings-path to their shard.
+     *
+     * @return the number of recordings moved
+     */
+    public int migrate() throws IOException {
+        final File directory = layout.getDirectory();
+        if (!directory.isDirectory()) {
+            return 0;
+        }
+        final long before = System.currentTimeMillis() - MIGRATION_GRACE_PERIOD;
+        int count = 0;
+        // streamed, listing a directory of millions of files at once would hold all their names
+        final DirectoryStream<Path> files = Files.newDirectoryStream(directory.toPath(), "*" + SUFFIX);
+        try {
+            for (final Path path : files) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                final File file = path.toFile();
+                if (!file.isFile() || file.lastModified() > before) {
+                    continue;
+                }
+                final File target = layout.file(file.getName());
+                target.getParentFile().mkdirs();
+                try {
+                    Files.move(path, target.toPath());
+                    count++;
+                    migrated.incrementAndGet();
+                } catch (final FileAlreadyExistsException exception) {
+                    logger.warn("Recording " + file.getName() + " is both at the top level and in its shard, leaving it in place");
+                }
+            }
+        } finally {
+            files.close();
+        }
+        if (count > 0 && logger.isInfoEnabled()) {
+            logger.info("Moved " + count + " recordings to the sharded layout");
+        }
+        return count;
+    }
+
+    /**
+     * Checks every recording file against the data store, applying the orphan and retention policies.
+     */
+    public void maintain() throws IOException {
+        final File directory = layout.getDirectory();
+        if (!directory.isDirectory()) {
+            return;
+        }
+        final Sweep sweep = new Sweep(System.currentTimeMillis());
+        // recordings that were not migrated
+        sweep.scan(directory.toPath());
+        final DirectoryStream<Path> shards = Files.newDirectoryStream(directory.toPath());
+        try {
+            for (final Path shard : shards) {
+                if (!RecordingLayout.isShard(shard.getFileName().toString()) || !Files.isDirectory(shard)) {
+                    continue;
+                }
+                final DirectoryStream<Path> subShards = Files.newDirectoryStream(shard);
+                try {
+                    for (final Path subShard : subShards) {
+                        if (RecordingLayout.isShard(subShard.getFileName().toString()) && Files.isDirectory(subShard)) {
+                            sweep.scan(subShard);
+                        }
+                    }
+                } finally {
+                    subShards.close();
+                }
+            }
+        } finally {
+            shards.close();
+        }
+        sweep.check();
+        orphans.set(sweep.orphans);
+        if (logger.isInfoEnabled()) {
+            logger.info("Checked recordings: " + sweep.orphans + " orphans, " + sweep.expired + " expired");
+        }
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_RECORDINGS_MIGRATED, (int) migrated.get());
+        metrics.put(METRIC_RECORDING_ORPHANS, (int) orphans.get());
+        metrics.put(METRIC_RECORDING_ORPHANS_DELETED, (int) orphansDeleted.get());
+        metrics.put(METRIC_RECORDINGS_EXPIRED, (int) expired.get());
+        return metrics;
+    }
+
+    private int retentionDays(final Sid accountSid) {
+        final Integer days = accountRetentionDays.get(accountSid);
+        return days != null ? days : retentionDays;
+    }
+
+    // one pass over the recording files, looked up in the data store BATCH_SIZE at a time
+    private final class Sweep {
+        private final long now;
+        private final Map<String, File> batch;
+        private int orphans;
+        private int expired;
+
+        private Sweep(final long now) {
+            this.now = now;
+            this.batch = new HashMap<String, File>();
+        }
+
+        private void scan(final Path directory) throws IOException {
+            final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX);
+            try {
+                for (final Path path : files) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Interrupted while checking the recordings");
+                    }
+                    final String name = path.getFileName().toString();
+                    final String sid = name.substring(0, name.length() - SUFFIX.length());
+                    if (Sid.pattern.matcher(sid).matches()) {
+                        batch.put(sid, path.toFile());
+                        if (batch.size() >= BATCH_SIZE) {
+                            check();
+                        }
+                    }
+                }
+            } finally {
+                files.close();
+            }
+        }
+
+        private void check() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            final List<Sid> sids = new ArrayList<Sid>(batch.size());
+            for (final String sid : batch.keySet()) {
+                sids.add(new Sid(sid));
+            }
+            for (final Recording recording : recordings.getRecordingsBySids(sids)) {
+                final File file = batch.remove(recording.getSid().toString());
+                final int days = retentionDays(recording.getAccountSid());
+                if (file != null && days > 0 && recording.getDateCreated().isBefore(new DateTime(now).minusDays(days))) {
+                    recordings.removeRecording(recording.getSid());
+                    if (file.delete()) {
+                        expired++;
+                        RecordingStorageManager.this.expired.incrementAndGet();
+                    }
+                }
+            }
+            // whatever is left has no row
+            for (final File file : batch.values()) {
+                if (file.lastModified() < now - orphanGracePeriod) {
+                    orphans++;
+                    if (deleteOrphans && file.delete()) {
+                        orphansDeleted.incrementAndGet();
+                    }
+                }
+            }
+            batch.clear();
+        }
+    }
+}
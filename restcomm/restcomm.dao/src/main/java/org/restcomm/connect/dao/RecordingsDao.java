@@ -39,6 +39,11 @@ public interface RecordingsDao {
 
     List<Recording> getRecordings(Sid accountSid);
 
+    /**
+     * @return the recordings among the given ones that are still in the data store
+     */
+    List<Recording> getRecordingsBySids(List<Sid> sids);
+
     void removeRecording(Sid sid);
 
     void removeRecordings(Sid accountSid);
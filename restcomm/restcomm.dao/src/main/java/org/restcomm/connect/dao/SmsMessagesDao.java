@@ -21,6 +21,7 @@ package org.restcomm.connect.dao;
 
 import java.text.ParseException;
 import java.util.List;
+import java.util.Map;
 
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.dao.entities.SmsMessage;
@@ -41,5 +42,10 @@ public interface SmsMessagesDao {
 
     void updateSmsMessage(SmsMessage smsMessage);
 
+    /**
+     * Sets the status of several messages at once, as reported by delivery receipts.
+     */
+    void updateSmsMessageStatuses(Map<Sid, SmsMessage.Status> statuses);
+
     int getSmsMessagesPerAccountLastPerMinute(String accountSid) throws ParseException;
 }
@@ -39,6 +39,17 @@ public interface UsageDao {
 
   List<Usage> getUsageAllTime(final Sid accountSid, Usage.Category category, DateTime startDate, DateTime endDate);
 
+  /**
+   * Drops and rebuilds the usage rollups of every account from the call detail records and sms messages tables.
+   * Meant to be run once after an upgrade or as an offline backfill job.
+   */
+  void rebuildUsage();
+
+  /**
+   * Drops and rebuilds the usage rollups of a single account.
+   */
+  void rebuildUsage(final Sid accountSid);
+
   /*
   List<Usage> getUsageToday(final Sid accountSid, Usage.Category category, DateTime startDate, DateTime endDate);
 
@@ -394,6 +394,10 @@ public final class CallDetailRecord {
             this.dateCreated = dateCreated;
         }
 
+        public void setDateUpdated(final DateTime dateUpdated) {
+            this.dateUpdated = dateUpdated;
+        }
+
         public void setAccountSid(final Sid accountSid) {
             this.accountSid = accountSid;
         }
@@ -426,6 +430,10 @@ public final class CallDetailRecord {
             this.duration = duration;
         }
 
+        public void setRingDuration(final Integer ringDuration) {
+            this.ringDuration = ringDuration;
+        }
+
         public void setPrice(final BigDecimal price) {
             this.price = price;
         }
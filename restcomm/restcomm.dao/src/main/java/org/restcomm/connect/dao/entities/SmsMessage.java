@@ -28,6 +28,7 @@ import org.joda.time.DateTime;
 import org.restcomm.connect.commons.annotations.concurrency.Immutable;
 import org.restcomm.connect.commons.annotations.concurrency.NotThreadSafe;
 import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.commons.util.SmsSegments;
 
 /**
  * @author quintana.thomas@gmail.com (Thomas Quintana)
@@ -35,6 +36,10 @@ import org.restcomm.connect.commons.dao.Sid;
 @Immutable
 public final class SmsMessage {
     public static final int MAX_SIZE = 160;
+    // longer bodies are sent as concatenated segments, up to this many
+    public static final int MAX_SEGMENTS = 10;
+    // characters that fit in the body column of restcomm_sms_messages
+    public static final int MAX_BODY_LENGTH = 999;
     private final Sid sid;
     private final DateTime dateCreated;
     private final DateTime dateUpdated;
@@ -107,6 +112,13 @@ public final class SmsMessage {
         return body;
     }
 
+    /**
+     * @return the number of SMS segments the body takes, this is what the message is priced on
+     */
+    public int getNumSegments() {
+        return SmsSegments.count(body);
+    }
+
     public Status getStatus() {
         return status;
     }
@@ -241,7 +253,7 @@ public final class SmsMessage {
     }
 
     public enum Status {
-        QUEUED("queued"), SENDING("sending"), SENT("sent"), FAILED("failed"), RECEIVED("received");
+        QUEUED("queued"), SENDING("sending"), SENT("sent"), DELIVERED("delivered"), FAILED("failed"), RECEIVED("received");
 
         private final String text;
 
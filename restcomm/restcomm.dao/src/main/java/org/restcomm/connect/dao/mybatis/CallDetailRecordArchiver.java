@@ -0,0 +1,315 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.dao.Sid;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Keeps the call detail records table bounded by moving the records older than the retention period of their
+ * account out of it in the background.
+ * <p>
+ * Every maintenance-interval the expired records are taken batch-size at a time, together with the notifications of
+ * their calls. When an archive directory is configured they are appended to a gzipped file of JSON lines, one file
+ * per run, which is synced to disk before the rows are deleted in one transaction. A record is therefore archived at
+ * least once: if Restcomm dies between the sync and the commit it is archived again by the next run. Without an
+ * archive directory expired records are simply deleted.
+ */
+@ThreadSafe
+public final class CallDetailRecordArchiver {
+    public static final String METRIC_ARCHIVED = "CallDetailRecordsArchived";
+    public static final String METRIC_NOTIFICATIONS_ARCHIVED = "CallNotificationsArchived";
+    public static final String METRIC_FAILURES = "CallDetailRecordArchiveFailures";
+
+    private static final Logger logger = Logger.getLogger(CallDetailRecordArchiver.class);
+    private static final String CDRS = "org.mobicents.servlet.sip.restcomm.dao.CallDetailRecordsDao.";
+    private static final String NOTIFICATIONS = "org.mobicents.servlet.sip.restcomm.dao.NotificationsDao.";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SqlSessionFactory sessions;
+    private final File directory;
+    private final int batchSize;
+    private final long pause;
+    private final long maintenanceInterval;
+    private final int retentionDays;
+    private final Map<Sid, Integer> accountRetentionDays;
+    private final Gson gson;
+    private final AtomicLong archived;
+    private final AtomicLong notificationsArchived;
+    private final AtomicLong failures;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param configuration the cdr-retention settings of restcomm.xml
+     */
+    public CallDetailRecordArchiver(final SqlSessionFactory sessions, final Configuration configuration) {
+        this(sessions, directory(configuration.getString("archive-directory")), configuration.getInt("batch-size", 1000),
+                configuration.getLong("pause", 100), TimeUnit.MINUTES.toMillis(configuration.getLong("maintenance-interval", 1440)),
+                configuration.getInt("retention.days", 0), accountRetentionDays(configuration));
+    }
+
+    public CallDetailRecordArchiver(final SqlSessionFactory sessions, final File directory, final int batchSize,
+            final long pause, final long maintenanceInterval, final int retentionDays,
+            final Map<Sid, Integer> accountRetentionDays) {
+        super();
+        this.sessions = sessions;
+        this.directory = directory;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.maintenanceInterval = maintenanceInterval;
+        this.retentionDays = retentionDays;
+        this.accountRetentionDays = accountRetentionDays;
+        this.gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").create();
+        this.archived = new AtomicLong();
+        this.notificationsArchived = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    private static File directory(final String path) {
+        return path == null || path.isEmpty() ? null : new File(path);
+    }
+
+    private static Map<Sid, Integer> accountRetentionDays(final Configuration configuration) {
+        final Map<Sid, Integer> days = new HashMap<Sid, Integer>();
+        final List<Object> sids = configuration.getList("retention.account[@sid]");
+        final List<Object> values = configuration.getList("retention.account[@days]");
+        for (int i = 0; i < sids.size() && i < values.size(); i++) {
+            days.put(new Sid(sids.get(i).toString()), Integer.parseInt(values.get(i).toString()));
+        }
+        return days;
+    }
+
+    public synchronized void start() {
+        checkEventScheduler();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        if (maintenanceInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        archive();
+                    } catch (final Exception exception) {
+                        failures.incrementAndGet();
+                        logger.error("Could not archive the expired call detail records", exception);
+                    }
+                }
+            }, maintenanceInterval, maintenanceInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // the monthly partitions of the records on MariaDB are added by an event, which silently never runs otherwise
+    private void checkEventScheduler() {
+        final SqlSession session = sessions.openSession();
+        try {
+            final Connection connection = session.getConnection();
+            final String product = connection.getMetaData().getDatabaseProductName();
+            if (product == null || !(product.contains("MySQL") || product.contains("MariaDB"))) {
+                return;
+            }
+            final Statement statement = connection.createStatement();
+            try {
+                final ResultSet result = statement.executeQuery("SELECT @@event_scheduler");
+                if (result.next() && !"ON".equalsIgnoreCase(result.getString(1))) {
+                    logger.warn("The event scheduler of the database is " + result.getString(1) + ", the monthly "
+                            + "partitions of restcomm_call_detail_records won't be added until it is turned ON");
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (final SQLException exception) {
+            logger.warn("Could not check the event scheduler of the database", exception);
+        } finally {
+            session.close();
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            // the current batch is committed or rolled back as a whole, the next run picks up from there
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Moves every call detail record past the retention period of its account out of the table.
+     *
+     * @return the number of records archived
+     */
+    public int archive() throws IOException, InterruptedException {
+        final DateTime now = DateTime.now();
+        int count = 0;
+        Archive archive = null;
+        try {
+            for (final Map.Entry<Sid, Integer> account : accountRetentionDays.entrySet()) {
+                if (account.getValue() > 0) {
+                    if (archive == null) {
+                        archive = new Archive(now);
+                    }
+                    count += archive.expire(now.minusDays(account.getValue()), account.getKey().toString(), null);
+                }
+            }
+            if (retentionDays > 0) {
+                if (archive == null) {
+                    archive = new Archive(now);
+                }
+                final List<String> excluded = new ArrayList<String>();
+                for (final Sid account : accountRetentionDays.keySet()) {
+                    excluded.add(account.toString());
+                }
+                count += archive.expire(now.minusDays(retentionDays), null, excluded.isEmpty() ? null : excluded);
+            }
+        } finally {
+            if (archive != null) {
+                archive.close();
+            }
+        }
+        if (count > 0 && logger.isInfoEnabled()) {
+            logger.info("Archived " + count + " expired call detail records");
+        }
+        return count;
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_ARCHIVED, (int) archived.get());
+        metrics.put(METRIC_NOTIFICATIONS_ARCHIVED, (int) notificationsArchived.get());
+        metrics.put(METRIC_FAILURES, (int) failures.get());
+        return metrics;
+    }
+
+    // one run, written to its own file which is only created once there is something to archive
+    private final class Archive {
+        private final String name;
+        private FileOutputStream file;
+        private Writer writer;
+
+        private Archive(final DateTime now) {
+            this.name = "cdr-" + DateTimeFormat.forPattern("yyyyMMdd-HHmmss").print(now) + ".json.gz";
+        }
+
+        @SuppressWarnings("unchecked")
+        private int expire(final DateTime before, final String account, final List<String> excluded) throws IOException,
+                InterruptedException {
+            final Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put("date_created", before.toDate());
+            parameters.put("account_sid", account);
+            parameters.put("excluded_account_sids", excluded);
+            parameters.put("limit", batchSize);
+            int count = 0;
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Interrupted while archiving the call detail records");
+                }
+                final SqlSession session = sessions.openSession(false);
+                try {
+                    final List<Map<String, Object>> cdrs = session.selectList(CDRS + "getExpiredCallDetailRecords", parameters);
+                    if (cdrs.isEmpty()) {
+                        return count;
+                    }
+                    final List<String> sids = new ArrayList<String>(cdrs.size());
+                    for (final Map<String, Object> cdr : cdrs) {
+                        sids.add((String) cdr.get("sid"));
+                    }
+                    final List<Map<String, Object>> notifications = session.selectList(NOTIFICATIONS + "getNotificationsByCalls", sids);
+                    if (directory != null) {
+                        write("restcomm_call_detail_records", cdrs);
+                        write("restcomm_notifications", notifications);
+                        sync();
+                    }
+                    if (!notifications.isEmpty()) {
+                        session.delete(NOTIFICATIONS + "removeNotificationsByCalls", sids);
+                    }
+                    session.delete(CDRS + "removeCallDetailRecordsBySids", sids);
+                    session.commit();
+                    count += cdrs.size();
+                    archived.addAndGet(cdrs.size());
+                    notificationsArchived.addAndGet(notifications.size());
+                } finally {
+                    session.close();
+                }
+                // leaves room to the calls in between batches
+                if (pause > 0) {
+                    Thread.sleep(pause);
+                }
+            }
+        }
+
+        private void write(final String table, final List<Map<String, Object>> rows) throws IOException {
+            if (writer == null) {
+                directory.mkdirs();
+                file = new FileOutputStream(new File(directory, name), true);
+                // sync flush so every batch can be read back even if the file is never closed
+                writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(file, true), UTF_8));
+            }
+            for (final Map<String, Object> row : rows) {
+                final Map<String, Object> line = new LinkedHashMap<String, Object>();
+                line.put("table", table);
+                line.put("row", row);
+                writer.write(gson.toJson(line));
+                writer.write('\n');
+            }
+        }
+
+        private void sync() throws IOException {
+            if (writer != null) {
+                writer.flush();
+                file.getFD().sync();
+            }
+        }
+
+        private void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
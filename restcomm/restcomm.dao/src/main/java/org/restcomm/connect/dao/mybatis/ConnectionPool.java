@@ -0,0 +1,58 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Holds the connections MyBatis runs its statements on. The implementation is picked with the class attribute of
+ * runtime-settings/database/connection-pool in restcomm.xml.
+ */
+public interface ConnectionPool {
+    String METRIC_ACTIVE = "DbPoolActiveConnections";
+    String METRIC_IDLE = "DbPoolIdleConnections";
+    String METRIC_WAITING = "DbPoolWaitingThreads";
+
+    /**
+     * Opens the pool.
+     *
+     * @param driver the JDBC driver class
+     * @param url the JDBC url
+     * @param username the database user
+     * @param password the database password
+     * @param configuration the connection-pool settings
+     * @return the data source handing out the pooled connections
+     */
+    DataSource start(String driver, String url, String username, String password, Configuration configuration);
+
+    /**
+     * Closes every connection of the pool.
+     */
+    void stop();
+
+    /**
+     * @return the state of the pool and the time spent waiting for connections
+     */
+    Map<String, Integer> getMetrics();
+}
@@ -0,0 +1,415 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * Coalesces the writes of many callers into one transaction, so a database that syncs its log on every commit,
+ * like the embedded HSQLDB, syncs once per window instead of once per write.
+ * <p>
+ * Writes are queued and committed together at least every window milliseconds, or as soon as max-batch of them
+ * are waiting. A write is therefore durable only once its window is over, and is lost if the process dies before.
+ * A DAO whose writes go through here calls {@link #flush()} before it reads so it always sees its own writes. When
+ * a batch fails its writes are retried one transaction each, so one bad write doesn't take the others with it.
+ * <p>
+ * A write that fails on its own too is kept aside, up to max-dead-letters of them, and tried again every
+ * dead-letter-retry milliseconds and before every read, so a database that was unreachable for a while gets the
+ * writes once it is back. When the dead letters are full the oldest is dropped and counted as a failure. A write the
+ * database refuses, like a constraint violation, would fail again however often it is tried: it is dropped and counted
+ * as rejected instead of being kept.
+ * <p>
+ * Writes to the same row carry its key. While a row has dead letters its later writes wait behind them, so they are
+ * committed in order, and an update kept aside replaces the older updates of its row that are still waiting.
+ */
+@ThreadSafe
+public final class GroupCommit {
+    public static final String METRIC_COMMITS = "GroupCommits";
+    public static final String METRIC_WRITES = "GroupCommitWrites";
+    public static final String METRIC_FAILURES = "GroupCommitFailures";
+    public static final String METRIC_QUEUED = "GroupCommitQueued";
+    public static final String METRIC_DEAD_LETTERS = "GroupCommitDeadLetters";
+    public static final String METRIC_REJECTED = "GroupCommitRejected";
+
+    private static final Logger logger = Logger.getLogger(GroupCommit.class);
+
+    /**
+     * A write run in the transaction of its batch. It must not commit.
+     */
+    abstract static class Write {
+        private final String key;
+        private final boolean update;
+
+        /**
+         * A write that is not ordered with any other.
+         */
+        Write() {
+            this(null, false);
+        }
+
+        /**
+         * @param key the row written, null when the write is not ordered with any other
+         * @param update whether the write sets the whole row, so it makes older updates of the row unnecessary
+         */
+        Write(final String key, final boolean update) {
+            super();
+            this.key = key;
+            this.update = update;
+        }
+
+        abstract void execute(SqlSession session);
+    }
+
+    private final SqlSessionFactory sessions;
+    private final long window;
+    private final int maxBatch;
+    private final int maxDeadLetters;
+    private final long deadLetterRetry;
+    // guarded by this
+    private List<Write> queue;
+    // failed writes, oldest first, and how many of them each key has, guarded by writing
+    private final LinkedList<Write> deadLetters;
+    private final Map<String, Integer> deadLetterKeys;
+    private volatile int deadLetterCount;
+    // held while a batch is written, so batches commit in order and a flush waits for the one in progress
+    private final Object writing;
+    private final AtomicBoolean flushRequested;
+    private final AtomicLong commits;
+    private final AtomicLong writes;
+    private final AtomicLong failures;
+    private final AtomicLong rejected;
+    private volatile ScheduledExecutorService executor;
+
+    public GroupCommit(final SqlSessionFactory sessions, final Configuration configuration) {
+        this(sessions, configuration.getLong("window", 10), configuration.getInt("max-batch", 500),
+                configuration.getInt("max-dead-letters", 1000), configuration.getLong("dead-letter-retry", 30000));
+    }
+
+    public GroupCommit(final SqlSessionFactory sessions, final long window, final int maxBatch) {
+        this(sessions, window, maxBatch, 1000, 30000);
+    }
+
+    public GroupCommit(final SqlSessionFactory sessions, final long window, final int maxBatch, final int maxDeadLetters,
+            final long deadLetterRetry) {
+        super();
+        this.sessions = sessions;
+        this.window = window;
+        this.maxBatch = maxBatch;
+        this.maxDeadLetters = maxDeadLetters;
+        this.deadLetterRetry = deadLetterRetry;
+        this.queue = new ArrayList<Write>();
+        this.deadLetters = new LinkedList<Write>();
+        this.deadLetterKeys = new HashMap<String, Integer>();
+        this.writing = new Object();
+        this.flushRequested = new AtomicBoolean();
+        this.commits = new AtomicLong();
+        this.writes = new AtomicLong();
+        this.failures = new AtomicLong();
+        this.rejected = new AtomicLong();
+    }
+
+    public synchronized void start() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush(false);
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                retryDeadLetters();
+            }
+        }, deadLetterRetry, deadLetterRetry, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background commits and writes what is still queued. Dead letters get one last try.
+     */
+    public void stop() {
+        final ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush(false);
+        final int lost = retryDeadLetters();
+        if (lost > 0) {
+            logger.error(lost + " writes could not be committed before stopping and are lost");
+        }
+    }
+
+    void write(final Write write) {
+        final boolean full;
+        final ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            if (executor != null) {
+                queue.add(write);
+            }
+            full = queue.size() >= maxBatch;
+        }
+        if (executor == null) {
+            // stopped, or never started: write through, after whatever is still queued
+            flush(false);
+            final SqlSession session = sessions.openSession();
+            try {
+                write.execute(session);
+                session.commit();
+            } finally {
+                session.close();
+            }
+            return;
+        }
+        // a single pending flush is enough however many writes fill the batch meanwhile
+        if (full && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(false);
+                    }
+                });
+            } catch (final RejectedExecutionException exception) {
+                // stopping, the remaining writes are committed by stop()
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Tries the dead letters again and commits the queued writes, waiting for a batch already being written. Called
+     * before a read so it sees the writes made before it.
+     */
+    public void flush() {
+        flush(true);
+    }
+
+    private void flush(final boolean deadLettersToo) {
+        synchronized (this) {
+            if (queue.isEmpty() && (!deadLettersToo || deadLetterCount == 0)) {
+                return;
+            }
+        }
+        synchronized (writing) {
+            flushRequested.set(false);
+            if (deadLettersToo) {
+                retryDeadLetters();
+            }
+            List<Write> batch;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch = queue;
+                queue = new ArrayList<Write>();
+            }
+            if (!deadLetters.isEmpty()) {
+                batch = behindDeadLetters(batch);
+                if (batch.isEmpty()) {
+                    return;
+                }
+            }
+            final SqlSession session = sessions.openSession();
+            try {
+                for (final Write write : batch) {
+                    write.execute(session);
+                }
+                session.commit();
+                commits.incrementAndGet();
+                writes.addAndGet(batch.size());
+                return;
+            } catch (final Exception exception) {
+                session.rollback();
+                logger.warn("Could not commit " + batch.size() + " writes together, committing them one by one", exception);
+            } finally {
+                session.close();
+            }
+            for (final Write write : batch) {
+                // an earlier write of the batch to the same row may just have been kept aside
+                if (write.key != null && deadLetterKeys.containsKey(write.key)) {
+                    deadLetter(write);
+                } else if (commit(write) == Outcome.FAILED) {
+                    deadLetter(write);
+                }
+            }
+        }
+    }
+
+    // called holding writing, keeps aside the writes of rows that have dead letters and returns the others
+    private List<Write> behindDeadLetters(final List<Write> batch) {
+        final List<Write> others = new ArrayList<Write>(batch.size());
+        for (final Write write : batch) {
+            if (write.key != null && deadLetterKeys.containsKey(write.key)) {
+                deadLetter(write);
+            } else {
+                others.add(write);
+            }
+        }
+        return others;
+    }
+
+    private enum Outcome {
+        COMMITTED, FAILED, REJECTED
+    }
+
+    // called holding writing
+    private Outcome commit(final Write write) {
+        final SqlSession session = sessions.openSession();
+        try {
+            write.execute(session);
+            session.commit();
+            commits.incrementAndGet();
+            writes.incrementAndGet();
+            return Outcome.COMMITTED;
+        } catch (final Exception exception) {
+            if (refused(exception)) {
+                rejected.incrementAndGet();
+                logger.error("The database refused a write, dropping it", exception);
+                return Outcome.REJECTED;
+            }
+            logger.error("Could not commit a write, keeping it aside to try again later", exception);
+            return Outcome.FAILED;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Whether the database refused the write itself, so trying it again cannot succeed: a constraint violation, bad
+     * data or a statement it cannot run, by type or by SQL state class 22, 23 or 42.
+     */
+    static boolean refused(final Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLIntegrityConstraintViolationException || cause instanceof SQLDataException
+                    || cause instanceof SQLSyntaxErrorException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                final String state = ((SQLException) cause).getSQLState();
+                if (state != null && (state.startsWith("22") || state.startsWith("23") || state.startsWith("42"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // called holding writing
+    private void deadLetter(final Write write) {
+        if (write.update) {
+            // the older updates of the row would only be overwritten by this one
+            final Iterator<Write> older = deadLetters.iterator();
+            while (older.hasNext()) {
+                final Write letter = older.next();
+                if (letter.update && write.key.equals(letter.key)) {
+                    older.remove();
+                    forget(letter);
+                }
+            }
+        }
+        deadLetters.addLast(write);
+        if (write.key != null) {
+            final Integer count = deadLetterKeys.get(write.key);
+            deadLetterKeys.put(write.key, count == null ? 1 : count + 1);
+        }
+        if (deadLetters.size() > maxDeadLetters) {
+            forget(deadLetters.removeFirst());
+            failures.incrementAndGet();
+            logger.error("Too many writes waiting to be tried again, dropped the oldest one");
+        }
+        deadLetterCount = deadLetters.size();
+    }
+
+    // called holding writing, once a dead letter left the list
+    private void forget(final Write letter) {
+        if (letter.key != null) {
+            final int count = deadLetterKeys.get(letter.key);
+            if (count > 1) {
+                deadLetterKeys.put(letter.key, count - 1);
+            } else {
+                deadLetterKeys.remove(letter.key);
+            }
+        }
+    }
+
+    /**
+     * Tries the dead letters again, in the order they failed, until one of them fails again. Those the database
+     * refuses are dropped on the way.
+     *
+     * @return the dead letters still waiting
+     */
+    int retryDeadLetters() {
+        synchronized (writing) {
+            while (!deadLetters.isEmpty()) {
+                if (commit(deadLetters.getFirst()) == Outcome.FAILED) {
+                    // most likely the database is still unreachable, the next ones would fail the same way
+                    break;
+                }
+                forget(deadLetters.removeFirst());
+            }
+            deadLetterCount = deadLetters.size();
+            return deadLetterCount;
+        }
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_COMMITS, (int) commits.get());
+        metrics.put(METRIC_WRITES, (int) writes.get());
+        metrics.put(METRIC_FAILURES, (int) failures.get());
+        metrics.put(METRIC_REJECTED, (int) rejected.get());
+        synchronized (this) {
+            metrics.put(METRIC_QUEUED, queue.size());
+        }
+        metrics.put(METRIC_DEAD_LETTERS, deadLetterCount);
+        return metrics;
+    }
+}
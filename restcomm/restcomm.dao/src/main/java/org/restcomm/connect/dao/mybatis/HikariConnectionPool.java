@@ -0,0 +1,82 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.configuration.Configuration;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * A HikariCP pool, which hands out connections without a global lock and reports the threads waiting for one.
+ */
+@ThreadSafe
+public final class HikariConnectionPool implements ConnectionPool {
+    private volatile HikariDataSource pool;
+    private volatile MeteredDataSource dataSource;
+
+    public HikariConnectionPool() {
+        super();
+    }
+
+    @Override
+    public DataSource start(final String driver, final String url, final String username, final String password,
+            final Configuration configuration) {
+        final HikariConfig config = new HikariConfig();
+        config.setPoolName("restcomm");
+        config.setDriverClassName(driver);
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(configuration.getInt("maximum-pool-size", 10));
+        config.setMinimumIdle(configuration.getInt("minimum-idle", 2));
+        config.setConnectionTimeout(configuration.getLong("connection-timeout", 5000));
+        config.setIdleTimeout(configuration.getLong("idle-timeout", 600000));
+        config.setMaxLifetime(configuration.getLong("max-lifetime", 1800000));
+        pool = new HikariDataSource(config);
+        dataSource = new MeteredDataSource(pool);
+        return dataSource;
+    }
+
+    @Override
+    public void stop() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = dataSource.getMetrics();
+        final HikariPoolMXBean state = pool.getHikariPoolMXBean();
+        if (state != null) {
+            metrics.put(METRIC_ACTIVE, state.getActiveConnections());
+            metrics.put(METRIC_IDLE, state.getIdleConnections());
+            metrics.put(METRIC_WAITING, state.getThreadsAwaitingConnection());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * Times how long the callers of a pool wait for a connection and counts the ones that never get one.
+ */
+@ThreadSafe
+final class MeteredDataSource implements DataSource {
+    static final String METRIC_CONNECTIONS = "DbConnections";
+    static final String METRIC_WAIT_AVERAGE = "DbConnectionWaitAverage";
+    static final String METRIC_WAIT_MAX = "DbConnectionWaitMax";
+    static final String METRIC_FAILURES = "DbConnectionFailures";
+
+    private final DataSource pool;
+    private final AtomicLong connections;
+    private final AtomicLong waited;
+    private final AtomicLong maxWait;
+    private final AtomicLong failures;
+
+    MeteredDataSource(final DataSource pool) {
+        super();
+        this.pool = pool;
+        this.connections = new AtomicLong();
+        this.waited = new AtomicLong();
+        this.maxWait = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            final Connection connection = pool.getConnection();
+            record(start);
+            return connection;
+        } catch (final SQLException exception) {
+            failures.incrementAndGet();
+            throw exception;
+        }
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            final Connection connection = pool.getConnection(username, password);
+            record(start);
+            return connection;
+        } catch (final SQLException exception) {
+            failures.incrementAndGet();
+            throw exception;
+        }
+    }
+
+    private void record(final long start) {
+        final long elapsed = (System.nanoTime() - start) / 1000000L;
+        connections.incrementAndGet();
+        waited.addAndGet(elapsed);
+        long current = maxWait.get();
+        while (elapsed > current && !maxWait.compareAndSet(current, elapsed)) {
+            current = maxWait.get();
+        }
+    }
+
+    /**
+     * @return the connections handed out, the average and longest wait in milliseconds and the failed attempts
+     */
+    Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        final long count = connections.get();
+        metrics.put(METRIC_CONNECTIONS, (int) count);
+        metrics.put(METRIC_WAIT_AVERAGE, count == 0 ? 0 : (int) (waited.get() / count));
+        metrics.put(METRIC_WAIT_MAX, (int) maxWait.get());
+        metrics.put(METRIC_FAILURES, (int) failures.get());
+        return metrics;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return pool.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) throws SQLException {
+        pool.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) throws SQLException {
+        pool.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return pool.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return pool.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> type) throws SQLException {
+        if (type.isInstance(pool)) {
+            return type.cast(pool);
+        }
+        return pool.unwrap(type);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> type) throws SQLException {
+        return type.isInstance(pool) || pool.isWrapperFor(type);
+    }
+}
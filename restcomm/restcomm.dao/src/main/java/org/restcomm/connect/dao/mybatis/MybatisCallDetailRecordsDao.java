@@ -20,12 +20,10 @@
 package org.restcomm.connect.dao.mybatis;
 
 import java.math.BigDecimal;
-import java.net.URI;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Currency;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -39,9 +37,9 @@ import org.joda.time.format.DateTimeFormatter;
 import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.dao.CallDetailRecordsDao;
-import org.restcomm.connect.dao.DaoUtils;
 import org.restcomm.connect.dao.entities.CallDetailRecord;
 import org.restcomm.connect.dao.entities.CallDetailRecordFilter;
+import org.restcomm.connect.dao.entities.Usage;
 
 /**
  * @author quintana.thomas@gmail.com (Thomas Quintana)
@@ -50,30 +48,62 @@ import org.restcomm.connect.dao.entities.CallDetailRecordFilter;
 public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
     private static final String namespace = "org.mobicents.servlet.sip.restcomm.dao.CallDetailRecordsDao.";
     private final SqlSessionFactory sessions;
+    private final GroupCommit writes;
 
     public MybatisCallDetailRecordsDao(final SqlSessionFactory sessions) {
+        this(sessions, null);
+    }
+
+    /**
+     * @param writes commits the writes of many calls together, null to commit each one on its own
+     */
+    public MybatisCallDetailRecordsDao(final SqlSessionFactory sessions, final GroupCommit writes) {
         super();
         this.sessions = sessions;
+        this.writes = writes;
     }
 
-    @Override
-    public void addCallDetailRecord(final CallDetailRecord cdr) {
+    // reads see the writes still waiting for their group commit
+    private SqlSession openSession() {
+        if (writes != null) {
+            writes.flush();
+        }
+        return sessions.openSession();
+    }
+
+    private void write(final GroupCommit.Write write) {
+        if (writes != null) {
+            writes.write(write);
+            return;
+        }
         final SqlSession session = sessions.openSession();
         try {
-            session.insert(namespace + "addCallDetailRecord", toMap(cdr));
+            write.execute(session);
             session.commit();
         } finally {
             session.close();
         }
     }
 
+    @Override
+    public void addCallDetailRecord(final CallDetailRecord cdr) {
+        write(new GroupCommit.Write(cdr.getSid().toString(), false) {
+            @Override
+            public void execute(final SqlSession session) {
+                session.insert(namespace + "addCallDetailRecord", cdr);
+                MybatisUsageDao.addUsageRecord(session, cdr.getAccountSid(), Usage.Category.CALLS, cdr.getDateCreated(),
+                        cdr.getApiVersion(), 1, duration(cdr.getDuration()), cdr.getPrice());
+            }
+        });
+    }
+
     @Override
     public CallDetailRecord getCallDetailRecord(final Sid sid) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
-            final Map<String, Object> result = session.selectOne(namespace + "getCallDetailRecord", sid.toString());
+            final CallDetailRecord.Builder result = session.selectOne(namespace + "getCallDetailRecord", sid.toString());
             if (result != null) {
-                return toCallDetailRecord(result);
+                return result.build();
             } else {
                 return null;
             }
@@ -85,7 +115,7 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
     // Issue 110
     @Override
     public Integer getTotalCallDetailRecords(CallDetailRecordFilter filter) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final Integer total = session.selectOne(namespace + "getTotalCallDetailRecordByUsingFilters", filter);
             return total;
@@ -96,7 +126,7 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
 
     @Override
     public Integer getInProgressCallsByClientName(String client) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final Integer total = session.selectOne(namespace + "getInProgressCallsByClientName", client);
             return total;
@@ -107,7 +137,7 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
 
     @Override
     public Integer getInProgressCallsByAccountSid(String accountSid) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final Integer total = session.selectOne(namespace + "getInProgressCallsByAccountSid", accountSid);
             return total;
@@ -119,7 +149,7 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
     @Override
     public Integer getTotalRunningCallDetailRecordsByConferenceSid(Sid conferenceSid){
 
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final Integer total = session.selectOne(namespace + "getTotalRunningCallDetailRecordsByConferenceSid", conferenceSid.toString());
             return total;
@@ -133,19 +163,12 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
     @Override
     public List<CallDetailRecord> getCallDetailRecords(CallDetailRecordFilter filter) {
 
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
 
         try {
-            final List<Map<String, Object>> results = session.selectList(namespace + "getCallDetailRecordByUsingFilters",
+            final List<CallDetailRecord.Builder> results = session.selectList(namespace + "getCallDetailRecordByUsingFilters",
                     filter);
-            final List<CallDetailRecord> cdrs = new ArrayList<CallDetailRecord>();
-
-            if (results != null && !results.isEmpty()) {
-                for (final Map<String, Object> result : results) {
-                    cdrs.add(toCallDetailRecord(result));
-                }
-            }
-            return cdrs;
+            return build(results);
         } finally {
             session.close();
         }
@@ -218,7 +241,7 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
         params.put("instanceid", instanceId.toString());
         params.put("startTime", today);
 
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final Double total = session.selectOne(namespace + "getAverageCallDurationLast24Hours", params);
             return total;
@@ -237,7 +260,7 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
         params.put("instanceid", instanceId.toString());
         params.put("startTime", lastHour);
 
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final Double total = session.selectOne(namespace + "getAverageCallDurationLastHour", params);
             return total;
@@ -247,117 +270,73 @@ public final class MybatisCallDetailRecordsDao implements CallDetailRecordsDao {
     }
 
     private List<CallDetailRecord> getCallDetailRecords(final String selector, Object input) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
-            final List<Map<String, Object>> results = session.selectList(selector, input);
-            final List<CallDetailRecord> cdrs = new ArrayList<CallDetailRecord>();
-            if (results != null && !results.isEmpty()) {
-                for (final Map<String, Object> result : results) {
-                    cdrs.add(toCallDetailRecord(result));
-                }
-            }
-            return cdrs;
+            final List<CallDetailRecord.Builder> results = session.selectList(selector, input);
+            return build(results);
         } finally {
             session.close();
         }
     }
 
+    private static List<CallDetailRecord> build(final List<CallDetailRecord.Builder> results) {
+        final List<CallDetailRecord> cdrs = new ArrayList<CallDetailRecord>(results.size());
+        for (final CallDetailRecord.Builder result : results) {
+            cdrs.add(result.build());
+        }
+        return cdrs;
+    }
+
     @Override
     public void removeCallDetailRecord(final Sid sid) {
-        removeCallDetailRecords(namespace + "removeCallDetailRecord", sid);
+        removeCallDetailRecords(namespace + "removeCallDetailRecord", sid, sid.toString());
     }
 
     @Override
     public void removeCallDetailRecords(final Sid accountSid) {
-        removeCallDetailRecords(namespace + "removeCallDetailRecords", accountSid);
+        removeCallDetailRecords(namespace + "removeCallDetailRecords", accountSid, null);
     }
 
-    private void removeCallDetailRecords(final String selector, final Sid sid) {
-        final SqlSession session = sessions.openSession();
-        try {
-            session.delete(selector, sid.toString());
-            session.commit();
-        } finally {
-            session.close();
-        }
+    // key: the record removed, null when removing those of an account
+    private void removeCallDetailRecords(final String selector, final Sid sid, final String key) {
+        write(new GroupCommit.Write(key, false) {
+            @Override
+            public void execute(final SqlSession session) {
+                session.delete(selector, sid.toString());
+            }
+        });
     }
 
     @Override
     public void updateCallDetailRecord(final CallDetailRecord cdr) {
-        final SqlSession session = sessions.openSession();
-        try {
-            session.update(namespace + "updateCallDetailRecord", toMap(cdr));
-            session.commit();
-        } finally {
-            session.close();
-        }
+        write(new GroupCommit.Write(cdr.getSid().toString(), true) {
+            @Override
+            public void execute(final SqlSession session) {
+                // Duration and price are only known once the call completes, so the usage rollup
+                // only needs the stored values to compute a delta when either of them is set.
+                CallDetailRecord previous = null;
+                if (cdr.getDuration() != null || cdr.getPrice() != null) {
+                    final CallDetailRecord.Builder result = session.selectOne(namespace + "getCallDetailRecord", cdr.getSid().toString());
+                    previous = result != null ? result.build() : null;
+                }
+                session.update(namespace + "updateCallDetailRecord", cdr);
+                if (previous != null) {
+                    final long usage = duration(cdr.getDuration()) - duration(previous.getDuration());
+                    final BigDecimal price = price(cdr.getPrice()).subtract(price(previous.getPrice()));
+                    if (usage != 0 || price.signum() != 0) {
+                        MybatisUsageDao.addUsageRecord(session, previous.getAccountSid(), Usage.Category.CALLS,
+                                previous.getDateCreated(), previous.getApiVersion(), 0, usage, price);
+                    }
+                }
+            }
+        });
+    }
+
+    private static long duration(final Integer duration) {
+        return duration == null ? 0 : duration;
     }
 
-    private CallDetailRecord toCallDetailRecord(final Map<String, Object> map) {
-        final String msId = DaoUtils.readString(map.get("ms_id"));
-        final Sid sid = DaoUtils.readSid(map.get("sid"));
-        final String instanceId = DaoUtils.readString(map.get("instanceid"));
-        final Sid parentCallSid = DaoUtils.readSid(map.get("parent_call_sid"));
-        final Sid conferenceSid = DaoUtils.readSid(map.get("conference_sid"));
-        final DateTime dateCreated = DaoUtils.readDateTime(map.get("date_created"));
-        final DateTime dateUpdated = DaoUtils.readDateTime(map.get("date_updated"));
-        final Sid accountSid = DaoUtils.readSid(map.get("account_sid"));
-        final String to = DaoUtils.readString(map.get("recipient"));
-        final String from = DaoUtils.readString(map.get("sender"));
-        final Sid phoneNumberSid = DaoUtils.readSid(map.get("phone_number_sid"));
-        final String status = DaoUtils.readString(map.get("status"));
-        final DateTime startTime = DaoUtils.readDateTime(map.get("start_time"));
-        final DateTime endTime = DaoUtils.readDateTime(map.get("end_time"));
-        final Integer duration = DaoUtils.readInteger(map.get("duration"));
-        final Integer ringDuration = DaoUtils.readInteger(map.get("ring_duration"));
-        final BigDecimal price = DaoUtils.readBigDecimal(map.get("price"));
-        final Currency priceUnit = DaoUtils.readCurrency(map.get("price_unit"));
-        final String direction = DaoUtils.readString(map.get("direction"));
-        final String answeredBy = DaoUtils.readString(map.get("answered_by"));
-        final String apiVersion = DaoUtils.readString(map.get("api_version"));
-        final String forwardedFrom = DaoUtils.readString(map.get("forwarded_from"));
-        final String callerName = DaoUtils.readString(map.get("caller_name"));
-        final URI uri = DaoUtils.readUri(map.get("uri"));
-        final String callPath = DaoUtils.readString(map.get("call_path"));
-        final Boolean muted = DaoUtils.readBoolean(map.get("muted"));
-        final Boolean startConferenceOnEnter = DaoUtils.readBoolean(map.get("start_conference_on_enter"));
-        final Boolean endConferenceOnExit = DaoUtils.readBoolean(map.get("end_conference_on_exit"));
-        final Boolean onHold = DaoUtils.readBoolean(map.get("on_hold"));
-        return new CallDetailRecord(sid, instanceId, parentCallSid, conferenceSid, dateCreated, dateUpdated, accountSid, to, from, phoneNumberSid, status,
-                startTime, endTime, duration, price, priceUnit, direction, answeredBy, apiVersion, forwardedFrom, callerName,
-                uri, callPath, ringDuration, muted, startConferenceOnEnter, endConferenceOnExit, onHold, msId);
-    }
-
-    private Map<String, Object> toMap(final CallDetailRecord cdr) {
-        final Map<String, Object> map = new HashMap<String, Object>();
-        map.put("sid", DaoUtils.writeSid(cdr.getSid()));
-        map.put("instanceid", cdr.getInstanceId());
-        map.put("parent_call_sid", DaoUtils.writeSid(cdr.getParentCallSid()));
-        map.put("conference_sid", DaoUtils.writeSid(cdr.getConferenceSid()));
-        map.put("date_created", DaoUtils.writeDateTime(cdr.getDateCreated()));
-        map.put("date_updated", DaoUtils.writeDateTime(cdr.getDateUpdated()));
-        map.put("account_sid", DaoUtils.writeSid(cdr.getAccountSid()));
-        map.put("to", cdr.getTo());
-        map.put("from", cdr.getFrom());
-        map.put("phone_number_sid", DaoUtils.writeSid(cdr.getPhoneNumberSid()));
-        map.put("status", cdr.getStatus());
-        map.put("start_time", DaoUtils.writeDateTime(cdr.getStartTime()));
-        map.put("end_time", DaoUtils.writeDateTime(cdr.getEndTime()));
-        map.put("duration", cdr.getDuration());
-        map.put("ring_duration", cdr.getRingDuration());
-        map.put("price", DaoUtils.writeBigDecimal(cdr.getPrice()));
-        map.put("direction", cdr.getDirection());
-        map.put("answered_by", cdr.getAnsweredBy());
-        map.put("api_version", cdr.getApiVersion());
-        map.put("forwarded_from", cdr.getForwardedFrom());
-        map.put("caller_name", cdr.getCallerName());
-        map.put("uri", DaoUtils.writeUri(cdr.getUri()));
-        map.put("call_path", cdr.getCallPath());
-        map.put("muted", cdr.isMuted());
-        map.put("start_conference_on_enter", cdr.isStartConferenceOnEnter());
-        map.put("end_conference_on_exit", cdr.isEndConferenceOnExit());
-        map.put("on_hold", cdr.isOnHold());
-        map.put("ms_id", cdr.getMsId());
-        return map;
+    private static BigDecimal price(final BigDecimal price) {
+        return price == null ? BigDecimal.ZERO : price;
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.ibatis.datasource.pooled.PoolState;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * The pool MyBatis ships with, used when restcomm.xml doesn't configure another one.
+ */
+@ThreadSafe
+public final class MybatisConnectionPool implements ConnectionPool {
+    private volatile PooledDataSource pool;
+    private volatile MeteredDataSource dataSource;
+
+    public MybatisConnectionPool() {
+        super();
+    }
+
+    @Override
+    public DataSource start(final String driver, final String url, final String username, final String password,
+            final Configuration configuration) {
+        final PooledDataSource pool = new PooledDataSource(driver, url, username, password);
+        pool.setPoolMaximumActiveConnections(configuration.getInt("maximum-pool-size", 10));
+        pool.setPoolMaximumIdleConnections(configuration.getInt("maximum-idle", 5));
+        pool.setPoolMaximumCheckoutTime(configuration.getInt("maximum-checkout-time", 20000));
+        pool.setPoolTimeToWait(configuration.getInt("time-to-wait", 20000));
+        this.pool = pool;
+        this.dataSource = new MeteredDataSource(pool);
+        return dataSource;
+    }
+
+    @Override
+    public void stop() {
+        if (pool != null) {
+            pool.forceCloseAll();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = dataSource.getMetrics();
+        final PoolState state = pool.getPoolState();
+        metrics.put(METRIC_ACTIVE, state.getActiveConnectionCount());
+        metrics.put(METRIC_IDLE, state.getIdleConnectionCount());
+        return metrics;
+    }
+}
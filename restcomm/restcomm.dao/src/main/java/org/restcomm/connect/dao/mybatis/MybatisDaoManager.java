@@ -19,16 +19,31 @@
  */
 package org.restcomm.connect.dao.mybatis;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.Reader;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
 
+import javax.sql.DataSource;
+
 import org.apache.commons.configuration.Configuration;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.log4j.Logger;
 import org.restcomm.connect.commons.amazonS3.S3AccessTool;
 import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.commons.loader.ObjectFactory;
+import org.restcomm.connect.commons.loader.ObjectInstantiationException;
+import org.restcomm.connect.commons.recording.RecordingLayout;
+import org.restcomm.connect.commons.recording.RecordingUploader;
 import org.restcomm.connect.dao.AccountsDao;
 import org.restcomm.connect.dao.AnnouncementsDao;
 import org.restcomm.connect.dao.ApplicationsDao;
@@ -44,8 +59,10 @@ import org.restcomm.connect.dao.IncomingPhoneNumbersDao;
 import org.restcomm.connect.dao.InstanceIdDao;
 import org.restcomm.connect.dao.MediaResourceBrokerDao;
 import org.restcomm.connect.dao.MediaServersDao;
+import org.restcomm.connect.dao.NotificationWriter;
 import org.restcomm.connect.dao.NotificationsDao;
 import org.restcomm.connect.dao.OutgoingCallerIdsDao;
+import org.restcomm.connect.dao.RecordingStorageManager;
 import org.restcomm.connect.dao.RecordingsDao;
 import org.restcomm.connect.dao.RegistrationsDao;
 import org.restcomm.connect.dao.ShortCodesDao;
@@ -58,10 +75,19 @@ import org.restcomm.connect.dao.UsageDao;
  */
 @ThreadSafe
 public final class MybatisDaoManager implements DaoManager {
+    private static final Logger logger = Logger.getLogger(MybatisDaoManager.class);
+
     private Configuration configuration;
     private Configuration amazonS3Configuration;
     private Configuration runtimeConfiguration;
     private S3AccessTool s3AccessTool;
+    private RecordingUploader recordingUploader;
+    private NotificationWriter notificationWriter;
+    private RecordingStorageManager recordingStorageManager;
+    private StatementMetrics statementMetrics;
+    private ConnectionPool connectionPool;
+    private GroupCommit groupCommit;
+    private CallDetailRecordArchiver callDetailRecordArchiver;
     private AccountsDao accountsDao;
     private ApplicationsDao applicationsDao;
     private AvailablePhoneNumbersDao availablePhoneNumbersDao;
@@ -206,9 +232,69 @@ public final class MybatisDaoManager implements DaoManager {
         return extensionsConfigurationDao;
     }
 
+    @Override
+    public RecordingUploader getRecordingUploader() {
+        return recordingUploader;
+    }
+
+    @Override
+    public NotificationWriter getNotificationWriter() {
+        return notificationWriter;
+    }
+
+    @Override
+    public RecordingStorageManager getRecordingStorageManager() {
+        return recordingStorageManager;
+    }
+
+    @Override
+    public Map<String, Integer> getStatementMetrics() {
+        if (statementMetrics == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Integer> metrics = statementMetrics.getMetrics();
+        if (groupCommit != null) {
+            metrics.putAll(groupCommit.getMetrics());
+        }
+        return metrics;
+    }
+
+    @Override
+    public Map<String, Integer> getConnectionPoolMetrics() {
+        if (connectionPool == null) {
+            return Collections.emptyMap();
+        }
+        return connectionPool.getMetrics();
+    }
+
+    @Override
+    public Map<String, Integer> getCallDetailRecordArchiveMetrics() {
+        if (callDetailRecordArchiver == null) {
+            return Collections.emptyMap();
+        }
+        return callDetailRecordArchiver.getMetrics();
+    }
+
     @Override
     public void shutdown() {
-        // Nothing to do.
+        if (recordingUploader != null) {
+            recordingUploader.stop();
+        }
+        if (notificationWriter != null) {
+            notificationWriter.stop();
+        }
+        if (recordingStorageManager != null) {
+            recordingStorageManager.stop();
+        }
+        if (callDetailRecordArchiver != null) {
+            callDetailRecordArchiver.stop();
+        }
+        if (groupCommit != null) {
+            groupCommit.stop();
+        }
+        if (connectionPool != null) {
+            connectionPool.stop();
+        }
     }
 
     @Override
@@ -230,6 +316,17 @@ public final class MybatisDaoManager implements DaoManager {
         properties.setProperty("data", dataFiles);
         properties.setProperty("sql", sqlFiles);
         final SqlSessionFactory sessions = builder.build(reader, properties);
+        final Configuration database = runtimeConfiguration.subset("database");
+        statementMetrics = new StatementMetrics(database.getLong("slow-statement-threshold", 0),
+                database.getInt("max-timed-statements", StatementMetrics.DEFAULT_MAX_STATEMENTS));
+        sessions.getConfiguration().addInterceptor(statementMetrics);
+        connectionPool(sessions, database);
+        // the writes of every call otherwise sync the log of the embedded database one by one
+        final Configuration writes = database.subset("group-commit");
+        if (writes.getBoolean("enabled", false)) {
+            groupCommit = new GroupCommit(sessions, writes);
+            groupCommit.start();
+        }
         if(!amazonS3Configuration.isEmpty()) { // Do not fail with NPE is amazonS3Configuration is not present for older install
             boolean amazonS3Enabled = amazonS3Configuration.getBoolean("enabled");
             if (amazonS3Enabled) {
@@ -247,6 +344,69 @@ public final class MybatisDaoManager implements DaoManager {
             }
         }
         start(sessions);
+        // notifications pile up when an application fails for many calls at once, write them in the background
+        final Configuration notifications = runtimeConfiguration.subset("notifications");
+        if (notifications.getBoolean("batched", true)) {
+            notificationWriter = new NotificationWriter(notificationsDao, notifications);
+            notificationWriter.start();
+            notificationsDao = notificationWriter;
+        }
+        recordingStorageManager = new RecordingStorageManager(RecordingLayout.fromConfiguration(runtimeConfiguration),
+                recordingsDao, runtimeConfiguration.subset("recordings-storage"));
+        recordingStorageManager.start();
+        callDetailRecordArchiver = new CallDetailRecordArchiver(sessions, runtimeConfiguration.subset("cdr-retention"));
+        callDetailRecordArchiver.start();
+        if (database.getBoolean("warmup", false)) {
+            warmup();
+        }
+    }
+
+    // runs the lookups of an incoming call once so the first call does not pay for opening connections and preparing statements
+    private void warmup() {
+        final long start = System.currentTimeMillis();
+        try {
+            accountsDao.getAccount(Sid.generate(Sid.Type.ACCOUNT));
+            incomingPhoneNumbersDao.getIncomingPhoneNumber("+0");
+            clientsDao.getClient("warmup");
+            presenceRecordsDao.getRegistration("warmup");
+            applicationsDao.getApplication(Sid.generate(Sid.Type.APPLICATION));
+            if (logger.isInfoEnabled()) {
+                logger.info("Database warmed up in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        } catch (final RuntimeException exception) {
+            logger.warn("Database warmup failed: ", exception);
+        }
+    }
+
+    // replaces the data source of mybatis.xml with the pool configured in restcomm.xml, keeping its connection settings
+    private void connectionPool(final SqlSessionFactory sessions, final Configuration database) {
+        final String classpath = database.getString("connection-pool[@class]");
+        if (classpath == null || classpath.isEmpty()) {
+            return;
+        }
+        final Environment environment = sessions.getConfiguration().getEnvironment();
+        final DataSource current = environment.getDataSource();
+        final ConnectionPool pool;
+        try {
+            pool = (ConnectionPool) new ObjectFactory(getClass().getClassLoader()).getObjectInstance(classpath);
+        } catch (final ObjectInstantiationException exception) {
+            throw new RuntimeException(exception);
+        }
+        final Configuration settings = database.subset("connection-pool");
+        final DataSource dataSource;
+        if (current instanceof PooledDataSource) {
+            final PooledDataSource pooled = (PooledDataSource) current;
+            dataSource = pool.start(pooled.getDriver(), pooled.getUrl(), pooled.getUsername(), pooled.getPassword(), settings);
+            pooled.forceCloseAll();
+        } else if (current instanceof UnpooledDataSource) {
+            final UnpooledDataSource unpooled = (UnpooledDataSource) current;
+            dataSource = pool.start(unpooled.getDriver(), unpooled.getUrl(), unpooled.getUsername(), unpooled.getPassword(), settings);
+        } else {
+            // a container managed data source is pooled by the container
+            return;
+        }
+        sessions.getConfiguration().setEnvironment(new Environment(environment.getId(), environment.getTransactionFactory(), dataSource));
+        connectionPool = pool;
     }
 
     public void start(final SqlSessionFactory sessions) {
@@ -255,23 +415,32 @@ public final class MybatisDaoManager implements DaoManager {
         applicationsDao = new MybatisApplicationsDao(sessions);
         announcementsDao = new MybatisAnnouncementsDao(sessions);
         availablePhoneNumbersDao = new MybatisAvailablePhoneNumbersDao(sessions);
-        callDetailRecordsDao = new MybatisCallDetailRecordsDao(sessions);
+        callDetailRecordsDao = new MybatisCallDetailRecordsDao(sessions, groupCommit);
         conferenceDetailRecordsDao = new MybatisConferenceDetailRecordsDao(sessions);
         clientsDao = new MybatisClientsDao(sessions);
         httpCookiesDao = new MybatisHttpCookiesDao(sessions);
         incomingPhoneNumbersDao = new MybatisIncomingPhoneNumbersDao(sessions);
         notificationsDao = new MybatisNotificationsDao(sessions);
         outgoingCallerIdsDao = new MybatisOutgoingCallerIdsDao(sessions);
-        presenceRecordsDao = new MybatisRegistrationsDao(sessions);
+        presenceRecordsDao = new MybatisRegistrationsDao(sessions, groupCommit);
         if (s3AccessTool != null) {
             final String recordingPath = runtimeConfiguration.getString("recordings-path");
-            recordingsDao = new MybatisRecordingsDao(sessions, s3AccessTool, recordingPath);
+            recordingUploader = recordingUploader(recordingPath);
+            final MybatisRecordingsDao recordings = new MybatisRecordingsDao(sessions, recordingUploader,
+                    RecordingLayout.fromConfiguration(runtimeConfiguration));
+            recordingUploader.start(recordings);
+            recordingsDao = recordings;
         } else {
             recordingsDao = new MybatisRecordingsDao(sessions);
         }
         shortCodesDao = new MybatisShortCodesDao(sessions);
         smsMessagesDao = new MybatisSmsMessagesDao(sessions);
-        usageDao = new MybatisUsageDao(sessions);
+        final MybatisUsageDao usage = new MybatisUsageDao(sessions);
+        // databases upgraded from a release without usage rollups get the table, and its backfill, before any write
+        if (usage.createUsageRecordsIfMissing() && logger.isInfoEnabled()) {
+            logger.info("Created and backfilled the usage rollups table restcomm_usage_records");
+        }
+        usageDao = usage;
         transcriptionsDao = new MybatisTranscriptionsDao(sessions);
         gatewaysDao = new MybatisGatewaysDao(sessions);
         instanceIdDao = new MybatisInstanceIdDao(sessions);
@@ -279,4 +448,14 @@ public final class MybatisDaoManager implements DaoManager {
         mediaResourceBrokerDao = new MybatisMediaResourceBrokerDao(sessions);
         extensionsConfigurationDao = new MybatisExtensionsConfigurationDao(sessions);
     }
+
+    // uploads to S3 are queued in a journal next to the recordings unless configured otherwise
+    private RecordingUploader recordingUploader(final String recordingPath) {
+        final Configuration queue = amazonS3Configuration.subset("upload-queue");
+        final String journal = queue.getString("journal");
+        final File journalDirectory = journal == null || journal.isEmpty() ? new File(new File(URI.create(recordingPath)), "uploads")
+                : new File(journal);
+        return new RecordingUploader(journalDirectory, s3AccessTool, queue.getInt("workers", 4), queue.getInt("max-attempts", 10),
+                queue.getLong("retry-interval", 5000));
+    }
 }
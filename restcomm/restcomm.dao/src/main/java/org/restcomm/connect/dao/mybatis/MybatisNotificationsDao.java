@@ -19,6 +19,7 @@
  */
 package org.restcomm.connect.dao.mybatis;
 
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.joda.time.DateTime;
@@ -66,6 +67,22 @@ public final class MybatisNotificationsDao implements NotificationsDao {
         }
     }
 
+    @Override
+    public void addNotifications(final List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        final SqlSession session = sessions.openSession(ExecutorType.BATCH);
+        try {
+            for (final Notification notification : notifications) {
+                session.insert(namespace + "addNotification", toMap(notification));
+            }
+            session.commit();
+        } finally {
+            session.close();
+        }
+    }
+
     @Override
     public Notification getNotification(final Sid sid) {
         final SqlSession session = sessions.openSession();
@@ -19,6 +19,7 @@
  */
 package org.restcomm.connect.dao.mybatis;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -33,42 +34,37 @@ import org.restcomm.connect.dao.DaoUtils;
 import org.restcomm.connect.dao.RecordingsDao;
 import org.restcomm.connect.dao.entities.Recording;
 import org.restcomm.connect.commons.dao.Sid;
-import org.restcomm.connect.commons.amazonS3.S3AccessTool;
 import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.recording.RecordingLayout;
+import org.restcomm.connect.commons.recording.RecordingUploader;
 import org.restcomm.connect.commons.util.UriUtils;
 
 /**
  * @author quintana.thomas@gmail.com (Thomas Quintana)
  */
 @ThreadSafe
-public final class MybatisRecordingsDao implements RecordingsDao {
+public final class MybatisRecordingsDao implements RecordingsDao, RecordingUploader.Listener {
     private static final String namespace = "org.mobicents.servlet.sip.restcomm.dao.RecordingsDao.";
     private final SqlSessionFactory sessions;
-    private S3AccessTool s3AccessTool;
-    private String recordingPath;
+    private RecordingUploader uploader;
+    private RecordingLayout layout;
 
     public MybatisRecordingsDao(final SqlSessionFactory sessions) {
         super();
         this.sessions = sessions;
     }
 
-    public MybatisRecordingsDao(final SqlSessionFactory sessions, final S3AccessTool s3AccessTool, final String recordingPath) {
+    public MybatisRecordingsDao(final SqlSessionFactory sessions, final RecordingUploader uploader, final RecordingLayout layout) {
         super();
         this.sessions = sessions;
-        this.s3AccessTool = s3AccessTool;
-        this.recordingPath = recordingPath;
+        this.uploader = uploader;
+        this.layout = layout;
     }
 
     @Override
     public void addRecording(Recording recording) {
-        if (s3AccessTool != null) {
-            URI s3Uri = s3AccessTool.uploadFile(recordingPath+"/"+recording.getSid().toString()+".wav");
-            if (s3Uri != null) {
-                recording = recording.updateFileUri(s3Uri);
-            }
-        } else {
-            recording = recording.updateFileUri(generateLocalFileUri("/restcomm/recordings/" + recording.getSid()));
-        }
+        // the recording is served locally until the upload is done, see uploaded()
+        recording = recording.updateFileUri(generateLocalFileUri("/restcomm/recordings/" + recording.getSid()));
         final SqlSession session = sessions.openSession();
         try {
             session.insert(namespace + "addRecording", toMap(recording));
@@ -76,6 +72,26 @@ public final class MybatisRecordingsDao implements RecordingsDao {
         } finally {
             session.close();
         }
+        if (uploader != null) {
+            final String name = recording.getSid().toString() + ".wav";
+            final File file = layout.locate(name);
+            uploader.upload(recording.getSid().toString(), (file != null ? file : layout.file(name)).toURI().toString());
+        }
+    }
+
+    @Override
+    public void uploaded(final String id, final URI location) {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("sid", id);
+        map.put("file_uri", DaoUtils.writeUri(location));
+        map.put("date_updated", DaoUtils.writeDateTime(DateTime.now()));
+        final SqlSession session = sessions.openSession();
+        try {
+            session.update(namespace + "updateRecordingFileUri", map);
+            session.commit();
+        } finally {
+            session.close();
+        }
     }
 
     public URI generateLocalFileUri(String recordingRelativeUri) {
@@ -145,6 +161,30 @@ public final class MybatisRecordingsDao implements RecordingsDao {
         }
     }
 
+    @Override
+    public List<Recording> getRecordingsBySids(final List<Sid> sids) {
+        final List<Recording> recordings = new ArrayList<Recording>();
+        if (sids.isEmpty()) {
+            return recordings;
+        }
+        final List<String> ids = new ArrayList<String>(sids.size());
+        for (final Sid sid : sids) {
+            ids.add(sid.toString());
+        }
+        final SqlSession session = sessions.openSession();
+        try {
+            final List<Map<String, Object>> results = session.selectList(namespace + "getRecordingsBySids", ids);
+            if (results != null) {
+                for (final Map<String, Object> result : results) {
+                    recordings.add(toRecording(result));
+                }
+            }
+            return recordings;
+        } finally {
+            session.close();
+        }
+    }
+
     @Override
     public void removeRecording(final Sid sid) {
         removeRecording(namespace + "removeRecording", sid);
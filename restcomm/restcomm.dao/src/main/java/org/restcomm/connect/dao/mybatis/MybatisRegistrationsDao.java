@@ -52,26 +52,57 @@ public final class MybatisRegistrationsDao implements RegistrationsDao {
 
     private static final String namespace = "org.mobicents.servlet.sip.restcomm.dao.RegistrationsDao.";
     private final SqlSessionFactory sessions;
+    private final GroupCommit writes;
 
     public MybatisRegistrationsDao(final SqlSessionFactory sessions) {
+        this(sessions, null);
+    }
+
+    /**
+     * @param writes commits the writes of many registrations together, null to commit each one on its own
+     */
+    public MybatisRegistrationsDao(final SqlSessionFactory sessions, final GroupCommit writes) {
         super();
         this.sessions = sessions;
+        this.writes = writes;
     }
 
-    @Override
-    public void addRegistration(final Registration registration) {
+    // reads see the writes still waiting for their group commit
+    private SqlSession openSession() {
+        if (writes != null) {
+            writes.flush();
+        }
+        return sessions.openSession();
+    }
+
+    private void write(final GroupCommit.Write write) {
+        if (writes != null) {
+            writes.write(write);
+            return;
+        }
         final SqlSession session = sessions.openSession();
         try {
-            session.insert(namespace + "addRegistration", toMap(registration));
+            write.execute(session);
             session.commit();
         } finally {
             session.close();
         }
     }
 
+    @Override
+    public void addRegistration(final Registration registration) {
+        final Map<String, Object> map = toMap(registration);
+        write(new GroupCommit.Write(key(registration), false) {
+            @Override
+            public void execute(final SqlSession session) {
+                session.insert(namespace + "addRegistration", map);
+            }
+        });
+    }
+
     @Override
     public Registration getRegistration(String user) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             // https://bitbucket.org/telestax/telscale-restcomm/issue/107/dial-fails-to-call-a-client-registered
             // we get all registrations and sort them by latest updated date so that we target the device where the user last
@@ -98,7 +129,7 @@ public final class MybatisRegistrationsDao implements RegistrationsDao {
 
     @Override
     public Registration getRegistrationByInstanceId(String user, String instanceId) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             // https://bitbucket.org/telestax/telscale-restcomm/issue/107/dial-fails-to-call-a-client-registered
             // we get all registrations and sort them by latest updated date so that we target the device where the user last
@@ -129,7 +160,7 @@ public final class MybatisRegistrationsDao implements RegistrationsDao {
 
     @Override
     public List<Registration> getRegistrationsByInstanceId(String instanceId) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final List<Map<String, Object>> results = session.selectList(namespace + "getRegistrationsByInstanceId", instanceId);
             final List<Registration> records = new ArrayList<Registration>();
@@ -149,7 +180,7 @@ public final class MybatisRegistrationsDao implements RegistrationsDao {
 
     @Override
     public List<Registration> getRegistrations(String user) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             // https://bitbucket.org/telestax/telscale-restcomm/issue/107/dial-fails-to-call-a-client-registered
             // we get all registrations and sort them by latest updated date so that we target the device where the user last
@@ -176,7 +207,7 @@ public final class MybatisRegistrationsDao implements RegistrationsDao {
 
     @Override
     public List<Registration> getRegistrations() {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final List<Map<String, Object>> results = session.selectList(namespace + "getRegistrations");
             final List<Registration> records = new ArrayList<Registration>();
@@ -193,7 +224,7 @@ public final class MybatisRegistrationsDao implements RegistrationsDao {
 
     @Override
     public boolean hasRegistration(final Registration registration) {
-        final SqlSession session = sessions.openSession();
+        final SqlSession session = openSession();
         try {
             final Integer result = (Integer) session.selectOne(namespace + "hasRegistration", toMap(registration));
             return result != null && result > 0;
@@ -204,24 +235,29 @@ public final class MybatisRegistrationsDao implements RegistrationsDao {
 
     @Override
     public void removeRegistration(final Registration registration) {
-        final SqlSession session = sessions.openSession();
-        try {
-            session.delete(namespace + "removeRegistration", toMap(registration));
-            session.commit();
-        } finally {
-            session.close();
-        }
+        final Map<String, Object> map = toMap(registration);
+        write(new GroupCommit.Write(key(registration), false) {
+            @Override
+            public void execute(final SqlSession session) {
+                session.delete(namespace + "removeRegistration", map);
+            }
+        });
     }
 
     @Override
     public void updateRegistration(final Registration registration) {
-        final SqlSession session = sessions.openSession();
-        try {
-            session.update(namespace + "updateRegistration", toMap(registration));
-            session.commit();
-        } finally {
-            session.close();
-        }
+        final Map<String, Object> map = toMap(registration);
+        write(new GroupCommit.Write(key(registration), true) {
+            @Override
+            public void execute(final SqlSession session) {
+                session.update(namespace + "updateRegistration", map);
+            }
+        });
+    }
+
+    // the row of a registration for the group commit: its contact on an address of record
+    private static String key(final Registration registration) {
+        return registration.getLocation() + " " + registration.getAddressOfRecord();
     }
 
     private Map<String, Object> toMap(final Registration registration) {
@@ -19,6 +19,7 @@
  */
 package org.restcomm.connect.dao.mybatis;
 
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.joda.time.DateTime;
@@ -26,6 +27,7 @@ import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.dao.SmsMessagesDao;
 import org.restcomm.connect.dao.entities.SmsMessage;
+import org.restcomm.connect.dao.entities.Usage;
 
 import java.math.BigDecimal;
 import java.net.URI;
@@ -33,6 +35,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Currency;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +70,8 @@ public final class MybatisSmsMessagesDao implements SmsMessagesDao {
         final SqlSession session = sessions.openSession();
         try {
             session.insert(namespace + "addSmsMessage", toMap(smsMessage));
+            MybatisUsageDao.addUsageRecord(session, smsMessage.getAccountSid(), Usage.Category.SMS, smsMessage.getDateCreated(),
+                    smsMessage.getApiVersion(), 1, 1, smsMessage.getPrice());
             session.commit();
         } finally {
             session.close();
@@ -128,7 +133,42 @@ public final class MybatisSmsMessagesDao implements SmsMessagesDao {
     public void updateSmsMessage(final SmsMessage smsMessage) {
         final SqlSession session = sessions.openSession();
         try {
+            // Keep the usage rollup in sync when the price is settled after the message was stored.
+            Map<String, Object> previous = null;
+            if (smsMessage.getPrice() != null) {
+                previous = session.selectOne(namespace + "getSmsMessage", smsMessage.getSid().toString());
+            }
             session.update(namespace + "updateSmsMessage", toMap(smsMessage));
+            if (previous != null) {
+                final BigDecimal previousPrice = readBigDecimal(previous.get("price"));
+                final BigDecimal price = previousPrice == null ? smsMessage.getPrice() : smsMessage.getPrice().subtract(previousPrice);
+                if (price.signum() != 0) {
+                    MybatisUsageDao.addUsageRecord(session, readSid(previous.get("account_sid")), Usage.Category.SMS,
+                            readDateTime(previous.get("date_created")), readString(previous.get("api_version")), 0, 0, price);
+                }
+            }
+            session.commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Override
+    public void updateSmsMessageStatuses(final Map<Sid, SmsMessage.Status> statuses) {
+        if (statuses.isEmpty()) {
+            return;
+        }
+        // one round trip and one commit for the whole batch
+        final SqlSession session = sessions.openSession(ExecutorType.BATCH);
+        try {
+            final Date now = writeDateTime(DateTime.now());
+            for (final Map.Entry<Sid, SmsMessage.Status> status : statuses.entrySet()) {
+                final Map<String, Object> map = new HashMap<String, Object>();
+                map.put("sid", writeSid(status.getKey()));
+                map.put("status", status.getValue().toString());
+                map.put("date_updated", now);
+                session.update(namespace + "updateSmsMessageStatus", map);
+            }
             session.commit();
         } finally {
             session.close();
@@ -31,7 +31,10 @@ import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
 
 import java.math.BigDecimal;
 import java.net.URI;
+import java.sql.Connection;
 import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Currency;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -99,14 +102,99 @@ public final class MybatisUsageDao implements UsageDao {
     return getUsageCalls(accountSid, category, startDate, endDate, "getLastMonthCalls");
   }
   */
+  @Override
+  public void rebuildUsage() {
+    rebuildUsageRecords(null);
+  }
+
+  @Override
+  public void rebuildUsage(final Sid accountSid) {
+    rebuildUsageRecords(accountSid);
+  }
+
+  private void rebuildUsageRecords(final Sid accountSid) {
+    final SqlSession session = sessions.openSession();
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("sid", DaoUtils.writeSid(accountSid));
+    try {
+      if (accountSid == null) {
+        session.delete(namespace + "removeAllUsageRecords");
+      } else {
+        session.delete(namespace + "removeUsageRecords", accountSid.toString());
+      }
+      session.insert(namespace + "rebuildCallsUsageRecords", params);
+      session.insert(namespace + "rebuildSmsUsageRecords", params);
+      session.commit();
+    } finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Creates the rollups table on databases upgraded from a release without it and fills it from the call detail
+   * records and sms messages. Meant to run at startup, before the first record is written.
+   *
+   * @return true when the table was missing
+   */
+  public boolean createUsageRecordsIfMissing() {
+    final SqlSession session = sessions.openSession();
+    try {
+      if (hasTable(session.getConnection(), "restcomm_usage_records")) {
+        return false;
+      }
+      session.update(namespace + "createUsageRecords");
+      session.commit();
+    } catch (final SQLException exception) {
+      throw new RuntimeException(exception);
+    } finally {
+      session.close();
+    }
+    rebuildUsageRecords(null);
+    return true;
+  }
+
+  private static boolean hasTable(final Connection connection, final String table) throws SQLException {
+    // HSQLDB keeps the quoted name as is, unquoted names would be upper case
+    for (final String name : new String[] { table, table.toUpperCase(Locale.US) }) {
+      final ResultSet tables = connection.getMetaData().getTables(null, null, name, null);
+      try {
+        if (tables.next()) {
+          return true;
+        }
+      } finally {
+        tables.close();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds a delta to the daily usage rollup of an account. It runs inside the caller's session so the rollup
+   * is committed together with the call detail record or sms message it accounts for.
+   */
+  static void addUsageRecord(final SqlSession session, final Sid accountSid, final Usage.Category category,
+      final DateTime dateCreated, final String apiVersion, final long count, final long usage, final BigDecimal price) {
+    if (accountSid == null || dateCreated == null || apiVersion == null) {
+      return;
+    }
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("account_sid", accountSid.toString());
+    params.put("category", category.toString());
+    params.put("usage_date", new Date(dateCreated.withTimeAtStartOfDay().getMillis()));
+    params.put("api_version", apiVersion);
+    params.put("record_count", count);
+    params.put("usage_value", usage);
+    params.put("price", price == null ? BigDecimal.ZERO : price);
+    session.update(namespace + "addUsageRecord", params);
+  }
+
   private List<Usage> getUsageCalls(final Sid accountSid, Usage.Category category, DateTime startDate, DateTime endDate, final String queryName) {
-    long startTime = System.currentTimeMillis();
     final SqlSession session = sessions.openSession();
     Map<String, Object> params = new HashMap<String, Object>();
     params.put("sid", accountSid.toString());
-    params.put("startDate", new Date(startDate.getMillis()));
-    params.put("endDate", new Date(endDate.getMillis()));
-    fillParametersByCategory(category, params);
+    params.put("startDate", new Date(startDate.withTimeAtStartOfDay().getMillis()));
+    params.put("endDate", new Date(endDate.withTimeAtStartOfDay().getMillis()));
+    params.put("category", rollupCategory(category).toString());
     try {
       final List<Map<String, Object>> results = session.selectList(namespace + queryName, params);
       final List<Usage> usageRecords = new ArrayList<Usage>();
@@ -142,22 +230,13 @@ public final class MybatisUsageDao implements UsageDao {
     return new Usage(category, description, accountSid, startDate, endDate, usage, usageUnit, count, countUnit, price, priceUnit, uri);
   }
 
-  private Map<String, Object> fillParametersByCategory(Usage.Category category, Map<String, Object> params) {
+  /**
+   * Rollups are kept per top level category, the same granularity the raw GROUP BY queries used to report.
+   */
+  static Usage.Category rollupCategory(Usage.Category category) {
     // FIXME: handle no category, meaning all
     if (category == null) category = Usage.Category.CALLS;
     switch (category) {
-      case CALLS:
-      case CALLS_INBOUND:
-      case CALLS_INBOUND_LOCAL:
-      case CALLS_INBOUND_TOLLFREE:
-      case CALLS_OUTBOUND:
-      case CALLS_CLIENT:
-      case CALLS_SIP:
-        params.put("tableName", "restcomm_call_detail_records");
-        params.put("usageExprPre", "COALESCE(SUM(");
-        params.put("usageExprCol", "duration");
-        params.put("usageExprSuf", "),0)");
-        break;
       case SMS:
       case SMS_INBOUND:
       case SMS_INBOUND_SHORTCODE:
@@ -165,31 +244,10 @@ public final class MybatisUsageDao implements UsageDao {
       case SMS_OUTBOUND:
       case SMS_OUTBOUND_SHORTCODE:
       case SMS_OUTBOUND_LONGCODE:
-        params.put("tableName", "restcomm_sms_messages");
-        params.put("usageExprPre", "COUNT(");
-        params.put("usageExprCol", "sid");
-        params.put("usageExprSuf", ")");
-        break;
-      case PHONENUMBERS:
-      case PHONENUMBERS_TOLLFREE:
-      case PHONENUMBERS_LOCAL:
-      case SHORTCODES:
-      case SHORTCODES_VANITY:
-      case SHORTCODES_RANDOM:
-      case SHORTCODES_CUSTOMEROWNED:
-      case CALLERIDLOOKUPS:
-      case RECORDINGS:
-      case TRANSCRIPTIONS:
-      case RECORDINGSTORAGE:
-      case TOTALPRICE:
+        return Usage.Category.SMS;
       default:
-        params.put("tableName", "restcomm_call_detail_records");
-        params.put("usageExprPre", "COALESCE(SUM(");
-        params.put("usageExprCol", "duration");
-        params.put("usageExprSuf", "),0)");
-        break;
+        return Usage.Category.CALLS;
     }
-    return params;
   }
 
 }
@@ -0,0 +1,185 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+/**
+ * Counts and times the statements MyBatis executes, per mapped statement id, so the database work behind a call
+ * can be told apart from the rest. Statements slower than the threshold are logged. Past the first maxStatements
+ * ids, the statements are counted together under the id "other" so the metrics stay bounded.
+ */
+@ThreadSafe
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+        @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+                RowBounds.class, ResultHandler.class }) })
+public final class StatementMetrics implements Interceptor {
+    public static final String METRIC_STATEMENTS = "DbStatements";
+    public static final String METRIC_SLOW_STATEMENTS = "DbSlowStatements";
+    public static final String METRIC_LATENCY = "DbStatementLatency";
+    public static final String METRIC_LATENCY_MAX = "DbStatementLatencyMax";
+    public static final String OTHER_STATEMENTS = "other";
+    public static final int DEFAULT_MAX_STATEMENTS = 100;
+
+    // upper bounds of the latency buckets in milliseconds, slower statements fall in the last bucket
+    private static final long[] BOUNDS = { 1, 5, 10, 50, 100, 500, 1000 };
+
+    private static final Logger logger = Logger.getLogger(StatementMetrics.class);
+
+    private final long slowThreshold;
+    private final int maxStatements;
+    private final AtomicLong statements;
+    private final AtomicLong slowStatements;
+    private final ConcurrentMap<String, Histogram> histograms;
+
+    public StatementMetrics() {
+        this(0);
+    }
+
+    /**
+     * @param slowThreshold the milliseconds above which a statement is logged, 0 to never log
+     */
+    public StatementMetrics(final long slowThreshold) {
+        this(slowThreshold, DEFAULT_MAX_STATEMENTS);
+    }
+
+    /**
+     * @param slowThreshold the milliseconds above which a statement is logged, 0 to never log
+     * @param maxStatements the statement ids timed apart from each other
+     */
+    public StatementMetrics(final long slowThreshold, final int maxStatements) {
+        super();
+        this.slowThreshold = slowThreshold;
+        this.maxStatements = maxStatements;
+        this.statements = new AtomicLong();
+        this.slowStatements = new AtomicLong();
+        this.histograms = new ConcurrentHashMap<String, Histogram>();
+    }
+
+    @Override
+    public Object intercept(final Invocation invocation) throws Throwable {
+        final MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        final long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            record(statement.getId(), (System.nanoTime() - start) / 1000000L);
+        }
+    }
+
+    void record(final String id, final long elapsed) {
+        statements.incrementAndGet();
+        histogram(id).record(elapsed);
+        if (slowThreshold > 0 && elapsed > slowThreshold) {
+            slowStatements.incrementAndGet();
+            logger.warn("Slow statement " + id + " took " + elapsed + " ms");
+        }
+    }
+
+    private Histogram histogram(final String id) {
+        Histogram histogram = histograms.get(id);
+        if (histogram == null) {
+            // the check and the insertion race, so the cap can be passed by a few ids at most
+            final String key = histograms.size() < maxStatements ? id : OTHER_STATEMENTS;
+            histogram = histograms.get(key);
+            if (histogram == null) {
+                final Histogram created = new Histogram();
+                histogram = histograms.putIfAbsent(key, created);
+                if (histogram == null) {
+                    histogram = created;
+                }
+            }
+        }
+        return histogram;
+    }
+
+    @Override
+    public Object plugin(final Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(final Properties properties) {
+    }
+
+    /**
+     * @return the statements executed since startup, as DbStatements and DbStatements.&lt;statement id&gt;, the
+     *         slowest execution of each statement as DbStatementLatencyMax.&lt;statement id&gt; and the non empty
+     *         latency buckets as DbStatementLatency.&lt;statement id&gt;.&lt;upper bound&gt;ms, or .inf for the
+     *         executions slower than the last bound
+     */
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_STATEMENTS, (int) statements.get());
+        metrics.put(METRIC_SLOW_STATEMENTS, (int) slowStatements.get());
+        for (final Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            final String id = entry.getKey();
+            final Histogram histogram = entry.getValue();
+            metrics.put(METRIC_STATEMENTS + "." + id, (int) histogram.count.get());
+            metrics.put(METRIC_LATENCY_MAX + "." + id, (int) histogram.max.get());
+            for (int i = 0; i <= BOUNDS.length; i++) {
+                final long count = histogram.buckets.get(i);
+                if (count > 0) {
+                    final String bucket = i < BOUNDS.length ? BOUNDS[i] + "ms" : "inf";
+                    metrics.put(METRIC_LATENCY + "." + id + "." + bucket, (int) count);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    private static final class Histogram {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+        private void record(final long elapsed) {
+            count.incrementAndGet();
+            int bucket = 0;
+            while (bucket < BOUNDS.length && elapsed > BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            long current = max.get();
+            while (elapsed > current && !max.compareAndSet(current, elapsed)) {
+                current = max.get();
+            }
+        }
+    }
+}
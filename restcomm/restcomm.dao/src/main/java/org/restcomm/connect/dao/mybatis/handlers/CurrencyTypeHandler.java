@@ -0,0 +1,59 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis.handlers;
+
+import java.util.Currency;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+/**
+ * Stores a {@link Currency} as its ISO 4217 code.
+ */
+public final class CurrencyTypeHandler extends BaseTypeHandler<Currency> {
+    @Override
+    public void setNonNullParameter(final PreparedStatement statement, final int index, final Currency parameter,
+            final JdbcType type) throws SQLException {
+        statement.setString(index, parameter.getCurrencyCode());
+    }
+
+    @Override
+    public Currency getNullableResult(final ResultSet result, final String column) throws SQLException {
+        return read(result.getString(column));
+    }
+
+    @Override
+    public Currency getNullableResult(final ResultSet result, final int column) throws SQLException {
+        return read(result.getString(column));
+    }
+
+    @Override
+    public Currency getNullableResult(final CallableStatement statement, final int column) throws SQLException {
+        return read(statement.getString(column));
+    }
+
+    private static Currency read(final String currency) {
+        return currency == null ? null : Currency.getInstance(currency);
+    }
+}
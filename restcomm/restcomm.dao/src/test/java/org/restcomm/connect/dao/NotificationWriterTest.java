@@ -0,0 +1,268 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.entities.Notification;
+import org.restcomm.connect.dao.mybatis.MybatisDaoManager;
+import org.restcomm.connect.dao.mybatis.MybatisNotificationsDao;
+
+/**
+ * Floods a {@link NotificationWriter} with the notifications of an application whose RCML can't be fetched and
+ * checks that only a few batches reach the database, and that the repeats within a call are written once.
+ */
+public final class NotificationWriterTest {
+    private static MybatisDaoManager manager;
+    private CountingNotificationsDao dao;
+
+    @Before
+    public void before() {
+        final InputStream data = getClass().getResourceAsStream("/mybatis.xml");
+        final SqlSessionFactoryBuilder builder = new SqlSessionFactoryBuilder();
+        final SqlSessionFactory factory = builder.build(data);
+        manager = new MybatisDaoManager();
+        manager.start(factory);
+        dao = new CountingNotificationsDao(factory);
+    }
+
+    @After
+    public void after() {
+        manager.shutdown();
+    }
+
+    private static Notification failedFetch(final Sid account, final URI url) {
+        return failedFetch(account, Sid.generate(Sid.Type.CALL), url);
+    }
+
+    private static Notification failedFetch(final Sid account, final Sid call, final URI url) {
+        final Notification.Builder builder = Notification.builder();
+        final Sid sid = Sid.generate(Sid.Type.NOTIFICATION);
+        builder.setSid(sid);
+        builder.setAccountSid(account);
+        builder.setCallSid(call);
+        builder.setApiVersion("2012-04-24");
+        builder.setLog(1);
+        builder.setErrorCode(11200);
+        builder.setMoreInfo(URI.create("/restcomm/errors/11200.html"));
+        builder.setMessageText("Cannot fetch " + url);
+        builder.setMessageDate(DateTime.now());
+        builder.setRequestUrl(url);
+        builder.setRequestMethod("POST");
+        builder.setRequestVariables("");
+        builder.setResponseHeaders("");
+        builder.setResponseBody("");
+        builder.setUri(URI.create("/2012-04-24/Accounts/" + account + "/Notifications/" + sid));
+        return builder.build();
+    }
+
+    @Test
+    public void burstOfFailingFetchesIsBatched() throws Exception {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final URI url = URI.create("http://127.0.0.1:8090/unreachable.xml");
+        // only full batches are flushed until stopped
+        final NotificationWriter writer = new NotificationWriter(dao.proxy(), 100, 60000, 60000, 10000);
+        writer.start();
+        final int threads = 10;
+        final int callsPerThread = 100;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < callsPerThread; j++) {
+                        writer.addNotification(failedFetch(account, url));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        writer.stop();
+        // every call keeps its notification, in about one batch per hundred of them
+        assertEquals(threads * callsPerThread, manager.getNotificationsDao().getNotifications(account).size());
+        assertTrue(dao.batches.get() <= threads * callsPerThread / 100 + 1);
+        final Map<String, Integer> metrics = writer.getMetrics();
+        assertEquals(threads * callsPerThread, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_WRITTEN));
+        assertEquals(0, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_DROPPED));
+        manager.getNotificationsDao().removeNotifications(account);
+    }
+
+    @Test
+    public void repeatsWithinACallAreWrittenOnce() throws Exception {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final Sid call = Sid.generate(Sid.Type.CALL);
+        final URI url = URI.create("http://127.0.0.1:8090/unreachable.xml");
+        final NotificationWriter writer = new NotificationWriter(dao.proxy(), 100, 100, 60000, 10000);
+        writer.start();
+        final int threads = 10;
+        final int repeatsPerThread = 100;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < repeatsPerThread; j++) {
+                        writer.addNotification(failedFetch(account, call, url));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        writer.stop();
+        // the first notification and the summary of its repeats
+        final List<Notification> stored = manager.getNotificationsDao().getNotificationsByCall(call);
+        assertEquals(2, stored.size());
+        assertTrue(dao.batches.get() <= 2);
+        final Map<String, Integer> metrics = writer.getMetrics();
+        assertEquals(2, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_WRITTEN));
+        assertEquals(threads * repeatsPerThread - 1, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_DEDUPLICATED));
+        assertEquals(0, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_DROPPED));
+        boolean summarized = false;
+        for (final Notification notification : stored) {
+            summarized |= notification.getMessageText().endsWith("(repeated " + (threads * repeatsPerThread - 1) + " more times in 60 seconds)");
+        }
+        assertTrue(summarized);
+        manager.getNotificationsDao().removeNotifications(account);
+    }
+
+    @Test
+    public void distinctNotificationsAreBatched() {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final NotificationWriter writer = new NotificationWriter(dao.proxy(), 50, 60000, 60000, 10000);
+        for (int i = 0; i < 200; i++) {
+            writer.addNotification(failedFetch(account, URI.create("http://127.0.0.1:8090/unreachable-" + i + ".xml")));
+        }
+        writer.flush();
+        assertEquals(200, manager.getNotificationsDao().getNotifications(account).size());
+        assertEquals(1, dao.batches.get());
+        manager.getNotificationsDao().removeNotifications(account);
+    }
+
+    @Test
+    public void notificationsAreDroppedWhenOverloaded() {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        // never flushed until stopped, so the queue fills up
+        final NotificationWriter writer = new NotificationWriter(dao.proxy(), 1000, 60000, 60000, 10);
+        for (int i = 0; i < 25; i++) {
+            writer.addNotification(failedFetch(account, URI.create("http://127.0.0.1:8090/unreachable-" + i + ".xml")));
+        }
+        final Map<String, Integer> metrics = writer.getMetrics();
+        assertEquals(10, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_QUEUED));
+        assertEquals(15, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_DROPPED));
+        writer.stop();
+        assertEquals(10, manager.getNotificationsDao().getNotifications(account).size());
+        manager.getNotificationsDao().removeNotifications(account);
+    }
+
+    @Test
+    public void repeatsAfterTheWindowAreWrittenAgain() {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final Sid call = Sid.generate(Sid.Type.CALL);
+        final URI url = URI.create("http://127.0.0.1:8090/unreachable.xml");
+        final NotificationWriter writer = new NotificationWriter(dao.proxy(), 100, 60000, 100, 10000);
+        final long now = System.currentTimeMillis();
+        writer.addNotification(failedFetch(account, call, url), now);
+        writer.addNotification(failedFetch(account, call, url), now + 50);
+        writer.addNotification(failedFetch(account, call, url), now + 200);
+        writer.stop();
+        // first, summary of the first window, first of the second window
+        assertEquals(3, manager.getNotificationsDao().getNotifications(account).size());
+        manager.getNotificationsDao().removeNotifications(account);
+    }
+
+    @Test
+    public void failedBatchIsRetriedOnce() {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final NotificationWriter writer = new NotificationWriter(dao.proxy(), 100, 60000, 60000, 10000);
+        for (int i = 0; i < 5; i++) {
+            writer.addNotification(failedFetch(account, URI.create("http://127.0.0.1:8090/unreachable-" + i + ".xml")));
+        }
+        dao.failures.set(1);
+        writer.flush();
+        assertEquals(0, (int) writer.getMetrics().get(NotificationWriter.METRIC_NOTIFICATIONS_DROPPED));
+        writer.flush();
+        assertEquals(5, manager.getNotificationsDao().getNotifications(account).size());
+
+        // a batch failing twice is dropped
+        for (int i = 0; i < 5; i++) {
+            writer.addNotification(failedFetch(account, URI.create("http://127.0.0.1:8090/unreachable-" + i + ".xml")));
+        }
+        dao.failures.set(2);
+        writer.flush();
+        writer.flush();
+        final Map<String, Integer> metrics = writer.getMetrics();
+        assertEquals(5, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_WRITTEN));
+        assertEquals(5, (int) metrics.get(NotificationWriter.METRIC_NOTIFICATIONS_DROPPED));
+        assertEquals(5, manager.getNotificationsDao().getNotifications(account).size());
+        manager.getNotificationsDao().removeNotifications(account);
+    }
+
+    // counts the batches that reach the database, failing the next ones if asked to
+    private static final class CountingNotificationsDao implements InvocationHandler {
+        private final NotificationsDao notifications;
+        private final AtomicInteger batches = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private CountingNotificationsDao(final SqlSessionFactory sessions) {
+            this.notifications = new MybatisNotificationsDao(sessions);
+        }
+
+        private NotificationsDao proxy() {
+            return (NotificationsDao) Proxy.newProxyInstance(NotificationsDao.class.getClassLoader(),
+                    new Class<?>[] { NotificationsDao.class }, this);
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if ("addNotifications".equals(method.getName())) {
+                batches.incrementAndGet();
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("The database is unavailable");
+                }
+            }
+            try {
+                return method.invoke(notifications, args);
+            } catch (final InvocationTargetException exception) {
+                throw exception.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.CallDetailRecordsDao;
+import org.restcomm.connect.dao.NotificationsDao;
+import org.restcomm.connect.dao.entities.CallDetailRecord;
+import org.restcomm.connect.dao.entities.CallDetailRecordFilter;
+import org.restcomm.connect.dao.entities.Notification;
+
+/**
+ * Fills an account with call detail records, most of them past its retention period, and checks that archiving leaves
+ * only the records within it in the table. The number of records is set with the cdr.archiver.records system
+ * property.
+ */
+public class CallDetailRecordArchiverTest extends DaoTest {
+    private static final int RECORDS = Integer.getInteger("cdr.archiver.records", 2000);
+    // one in ten records is recent
+    private static final int RECENT = RECORDS / 10;
+
+    private SqlSessionFactory sessions;
+    private MybatisDaoManager manager;
+    private Sid account;
+    private Sid other;
+
+    @Before
+    public void before() {
+        sandboxRoot = createTempDir("cdrArchiverTest");
+        final InputStream data = getClass().getResourceAsStream("/mybatis.xml");
+        sessions = new SqlSessionFactoryBuilder().build(data);
+        manager = new MybatisDaoManager();
+        manager.start(sessions);
+        account = Sid.generate(Sid.Type.ACCOUNT);
+        other = Sid.generate(Sid.Type.ACCOUNT);
+    }
+
+    @After
+    public void after() {
+        manager.getCallDetailRecordsDao().removeCallDetailRecords(account);
+        manager.getCallDetailRecordsDao().removeCallDetailRecords(other);
+        manager.shutdown();
+        removeTempDir(sandboxRoot.getAbsolutePath());
+    }
+
+    private static CallDetailRecord cdr(final Sid account, final DateTime created) {
+        final CallDetailRecord.Builder builder = CallDetailRecord.builder();
+        final Sid sid = Sid.generate(Sid.Type.CALL);
+        builder.setSid(sid);
+        builder.setDateCreated(created);
+        builder.setAccountSid(account);
+        builder.setTo("+12223334444");
+        builder.setFrom("+17778889999");
+        builder.setStatus("completed");
+        builder.setStartTime(created);
+        builder.setPriceUnit(Currency.getInstance("USD"));
+        builder.setDirection("inbound");
+        builder.setApiVersion("2012-04-24");
+        builder.setUri(URI.create("/2012-04-24/Accounts/" + account + "/Calls/" + sid));
+        return builder.build();
+    }
+
+    private Notification notification(final Sid call) {
+        final URI url = URI.create("http://127.0.0.1:8080/restcomm/demos/hello-world.xml");
+        final Notification.Builder builder = Notification.builder();
+        builder.setSid(Sid.generate(Sid.Type.NOTIFICATION));
+        builder.setAccountSid(account);
+        builder.setCallSid(call);
+        builder.setApiVersion("2012-04-24");
+        builder.setLog(0);
+        builder.setErrorCode(11100);
+        builder.setMoreInfo(url);
+        builder.setMessageText("hello world!");
+        builder.setMessageDate(DateTime.now());
+        builder.setRequestUrl(url);
+        builder.setRequestMethod("GET");
+        builder.setRequestVariables("hello world!");
+        builder.setUri(url);
+        return builder.build();
+    }
+
+    // the number of calls of the account, as counted by the Calls endpoint
+    private int count(final CallDetailRecordsDao cdrs, final Sid account) throws Exception {
+        final CallDetailRecordFilter filter = new CallDetailRecordFilter(account.toString(), null, null, null, null, null,
+                null, null, null, 50, 0);
+        return cdrs.getTotalCallDetailRecords(filter);
+    }
+
+    @Test
+    public void expiredRecordsAreArchived() throws Exception {
+        final CallDetailRecordsDao cdrs = manager.getCallDetailRecordsDao();
+        final NotificationsDao notifications = manager.getNotificationsDao();
+        final DateTime now = DateTime.now();
+        Sid expiredCall = null;
+        for (int i = 0; i < RECORDS; i++) {
+            final CallDetailRecord cdr = cdr(account, i < RECENT ? now.minusDays(1) : now.minusDays(60));
+            cdrs.addCallDetailRecord(cdr);
+            if (i == RECENT) {
+                expiredCall = cdr.getSid();
+                notifications.addNotification(notification(expiredCall));
+            }
+        }
+        // the retention of the account doesn't apply to the others
+        for (int i = 0; i < 10; i++) {
+            cdrs.addCallDetailRecord(cdr(other, now.minusDays(60)));
+        }
+        assertEquals(RECORDS, count(cdrs, account));
+
+        final CallDetailRecordArchiver archiver = new CallDetailRecordArchiver(sessions, sandboxRoot, 500, 0, 0, 0,
+                Collections.singletonMap(account, 30));
+        assertEquals(RECORDS - RECENT, archiver.archive());
+        // the table only keeps the records within the retention period, however many were added
+        assertEquals(RECENT, count(cdrs, account));
+        assertEquals(RECENT, cdrs.getCallDetailRecordsByAccountSid(account).size());
+        assertEquals(10, cdrs.getCallDetailRecordsByAccountSid(other).size());
+        assertTrue(notifications.getNotificationsByCall(expiredCall).isEmpty());
+        final Map<String, Integer> metrics = archiver.getMetrics();
+        assertEquals(RECORDS - RECENT, (int) metrics.get(CallDetailRecordArchiver.METRIC_ARCHIVED));
+        assertEquals(1, (int) metrics.get(CallDetailRecordArchiver.METRIC_NOTIFICATIONS_ARCHIVED));
+
+        final File[] files = sandboxRoot.listFiles();
+        assertEquals(1, files.length);
+        int records = 0;
+        int archivedNotifications = 0;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(files[0])), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("\"restcomm_call_detail_records\"")) {
+                    records++;
+                } else if (line.contains("\"restcomm_notifications\"") && line.contains(expiredCall.toString())) {
+                    archivedNotifications++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(RECORDS - RECENT, records);
+        assertEquals(1, archivedNotifications);
+        // nothing is left to archive
+        assertEquals(0, archiver.archive());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.NotificationsDao;
+
+/**
+ * Runs statements through each {@link ConnectionPool} and checks what {@link StatementMetrics} and the pool report.
+ */
+public final class ConnectionPoolTest {
+    private static final String GET_NOTIFICATIONS = "org.mobicents.servlet.sip.restcomm.dao.NotificationsDao.getNotifications";
+
+    private static void query(final ConnectionPool pool) {
+        final InputStream data = ConnectionPoolTest.class.getResourceAsStream("/mybatis.xml");
+        final SqlSessionFactory factory = new SqlSessionFactoryBuilder().build(data);
+        final StatementMetrics statements = new StatementMetrics();
+        factory.getConfiguration().addInterceptor(statements);
+        final Environment environment = factory.getConfiguration().getEnvironment();
+        final PooledDataSource pooled = (PooledDataSource) environment.getDataSource();
+        final BaseConfiguration settings = new BaseConfiguration();
+        settings.setProperty("maximum-pool-size", 2);
+        final DataSource dataSource = pool.start(pooled.getDriver(), pooled.getUrl(), pooled.getUsername(), pooled.getPassword(), settings);
+        factory.getConfiguration().setEnvironment(new Environment(environment.getId(), environment.getTransactionFactory(), dataSource));
+        try {
+            final NotificationsDao notifications = new MybatisNotificationsDao(factory);
+            final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+            for (int i = 0; i < 10; i++) {
+                notifications.getNotifications(account);
+            }
+            final Map<String, Integer> metrics = statements.getMetrics();
+            assertEquals(10, (int) metrics.get(StatementMetrics.METRIC_STATEMENTS + "." + GET_NOTIFICATIONS));
+            assertEquals(0, (int) metrics.get(StatementMetrics.METRIC_SLOW_STATEMENTS));
+            final Map<String, Integer> connections = pool.getMetrics();
+            assertEquals(10, (int) connections.get(MeteredDataSource.METRIC_CONNECTIONS));
+            assertEquals(0, (int) connections.get(MeteredDataSource.METRIC_FAILURES));
+            assertEquals(0, (int) connections.get(ConnectionPool.METRIC_ACTIVE));
+            assertTrue(connections.get(ConnectionPool.METRIC_IDLE) > 0);
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void hikariPool() {
+        query(new HikariConnectionPool());
+    }
+
+    @Test
+    public void mybatisPool() {
+        query(new MybatisConnectionPool());
+    }
+
+    @Test
+    public void latencyIsBucketed() {
+        final StatementMetrics statements = new StatementMetrics(100);
+        statements.record("fast", 0);
+        statements.record("fast", 3);
+        statements.record("slow", 250);
+        statements.record("slow", 5000);
+        final Map<String, Integer> metrics = statements.getMetrics();
+        assertEquals(4, (int) metrics.get(StatementMetrics.METRIC_STATEMENTS));
+        assertEquals(2, (int) metrics.get(StatementMetrics.METRIC_SLOW_STATEMENTS));
+        assertEquals(1, (int) metrics.get(StatementMetrics.METRIC_LATENCY + ".fast.1ms"));
+        assertEquals(1, (int) metrics.get(StatementMetrics.METRIC_LATENCY + ".fast.5ms"));
+        assertEquals(1, (int) metrics.get(StatementMetrics.METRIC_LATENCY + ".slow.500ms"));
+        assertEquals(1, (int) metrics.get(StatementMetrics.METRIC_LATENCY + ".slow.inf"));
+        assertEquals(5000, (int) metrics.get(StatementMetrics.METRIC_LATENCY_MAX + ".slow"));
+    }
+
+    @Test
+    public void statementIdsAreCapped() {
+        final StatementMetrics statements = new StatementMetrics(0, 2);
+        statements.record("first", 0);
+        statements.record("second", 0);
+        statements.record("third", 0);
+        statements.record("fourth", 0);
+        statements.record("first", 0);
+        final Map<String, Integer> metrics = statements.getMetrics();
+        assertEquals(5, (int) metrics.get(StatementMetrics.METRIC_STATEMENTS));
+        assertEquals(2, (int) metrics.get(StatementMetrics.METRIC_STATEMENTS + ".first"));
+        assertEquals(2, (int) metrics.get(StatementMetrics.METRIC_STATEMENTS + "." + StatementMetrics.OTHER_STATEMENTS));
+        assertNull(metrics.get(StatementMetrics.METRIC_STATEMENTS + ".third"));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.CallDetailRecordsDao;
+import org.restcomm.connect.dao.entities.CallDetailRecord;
+
+/**
+ * Writes the call detail records of many concurrent calls to the embedded database through a {@link GroupCommit},
+ * and checks that they are committed in batches, in order, and that failed writes are kept or dropped as they should.
+ */
+public class GroupCommitTest extends DaoTest {
+    private static final String namespace = "org.mobicents.servlet.sip.restcomm.dao.CallDetailRecordsDao.";
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_THREAD = 50;
+
+    private SqlSessionFactory sessions;
+
+    @Before
+    public void before() throws Exception {
+        sandboxRoot = createTempDir("groupCommitTest");
+        setupSandbox(getClass().getResource("/callDetailRecordsDao").getFile(), sandboxRoot);
+        final InputStream data = new FileInputStream(sandboxRoot.getPath() + "/mybatis_updated.xml");
+        sessions = new SqlSessionFactoryBuilder().build(data);
+    }
+
+    @After
+    public void after() throws Exception {
+        removeTempDir(sandboxRoot.getAbsolutePath());
+    }
+
+    private static CallDetailRecord cdr(final Sid account, final String status) {
+        final CallDetailRecord.Builder builder = CallDetailRecord.builder();
+        final Sid sid = Sid.generate(Sid.Type.CALL);
+        builder.setSid(sid);
+        builder.setDateCreated(DateTime.now());
+        builder.setAccountSid(account);
+        builder.setTo("+12223334444");
+        builder.setFrom("+17778889999");
+        builder.setStatus(status);
+        builder.setStartTime(DateTime.now());
+        builder.setPriceUnit(Currency.getInstance("USD"));
+        builder.setDirection("inbound");
+        builder.setApiVersion("2012-04-24");
+        builder.setUri(URI.create("/2012-04-24/Accounts/" + account + "/Calls/" + sid));
+        return builder.build();
+    }
+
+    // every call creates its record, then updates it when answered and when completed
+    private void calls(final CallDetailRecordsDao cdrs, final Sid account) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < CALLS_PER_THREAD; j++) {
+                        final CallDetailRecord cdr = cdr(account, "ringing");
+                        cdrs.addCallDetailRecord(cdr);
+                        cdrs.updateCallDetailRecord(cdr.setStatus("in-progress"));
+                        cdrs.updateCallDetailRecord(cdr.setStatus("completed").setDuration(1).setPrice(new BigDecimal("0.01")));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+    }
+
+    @Test
+    public void groupCommitCoalescesCallWrites() throws Exception {
+        final GroupCommit writes = new GroupCommit(sessions, 10, 500);
+        writes.start();
+        final Sid grouped = Sid.generate(Sid.Type.ACCOUNT);
+        final CallDetailRecordsDao cdrs = new MybatisCallDetailRecordsDao(sessions, writes);
+        calls(cdrs, grouped);
+        writes.stop();
+
+        final Map<String, Integer> metrics = writes.getMetrics();
+        final int total = THREADS * CALLS_PER_THREAD;
+        assertEquals(3 * total, (int) metrics.get(GroupCommit.METRIC_WRITES));
+        assertEquals(0, (int) metrics.get(GroupCommit.METRIC_FAILURES));
+        assertEquals(0, (int) metrics.get(GroupCommit.METRIC_QUEUED));
+        // each of the concurrent callers has at most one write waiting in a batch, so batches hold several writes
+        assertTrue(metrics.get(GroupCommit.METRIC_COMMITS) < total);
+        assertTrue(metrics.get(GroupCommit.METRIC_COMMITS) > 0);
+        assertEquals(total, cdrs.getCallDetailRecordsByAccountSid(grouped).size());
+        for (final CallDetailRecord cdr : cdrs.getCallDetailRecordsByAccountSid(grouped)) {
+            assertEquals("completed", cdr.getStatus());
+        }
+    }
+
+    @Test
+    public void readsSeeQueuedWrites() {
+        // a window long enough that only the read can commit the write
+        final GroupCommit writes = new GroupCommit(sessions, 60000, 500);
+        writes.start();
+        final CallDetailRecordsDao cdrs = new MybatisCallDetailRecordsDao(sessions, writes);
+        final CallDetailRecord cdr = cdr(Sid.generate(Sid.Type.ACCOUNT), "queued");
+        cdrs.addCallDetailRecord(cdr);
+        assertEquals(1, (int) writes.getMetrics().get(GroupCommit.METRIC_QUEUED));
+        assertEquals("queued", cdrs.getCallDetailRecord(cdr.getSid()).getStatus());
+        assertEquals(0, (int) writes.getMetrics().get(GroupCommit.METRIC_QUEUED));
+        writes.stop();
+    }
+
+    @Test
+    public void queuedWritesAreCommittedOnStop() {
+        final GroupCommit writes = new GroupCommit(sessions, 60000, 500);
+        writes.start();
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final CallDetailRecordsDao cdrs = new MybatisCallDetailRecordsDao(sessions, writes);
+        for (int i = 0; i < 10; i++) {
+            cdrs.addCallDetailRecord(cdr(account, "queued"));
+        }
+        writes.stop();
+        assertEquals(10, new MybatisCallDetailRecordsDao(sessions).getCallDetailRecordsByAccountSid(account).size());
+        assertEquals(1, (int) writes.getMetrics().get(GroupCommit.METRIC_COMMITS));
+    }
+
+    @Test
+    public void failedWritesAreTriedAgain() {
+        final GroupCommit writes = new GroupCommit(sessions, 60000, 500, 10, 60000);
+        writes.start();
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final CallDetailRecord cdr = cdr(account, "completed");
+        final AtomicBoolean down = new AtomicBoolean(true);
+        writes.write(new GroupCommit.Write() {
+            @Override
+            public void execute(final SqlSession session) {
+                if (down.get()) {
+                    throw new PersistenceException("database unreachable");
+                }
+                session.insert(namespace + "addCallDetailRecord", cdr);
+            }
+        });
+        writes.flush();
+        assertEquals(1, (int) writes.getMetrics().get(GroupCommit.METRIC_DEAD_LETTERS));
+        assertEquals(0, new MybatisCallDetailRecordsDao(sessions).getCallDetailRecordsByAccountSid(account).size());
+        // the database is back
+        down.set(false);
+        assertEquals(0, writes.retryDeadLetters());
+        assertEquals(1, new MybatisCallDetailRecordsDao(sessions).getCallDetailRecordsByAccountSid(account).size());
+        assertEquals(0, (int) writes.getMetrics().get(GroupCommit.METRIC_FAILURES));
+        writes.stop();
+    }
+
+    @Test
+    public void olderFailedUpdateDoesNotOverwriteNewerOne() {
+        final GroupCommit writes = new GroupCommit(sessions, 60000, 500, 10, 60000);
+        writes.start();
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final CallDetailRecordsDao cdrs = new MybatisCallDetailRecordsDao(sessions, writes);
+        final CallDetailRecord cdr = cdr(account, "ringing");
+        cdrs.addCallDetailRecord(cdr);
+        writes.flush();
+        final CallDetailRecord answered = cdr.setStatus("in-progress");
+        // the database is unreachable for the in-progress update only
+        final AtomicBoolean down = new AtomicBoolean(true);
+        writes.write(new GroupCommit.Write(cdr.getSid().toString(), true) {
+            @Override
+            public void execute(final SqlSession session) {
+                if (down.get()) {
+                    throw new PersistenceException("database unreachable");
+                }
+                session.update(namespace + "updateCallDetailRecord", answered);
+            }
+        });
+        writes.flush();
+        assertEquals(1, (int) writes.getMetrics().get(GroupCommit.METRIC_DEAD_LETTERS));
+        // the completed update waits behind the failed one of its record and replaces it
+        cdrs.updateCallDetailRecord(cdr.setStatus("completed"));
+        writes.flush();
+        assertEquals(1, (int) writes.getMetrics().get(GroupCommit.METRIC_DEAD_LETTERS));
+        assertEquals("completed", cdrs.getCallDetailRecord(cdr.getSid()).getStatus());
+        assertEquals(0, (int) writes.getMetrics().get(GroupCommit.METRIC_DEAD_LETTERS));
+        // the failed update is not tried again once the database is back
+        down.set(false);
+        assertEquals(0, writes.retryDeadLetters());
+        assertEquals("completed", cdrs.getCallDetailRecord(cdr.getSid()).getStatus());
+        assertEquals(0, (int) writes.getMetrics().get(GroupCommit.METRIC_FAILURES));
+        writes.stop();
+    }
+
+    @Test
+    public void refusedWritesDoNotHoldBackTheOthers() {
+        final GroupCommit writes = new GroupCommit(sessions, 60000, 500, 10, 60000);
+        writes.start();
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final CallDetailRecord duplicate = cdr(account, "completed");
+        new MybatisCallDetailRecordsDao(sessions).addCallDetailRecord(duplicate);
+        final CallDetailRecord other = cdr(account, "completed");
+        final AtomicBoolean down = new AtomicBoolean(true);
+        for (final CallDetailRecord cdr : new CallDetailRecord[] { duplicate, other }) {
+            writes.write(new GroupCommit.Write() {
+                @Override
+                public void execute(final SqlSession session) {
+                    if (down.get()) {
+                        throw new PersistenceException("database unreachable");
+                    }
+                    session.insert(namespace + "addCallDetailRecord", cdr);
+                }
+            });
+        }
+        writes.flush();
+        assertEquals(2, (int) writes.getMetrics().get(GroupCommit.METRIC_DEAD_LETTERS));
+        down.set(false);
+        // the duplicate violates the primary key and is dropped, the write behind it is committed
+        assertEquals(0, writes.retryDeadLetters());
+        assertEquals(1, (int) writes.getMetrics().get(GroupCommit.METRIC_REJECTED));
+        assertEquals(0, (int) writes.getMetrics().get(GroupCommit.METRIC_FAILURES));
+        assertEquals(2, new MybatisCallDetailRecordsDao(sessions).getCallDetailRecordsByAccountSid(account).size());
+        writes.stop();
+    }
+}
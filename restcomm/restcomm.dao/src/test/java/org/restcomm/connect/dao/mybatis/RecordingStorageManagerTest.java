@@ -0,0 +1,206 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.commons.recording.RecordingLayout;
+import org.restcomm.connect.dao.RecordingStorageManager;
+import org.restcomm.connect.dao.RecordingsDao;
+
+/**
+ * Runs the migration, orphan detection and retention over a synthetic flat recordings directory. The directory holds
+ * 10000 files by default, run with -Drecordings.test.files=1000000 for the full size test.
+ */
+public final class RecordingStorageManagerTest extends DaoTest {
+    private static final Logger logger = Logger.getLogger(RecordingStorageManagerTest.class);
+    private static final int FILES = Integer.getInteger("recordings.test.files", 10000);
+
+    private MybatisDaoManager manager;
+    private SqlSessionFactory sessions;
+    private File directory;
+
+    @Before
+    public void before() {
+        final InputStream data = getClass().getResourceAsStream("/mybatis.xml");
+        final SqlSessionFactoryBuilder builder = new SqlSessionFactoryBuilder();
+        final SqlSessionFactory factory = builder.build(data);
+        manager = new MybatisDaoManager();
+        manager.start(factory);
+        sessions = factory;
+        directory = createTempDir("recordings");
+    }
+
+    @After
+    public void after() {
+        manager.shutdown();
+        removeTempDir(directory.getAbsolutePath());
+    }
+
+    // straight to the table, the DAO would resolve the file URI against the HTTP connectors of the container
+    private void addRecording(final SqlSession session, final Sid sid, final Sid account, final DateTime dateCreated) {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("sid", sid.toString());
+        map.put("date_created", dateCreated.toDate());
+        map.put("date_updated", dateCreated.toDate());
+        map.put("account_sid", account.toString());
+        map.put("call_sid", Sid.generate(Sid.Type.CALL).toString());
+        map.put("duration", 1.0);
+        map.put("api_version", "2012-04-24");
+        map.put("uri", "/2012-04-24/Accounts/" + account + "/Recordings/" + sid);
+        map.put("file_uri", "/restcomm/recordings/" + sid + ".wav");
+        session.insert("org.mobicents.servlet.sip.restcomm.dao.RecordingsDao.addRecording", map);
+    }
+
+    @Test
+    public void shardsAreSmall() {
+        final RecordingLayout layout = new RecordingLayout(directory.toURI().toString(), true);
+        final Map<String, Integer> shards = new HashMap<String, Integer>();
+        int largest = 0;
+        for (int i = 0; i < 1000000; i++) {
+            final String path = layout.path(Sid.generate(Sid.Type.RECORDING) + ".wav");
+            final String shard = path.substring(0, path.lastIndexOf('/'));
+            final Integer count = shards.get(shard);
+            final int files = count == null ? 1 : count + 1;
+            shards.put(shard, files);
+            largest = Math.max(largest, files);
+        }
+        assertTrue(shards.size() > 65000);
+        // about 15 files per directory on average
+        assertTrue(largest < 60);
+    }
+
+    @Test
+    public void migrateAndMaintain() throws Exception {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final Sid shortLivedAccount = Sid.generate(Sid.Type.ACCOUNT);
+        final RecordingsDao recordings = manager.getRecordingsDao();
+        final long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        final List<Sid> sids = new ArrayList<Sid>(FILES);
+        int kept = 0;
+        int expired = 0;
+        long start = System.currentTimeMillis();
+        final SqlSession session = sessions.openSession(ExecutorType.BATCH);
+        for (int i = 0; i < FILES; i++) {
+            final Sid sid = Sid.generate(Sid.Type.RECORDING);
+            final File file = new File(directory, sid + ".wav");
+            file.createNewFile();
+            file.setLastModified(old);
+            sids.add(sid);
+            // one recording out of ten is still in the data store, one out of a hundred is past its retention
+            if (i % 100 == 0) {
+                addRecording(session, sid, shortLivedAccount, DateTime.now().minusDays(40));
+                expired++;
+            } else if (i % 10 == 0) {
+                addRecording(session, sid, account, DateTime.now().minusDays(40));
+                kept++;
+            }
+        }
+        session.commit();
+        session.close();
+        logger.info("Created " + FILES + " recordings in " + (System.currentTimeMillis() - start) + " ms");
+
+        final RecordingLayout layout = new RecordingLayout(directory.toURI().toString(), true);
+        final Map<Sid, Integer> retention = new HashMap<Sid, Integer>();
+        retention.put(shortLivedAccount, 30);
+        final RecordingStorageManager storage = new RecordingStorageManager(layout, recordings, true, 0,
+                TimeUnit.DAYS.toMillis(1), true, 0, retention);
+
+        start = System.currentTimeMillis();
+        assertEquals(FILES, storage.migrate());
+        logger.info("Migrated " + FILES + " recordings in " + (System.currentTimeMillis() - start) + " ms");
+        assertEquals(0, directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(".wav");
+            }
+        }).length);
+        for (final Sid sid : sids.subList(0, Math.min(100, FILES))) {
+            final File file = layout.locate(sid + ".wav");
+            assertNotNull(file);
+            assertEquals(layout.file(sid + ".wav"), file);
+        }
+        // nothing left to move
+        assertEquals(0, storage.migrate());
+
+        start = System.currentTimeMillis();
+        storage.maintain();
+        logger.info("Checked " + FILES + " recordings in " + (System.currentTimeMillis() - start) + " ms");
+        final Map<String, Integer> metrics = storage.getMetrics();
+        assertEquals(FILES, (int) metrics.get(RecordingStorageManager.METRIC_RECORDINGS_MIGRATED));
+        assertEquals(FILES - kept - expired, (int) metrics.get(RecordingStorageManager.METRIC_RECORDING_ORPHANS));
+        assertEquals(FILES - kept - expired, (int) metrics.get(RecordingStorageManager.METRIC_RECORDING_ORPHANS_DELETED));
+        assertEquals(expired, (int) metrics.get(RecordingStorageManager.METRIC_RECORDINGS_EXPIRED));
+        assertEquals(kept, recordings.getRecordings(account).size());
+        assertTrue(recordings.getRecordings(shortLivedAccount).isEmpty());
+        assertNotNull(layout.locate(sids.get(10) + ".wav"));
+        assertNull(layout.locate(sids.get(0) + ".wav"));
+        assertNull(layout.locate(sids.get(1) + ".wav"));
+        recordings.removeRecordings(account);
+    }
+
+    @Test
+    public void recentFilesAreNotOrphans() throws Exception {
+        final RecordingLayout layout = new RecordingLayout(directory.toURI().toString(), true);
+        // being written by the media server, its row comes when the recording is over
+        final File recording = new File(layout.uri(Sid.generate(Sid.Type.RECORDING) + ".wav"));
+        recording.createNewFile();
+        final RecordingStorageManager storage = new RecordingStorageManager(layout, manager.getRecordingsDao(), true, 0,
+                TimeUnit.DAYS.toMillis(1), true, 0, new HashMap<Sid, Integer>());
+        storage.maintain();
+        assertTrue(recording.exists());
+        assertEquals(0, (int) storage.getMetrics().get(RecordingStorageManager.METRIC_RECORDING_ORPHANS));
+    }
+
+    @Test
+    public void flatLayoutIsLeftAlone() throws Exception {
+        final RecordingLayout layout = new RecordingLayout(directory.toURI().toString(), false);
+        final String name = Sid.generate(Sid.Type.RECORDING) + ".wav";
+        final File recording = new File(layout.uri(name));
+        recording.createNewFile();
+        assertEquals(new File(directory, name), recording);
+        assertEquals(recording, layout.locate(name));
+        assertFalse(new RecordingLayout(directory.toURI().toString(), true).file(name).exists());
+        assertNotNull(new RecordingLayout(directory.toURI().toString(), true).locate(name));
+    }
+}
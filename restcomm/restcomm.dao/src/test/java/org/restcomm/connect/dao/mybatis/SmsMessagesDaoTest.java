@@ -24,6 +24,8 @@ import java.math.BigDecimal;
 import java.net.URI;
 import java.text.ParseException;
 import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
@@ -114,6 +116,28 @@ public final class SmsMessagesDaoTest {
         assertTrue(messages.getSmsMessage(sid) == null);
     }
 
+    @Test
+    public void updateStatusesInBatch() {
+        final SmsMessagesDao messages = manager.getSmsMessagesDao();
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final SmsMessage delivered = createSms(account, SmsMessage.Direction.OUTBOUND_API, 0);
+        final SmsMessage failed = createSms(account, SmsMessage.Direction.OUTBOUND_API, 1);
+        final SmsMessage untouched = createSms(account, SmsMessage.Direction.OUTBOUND_API, 2);
+        messages.addSmsMessage(delivered);
+        messages.addSmsMessage(failed);
+        messages.addSmsMessage(untouched);
+        final Map<Sid, SmsMessage.Status> statuses = new LinkedHashMap<Sid, SmsMessage.Status>();
+        statuses.put(delivered.getSid(), SmsMessage.Status.DELIVERED);
+        statuses.put(failed.getSid(), SmsMessage.Status.FAILED);
+        // a receipt for a message that was removed in the meantime
+        statuses.put(Sid.generate(Sid.Type.SMS_MESSAGE), SmsMessage.Status.DELIVERED);
+        messages.updateSmsMessageStatuses(statuses);
+        assertEquals(SmsMessage.Status.DELIVERED, messages.getSmsMessage(delivered.getSid()).getStatus());
+        assertEquals(SmsMessage.Status.FAILED, messages.getSmsMessage(failed.getSid()).getStatus());
+        assertEquals(SmsMessage.Status.SENDING, messages.getSmsMessage(untouched.getSid()).getStatus());
+        messages.removeSmsMessages(account);
+    }
+
     private SmsMessage createSms(Sid account, SmsMessage.Direction direction, int i) {
         final Sid sid = Sid.generate(Sid.Type.SMS_MESSAGE);
         final URI url = URI.create("2012-04-24/Accounts/Acoount/SMS/Messages/unique-id.json");
@@ -0,0 +1,176 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.dao.mybatis;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.sql.Statement;
+import java.util.Currency;
+import java.util.List;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.joda.time.DateTime;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.CallDetailRecordsDao;
+import org.restcomm.connect.dao.SmsMessagesDao;
+import org.restcomm.connect.dao.UsageDao;
+import org.restcomm.connect.dao.entities.CallDetailRecord;
+import org.restcomm.connect.dao.entities.SmsMessage;
+import org.restcomm.connect.dao.entities.Usage;
+
+/**
+ * Verifies that the usage rollups follow the call detail records and sms messages they are built from.
+ */
+public final class UsageDaoTest {
+    private static MybatisDaoManager manager;
+    private SqlSessionFactory factory;
+
+    public UsageDaoTest() {
+        super();
+    }
+
+    @Before
+    public void before() {
+        final InputStream data = getClass().getResourceAsStream("/mybatis.xml");
+        final SqlSessionFactoryBuilder builder = new SqlSessionFactoryBuilder();
+        factory = builder.build(data);
+        manager = new MybatisDaoManager();
+        manager.start(factory);
+    }
+
+    @After
+    public void after() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void callUsageIsRolledUpOnCompletion() {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final CallDetailRecordsDao cdrs = manager.getCallDetailRecordsDao();
+        final UsageDao usage = manager.getUsageDao();
+        CallDetailRecord first = createCdr(account);
+        CallDetailRecord second = createCdr(account);
+        cdrs.addCallDetailRecord(first);
+        cdrs.addCallDetailRecord(second);
+        // Complete both calls.
+        first = first.setStatus("completed").setDuration(30).setPrice(new BigDecimal("0.50"));
+        second = second.setStatus("completed").setDuration(12).setPrice(new BigDecimal("0.25"));
+        cdrs.updateCallDetailRecord(first);
+        cdrs.updateCallDetailRecord(second);
+        // Repeated updates of a completed call must not be accounted twice.
+        cdrs.updateCallDetailRecord(second);
+        final DateTime today = DateTime.now();
+        List<Usage> records = usage.getUsageDaily(account, Usage.Category.CALLS, today, today);
+        assertEquals(1, records.size());
+        assertEquals(Long.valueOf(2), records.get(0).getCount());
+        assertEquals(Long.valueOf(42), records.get(0).getUsage());
+        assertEquals(0, records.get(0).getPrice().compareTo(new BigDecimal("0.75")));
+        // A backfill rebuilds the same figures from the raw records.
+        usage.rebuildUsage(account);
+        records = usage.getUsageDaily(account, Usage.Category.CALLS, today, today);
+        assertEquals(1, records.size());
+        assertEquals(Long.valueOf(2), records.get(0).getCount());
+        assertEquals(Long.valueOf(42), records.get(0).getUsage());
+        cdrs.removeCallDetailRecords(account);
+    }
+
+    @Test
+    public void smsUsageIsRolledUpOnInsert() {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final SmsMessagesDao messages = manager.getSmsMessagesDao();
+        final UsageDao usage = manager.getUsageDao();
+        for (int i = 0; i < 3; i++) {
+            messages.addSmsMessage(createSms(account));
+        }
+        final DateTime today = DateTime.now();
+        final List<Usage> records = usage.getUsageMonthly(account, Usage.Category.SMS_OUTBOUND, today, today);
+        assertEquals(1, records.size());
+        assertEquals(Long.valueOf(3), records.get(0).getCount());
+        assertEquals(Long.valueOf(3), records.get(0).getUsage());
+        // Nothing was recorded against the calls category.
+        assertTrue(usage.getUsageDaily(account, Usage.Category.CALLS, today, today).isEmpty());
+        messages.removeSmsMessages(account);
+    }
+
+    @Test
+    public void upgradedDatabasesGetTheRollupsTable() throws Exception {
+        final Sid account = Sid.generate(Sid.Type.ACCOUNT);
+        final SmsMessagesDao messages = manager.getSmsMessagesDao();
+        messages.addSmsMessage(createSms(account));
+        messages.addSmsMessage(createSms(account));
+        final MybatisUsageDao usage = new MybatisUsageDao(factory);
+        assertFalse(usage.createUsageRecordsIfMissing());
+        // A database from a release without rollups.
+        final SqlSession session = factory.openSession();
+        try {
+            final Statement statement = session.getConnection().createStatement();
+            statement.execute("DROP TABLE \"restcomm_usage_records\"");
+            statement.close();
+            session.commit();
+        } finally {
+            session.close();
+        }
+        assertTrue(usage.createUsageRecordsIfMissing());
+        final DateTime today = DateTime.now();
+        final List<Usage> records = usage.getUsageDaily(account, Usage.Category.SMS, today, today);
+        assertEquals(1, records.size());
+        assertEquals(Long.valueOf(2), records.get(0).getCount());
+        messages.removeSmsMessages(account);
+    }
+
+    private CallDetailRecord createCdr(final Sid account) {
+        final CallDetailRecord.Builder builder = CallDetailRecord.builder();
+        builder.setSid(Sid.generate(Sid.Type.CALL));
+        builder.setInstanceId(Sid.generate(Sid.Type.INSTANCE).toString());
+        builder.setDateCreated(DateTime.now());
+        builder.setAccountSid(account);
+        builder.setTo("+12223334444");
+        builder.setFrom("+17778889999");
+        builder.setStatus("queued");
+        builder.setDirection("outbound-api");
+        builder.setApiVersion("2012-04-24");
+        builder.setPriceUnit(Currency.getInstance("USD"));
+        builder.setUri(URI.create("http://127.0.0.1:8080/restcomm/demos/hello-world.xml"));
+        return builder.build();
+    }
+
+    private SmsMessage createSms(final Sid account) {
+        final SmsMessage.Builder builder = SmsMessage.builder();
+        builder.setSid(Sid.generate(Sid.Type.SMS_MESSAGE));
+        builder.setAccountSid(account);
+        builder.setApiVersion("2012-04-24");
+        builder.setRecipient("+12223334444");
+        builder.setSender("+17778889999");
+        builder.setBody("Hello World!");
+        builder.setStatus(SmsMessage.Status.SENT);
+        builder.setDirection(SmsMessage.Direction.OUTBOUND_API);
+        builder.setPrice(new BigDecimal("0.00"));
+        builder.setPriceUnit(Currency.getInstance("USD"));
+        builder.setUri(URI.create("2012-04-24/Accounts/Acoount/SMS/Messages/unique-id.json"));
+        return builder.build();
+    }
+}
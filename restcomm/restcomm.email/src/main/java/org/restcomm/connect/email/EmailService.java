@@ -33,14 +33,11 @@ import org.restcomm.connect.commons.patterns.StopObserving;
 
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.PasswordAuthentication;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
 
 /**
  * @author liblefty@gmail.com (Lefteris Banos)
@@ -50,42 +47,17 @@ public class EmailService extends UntypedActor  {
     final LoggingAdapter logger = Logging.getLogger(getContext().system(), this);
     private final List<ActorRef> observers;
     private Configuration configuration;
+    private SmtpTransportPool transports;
     private Session session;
-    private String host;
-    private String port;
     private String user;
-    private String password;
 
     public EmailService(final Configuration config) {
         this.observers = new ArrayList<ActorRef>();
         configuration = config;
-        host = configuration.getString("host");
-        port = configuration.getString("port");
         user = configuration.getString("user");
-        password = configuration.getString("password");
-        final Properties properties = System.getProperties();
-        properties.setProperty("mail.smtp.host", host);
-        if (user != null && !user.isEmpty()) {
-            properties.setProperty("mail.smtp.user", user);
-        }
-        if (password != null && !password.isEmpty()) {
-            properties.setProperty("mail.smtp.password", password);
-        }
-        if (port != null && !port.isEmpty()) {
-            properties.setProperty("mail.smtp.port", port);
-        }
-
-        properties.setProperty("mail.smtp.starttls.enable", "true");
-        properties.setProperty("mail.transport.protocol", "smtps");
-        // properties.setProperty("mail.smtp.ssl.enable", "true");
-        properties.setProperty("mail.smtp.auth", "true");
-
-        session = Session.getInstance(properties,
-                new javax.mail.Authenticator() {
-                    protected PasswordAuthentication getPasswordAuthentication() {
-                        return new PasswordAuthentication(user, password);
-                    }
-                });
+        // the connections are shared by every email service talking to the same server
+        transports = SmtpTransportPool.getInstance(configuration);
+        session = transports.getSession();
     }
 
     private void observe(final Object message) {
@@ -118,31 +90,56 @@ public class EmailService extends UntypedActor  {
             stopObserving(message);
         }else if (EmailRequest.class.equals(klass)) {
             EmailRequest request = (EmailRequest)message;
-            sender.tell(send(request.getObject()), self);
+            send(request.getObject(), sender, self);
         }
     }
 
-     EmailResponse send(final Mail mail) {
+    void send(final Mail mail, final ActorRef sender, final ActorRef self) {
+        final MimeMessage email;
         try {
-            InternetAddress from;
-            if (mail.from() != null || !mail.from().equalsIgnoreCase("")) {
-                from = new InternetAddress(mail.from());
-            } else {
-                from = new InternetAddress(user);
-            }
-            final InternetAddress to = new InternetAddress(mail.to());
-            final MimeMessage email = new MimeMessage(session);
-            email.setFrom(from);
-            email.addRecipient(Message.RecipientType.TO, to);
-            email.setSubject(mail.subject());
-            email.setText(mail.body());
-            email.addRecipients(Message.RecipientType.CC, InternetAddress.parse(mail.cc(), false));
-            email.addRecipients(Message.RecipientType.BCC,InternetAddress.parse(mail.bcc(),false));
-            Transport.send(email);
-            return new EmailResponse(mail);
+            email = message(mail);
         } catch (final MessagingException exception) {
             logger.error(exception.getMessage(), exception);
-            return new EmailResponse(exception,exception.getMessage());
+            sender.tell(new EmailResponse(exception, exception.getMessage()), self);
+            return;
+        }
+        // the reply comes from a pool thread once the mail is sent
+        transports.send(email, new SmtpTransportPool.Callback() {
+            @Override
+            public void sent(final MimeMessage email) {
+                sender.tell(new EmailResponse(mail), self);
+            }
+
+            @Override
+            public void failed(final MimeMessage email, final Exception cause) {
+                logger.error(cause.getMessage(), cause);
+                sender.tell(new EmailResponse(cause, cause.getMessage()), self);
+            }
+        });
+    }
+
+    @Override
+    public void postStop() {
+        // the last service using the pool closes its connections
+        transports.release();
+        super.postStop();
+    }
+
+    MimeMessage message(final Mail mail) throws MessagingException {
+        InternetAddress from;
+        if (mail.from() != null || !mail.from().equalsIgnoreCase("")) {
+            from = new InternetAddress(mail.from());
+        } else {
+            from = new InternetAddress(user);
         }
+        final InternetAddress to = new InternetAddress(mail.to());
+        final MimeMessage email = new MimeMessage(session);
+        email.setFrom(from);
+        email.addRecipient(Message.RecipientType.TO, to);
+        email.setSubject(mail.subject());
+        email.setText(mail.body());
+        email.addRecipients(Message.RecipientType.CC, InternetAddress.parse(mail.cc(), false));
+        email.addRecipients(Message.RecipientType.BCC,InternetAddress.parse(mail.bcc(),false));
+        return email;
     }
 }
@@ -0,0 +1,310 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.email;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+/**
+ * Sends mails over a few SMTP connections kept open between mails, instead of connecting, greeting and
+ * authenticating for every mail like {@link Transport#send(javax.mail.Message)} does.
+ * <p>
+ * Mails are queued, up to queue-size, and sent by as many workers as there are connections. A connection idle for
+ * longer than idle-timeout is closed, and one that was idle for a while is checked with a NOOP before use. A mail
+ * that can't be sent because of the connection or a transient 4xx reply is retried over a new connection up to
+ * max-attempts times. Rejected recipients and permanent 5xx replies are not retried.
+ * <p>
+ * One pool is shared by all the email services using the same SMTP server and user, see
+ * {@link #getInstance(Configuration)}. Each of them hands it back with {@link #release()}, the last one closes it.
+ */
+@ThreadSafe
+public final class SmtpTransportPool {
+    public static final String METRIC_SMTP_CONNECTIONS_OPENED = "SmtpConnectionsOpened";
+    public static final String METRIC_SMTP_MAILS_SENT = "SmtpMailsSent";
+    public static final String METRIC_SMTP_MAILS_FAILED = "SmtpMailsFailed";
+
+    private static final Logger logger = Logger.getLogger(SmtpTransportPool.class);
+    private static final ConcurrentMap<String, SmtpTransportPool> pools = new ConcurrentHashMap<String, SmtpTransportPool>();
+    // a connection used this recently is trusted without a NOOP
+    private static final long CHECK_AFTER = 5000;
+
+    public interface Callback {
+        void sent(MimeMessage email);
+
+        void failed(MimeMessage email, Exception cause);
+    }
+
+    private final String key;
+    private final Session session;
+    private final long idleTimeout;
+    private final int maxAttempts;
+    private final BlockingQueue<Connection> idle;
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger opened;
+    private final AtomicInteger sent;
+    private final AtomicInteger failed;
+    // guarded by pools
+    private int users;
+
+    public SmtpTransportPool(final Session session, final int connections, final int queueSize, final long idleTimeout,
+            final int maxAttempts) {
+        this(null, session, connections, queueSize, idleTimeout, maxAttempts);
+    }
+
+    private SmtpTransportPool(final String key, final Session session, final int connections, final int queueSize,
+            final long idleTimeout, final int maxAttempts) {
+        super();
+        this.key = key;
+        this.session = session;
+        this.idleTimeout = idleTimeout;
+        this.maxAttempts = maxAttempts;
+        this.idle = new LinkedBlockingQueue<Connection>();
+        this.opened = new AtomicInteger();
+        this.sent = new AtomicInteger();
+        this.failed = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(connections, connections, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "smtp-" + session.getProperty("mail.smtp.host"));
+                        // pools live as long as the application, they must not hold it up when it stops
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * @param configuration the smtp-service or smtp-notify settings of restcomm.xml
+     * @return the pool for the SMTP server and user of the configuration, to be handed back with {@link #release()}
+     */
+    public static SmtpTransportPool getInstance(final Configuration configuration) {
+        final String key = configuration.getString("host") + ":" + configuration.getString("port") + ":"
+                + configuration.getString("user");
+        synchronized (pools) {
+            SmtpTransportPool pool = pools.get(key);
+            if (pool == null) {
+                pool = new SmtpTransportPool(key, session(configuration), configuration.getInt("connections", 4),
+                        configuration.getInt("queue-size", 1000), configuration.getLong("idle-timeout", 60000),
+                        configuration.getInt("max-attempts", 3));
+                pools.put(key, pool);
+            }
+            pool.users++;
+            return pool;
+        }
+    }
+
+    /**
+     * Hands back a pool obtained from {@link #getInstance(Configuration)}. The last user closes its connections.
+     */
+    public void release() {
+        synchronized (pools) {
+            if (--users > 0) {
+                return;
+            }
+            if (key != null) {
+                pools.remove(key, this);
+            }
+        }
+        shutdown();
+    }
+
+    private static Session session(final Configuration configuration) {
+        final String host = configuration.getString("host");
+        final String port = configuration.getString("port");
+        final String user = configuration.getString("user");
+        final String password = configuration.getString("password");
+        final String timeout = configuration.getString("timeout", "30000");
+        final Properties properties = new Properties();
+        properties.setProperty("mail.smtp.host", host);
+        if (user != null && !user.isEmpty()) {
+            properties.setProperty("mail.smtp.user", user);
+        }
+        if (password != null && !password.isEmpty()) {
+            properties.setProperty("mail.smtp.password", password);
+        }
+        if (port != null && !port.isEmpty()) {
+            properties.setProperty("mail.smtp.port", port);
+        }
+        properties.setProperty("mail.smtp.starttls.enable", "true");
+        properties.setProperty("mail.smtp.auth", "true");
+        // bounds every mail, a stuck server would otherwise hold a worker forever
+        properties.setProperty("mail.smtp.connectiontimeout", timeout);
+        properties.setProperty("mail.smtp.timeout", timeout);
+        properties.setProperty("mail.smtp.writetimeout", timeout);
+        return Session.getInstance(properties, new javax.mail.Authenticator() {
+            protected PasswordAuthentication getPasswordAuthentication() {
+                return new PasswordAuthentication(user, password);
+            }
+        });
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Queues the mail. The callback is invoked from a worker thread once the mail is sent or given up on.
+     */
+    public void send(final MimeMessage email, final Callback callback) {
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(email, callback);
+                }
+            });
+        } catch (final RejectedExecutionException exception) {
+            failed.incrementAndGet();
+            callback.failed(email, new MessagingException("Too many mails waiting to be sent", exception));
+        }
+    }
+
+    private void deliver(final MimeMessage email, final Callback callback) {
+        MessagingException failure = null;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            Connection connection = null;
+            try {
+                connection = borrow();
+                email.saveChanges();
+                connection.transport.sendMessage(email, email.getAllRecipients());
+                connection.lastUsed = System.currentTimeMillis();
+                idle.offer(connection);
+                sent.incrementAndGet();
+                callback.sent(email);
+                return;
+            } catch (final MessagingException exception) {
+                failure = exception;
+                if (connection != null) {
+                    connection.close();
+                }
+                if (!retryable(exception)) {
+                    break;
+                }
+                logger.warn("Could not send mail, attempt " + (attempt + 1) + " of " + maxAttempts + ": " + exception.getMessage());
+            }
+        }
+        failed.incrementAndGet();
+        callback.failed(email, failure);
+    }
+
+    /**
+     * @return true if the mail may go through on another connection: the connection failed, the server closed it
+     *         without a reply, or it gave a transient 4xx reply before any recipient got the mail
+     */
+    static boolean retryable(final MessagingException exception) {
+        if (exception instanceof SMTPSendFailedException) {
+            final SMTPSendFailedException failed = (SMTPSendFailedException) exception;
+            final int code = failed.getReturnCode();
+            final boolean nothingSent = failed.getValidSentAddresses() == null || failed.getValidSentAddresses().length == 0;
+            return nothingSent && (code < 0 || (code >= 400 && code < 500));
+        }
+        if (exception instanceof SendFailedException) {
+            return false;
+        }
+        for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // an open connection if one is idle, a new one otherwise
+    private Connection borrow() throws MessagingException {
+        final long now = System.currentTimeMillis();
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            final long idleFor = now - connection.lastUsed;
+            // isConnected() sends a NOOP
+            if (idleFor < idleTimeout && (idleFor < CHECK_AFTER || connection.transport.isConnected())) {
+                return connection;
+            }
+            connection.close();
+        }
+        final Transport transport = session.getTransport("smtp");
+        transport.connect();
+        opened.incrementAndGet();
+        return new Connection(transport);
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        metrics.put(METRIC_SMTP_CONNECTIONS_OPENED, opened.get());
+        metrics.put(METRIC_SMTP_MAILS_SENT, sent.get());
+        metrics.put(METRIC_SMTP_MAILS_FAILED, failed.get());
+        return metrics;
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private static final class Connection {
+        private final Transport transport;
+        private volatile long lastUsed;
+
+        private Connection(final Transport transport) {
+            this.transport = transport;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        private void close() {
+            try {
+                transport.close();
+            } catch (final MessagingException ignored) {
+            }
+        }
+    }
+}
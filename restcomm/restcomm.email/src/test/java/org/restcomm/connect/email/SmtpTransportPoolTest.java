@@ -0,0 +1,186 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.SocketException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+/**
+ * Sends mails to an in-process SMTP server through a {@link SmtpTransportPool}.
+ */
+public final class SmtpTransportPoolTest {
+    private static final int MAILS = 200;
+
+    private GreenMail mailServer;
+    private Session session;
+
+    @Before
+    public void before() throws Exception {
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser("hascode@localhost", "hascode", "abcdef123");
+        final URL input = getClass().getResource("/emailServiceTest.xml");
+        final SmtpTransportPool pool = SmtpTransportPool.getInstance(new XMLConfiguration(input));
+        session = pool.getSession();
+        pool.release();
+    }
+
+    @After
+    public void after() throws Exception {
+        mailServer.stop();
+    }
+
+    private MimeMessage email(final int i) throws MessagingException {
+        final MimeMessage email = new MimeMessage(session);
+        email.setFrom(new InternetAddress("hascode@localhost"));
+        email.addRecipient(Message.RecipientType.TO, new InternetAddress("someone@localhost.com"));
+        email.setSubject("Mail " + i);
+        email.setText("Mail number " + i);
+        return email;
+    }
+
+    private static final class Counter implements SmtpTransportPool.Callback {
+        private final CountDownLatch done;
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private Counter(final int mails) {
+            this.done = new CountDownLatch(mails);
+        }
+
+        @Override
+        public void sent(final MimeMessage email) {
+            done.countDown();
+        }
+
+        @Override
+        public void failed(final MimeMessage email, final Exception cause) {
+            failed.incrementAndGet();
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void connectionsAreReused() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool(session, 4, MAILS, 60000, 3);
+        final Counter counter = new Counter(MAILS);
+        for (int i = 0; i < MAILS; i++) {
+            pool.send(email(i), counter);
+        }
+        assertTrue(counter.done.await(60, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(0, counter.failed.get());
+        assertEquals(MAILS, mailServer.getReceivedMessages().length);
+        // one connection per worker at most, not one per mail
+        final Map<String, Integer> metrics = pool.getMetrics();
+        assertTrue(metrics.get(SmtpTransportPool.METRIC_SMTP_CONNECTIONS_OPENED) <= 4);
+        assertEquals(MAILS, metrics.get(SmtpTransportPool.METRIC_SMTP_MAILS_SENT).intValue());
+    }
+
+    @Test
+    public void brokenConnectionIsReplaced() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool(session, 1, 10, 60000, 3);
+        Counter counter = new Counter(1);
+        pool.send(email(1), counter);
+        assertTrue(counter.done.await(30, TimeUnit.SECONDS));
+        // the server goes away and comes back, the idle connection is dead
+        mailServer.stop();
+        mailServer = new GreenMail(ServerSetupTest.SMTP);
+        mailServer.start();
+        mailServer.setUser("hascode@localhost", "hascode", "abcdef123");
+        counter = new Counter(1);
+        pool.send(email(2), counter);
+        assertTrue(counter.done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(0, counter.failed.get());
+        assertEquals(1, mailServer.getReceivedMessages().length);
+        assertEquals(2, pool.getMetrics().get(SmtpTransportPool.METRIC_SMTP_CONNECTIONS_OPENED).intValue());
+    }
+
+    @Test
+    public void queueIsBounded() throws Exception {
+        final SmtpTransportPool pool = new SmtpTransportPool(session, 1, 1, 60000, 3);
+        final Counter counter = new Counter(10);
+        for (int i = 0; i < 10; i++) {
+            pool.send(email(i), counter);
+        }
+        assertTrue(counter.done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(counter.failed.get() > 0);
+        assertEquals(10 - counter.failed.get(), mailServer.getReceivedMessages().length);
+        assertEquals(counter.failed.get(), pool.getMetrics().get(SmtpTransportPool.METRIC_SMTP_MAILS_FAILED).intValue());
+    }
+
+    @Test
+    public void onlyConnectionFailuresAndTransientRepliesAreRetried() throws Exception {
+        assertTrue(SmtpTransportPool.retryable(new MessagingException("Can't send command to SMTP host", new SocketException())));
+        assertTrue(SmtpTransportPool.retryable(new SMTPSendFailedException("MAIL FROM", 451, "451 try again later", null,
+                null, null, null)));
+        // the server closed the connection without a reply
+        assertTrue(SmtpTransportPool.retryable(new SMTPSendFailedException("MAIL FROM", -1, "[EOF]", null, null, null, null)));
+        assertFalse(SmtpTransportPool.retryable(new SMTPSendFailedException("DATA", 554, "554 rejected", null, null, null,
+                null)));
+        // some recipients already got the mail
+        assertFalse(SmtpTransportPool.retryable(new SMTPSendFailedException("DATA", 451, "451 try again later", null,
+                new Address[] { new InternetAddress("someone@localhost.com") }, null, null)));
+        assertFalse(SmtpTransportPool.retryable(new SendFailedException("Invalid Addresses")));
+        assertFalse(SmtpTransportPool.retryable(new MessagingException("Unknown SMTP host")));
+    }
+
+    @Test
+    public void lastReleaseClosesThePool() throws Exception {
+        final XMLConfiguration configuration = new XMLConfiguration(getClass().getResource("/emailServiceTest.xml"));
+        // a user of its own, so that no other test shares the pool
+        configuration.setProperty("user", "release@localhost");
+        final SmtpTransportPool first = SmtpTransportPool.getInstance(configuration);
+        final SmtpTransportPool second = SmtpTransportPool.getInstance(configuration);
+        assertTrue(first == second);
+        first.release();
+        second.release();
+        // closed, the next user gets a new pool
+        final SmtpTransportPool third = SmtpTransportPool.getInstance(configuration);
+        assertFalse(third == first);
+        third.release();
+    }
+}
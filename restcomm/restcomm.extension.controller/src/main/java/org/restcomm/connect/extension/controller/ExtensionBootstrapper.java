@@ -47,6 +47,7 @@ public class ExtensionBootstrapper {
 
     public void start() throws ClassNotFoundException, IllegalAccessException, InstantiationException {
 
+        ExtensionController.getInstance().setExecutor(ExtensionExecutor.fromConfiguration(configuration != null ? configuration.subset("execution") : null));
         List<HierarchicalConfiguration> exts = ((XMLConfiguration)configuration).configurationsAt("extensions.extension");
 
         for (HierarchicalConfiguration ext: exts) {
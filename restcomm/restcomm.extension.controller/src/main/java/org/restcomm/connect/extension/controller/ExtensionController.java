@@ -14,26 +14,38 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class ExtensionController {
     private static Logger logger = Logger.getLogger(ExtensionController.class);
 
-    private static ExtensionController instance;
+    private static final ExtensionController instance = new ExtensionController();
     private List callManagerExtensions;
     private List smsSessionExtensions;
     private List ussdCallManagerExtensions;
     private List restApiExtensions;
+    private volatile ExtensionExecutor executor;
 
     private ExtensionController(){
         this.callManagerExtensions = new CopyOnWriteArrayList();
         this.smsSessionExtensions = new CopyOnWriteArrayList();
         this.ussdCallManagerExtensions = new CopyOnWriteArrayList();
         this.restApiExtensions = new CopyOnWriteArrayList();
+        this.executor = ExtensionExecutor.fromConfiguration(null);
     }
 
     public static ExtensionController getInstance() {
-        if (instance == null) {
-            instance = new ExtensionController();
-        }
         return instance;
     }
 
+    /**
+     * @return the executor extension hooks should be run with
+     */
+    public ExtensionExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(final ExtensionExecutor executor) {
+        final ExtensionExecutor previous = this.executor;
+        this.executor = executor;
+        previous.shutdown();
+    }
+
     public List<RestcommExtensionGeneric> getExtensions(final ExtensionType type) {
         //Check the sender's class and return the extensions that are supported for this class
         if (type.equals(ExtensionType.CallManager) && (callManagerExtensions != null && callManagerExtensions.size() > 0)) {
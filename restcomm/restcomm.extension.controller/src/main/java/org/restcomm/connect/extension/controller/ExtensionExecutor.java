@@ -0,0 +1,371 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.extension.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.sip.SipServletRequest;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.extension.api.ApiRequest;
+import org.restcomm.connect.extension.api.ExtensionResponse;
+import org.restcomm.connect.extension.api.RestcommExtensionGeneric;
+
+/**
+ * Runs extension hooks on a dedicated thread pool and, when a timeout is configured, waits at most that long for each
+ * answer, so a slow extension cannot hold a call manager or a REST request for longer than that.
+ * <p>
+ * An extension that fails, times out or returns no response is answered by the policy: allowed when failing open,
+ * denied when failing closed. When a failure threshold is configured, that many consecutive failures open the circuit
+ * of the extension and its hooks are answered by the policy without being called until the open period is over.
+ * <p>
+ * A hook that timed out keeps its thread until the extension returns. Once the number of such abandoned hooks reaches
+ * its bound, new hooks are answered by the policy without being called, so a hung extension cannot take the whole pool.
+ * <p>
+ * The defaults keep the behaviour of calling extensions inline: no timeout, no circuit and failing open.
+ */
+public final class ExtensionExecutor {
+    public static final String METRIC_EXTENSION_CALLS = "ExtensionCalls";
+    public static final String METRIC_EXTENSION_FAILURES = "ExtensionFailures";
+    public static final String METRIC_EXTENSION_TIMEOUTS = "ExtensionTimeouts";
+    public static final String METRIC_EXTENSION_SHORT_CIRCUITS = "ExtensionShortCircuits";
+    public static final String METRIC_EXTENSION_OPEN_CIRCUITS = "ExtensionOpenCircuits";
+    public static final String METRIC_EXTENSION_ABANDONED = "ExtensionAbandonedHooks";
+    public static final String METRIC_EXTENSION_AVERAGE_LATENCY = "ExtensionAverageLatency";
+    public static final String METRIC_EXTENSION_MAX_LATENCY = "ExtensionMaxLatency";
+
+    private static final Logger logger = Logger.getLogger(ExtensionExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final long timeout;
+    private final boolean failOpen;
+    private final int failureThreshold;
+    private final long openDuration;
+    private final int maxAbandoned;
+    private final Clock clock;
+    private final AtomicInteger abandoned = new AtomicInteger();
+    private final ConcurrentMap<RestcommExtensionGeneric, Circuit> circuits;
+
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong shortCircuits = new AtomicLong();
+
+    /**
+     * @param threads the number of threads running hooks
+     * @param queueSize the number of hooks waiting for a thread before new ones are rejected
+     * @param timeout how long a caller waits for a hook, in milliseconds, 0 to wait until it answers
+     * @param failOpen whether a failed hook allows the action
+     * @param failureThreshold consecutive failures that open the circuit of an extension, 0 to never open it
+     * @param openDuration how long an open circuit stays open, in milliseconds
+     * @param maxAbandoned timed out hooks still running before new hooks are answered by the policy
+     */
+    public ExtensionExecutor(final int threads, final int queueSize, final long timeout, final boolean failOpen,
+            final int failureThreshold, final long openDuration, final int maxAbandoned) {
+        this(threads, queueSize, timeout, failOpen, failureThreshold, openDuration, maxAbandoned, Clock.SYSTEM);
+    }
+
+    ExtensionExecutor(final int threads, final int queueSize, final long timeout, final boolean failOpen,
+            final int failureThreshold, final long openDuration, final int maxAbandoned, final Clock clock) {
+        super();
+        this.clock = clock;
+        this.timeout = timeout;
+        this.failOpen = failOpen;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.maxAbandoned = maxAbandoned;
+        this.circuits = new ConcurrentHashMap<RestcommExtensionGeneric, Circuit>();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "restcomm-extension-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Reads the settings of the execution element of extensions.xml, a null configuration gives the defaults.
+     */
+    public static ExtensionExecutor fromConfiguration(final Configuration configuration) {
+        if (configuration == null) {
+            return new ExtensionExecutor(16, 1000, 0, true, 0, 30000, 8);
+        }
+        final int threads = configuration.getInt("threads", 16);
+        return new ExtensionExecutor(threads, configuration.getInt("queue-size", 1000),
+                configuration.getLong("timeout", 0), configuration.getBoolean("fail-open", true),
+                configuration.getInt("failure-threshold", 0), configuration.getLong("open-duration", 30000),
+                configuration.getInt("max-abandoned", Math.max(1, threads / 2)));
+    }
+
+    public boolean preInboundAction(final List<RestcommExtensionGeneric> extensions, final SipServletRequest request) {
+        return allowed(extensions, new Hook() {
+            @Override
+            public ExtensionResponse call(final RestcommExtensionGeneric extension) {
+                return extension.preInboundAction(request);
+            }
+        });
+    }
+
+    public boolean preOutboundAction(final List<RestcommExtensionGeneric> extensions, final Object message) {
+        return allowed(extensions, new Hook() {
+            @Override
+            public ExtensionResponse call(final RestcommExtensionGeneric extension) {
+                return extension.preOutboundAction(message);
+            }
+        });
+    }
+
+    public boolean preApiAction(final List<RestcommExtensionGeneric> extensions, final ApiRequest request) {
+        return allowed(extensions, new Hook() {
+            @Override
+            public ExtensionResponse call(final RestcommExtensionGeneric extension) {
+                return extension.preApiAction(request);
+            }
+        });
+    }
+
+    private boolean allowed(final List<RestcommExtensionGeneric> extensions, final Hook hook) {
+        if (extensions == null) {
+            return true;
+        }
+        for (final RestcommExtensionGeneric extension : extensions) {
+            if (extension.isEnabled() && !allowed(extension, hook)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean allowed(final RestcommExtensionGeneric extension, final Hook hook) {
+        final Circuit circuit = circuit(extension);
+        final long now = clock.millis();
+        if (circuit.isOpen(now)) {
+            shortCircuits.incrementAndGet();
+            return failOpen;
+        }
+        if (abandoned.get() >= maxAbandoned) {
+            failures.incrementAndGet();
+            logger.warn("Too many timed out extension hooks still running, not calling " + circuit.name);
+            return failOpen;
+        }
+        final long start = System.nanoTime();
+        final Task task = new Task(extension, hook);
+        Future<ExtensionResponse> future = null;
+        try {
+            future = executor.submit(task);
+            final ExtensionResponse response = timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+            circuit.latency(System.nanoTime() - start);
+            if (response != null) {
+                circuit.success();
+                return response.isAllowed();
+            }
+            failures.incrementAndGet();
+            logger.warn("Extension " + circuit.name + " returned no response");
+        } catch (final TimeoutException exception) {
+            task.abandon();
+            future.cancel(true);
+            timeouts.incrementAndGet();
+            logger.warn("Extension " + circuit.name + " did not answer within " + timeout + " ms");
+        } catch (final RejectedExecutionException exception) {
+            failures.incrementAndGet();
+            logger.warn("Too many pending extension hooks, not calling " + circuit.name);
+        } catch (final ExecutionException exception) {
+            circuit.latency(System.nanoTime() - start);
+            failures.incrementAndGet();
+            logger.error("Extension " + circuit.name + " failed", exception.getCause());
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return failOpen;
+        }
+        if (circuit.failure(now)) {
+            logger.warn("Opening the circuit of extension " + circuit.name + " for " + openDuration + " ms");
+        }
+        return failOpen;
+    }
+
+    private Circuit circuit(final RestcommExtensionGeneric extension) {
+        Circuit circuit = circuits.get(extension);
+        if (circuit == null) {
+            final Circuit created = new Circuit(extension.getClass().getSimpleName());
+            circuit = circuits.putIfAbsent(extension, created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+        return circuit;
+    }
+
+    public Map<String, Integer> getMetrics() {
+        final Map<String, Integer> metrics = new HashMap<String, Integer>();
+        final long now = clock.millis();
+        long calls = 0;
+        long latency = 0;
+        long max = 0;
+        int open = 0;
+        for (final Circuit circuit : circuits.values()) {
+            calls += circuit.calls.get();
+            latency += circuit.latency.get();
+            max = Math.max(max, circuit.maxLatency.get());
+            if (circuit.isOpen(now)) {
+                open++;
+            }
+            metrics.put(METRIC_EXTENSION_AVERAGE_LATENCY + "." + circuit.name, circuit.averageLatency());
+        }
+        metrics.put(METRIC_EXTENSION_CALLS, (int) calls);
+        metrics.put(METRIC_EXTENSION_FAILURES, (int) failures.get());
+        metrics.put(METRIC_EXTENSION_TIMEOUTS, (int) timeouts.get());
+        metrics.put(METRIC_EXTENSION_SHORT_CIRCUITS, (int) shortCircuits.get());
+        metrics.put(METRIC_EXTENSION_OPEN_CIRCUITS, open);
+        metrics.put(METRIC_EXTENSION_ABANDONED, abandoned.get());
+        metrics.put(METRIC_EXTENSION_AVERAGE_LATENCY, calls > 0 ? (int) (latency / calls / 1000000) : 0);
+        metrics.put(METRIC_EXTENSION_MAX_LATENCY, (int) (max / 1000000));
+        return metrics;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // the time circuits are opened and closed by
+    interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long millis() {
+                return System.currentTimeMillis();
+            }
+        };
+
+        long millis();
+    }
+
+    private interface Hook {
+        ExtensionResponse call(RestcommExtensionGeneric extension);
+    }
+
+    // one hook call, counted in abandoned from the time its caller gives up until the extension returns
+    private final class Task implements Callable<ExtensionResponse> {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
+        private final RestcommExtensionGeneric extension;
+        private final Hook hook;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        private Task(final RestcommExtensionGeneric extension, final Hook hook) {
+            this.extension = extension;
+            this.hook = hook;
+        }
+
+        @Override
+        public ExtensionResponse call() throws Exception {
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                return null;
+            }
+            try {
+                return hook.call(extension);
+            } finally {
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    abandoned.decrementAndGet();
+                }
+            }
+        }
+
+        private void abandon() {
+            // a hook still queued never runs, only a running one holds a thread
+            if (state.compareAndSet(RUNNING, ABANDONED)) {
+                abandoned.incrementAndGet();
+            } else {
+                state.compareAndSet(QUEUED, ABANDONED);
+            }
+        }
+    }
+
+    // failure count and latency of one extension, latencies in nanoseconds
+    private final class Circuit {
+        private final String name;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong latency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private volatile long openUntil;
+
+        private Circuit(final String name) {
+            this.name = name;
+        }
+
+        private boolean isOpen(final long now) {
+            return now < openUntil;
+        }
+
+        private void success() {
+            consecutiveFailures.set(0);
+        }
+
+        /**
+         * @return whether this failure opened the circuit
+         */
+        private boolean failure(final long now) {
+            // once the open period is over a single failure opens the circuit again
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && failureThreshold > 0) {
+                openUntil = now + openDuration;
+                return true;
+            }
+            return false;
+        }
+
+        private void latency(final long nanos) {
+            calls.incrementAndGet();
+            latency.addAndGet(nanos);
+            long max = maxLatency.get();
+            while (nanos > max && !maxLatency.compareAndSet(max, nanos)) {
+                max = maxLatency.get();
+            }
+        }
+
+        private int averageLatency() {
+            final long count = calls.get();
+            return count > 0 ? (int) (latency.get() / count / 1000000) : 0;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.extension.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletContext;
+import javax.servlet.sip.SipServletRequest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.restcomm.connect.extension.api.ApiRequest;
+import org.restcomm.connect.extension.api.CallRequest;
+import org.restcomm.connect.extension.api.ExtensionResponse;
+import org.restcomm.connect.extension.api.RestcommExtensionGeneric;
+
+/**
+ * Runs call setups through extensions that hang, fail or deny, and checks that a hung extension costs call setup at
+ * most the hook timeout until its circuit opens.
+ */
+public class ExtensionExecutorTest {
+    private static final int CALLS = 1000;
+    private static final int CALLERS = 8;
+
+    private ExtensionExecutor executor;
+
+    @After
+    public void after() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void hungExtensionDoesNotStallCallSetup() throws Exception {
+        executor = new ExtensionExecutor(4, 100, 50, true, 3, 60000, 4);
+        final StubExtension billing = new StubExtension(true);
+        billing.gate = new CountDownLatch(1);
+        final List<RestcommExtensionGeneric> extensions = Arrays.<RestcommExtensionGeneric>asList(billing);
+        final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            final List<Future<Boolean>> setups = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < CALLS; i++) {
+                setups.add(callers.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return executor.preOutboundAction(extensions, "call");
+                    }
+                }));
+            }
+            for (final Future<Boolean> setup : setups) {
+                assertTrue(setup.get());
+            }
+        } finally {
+            billing.gate.countDown();
+            callers.shutdown();
+        }
+        final Map<String, Integer> metrics = executor.getMetrics();
+        // only the calls made before the circuit opened waited for the hook
+        assertTrue(metrics.get(ExtensionExecutor.METRIC_EXTENSION_TIMEOUTS) <= 3 + CALLERS);
+        assertEquals(1, (int) metrics.get(ExtensionExecutor.METRIC_EXTENSION_OPEN_CIRCUITS));
+        assertTrue(billing.calls.get() <= 3 + CALLERS);
+    }
+
+    @Test
+    public void failingClosedDeniesOnTimeout() {
+        executor = new ExtensionExecutor(4, 100, 50, false, 3, 60000, 4);
+        final StubExtension hung = new StubExtension(true);
+        hung.gate = new CountDownLatch(1);
+        try {
+            assertFalse(executor.preOutboundAction(Arrays.<RestcommExtensionGeneric>asList(hung), "call"));
+        } finally {
+            hung.gate.countDown();
+        }
+        assertEquals(1, (int) executor.getMetrics().get(ExtensionExecutor.METRIC_EXTENSION_TIMEOUTS));
+    }
+
+    @Test
+    public void timedOutHooksStillRunningAreBounded() throws Exception {
+        executor = new ExtensionExecutor(4, 100, 50, true, 0, 60000, 2);
+        final StubExtension hung = new StubExtension(true);
+        hung.gate = new CountDownLatch(1);
+        final List<RestcommExtensionGeneric> extensions = Arrays.<RestcommExtensionGeneric>asList(hung);
+        assertTrue(executor.preOutboundAction(extensions, "call"));
+        assertTrue(executor.preOutboundAction(extensions, "call"));
+        assertEquals(2, (int) executor.getMetrics().get(ExtensionExecutor.METRIC_EXTENSION_ABANDONED));
+        // both threads taken by the hung extension are spared, the hook is answered without being called
+        assertTrue(executor.preOutboundAction(extensions, "call"));
+        assertEquals(2, hung.calls.get());
+        assertEquals(2, (int) executor.getMetrics().get(ExtensionExecutor.METRIC_EXTENSION_TIMEOUTS));
+        hung.gate.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getMetrics().get(ExtensionExecutor.METRIC_EXTENSION_ABANDONED) > 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, (int) executor.getMetrics().get(ExtensionExecutor.METRIC_EXTENSION_ABANDONED));
+        assertTrue(executor.preOutboundAction(extensions, "call"));
+        assertEquals(3, hung.calls.get());
+    }
+
+    @Test
+    public void defaultsCallEveryHookAndFailOpen() {
+        executor = ExtensionExecutor.fromConfiguration(null);
+        final StubExtension broken = new StubExtension(false);
+        broken.failing = true;
+        final List<RestcommExtensionGeneric> extensions = Arrays.<RestcommExtensionGeneric>asList(broken);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(executor.preOutboundAction(extensions, "call"));
+        }
+        assertEquals(10, broken.calls.get());
+        final Map<String, Integer> metrics = executor.getMetrics();
+        assertEquals(0, (int) metrics.get(ExtensionExecutor.METRIC_EXTENSION_OPEN_CIRCUITS));
+        assertEquals(0, (int) metrics.get(ExtensionExecutor.METRIC_EXTENSION_TIMEOUTS));
+        assertEquals(10, (int) metrics.get(ExtensionExecutor.METRIC_EXTENSION_FAILURES));
+    }
+
+    @Test
+    public void answersAreKeptAndDenialStopsTheChain() {
+        executor = new ExtensionExecutor(4, 100, 1000, true, 3, 60000, 4);
+        final StubExtension allow = new StubExtension(true);
+        final StubExtension deny = new StubExtension(false);
+        final StubExtension last = new StubExtension(true);
+        assertTrue(executor.preApiAction(Arrays.<RestcommExtensionGeneric>asList(allow, last), null));
+        assertFalse(executor.preApiAction(Arrays.<RestcommExtensionGeneric>asList(allow, deny, last), null));
+        assertEquals(2, allow.calls.get());
+        assertEquals(1, last.calls.get());
+        assertTrue(executor.preOutboundAction(null, "call"));
+    }
+
+    @Test
+    public void circuitClosesAgainAfterTheOpenPeriod() {
+        final AtomicLong time = new AtomicLong(1000);
+        executor = new ExtensionExecutor(4, 100, 1000, false, 2, 100, 4, new ExtensionExecutor.Clock() {
+            @Override
+            public long millis() {
+                return time.get();
+            }
+        });
+        final StubExtension flaky = new StubExtension(true);
+        flaky.failing = true;
+        final List<RestcommExtensionGeneric> extensions = Arrays.<RestcommExtensionGeneric>asList(flaky);
+        assertFalse(executor.preOutboundAction(extensions, "call"));
+        assertFalse(executor.preOutboundAction(extensions, "call"));
+        // open: not called
+        time.addAndGet(99);
+        assertFalse(executor.preOutboundAction(extensions, "call"));
+        assertEquals(2, flaky.calls.get());
+        flaky.failing = false;
+        time.addAndGet(1);
+        assertTrue(executor.preOutboundAction(extensions, "call"));
+        assertEquals(3, flaky.calls.get());
+        assertEquals(0, (int) executor.getMetrics().get(ExtensionExecutor.METRIC_EXTENSION_OPEN_CIRCUITS));
+    }
+
+    private static final class StubExtension implements RestcommExtensionGeneric {
+        private final boolean allowed;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failing;
+        // when set, hooks hang until it is opened
+        private volatile CountDownLatch gate;
+
+        private StubExtension(final boolean allowed) {
+            this.allowed = allowed;
+        }
+
+        private ExtensionResponse answer() {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("Billing database unavailable");
+            }
+            final CountDownLatch gate = this.gate;
+            // like an extension that ignores interrupts, the cancel of a timed out hook does not end the wait
+            while (gate != null && gate.getCount() > 0) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            final ExtensionResponse response = new ExtensionResponse();
+            response.setAllowed(allowed);
+            return response;
+        }
+
+        @Override
+        public void init(ServletContext context) {
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public ExtensionResponse preInboundAction(SipServletRequest request) {
+            return answer();
+        }
+
+        @Override
+        public ExtensionResponse postInboundAction(SipServletRequest request) {
+            return answer();
+        }
+
+        @Override
+        public ExtensionResponse preOutboundAction(Object message) {
+            return answer();
+        }
+
+        @Override
+        public ExtensionResponse postOutboundAction(CallRequest callRequest) {
+            return answer();
+        }
+
+        @Override
+        public ExtensionResponse preApiAction(ApiRequest apiRequest) {
+            return answer();
+        }
+
+        @Override
+        public ExtensionResponse postApiAction(ApiRequest apiRequest) {
+            return answer();
+        }
+    }
+}
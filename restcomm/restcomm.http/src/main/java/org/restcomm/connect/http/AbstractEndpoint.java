@@ -20,12 +20,11 @@
 package org.restcomm.connect.http;
 
 import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import org.apache.commons.configuration.Configuration;
 import org.restcomm.connect.commons.annotations.concurrency.NotThreadSafe;
 import org.restcomm.connect.commons.dao.Sid;
-import org.restcomm.connect.commons.util.StringUtils;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
@@ -39,15 +38,12 @@ import java.net.URI;
 public abstract class AbstractEndpoint {
     private String defaultApiVersion;
     protected Configuration configuration;
-    protected String baseRecordingsPath;
 
     public AbstractEndpoint() {
         super();
     }
 
     protected void init(final Configuration configuration) {
-        final String path = configuration.getString("recordings-path");
-        baseRecordingsPath = StringUtils.addSuffixIfNotPresent(path, "/");
         defaultApiVersion = configuration.getString("api-version");
     }
 
@@ -60,10 +56,10 @@ public abstract class AbstractEndpoint {
     }
 
     protected PhoneNumber getPhoneNumber(final MultivaluedMap<String, String> data) {
-        final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
+        final PhoneNumberNormalizer normalizer = PhoneNumberNormalizer.getInstance();
         PhoneNumber phoneNumber = null;
         try {
-            phoneNumber = phoneNumberUtil.parse(data.getFirst("PhoneNumber"), "US");
+            phoneNumber = normalizer.parse(data.getFirst("PhoneNumber"), normalizer.getDefaultRegion());
         } catch (final NumberParseException ignored) {
         }
         return phoneNumber;
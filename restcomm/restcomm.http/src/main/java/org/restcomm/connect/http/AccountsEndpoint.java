@@ -257,6 +257,7 @@ public class AccountsEndpoint extends SecuredEndpoint {
         daoManager.getRecordingsDao().removeRecordings(sid);
         daoManager.getApplicationsDao().removeApplications(sid);
         removeIncomingPhoneNumbers(sid,daoManager.getIncomingPhoneNumbersDao());
+        invalidateUssdApplication(null);
         daoManager.getClientsDao().removeClients(sid);
     }
 
@@ -217,6 +217,8 @@ public class ApplicationsEndpoint extends SecuredEndpoint {
             secure(account, application.getAccountSid(), SecuredType.SECURED_APP);
             final Application applicationUpdate = update(application, data);
             dao.updateApplication(applicationUpdate);
+            // any number may use the application
+            invalidateUssdApplication(null);
             if (APPLICATION_XML_TYPE == responseType) {
                 final RestCommResponse response = new RestCommResponse(applicationUpdate);
                 return ok(xstream.toXML(response), APPLICATION_XML).build();
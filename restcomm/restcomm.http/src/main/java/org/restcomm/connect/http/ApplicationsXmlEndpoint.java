@@ -57,6 +57,7 @@ public class ApplicationsXmlEndpoint extends ApplicationsEndpoint {
             secure(operatedAccount, application.getAccountSid(), SecuredType.SECURED_APP);
         }
         dao.removeApplication(new Sid(sid));
+        invalidateUssdApplication(null);
         return ok().build();
     }
 
@@ -52,6 +52,7 @@ import org.apache.commons.configuration.Configuration;
 import org.restcomm.connect.commons.annotations.concurrency.NotThreadSafe;
 import org.restcomm.connect.commons.configuration.RestcommConfiguration;
 import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.dao.AccountsDao;
 import org.restcomm.connect.dao.CallDetailRecordsDao;
 import org.restcomm.connect.dao.DaoManager;
@@ -81,8 +82,6 @@ import org.restcomm.connect.telephony.api.UpdateCallScript;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
 import com.thoughtworks.xstream.XStream;
 
 import akka.actor.ActorRef;
@@ -272,14 +271,14 @@ public abstract class CallsEndpoint extends SecuredEndpoint {
         }
     }
 
-    private void normalize(final MultivaluedMap<String, String> data) throws IllegalArgumentException {
-        final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
+    private void normalize(final Sid accountId, final MultivaluedMap<String, String> data) throws IllegalArgumentException {
+        final PhoneNumberNormalizer normalizer = PhoneNumberNormalizer.getInstance();
         final String from = data.getFirst("From");
         if (!from.contains("@")) {
             // https://github.com/Mobicents/RestComm/issues/150 Don't complain in case of URIs in the From header
             data.remove("From");
             try {
-                data.putSingle("From", phoneNumberUtil.format(phoneNumberUtil.parse(from, "US"), PhoneNumberFormat.E164));
+                data.putSingle("From", normalizer.e164(from, accountId));
             } catch (final NumberParseException exception) {
                 throw new IllegalArgumentException(exception);
             }
@@ -293,7 +292,7 @@ public abstract class CallsEndpoint extends SecuredEndpoint {
         } else if (!to.contains("@")) {
             data.remove("To");
             try {
-                data.putSingle("To", phoneNumberUtil.format(phoneNumberUtil.parse(to, "US"), PhoneNumberFormat.E164));
+                data.putSingle("To", normalizer.e164(to, accountId));
             } catch (final NumberParseException exception) {
                 throw new IllegalArgumentException(exception);
             }
@@ -313,7 +312,7 @@ public abstract class CallsEndpoint extends SecuredEndpoint {
         try {
             validate(data);
             if (normalizePhoneNumbers)
-                normalize(data);
+                normalize(accountId, data);
         } catch (final RuntimeException exception) {
             return status(BAD_REQUEST).entity(exception.getMessage()).build();
         }
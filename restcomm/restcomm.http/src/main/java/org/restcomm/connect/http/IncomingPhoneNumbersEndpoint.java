@@ -32,6 +32,7 @@ import org.joda.time.DateTime;
 import org.restcomm.connect.commons.annotations.concurrency.NotThreadSafe;
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.commons.loader.ObjectInstantiationException;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.commons.util.StringUtils;
 import org.restcomm.connect.dao.DaoManager;
 import org.restcomm.connect.dao.IncomingPhoneNumbersDao;
@@ -204,7 +205,8 @@ public abstract class IncomingPhoneNumbersEndpoint extends SecuredEndpoint {
         if(!number.startsWith("+")) {
             number = "+" + number;
         }
-        final PhoneNumber result = numbersUtil.parse(number, "US");
+        final PhoneNumberNormalizer normalizer = PhoneNumberNormalizer.getInstance();
+        final PhoneNumber result = normalizer.parse(number, normalizer.getDefaultRegion());
         if (numbersUtil.isValidNumber(result)) {
             return numbersUtil.format(result, PhoneNumberFormat.E164);
         } else {
@@ -352,6 +354,7 @@ public abstract class IncomingPhoneNumbersEndpoint extends SecuredEndpoint {
         }
         if(updated) {
             dao.updateIncomingPhoneNumber(update(incomingPhoneNumber, data));
+            invalidateUssdApplication(incomingPhoneNumber.getPhoneNumber());
             if (APPLICATION_JSON_TYPE == responseType) {
                 return ok(gson.toJson(incomingPhoneNumber), APPLICATION_JSON).build();
             } else if (APPLICATION_XML_TYPE == responseType) {
@@ -484,6 +487,7 @@ public abstract class IncomingPhoneNumbersEndpoint extends SecuredEndpoint {
             phoneNumberProvisioningManager.cancelNumber(convertIncomingPhoneNumbertoPhoneNumber(incomingPhoneNumber));
         }
         dao.removeIncomingPhoneNumber(new Sid(sid));
+        invalidateUssdApplication(incomingPhoneNumber.getPhoneNumber());
         return noContent().build();
     }
 
@@ -56,6 +56,7 @@ import org.restcomm.connect.dao.entities.OutgoingCallerIdList;
 import org.restcomm.connect.dao.entities.RestCommResponse;
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.dao.entities.Account;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.commons.util.StringUtils;
 
 /**
@@ -99,7 +100,7 @@ public abstract class OutgoingCallerIdsEndpoint extends SecuredEndpoint {
         final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
         PhoneNumber phoneNumber = null;
         try {
-            phoneNumber = phoneNumberUtil.parse(data.getFirst("PhoneNumber"), "US");
+            phoneNumber = PhoneNumberNormalizer.getInstance().parse(data.getFirst("PhoneNumber"), PhoneNumberNormalizer.getInstance().getRegion(accountSid));
         } catch (final NumberParseException ignored) {
         }
         String friendlyName = phoneNumberUtil.format(phoneNumber, PhoneNumberFormat.NATIONAL);
@@ -198,7 +199,8 @@ public abstract class OutgoingCallerIdsEndpoint extends SecuredEndpoint {
             throw new NullPointerException("Phone number can not be null.");
         }
         try {
-            PhoneNumberUtil.getInstance().parse(data.getFirst("PhoneNumber"), "US");
+            final PhoneNumberNormalizer normalizer = PhoneNumberNormalizer.getInstance();
+            normalizer.parse(data.getFirst("PhoneNumber"), normalizer.getDefaultRegion());
         } catch (final NumberParseException exception) {
             throw new IllegalArgumentException("Invalid phone number.");
         }
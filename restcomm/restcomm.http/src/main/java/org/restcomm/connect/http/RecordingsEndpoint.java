@@ -38,6 +38,7 @@ import static javax.ws.rs.core.Response.Status.*;
 
 import org.apache.commons.configuration.Configuration;
 import org.restcomm.connect.commons.annotations.concurrency.NotThreadSafe;
+import org.restcomm.connect.commons.recording.RecordingLayout;
 import org.restcomm.connect.http.converter.RecordingListConverter;
 import org.restcomm.connect.http.converter.RestCommResponseConverter;
 import org.restcomm.connect.dao.DaoManager;
@@ -58,6 +59,7 @@ public abstract class RecordingsEndpoint extends SecuredEndpoint {
     protected ServletContext context;
     protected Configuration configuration;
     protected RecordingsDao dao;
+    protected RecordingLayout layout;
     protected Gson gson;
     protected XStream xstream;
 
@@ -72,6 +74,7 @@ public abstract class RecordingsEndpoint extends SecuredEndpoint {
         configuration = configuration.subset("runtime-settings");
         super.init(configuration);
         dao = storage.getRecordingsDao();
+        layout = RecordingLayout.fromConfiguration(configuration);
         final RecordingConverter converter = new RecordingConverter(configuration);
         final GsonBuilder builder = new GsonBuilder();
         builder.registerTypeAdapter(Recording.class, converter);
@@ -0,0 +1,210 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.http;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.configuration.Configuration;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.recording.RecordingLayout;
+
+/**
+ * Serves the recordings under recordings-uri. A recording keeps its URI, /restcomm/recordings/RE...wav, wherever the
+ * {@link RecordingLayout} stores the file.
+ * <p>
+ * Players can seek: a single byte range is answered with 206 Partial Content, and If-Range falls back to the whole
+ * recording when it changed. HEAD answers the headers only, and If-Modified-Since is answered with 304 Not Modified
+ * by {@link HttpServlet} through {@link #getLastModified(HttpServletRequest)}.
+ */
+@ThreadSafe
+public final class RecordingsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private volatile RecordingLayout layout;
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException,
+            IOException {
+        serve(request, response, true);
+    }
+
+    @Override
+    protected void doHead(final HttpServletRequest request, final HttpServletResponse response) throws ServletException,
+            IOException {
+        serve(request, response, false);
+    }
+
+    @Override
+    protected long getLastModified(final HttpServletRequest request) {
+        final String name = name(request);
+        final File file = name == null ? null : layout().locate(name);
+        return file == null ? -1 : file.lastModified();
+    }
+
+    private void serve(final HttpServletRequest request, final HttpServletResponse response, final boolean body)
+            throws IOException {
+        final String name = name(request);
+        if (name == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // the migrator may move the recording between locating and opening it, a second try finds its new place
+        File located = null;
+        RandomAccessFile file = null;
+        for (int attempt = 0; attempt < 2 && file == null; attempt++) {
+            located = layout().locate(name);
+            if (located == null) {
+                break;
+            }
+            try {
+                file = new RandomAccessFile(located, "r");
+            } catch (final FileNotFoundException exception) {
+                // moved away, locate it again
+            }
+        }
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try {
+            final long length = file.length();
+            long start = 0;
+            long end = length - 1;
+            final String range = request.getHeader("Range");
+            if (range != null && matches(request, located.lastModified())) {
+                final long[] bounds = range(range, length);
+                if (bounds != null && bounds.length == 0) {
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                if (bounds != null) {
+                    start = bounds[0];
+                    end = bounds[1];
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                }
+            }
+            response.setContentType(name.endsWith(".wav") ? "audio/wav" : getServletContext().getMimeType(name));
+            response.setHeader("Accept-Ranges", "bytes");
+            // the length of a recording may not fit in setContentLength(int)
+            response.setHeader("Content-Length", Long.toString(end - start + 1));
+            if (body) {
+                copy(file, start, end - start + 1, response.getOutputStream());
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    // only file names, anything else would reach outside of the recordings
+    private static String name(final HttpServletRequest request) {
+        final String name = request.getPathInfo() == null ? "" : request.getPathInfo().substring(1);
+        if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.startsWith(".")) {
+            return null;
+        }
+        return name;
+    }
+
+    // If-Range only holds a date here, any entity tag is taken as a mismatch since none is handed out
+    private static boolean matches(final HttpServletRequest request, final long lastModified) {
+        if (request.getHeader("If-Range") == null) {
+            return true;
+        }
+        try {
+            return request.getDateHeader("If-Range") / 1000 == lastModified / 1000;
+        } catch (final IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a Range header holding one byte range.
+     *
+     * @return the first and last byte, an empty array if the range can't be satisfied or null to send the whole
+     *         recording, for a range which isn't understood or asks for several parts
+     */
+    static long[] range(final String header, final long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        final String spec = header.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            final String first = spec.substring(0, dash).trim();
+            final String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // the last bytes
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return new long[0];
+                }
+                return new long[] { Math.max(0, length - suffix), length - 1 };
+            }
+            final long start = Long.parseLong(first);
+            final long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                return null;
+            }
+            if (start >= length) {
+                return new long[0];
+            }
+            return new long[] { start, end };
+        } catch (final NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    private static void copy(final RandomAccessFile file, final long start, final long count, final OutputStream output)
+            throws IOException {
+        final byte[] buffer = new byte[8192];
+        file.seek(start);
+        long remaining = count;
+        while (remaining > 0) {
+            final int read = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            output.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    // the configuration is published by the bootstrapper, which may start after this servlet
+    private RecordingLayout layout() {
+        if (layout == null) {
+            final Configuration configuration = (Configuration) getServletContext().getAttribute(Configuration.class.getName());
+            layout = RecordingLayout.fromConfiguration(configuration.subset("runtime-settings"));
+        }
+        return layout;
+    }
+}
@@ -50,10 +50,8 @@ public final class RecordingsXmlEndpoint extends RecordingsEndpoint {
     @Path("/{sid}.wav")
     @GET
     public Response getRecordingAsWav(@PathParam("accountSid") final String accountSid, @PathParam("sid") final String sid) {
-        final StringBuilder buffer = new StringBuilder();
-        buffer.append(baseRecordingsPath).append(sid).append(".wav");
-        final File file = new File(buffer.toString());
-        if (!file.exists()) {
+        final File file = layout.locate(sid + ".wav");
+        if (file == null) {
             return status(NOT_FOUND).build();
         } else {
             return ok(file, "audio/wav").build();
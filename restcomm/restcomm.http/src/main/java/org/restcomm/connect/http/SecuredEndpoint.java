@@ -31,7 +31,6 @@ import org.restcomm.connect.dao.DaoManager;
 import org.restcomm.connect.dao.entities.Account;
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.extension.api.ApiRequest;
-import org.restcomm.connect.extension.api.ExtensionResponse;
 import org.restcomm.connect.extension.api.ExtensionType;
 import org.restcomm.connect.extension.api.RestcommExtensionGeneric;
 import org.restcomm.connect.extension.controller.ExtensionController;
@@ -43,6 +42,9 @@ import org.restcomm.connect.identity.AuthOutcome;
 import org.restcomm.connect.identity.IdentityContext;
 import org.restcomm.connect.identity.UserIdentityContext;
 import org.restcomm.connect.identity.shiro.RestcommRoles;
+import org.restcomm.connect.telephony.api.InvalidateUssdApplication;
+
+import akka.actor.ActorRef;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -108,6 +110,19 @@ public abstract class SecuredEndpoint extends AbstractEndpoint {
         }
     }
 
+    /**
+     * Tells the USSD call manager that the application of a short code may have changed, so dialogs to it stop using
+     * the cached one.
+     *
+     * @param number the short code, null when any of them may have changed
+     */
+    protected void invalidateUssdApplication(final String number) {
+        final ActorRef ussdCallManager = (ActorRef) context.getAttribute("org.restcomm.connect.ussd.telephony.UssdCallManager");
+        if (ussdCallManager != null) {
+            ussdCallManager.tell(new InvalidateUssdApplication(number), null);
+        }
+    }
+
     /**
      * Grants general purpose access if any valid token exists in the request
      */
@@ -397,16 +412,7 @@ public abstract class SecuredEndpoint extends AbstractEndpoint {
     }
 
     protected boolean executePreApiAction(final ApiRequest apiRequest) {
-        if (extensions != null && extensions.size() > 0) {
-            for (RestcommExtensionGeneric extension : extensions) {
-                if (extension.isEnabled()) {
-                    ExtensionResponse response = extension.preApiAction(apiRequest);
-                    if (!response.isAllowed())
-                        return false;
-                }
-            }
-        }
-        return true;
+        return ExtensionController.getInstance().getExecutor().preApiAction(extensions, apiRequest);
     }
 
     protected boolean executePostApiAction(final ApiRequest apiRequest) {
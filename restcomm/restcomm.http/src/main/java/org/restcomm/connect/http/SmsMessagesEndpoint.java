@@ -29,8 +29,6 @@ import akka.util.Timeout;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
 import com.thoughtworks.xstream.XStream;
 import org.apache.commons.configuration.Configuration;
 import org.joda.time.DateTime;
@@ -53,6 +51,8 @@ import org.restcomm.connect.sms.api.SmsSessionAttribute;
 import org.restcomm.connect.sms.api.SmsSessionInfo;
 import org.restcomm.connect.sms.api.SmsSessionRequest;
 import org.restcomm.connect.sms.api.SmsSessionResponse;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
+import org.restcomm.connect.commons.util.SmsSegments;
 import org.restcomm.connect.commons.util.StringUtils;
 import scala.concurrent.Await;
 import scala.concurrent.Future;
@@ -153,27 +153,22 @@ public abstract class SmsMessagesEndpoint extends SecuredEndpoint {
         }
     }
 
-    private void normalize(final MultivaluedMap<String, String> data) throws IllegalArgumentException {
-        final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
+    private void normalize(final Sid accountId, final MultivaluedMap<String, String> data) throws IllegalArgumentException {
+        final PhoneNumberNormalizer normalizer = PhoneNumberNormalizer.getInstance();
         final String from = data.getFirst("From");
         data.remove("From");
         try {
-            data.putSingle("From", phoneNumberUtil.format(phoneNumberUtil.parse(from, "US"), PhoneNumberFormat.E164));
+            data.putSingle("From", normalizer.e164(from, accountId));
         } catch (final NumberParseException exception) {
             throw new IllegalArgumentException(exception);
         }
         final String to = data.getFirst("To");
         data.remove("To");
         try {
-            data.putSingle("To", phoneNumberUtil.format(phoneNumberUtil.parse(to, "US"), PhoneNumberFormat.E164));
+            data.putSingle("To", normalizer.e164(to, accountId));
         } catch (final NumberParseException exception) {
             throw new IllegalArgumentException(exception);
         }
-        final String body = data.getFirst("Body");
-        if (body.getBytes().length > 160) {
-            data.remove("Body");
-            data.putSingle("Body", body.substring(0, 159));
-        }
     }
 
     @SuppressWarnings("unchecked")
@@ -183,7 +178,7 @@ public abstract class SmsMessagesEndpoint extends SecuredEndpoint {
         try {
             validate(data);
             if(normalizePhoneNumbers)
-                normalize(data);
+                normalize(new Sid(accountSid), data);
         } catch (final RuntimeException exception) {
             return status(BAD_REQUEST).entity(exception.getMessage()).build();
         }
@@ -276,6 +271,10 @@ public abstract class SmsMessagesEndpoint extends SecuredEndpoint {
             throw new NullPointerException("To can not be null.");
         } else if (!data.containsKey("Body")) {
             throw new NullPointerException("Body can not be null.");
+        } else if (data.getFirst("Body").length() > SmsMessage.MAX_BODY_LENGTH) {
+            throw new IllegalArgumentException("Body can not be longer than " + SmsMessage.MAX_BODY_LENGTH + " characters.");
+        } else if (SmsSegments.count(data.getFirst("Body")) > SmsMessage.MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Body can not be longer than " + SmsMessage.MAX_SEGMENTS + " SMS segments.");
         }
     }
 
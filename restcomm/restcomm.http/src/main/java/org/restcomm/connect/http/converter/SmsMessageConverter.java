@@ -59,6 +59,7 @@ public class SmsMessageConverter extends AbstractConverter implements JsonSerial
         writeFrom(smsMessage.getSender(), writer);
         writeTo(smsMessage.getRecipient(), writer);
         writeBody(smsMessage.getBody(), writer);
+        writeNumSegments(smsMessage.getNumSegments(), writer);
         writeStatus(smsMessage.getStatus().toString(), writer);
         writeDirection(smsMessage.getDirection().toString(), writer);
         writePrice(smsMessage.getPrice(), writer);
@@ -79,6 +80,7 @@ public class SmsMessageConverter extends AbstractConverter implements JsonSerial
         writeFrom(smsMessage.getSender(), object);
         writeTo(smsMessage.getRecipient(), object);
         writeBody(smsMessage.getBody(), object);
+        writeNumSegments(smsMessage.getNumSegments(), object);
         writeStatus(smsMessage.getStatus().toString(), object);
         writeDirection(smsMessage.getDirection().toString(), object);
         writePrice(smsMessage.getPrice(), object);
@@ -104,6 +106,16 @@ public class SmsMessageConverter extends AbstractConverter implements JsonSerial
         }
     }
 
+    private void writeNumSegments(final int numSegments, final HierarchicalStreamWriter writer) {
+        writer.startNode("NumSegments");
+        writer.setValue(Integer.toString(numSegments));
+        writer.endNode();
+    }
+
+    private void writeNumSegments(final int numSegments, final JsonObject object) {
+        object.addProperty("num_segments", numSegments);
+    }
+
     private void writeDateSent(final DateTime dateSent, final HierarchicalStreamWriter writer) {
         writer.startNode("DateSent");
         if (dateSent != null) {
@@ -20,7 +20,11 @@
 
 package org.restcomm.connect.dao;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.apache.commons.configuration.Configuration;
+import org.restcomm.connect.commons.recording.RecordingUploader;
 
 /**
  * DaoManager mock class to be used for unit-testing endpoints. Add further Daos if needed.
@@ -145,6 +149,36 @@ public class DaoManagerMock implements DaoManager {
         return null;
     }
 
+    @Override
+    public RecordingUploader getRecordingUploader() {
+        return null;
+    }
+
+    @Override
+    public NotificationWriter getNotificationWriter() {
+        return null;
+    }
+
+    @Override
+    public RecordingStorageManager getRecordingStorageManager() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Integer> getStatementMetrics() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, Integer> getConnectionPoolMetrics() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, Integer> getCallDetailRecordArchiveMetrics() {
+        return Collections.emptyMap();
+    }
+
     @Override
     public void configure(Configuration configuration, Configuration daoManagerConfiguration) {
 
@@ -0,0 +1,51 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class RecordingsServletTest {
+    private static final long LENGTH = 1000;
+
+    @Test
+    public void singleRangesAreServed() {
+        assertArrayEquals(new long[] { 0, 99 }, RecordingsServlet.range("bytes=0-99", LENGTH));
+        assertArrayEquals(new long[] { 100, 999 }, RecordingsServlet.range("bytes=100-", LENGTH));
+        assertArrayEquals(new long[] { 990, 999 }, RecordingsServlet.range("bytes=-10", LENGTH));
+        assertArrayEquals(new long[] { 0, 999 }, RecordingsServlet.range("bytes=0-5000", LENGTH));
+    }
+
+    @Test
+    public void rangesPastTheEndAreNotSatisfiable() {
+        assertArrayEquals(new long[0], RecordingsServlet.range("bytes=1000-", LENGTH));
+        assertArrayEquals(new long[0], RecordingsServlet.range("bytes=-0", LENGTH));
+    }
+
+    @Test
+    public void otherRangesServeTheWholeRecording() {
+        assertNull(RecordingsServlet.range("bytes=0-1,5-6", LENGTH));
+        assertNull(RecordingsServlet.range("bytes=5-2", LENGTH));
+        assertNull(RecordingsServlet.range("items=0-1", LENGTH));
+        assertNull(RecordingsServlet.range("bytes=x-", LENGTH));
+    }
+}
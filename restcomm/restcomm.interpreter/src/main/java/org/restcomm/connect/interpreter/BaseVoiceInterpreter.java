@@ -29,9 +29,6 @@ import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.util.Timeout;
 import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
-import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import org.apache.commons.configuration.Configuration;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
@@ -48,6 +45,7 @@ import org.restcomm.connect.commons.cache.DiskCacheFactory;
 import org.restcomm.connect.commons.cache.DiskCacheRequest;
 import org.restcomm.connect.commons.cache.DiskCacheResponse;
 import org.restcomm.connect.commons.cache.HashGenerator;
+import org.restcomm.connect.commons.common.http.StatusCallbackQueue;
 import org.restcomm.connect.dao.CallDetailRecordsDao;
 import org.restcomm.connect.dao.DaoManager;
 import org.restcomm.connect.dao.NotificationsDao;
@@ -83,6 +81,7 @@ import org.restcomm.connect.mscontrol.api.messages.MediaGroupResponse;
 import org.restcomm.connect.mscontrol.api.messages.Play;
 import org.restcomm.connect.mscontrol.api.messages.Record;
 import org.restcomm.connect.commons.patterns.Observe;
+import org.restcomm.connect.commons.recording.RecordingLayout;
 import org.restcomm.connect.sms.api.CreateSmsSession;
 import org.restcomm.connect.sms.api.DestroySmsSession;
 import org.restcomm.connect.sms.api.SmsServiceResponse;
@@ -101,6 +100,7 @@ import org.restcomm.connect.tts.api.GetSpeechSynthesizerInfo;
 import org.restcomm.connect.tts.api.SpeechSynthesizerInfo;
 import org.restcomm.connect.tts.api.SpeechSynthesizerRequest;
 import org.restcomm.connect.tts.api.SpeechSynthesizerResponse;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.commons.util.UriUtils;
 import org.restcomm.connect.commons.util.WavUtils;
 import scala.concurrent.Await;
@@ -464,6 +464,11 @@ public abstract class BaseVoiceInterpreter extends UntypedActor {
             }
             final List<NameValuePair> parameters = parameters();
             requestCallback = new HttpRequestDescriptor(statusCallback, statusCallbackMethod, parameters);
+            // the queue journals the callback before returning, there is nothing to wait for
+            final String call = callInfo != null ? callInfo.sid().toString() : null;
+            if (StatusCallbackQueue.getInstance().send(call, statusCallback, statusCallbackMethod, parameters)) {
+                return;
+            }
             if (!ask) {
                 downloader.tell(requestCallback, null);
             } else if (ask) {
@@ -536,10 +541,8 @@ public abstract class BaseVoiceInterpreter extends UntypedActor {
 
     String e164(final String number) {
         if (configuration.subset("runtime-settings").getBoolean("normalize-numbers-for-outbound-calls")) {
-            final PhoneNumberUtil numbersUtil = PhoneNumberUtil.getInstance();
             try {
-                final PhoneNumber result = numbersUtil.parse(number, "US");
-                return numbersUtil.format(result, PhoneNumberFormat.E164);
+                return PhoneNumberNormalizer.getInstance().e164(number, accountId);
             } catch (final NumberParseException ignored) {
                 return number;
             }
@@ -1686,17 +1689,12 @@ public abstract class BaseVoiceInterpreter extends UntypedActor {
             }
             // Start recording.
             recordingSid = Sid.generate(Sid.Type.RECORDING);
-            String path = configuration.subset("runtime-settings").getString("recordings-path");
             String httpRecordingUri = configuration.subset("runtime-settings").getString("recordings-uri");
-            if (!path.endsWith("/")) {
-                path += "/";
-            }
             if (!httpRecordingUri.endsWith("/")) {
                 httpRecordingUri += "/";
             }
-            path += recordingSid.toString() + ".wav";
             httpRecordingUri += recordingSid.toString() + ".wav";
-            recordingUri = URI.create(path);
+            recordingUri = RecordingLayout.fromConfiguration(configuration.subset("runtime-settings")).uri(recordingSid.toString() + ".wav");
             try {
                 publicRecordingUri = UriUtils.resolve(new URI(httpRecordingUri));
             } catch (URISyntaxException e) {
@@ -1705,7 +1703,7 @@ public abstract class BaseVoiceInterpreter extends UntypedActor {
             Record record = null;
             if (playBeep) {
                 final List<URI> prompts = new ArrayList<URI>(1);
-                path = configuration.subset("runtime-settings").getString("prompts-uri");
+                String path = configuration.subset("runtime-settings").getString("prompts-uri");
                 if (!path.endsWith("/")) {
                     path += "/";
                 }
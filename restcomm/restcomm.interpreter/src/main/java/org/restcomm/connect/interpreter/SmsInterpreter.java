@@ -49,6 +49,7 @@ import org.restcomm.connect.email.api.EmailRequest;
 import org.restcomm.connect.email.api.EmailResponse;
 import org.restcomm.connect.email.api.Mail;
 import org.restcomm.connect.dao.entities.Notification;
+import org.restcomm.connect.commons.common.http.StatusCallbackQueue;
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.dao.entities.SmsMessage;
 import org.restcomm.connect.dao.entities.SmsMessage.Direction;
@@ -67,6 +68,7 @@ import org.restcomm.connect.interpreter.rcml.Parser;
 import org.restcomm.connect.interpreter.rcml.ParserFailed;
 import org.restcomm.connect.interpreter.rcml.Tag;
 import org.restcomm.connect.commons.patterns.Observe;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.sms.api.CreateSmsSession;
 import org.restcomm.connect.sms.api.DestroySmsSession;
 import org.restcomm.connect.sms.api.GetLastSmsRequest;
@@ -86,9 +88,6 @@ import akka.event.Logging;
 import akka.event.LoggingAdapter;
 
 import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
-import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import org.restcomm.connect.interpreter.rcml.Verbs;
 
 /**
@@ -248,10 +247,8 @@ public final class SmsInterpreter extends UntypedActor {
 
     protected String format(final String number) {
         if(normalizeNumber) {
-            final PhoneNumberUtil numbersUtil = PhoneNumberUtil.getInstance();
             try {
-                final PhoneNumber result = numbersUtil.parse(number, "US");
-                return numbersUtil.format(result, PhoneNumberFormat.E164);
+                return PhoneNumberNormalizer.getInstance().e164(number, accountId);
             } catch (final NumberParseException ignored) {
                 return null;
             }
@@ -464,8 +461,10 @@ public final class SmsInterpreter extends UntypedActor {
             if (attribute != null) {
                 final URI callback = (URI) attribute;
                 final List<NameValuePair> parameters = parameters();
-                request = new HttpRequestDescriptor(callback, "POST", parameters);
-                downloader.tell(request, null);
+                if (!StatusCallbackQueue.getInstance().send(record.getSid().toString(), callback, "POST", parameters)) {
+                    request = new HttpRequestDescriptor(callback, "POST", parameters);
+                    downloader.tell(request, null);
+                }
             }
             // Destroy the sms session.
             final ActorRef session = sessions.remove(record.getSid());
@@ -44,6 +44,7 @@ import org.restcomm.connect.commons.fsm.TransitionFailedException;
 import org.restcomm.connect.commons.fsm.TransitionNotFoundException;
 import org.restcomm.connect.commons.fsm.TransitionRollbackException;
 import org.restcomm.connect.commons.patterns.Observe;
+import org.restcomm.connect.commons.recording.RecordingLayout;
 import org.restcomm.connect.commons.patterns.StopObserving;
 import org.restcomm.connect.commons.util.UriUtils;
 import org.restcomm.connect.dao.CallDetailRecordsDao;
@@ -2128,17 +2129,12 @@ public final class VoiceInterpreter extends BaseVoiceInterpreter {
         }
         Configuration runtimeSettings = configuration.subset("runtime-settings");
         recordingSid = Sid.generate(Sid.Type.RECORDING);
-        String path = runtimeSettings.getString("recordings-path");
         String httpRecordingUri = runtimeSettings.getString("recordings-uri");
-        if (!path.endsWith("/")) {
-            path += "/";
-        }
         if (!httpRecordingUri.endsWith("/")) {
             httpRecordingUri += "/";
         }
-        path += recordingSid.toString() + ".wav";
         httpRecordingUri += recordingSid.toString() + ".wav";
-        this.recordingUri = URI.create(path);
+        this.recordingUri = RecordingLayout.fromConfiguration(runtimeSettings).uri(recordingSid.toString() + ".wav");
         try {
             this.publicRecordingUri = UriUtils.resolve(new URI(httpRecordingUri));
         } catch (URISyntaxException e) {
@@ -31,10 +31,17 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.sip.ServletParseException;
 import javax.sip.header.ContactHeader;
 
+import org.restcomm.connect.commons.akka.MonitoredMailbox;
+import org.restcomm.connect.commons.common.http.StatusCallbackQueue;
 import org.restcomm.connect.commons.patterns.Observing;
 import org.restcomm.connect.commons.patterns.StopObserving;
+import org.restcomm.connect.commons.throttling.AccountLimiter;
+import org.restcomm.connect.commons.recording.RecordingUploader;
 import org.restcomm.connect.dao.DaoManager;
+import org.restcomm.connect.dao.NotificationWriter;
+import org.restcomm.connect.dao.RecordingStorageManager;
 import org.restcomm.connect.dao.entities.InstanceId;
+import org.restcomm.connect.extension.controller.ExtensionController;
 import org.restcomm.connect.telephony.api.CallInfo;
 import org.restcomm.connect.telephony.api.CallResponse;
 import org.restcomm.connect.telephony.api.CallStateChanged;
@@ -57,6 +64,7 @@ public class MonitoringService extends UntypedActor{
 
     private final LoggingAdapter logger = Logging.getLogger(getContext().system(), this);
     private DaoManager daoManager;
+    private final AccountLimiter limiter;
 
     private final Map<String, ActorRef> callMap;
     private final Map<String, ActorRef> callLocationMap;
@@ -83,10 +91,16 @@ public class MonitoringService extends UntypedActor{
     private final AtomicInteger maxConcurrentIncomingCalls;
     private final AtomicInteger maxConcurrentOutgoingCalls;
     private InstanceId instanceId;
+    private Map<String, Integer> startupMetrics;
 
 
     public MonitoringService(final DaoManager daoManager) {
+        this(daoManager, null);
+    }
+
+    public MonitoringService(final DaoManager daoManager, final AccountLimiter limiter) {
         this.daoManager = daoManager;
+        this.limiter = limiter;
         callMap = new ConcurrentHashMap<String, ActorRef>();
         callLocationMap = new ConcurrentHashMap<String, ActorRef>();
         callDetailsMap = new ConcurrentHashMap<String, CallInfo>();
@@ -127,6 +141,8 @@ public class MonitoringService extends UntypedActor{
 
         if (InstanceId.class.equals(klass)) {
             onGotInstanceId((InstanceId) message, self, sender);
+        } else if (StartupMetrics.class.equals(klass)) {
+            startupMetrics = ((StartupMetrics) message).getMetrics();
         } else if (Observing.class.equals(klass)) {
             onStartObserve((Observing) message, self, sender);
         } else if (StopObserving.class.equals(klass)) {
@@ -411,6 +427,34 @@ public class MonitoringService extends UntypedActor{
         countersMap.put(MonitoringMetrics.COUNTERS_MAP_TEXT_MESSAGE_INBOUND_TO_PROXY_OUT, textInboundToProxyOut.get());
         countersMap.put(MonitoringMetrics.COUNTERS_MAP_TEXT_MESSAGE_NOT_FOUND, textNotFound.get());
         countersMap.put(MonitoringMetrics.COUNTERS_MAP_TEXT_MESSAGE_OUTBOUND, textOutbound.get());
+        if (limiter != null) {
+            countersMap.putAll(limiter.getMetrics());
+        }
+        final RecordingUploader recordingUploader = daoManager != null ? daoManager.getRecordingUploader() : null;
+        if (recordingUploader != null) {
+            countersMap.putAll(recordingUploader.getMetrics());
+        }
+        final NotificationWriter notificationWriter = daoManager != null ? daoManager.getNotificationWriter() : null;
+        if (notificationWriter != null) {
+            countersMap.putAll(notificationWriter.getMetrics());
+        }
+        final RecordingStorageManager recordingStorageManager = daoManager != null ? daoManager.getRecordingStorageManager() : null;
+        if (recordingStorageManager != null) {
+            countersMap.putAll(recordingStorageManager.getMetrics());
+        }
+        countersMap.putAll(ExtensionController.getInstance().getExecutor().getMetrics());
+        if (daoManager != null) {
+            countersMap.putAll(daoManager.getStatementMetrics());
+            countersMap.putAll(daoManager.getConnectionPoolMetrics());
+            countersMap.putAll(daoManager.getCallDetailRecordArchiveMetrics());
+        }
+        countersMap.putAll(MonitoredMailbox.getMetrics());
+        if (StatusCallbackQueue.getInstance().isRunning()) {
+            countersMap.putAll(StatusCallbackQueue.getInstance().getMetrics());
+        }
+        if (startupMetrics != null) {
+            countersMap.putAll(startupMetrics);
+        }
 
         MonitoringServiceResponse callInfoList = new MonitoringServiceResponse(instanceId, callDetailsList, countersMap, durationMap);
         sender.tell(callInfoList, self);
@@ -0,0 +1,43 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.monitoringservice;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.restcomm.connect.commons.annotations.concurrency.Immutable;
+
+/**
+ * Startup phase durations in milliseconds, reported once by the bootstrapper and merged into the counters map.
+ */
+@Immutable
+public final class StartupMetrics {
+    private final Map<String, Integer> metrics;
+
+    public StartupMetrics(final Map<String, Integer> metrics) {
+        super();
+        this.metrics = Collections.unmodifiableMap(new HashMap<String, Integer>(metrics));
+    }
+
+    public Map<String, Integer> getMetrics() {
+        return metrics;
+    }
+}
@@ -75,9 +75,15 @@ public class PhoneNumberProvisioningManagerProvider {
         PhoneNumberProvisioningManager manager = (PhoneNumberProvisioningManager) context.getAttribute("PhoneNumberProvisioningManager");
         if (manager != null) // ok, it's already in the context. Return it
             return manager;
-        manager = create();
-        // put it into the context for next time that is requested
-        context.setAttribute("PhoneNumberProvisioningManager", manager);
+        // the endpoints share the context, make sure concurrent first requests create a single manager
+        synchronized (context) {
+            manager = (PhoneNumberProvisioningManager) context.getAttribute("PhoneNumberProvisioningManager");
+            if (manager == null) {
+                manager = create();
+                // put it into the context for next time that is requested
+                context.setAttribute("PhoneNumberProvisioningManager", manager);
+            }
+        }
         return manager;
     }
 
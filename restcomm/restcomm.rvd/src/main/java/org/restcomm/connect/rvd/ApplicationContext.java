@@ -20,9 +20,13 @@
 
 package org.restcomm.connect.rvd;
 
+import java.util.concurrent.ExecutorService;
+
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
 import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.identity.AccountProvider;
+import org.restcomm.connect.rvd.storage.CompiledProjectCache;
 
 /**
  * This class holds all objects whose lifecycle follows the rvd application.
@@ -37,6 +41,9 @@ public class ApplicationContext {
     CustomHttpClientBuilder httpClientBuilder;
     AccountProvider accountProvider;
     ProjectRegistry projectRegistry;
+    CompiledProjectCache compiledProjectCache;
+    CloseableHttpClient externalServiceClient;
+    ExecutorService externalServiceExecutor;
 
     public RvdConfiguration getConfiguration() {
         return configuration;
@@ -53,4 +60,22 @@ public class ApplicationContext {
     public ProjectRegistry getProjectRegistry() {
         return projectRegistry;
     }
+
+    public CompiledProjectCache getCompiledProjectCache() {
+        return compiledProjectCache;
+    }
+
+    /**
+     * Pooled client shared by all ExternalService steps. Do not close it after use.
+     */
+    public CloseableHttpClient getExternalServiceClient() {
+        return externalServiceClient;
+    }
+
+    /**
+     * Executor for running ExternalService requests in parallel. It is null unless parallel requests are enabled.
+     */
+    public ExecutorService getExternalServiceExecutor() {
+        return externalServiceExecutor;
+    }
 }
@@ -20,9 +20,13 @@
 
 package org.restcomm.connect.rvd;
 
+import java.util.concurrent.ExecutorService;
+
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
 import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.identity.AccountProvider;
+import org.restcomm.connect.rvd.storage.CompiledProjectCache;
 
 /**
  * @author otsakir@gmail.com - Orestis Tsakiridis
@@ -32,6 +36,9 @@ public class ApplicationContextBuilder {
     CustomHttpClientBuilder httpClientBuilder;
     AccountProvider accountProvider;
     ProjectRegistry projectRegistry;
+    CompiledProjectCache compiledProjectCache = new CompiledProjectCache();
+    CloseableHttpClient externalServiceClient;
+    ExecutorService externalServiceExecutor;
 
     public ApplicationContextBuilder setConfiguration(RvdConfiguration configuration) {
         this.configuration = configuration;
@@ -53,12 +60,30 @@ public class ApplicationContextBuilder {
         return this;
     }
 
+    public ApplicationContextBuilder setCompiledProjectCache(CompiledProjectCache compiledProjectCache) {
+        this.compiledProjectCache = compiledProjectCache;
+        return this;
+    }
+
+    public ApplicationContextBuilder setExternalServiceClient(CloseableHttpClient externalServiceClient) {
+        this.externalServiceClient = externalServiceClient;
+        return this;
+    }
+
+    public ApplicationContextBuilder setExternalServiceExecutor(ExecutorService externalServiceExecutor) {
+        this.externalServiceExecutor = externalServiceExecutor;
+        return this;
+    }
+
     public ApplicationContext build() {
         ApplicationContext instance = new ApplicationContext();
         instance.configuration = this.configuration;
         instance.httpClientBuilder = this.httpClientBuilder;
         instance.accountProvider = this.accountProvider;
         instance.projectRegistry = this.projectRegistry;
+        instance.compiledProjectCache = this.compiledProjectCache;
+        instance.externalServiceClient = this.externalServiceClient;
+        instance.externalServiceExecutor = this.externalServiceExecutor;
         return instance;
     }
 }
@@ -1,13 +1,18 @@
 package org.restcomm.connect.rvd;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.log4j.Logger;
 import org.restcomm.connect.rvd.model.StepJsonDeserializer;
 import org.restcomm.connect.rvd.model.StepJsonSerializer;
 import org.restcomm.connect.rvd.model.client.Node;
 import org.restcomm.connect.rvd.model.client.ProjectState;
 import org.restcomm.connect.rvd.model.client.Step;
+import org.restcomm.connect.rvd.model.server.CompiledProject;
 import org.restcomm.connect.rvd.model.server.NodeName;
 import org.restcomm.connect.rvd.model.server.ProjectOptions;
+import org.restcomm.connect.rvd.storage.CompiledProjectCache;
 import org.restcomm.connect.rvd.storage.FsProjectStorage;
 import org.restcomm.connect.rvd.storage.WorkspaceStorage;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
@@ -26,9 +31,18 @@ public class BuildService {
 
     protected Gson gson;
     private WorkspaceStorage workspaceStorage;
+    private CompiledProjectCache compiledProjectCache;
 
     public BuildService(WorkspaceStorage workspaceStorage) {
+        this(workspaceStorage, null);
+    }
+
+    /**
+     * @param compiledProjectCache if not null, the compiled image of each built project is stored there
+     */
+    public BuildService(WorkspaceStorage workspaceStorage, CompiledProjectCache compiledProjectCache) {
         this.workspaceStorage = workspaceStorage;
+        this.compiledProjectCache = compiledProjectCache;
         // Parse the big project state object into a nice dto model
         gson = new GsonBuilder()
                 .registerTypeAdapter(Step.class, new StepJsonDeserializer())
@@ -62,6 +76,21 @@ public class BuildService {
         //    projectOptions.setLogging(true);
         // Save the nodename-node-label mapping
         FsProjectStorage.storeProjectOptions(projectOptions, projectName, workspaceStorage);
+
+        if (compiledProjectCache != null) {
+            // the nodes and steps are already deserialized. Keep them as the compiled image of the project
+            long timestamp = FsProjectStorage.getProjectOptionsTimestamp(projectName, workspaceStorage);
+            CompiledProject compiled = new CompiledProject(projectOptions, timestamp);
+            for (Node node : projectState.getNodes()) {
+                List<String> stepnames = new ArrayList<String>();
+                for (Step step : node.getSteps()) {
+                    stepnames.add(step.getName());
+                    compiled.addStep(node.getName(), step.getName(), step);
+                }
+                compiled.addNode(node.getName(), stepnames);
+            }
+            compiledProjectCache.put(projectName, compiled);
+        }
     }
 
     public void buildProject(String projectName) throws StorageException {
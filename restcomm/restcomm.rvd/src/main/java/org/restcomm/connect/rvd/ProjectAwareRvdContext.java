@@ -1,5 +1,7 @@
 package org.restcomm.connect.rvd;
 
+import java.io.File;
+
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 
@@ -23,7 +25,8 @@ public class ProjectAwareRvdContext extends RvdContext {
             throw new IllegalArgumentException();
         setProjectName(projectName);
         // setup application logging
-        this.projectLogger = new ProjectLogger(projectName, getSettings(), getMarshaler(), residentInfo.logRotationSemaphore);
+        String logFilenameBase = getSettings().getProjectBasePath(projectName) + File.separator + RvdConfiguration.PROJECT_LOG_FILENAME;
+        this.projectLogger = new ProjectLogger(residentInfo.getLogAppender(logFilenameBase), getMarshaler());
         // initialize project settings
         try {
             this.projectSettings = FsProjectStorage.loadProjectSettings(projectName, workspaceStorage);
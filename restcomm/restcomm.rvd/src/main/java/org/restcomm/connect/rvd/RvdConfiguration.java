@@ -49,6 +49,12 @@ public class RvdConfiguration {
     public static final String PROJECT_LOG_FILENAME = "rvdapp"; //will produce rvdapp.log, rvdapp-1.log etc.
     public static final int PROJECT_LOG_BACKLOG_COUNT = 3; // the number of rotated files besides the main log file
     public static final int PROJECT_LOG_ROTATION_SIZE = 300000;
+    // ExternalService steps
+    public static final int DEFAULT_ES_MAX_CONNECTIONS = 200; // pooled connections to all external services
+    public static final int DEFAULT_ES_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final int DEFAULT_ES_IDLE_TIMEOUT = 30000; // milliseconds a pooled connection can stay idle
+    public static final int DEFAULT_ES_TIMEOUT = 60000; // milliseconds to connect, wait for a pooled connection or for a response
+    public static final int PROJECT_LOG_BUFFER_SIZE = 1000; // entries queued for the log writer before new ones get dropped
     // App Store
     public static final String DEFAULT_APPSTORE_DOMAIN = "apps.restcomm.com";
     // the names of the parameters supplied by restcomm request when starting an application
@@ -186,6 +192,35 @@ public class RvdConfiguration {
         return restcommConfig.getSslMode();
     }
 
+    public int getExternalServiceMaxConnections() {
+        if (rvdConfig != null && rvdConfig.getEsMaxConnections() != null)
+            return rvdConfig.getEsMaxConnections();
+        return DEFAULT_ES_MAX_CONNECTIONS;
+    }
+
+    public int getExternalServiceMaxConnectionsPerRoute() {
+        if (rvdConfig != null && rvdConfig.getEsMaxConnectionsPerRoute() != null)
+            return rvdConfig.getEsMaxConnectionsPerRoute();
+        return DEFAULT_ES_MAX_CONNECTIONS_PER_ROUTE;
+    }
+
+    public int getExternalServiceIdleTimeout() {
+        if (rvdConfig != null && rvdConfig.getEsIdleTimeout() != null)
+            return rvdConfig.getEsIdleTimeout();
+        return DEFAULT_ES_IDLE_TIMEOUT;
+    }
+
+    public int getExternalServiceTimeout() {
+        if (rvdConfig != null && rvdConfig.getEsTimeout() != null)
+            return rvdConfig.getEsTimeout();
+        return DEFAULT_ES_TIMEOUT;
+    }
+
+    // run the requests of consecutive independent ExternalService steps of a module in parallel
+    public boolean getExternalServiceParallelRequests() {
+        return rvdConfig != null && rvdConfig.getEsParallelRequests() != null && rvdConfig.getEsParallelRequests();
+    }
+
     public boolean getUseHostnameToResolveRelativeUrl() {
         return restcommConfig.isUseHostnameToResolveRelativeUrl();
     }
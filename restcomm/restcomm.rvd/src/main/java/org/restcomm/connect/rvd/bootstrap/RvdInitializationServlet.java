@@ -1,10 +1,17 @@
 package org.restcomm.connect.rvd.bootstrap;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.log4j.Logger;
 import org.restcomm.connect.rvd.ApplicationContext;
 import org.restcomm.connect.rvd.ApplicationContextBuilder;
@@ -13,6 +20,7 @@ import org.restcomm.connect.rvd.commons.http.CustomHttpClientBuilder;
 import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.identity.AccountProvider;
 import org.restcomm.connect.rvd.model.ModelMarshaler;
+import org.restcomm.connect.rvd.storage.CompiledProjectCache;
 import org.restcomm.connect.rvd.storage.WorkspaceStorage;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.upgrade.UpgradeService;
@@ -32,11 +40,24 @@ public class RvdInitializationServlet extends HttpServlet {
         RvdConfiguration rvdConfiguration = new RvdConfiguration(servletContext);
         CustomHttpClientBuilder httpClientBuilder = new CustomHttpClientBuilder(rvdConfiguration);
         AccountProvider accountProvider = new AccountProvider(rvdConfiguration, httpClientBuilder);
+        CloseableHttpClient externalServiceClient = httpClientBuilder.buildPooledHttpClient(rvdConfiguration.getExternalServiceMaxConnections(),
+                rvdConfiguration.getExternalServiceMaxConnectionsPerRoute(), rvdConfiguration.getExternalServiceIdleTimeout(),
+                rvdConfiguration.getExternalServiceTimeout());
+        ExecutorService externalServiceExecutor = null;
+        if (rvdConfiguration.getExternalServiceParallelRequests()) {
+            // requests beyond what the pool can serve are rejected and then run by their step in order
+            int threads = rvdConfiguration.getExternalServiceMaxConnectionsPerRoute();
+            externalServiceExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(rvdConfiguration.getExternalServiceMaxConnections()));
+        }
         ApplicationContext appContext = new ApplicationContextBuilder()
                 .setConfiguration(rvdConfiguration)
                 .setHttpClientBuilder(httpClientBuilder)
                 .setAccountProvider(accountProvider)
-                .setProjectRegistry(new ProjectRegistry()).build();
+                .setProjectRegistry(new ProjectRegistry())
+                .setCompiledProjectCache(new CompiledProjectCache())
+                .setExternalServiceClient(externalServiceClient)
+                .setExternalServiceExecutor(externalServiceExecutor).build();
         servletContext.setAttribute(ApplicationContext.class.getName(), appContext);
 
         WorkspaceBootstrapper workspaceBootstrapper = new WorkspaceBootstrapper(rvdConfiguration.getWorkspaceBasePath());
@@ -52,6 +73,19 @@ public class RvdInitializationServlet extends HttpServlet {
         }
     }
 
+    @Override
+    public void destroy() {
+        ApplicationContext appContext = (ApplicationContext) getServletContext().getAttribute(ApplicationContext.class.getName());
+        if (appContext != null) {
+            if (appContext.getExternalServiceExecutor() != null)
+                appContext.getExternalServiceExecutor().shutdownNow();
+            HttpClientUtils.closeQuietly(appContext.getExternalServiceClient());
+            if (appContext.getProjectRegistry() != null)
+                appContext.getProjectRegistry().releaseAll();
+        }
+        super.destroy();
+    }
+
     public RvdInitializationServlet() {
         // TODO Auto-generated constructor stub
     }
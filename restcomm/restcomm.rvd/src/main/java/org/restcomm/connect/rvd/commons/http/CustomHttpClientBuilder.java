@@ -4,14 +4,21 @@ package org.restcomm.connect.rvd.commons.http;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
 
 
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.DefaultHostnameVerifier;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContexts;
 import org.restcomm.connect.rvd.RvdConfiguration;
 
@@ -40,6 +47,46 @@ public class CustomHttpClientBuilder {
             return buildAllowallClient();
     }
 
+    /**
+     * Returns a client backed by a connection pool. Connections are kept alive and reused across requests so it
+     * is meant to be shared and closed only when the application stops.
+     *
+     * @param idleTimeout milliseconds after which idle pooled connections are closed
+     * @param timeout milliseconds to wait for a pooled connection, to connect and between two packets of a response
+     */
+    public CloseableHttpClient buildPooledHttpClient(int maxConnections, int maxConnectionsPerRoute, int idleTimeout, int timeout) {
+        SSLConnectionSocketFactory sslsf;
+        if ( sslMode == SslMode.strict ) {
+            String[] protocols = getSSLPrototocolsFromSystemProperties();
+            if (protocols == null)
+                sslsf = SSLConnectionSocketFactory.getSocketFactory();
+            else
+                sslsf = new SSLConnectionSocketFactory(SSLContexts.createDefault(), protocols, null, new DefaultHostnameVerifier());
+        } else
+            sslsf = buildAllowallSocketFactory();
+
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslsf).build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // re-check connections that have been sitting in the pool for a while before leasing them
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout)
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout).build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     // returns a jersey client - experimental
     /*
     public static Client buildJerseyHttpClient() {
@@ -66,6 +113,12 @@ public class CustomHttpClientBuilder {
     }
 
     private CloseableHttpClient buildAllowallClient() {
+        CloseableHttpClient httpclient = HttpClients.custom().setSSLSocketFactory(buildAllowallSocketFactory()).build();
+
+        return httpclient;
+    }
+
+    private SSLConnectionSocketFactory buildAllowallSocketFactory() {
         String[] protocols = getSSLPrototocolsFromSystemProperties();
         //SSLContext sslcontext = SSLContexts.createDefault();
         SSLContext sslcontext;
@@ -75,10 +128,7 @@ public class CustomHttpClientBuilder {
             throw new RuntimeException(e);
         }
         // Allow TLSv1 protocol only
-        SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sslcontext, protocols, null, new NoopHostnameVerifier());
-        CloseableHttpClient httpclient = HttpClients.custom().setSSLSocketFactory(sslsf).build();
-
-        return httpclient;
+        return new SSLConnectionSocketFactory(sslcontext, protocols, null, new NoopHostnameVerifier());
     }
 
     private String[] getSSLPrototocolsFromSystemProperties() {
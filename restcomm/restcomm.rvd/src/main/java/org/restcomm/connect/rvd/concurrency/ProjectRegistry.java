@@ -51,4 +51,17 @@ public class ProjectRegistry {
         return residentProjectInfo;
     }
 
+    // Drops the data of a removed or renamed project and stops its log appender
+    public void release(String applicationId) {
+        ResidentProjectInfo residentProjectInfo = projects.remove(applicationId);
+        if (residentProjectInfo != null)
+            residentProjectInfo.close();
+    }
+
+    // Stops the log appenders of all projects. Called when RVD stops.
+    public void releaseAll() {
+        for (String applicationId : projects.keySet())
+            release(applicationId);
+    }
+
 }
@@ -20,6 +20,9 @@
 
 package org.restcomm.connect.rvd.concurrency;
 
+import org.restcomm.connect.rvd.RvdConfiguration;
+import org.restcomm.connect.rvd.logging.LogAppender;
+
 /**
  * Information for a project that needs to stay in memory. For example semaphores etc.
  *
@@ -30,5 +33,22 @@ public class ResidentProjectInfo {
     //public static class
 
     public LogRotationSemaphore logRotationSemaphore = new LogRotationSemaphore(); // application log rotation synchronizes on this
+    private LogAppender logAppender;
     // ...
+
+    // the single appender writing the project application log. Created on first use.
+    public synchronized LogAppender getLogAppender(String logFilenameBase) {
+        if (logAppender == null)
+            logAppender = new LogAppender(logFilenameBase, RvdConfiguration.PROJECT_LOG_ROTATION_SIZE,
+                    RvdConfiguration.PROJECT_LOG_BACKLOG_COUNT, RvdConfiguration.PROJECT_LOG_BUFFER_SIZE, logRotationSemaphore);
+        return logAppender;
+    }
+
+    // stops the appender, a new one is created if the project is used again
+    public synchronized void close() {
+        if (logAppender != null) {
+            logAppender.close();
+            logAppender = null;
+        }
+    }
 }
@@ -155,6 +155,8 @@ public class NotificationsRestService extends SecuredRestService {
         if (! getLoggedUsername().equalsIgnoreCase(project.getState().getHeader().getOwner()))
             throw new AuthorizationException();
         projectService.deleteProject(applicationSid);
+        applicationContext.getCompiledProjectCache().invalidate(applicationSid);
+        applicationContext.getProjectRegistry().release(applicationSid);
     }
 
     void processAccountRemovalNotification(String removedAccountSid) throws RvdException {
@@ -177,6 +179,8 @@ public class NotificationsRestService extends SecuredRestService {
             for (RestcommApplicationResponse app: applications) {
                 try {
                     projectService.deleteProject(app.getSid());
+                    applicationContext.getCompiledProjectCache().invalidate(app.getSid());
+                    applicationContext.getProjectRegistry().release(app.getSid());
                 } catch (ProjectDoesNotExist e) {
                     logger.warn("Project " + app.getSid() + " wasn't removed because it wasn't found.");
                 }
@@ -166,7 +166,7 @@ public class ProjectRestService extends SecuredRestService {
             applicationsApi = new ProjectApplicationsApi(getUserIdentityContext(),applicationContext);
             applicationSid = applicationsApi.createApplication(name, kind);
             ProjectState projectState = projectService.createProject(applicationSid, kind, getLoggedUsername());
-            BuildService buildService = new BuildService(workspaceStorage);
+            BuildService buildService = new BuildService(workspaceStorage, applicationContext.getCompiledProjectCache());
             buildService.buildProject(applicationSid, projectState);
 
         } catch (ProjectAlreadyExists e) {
@@ -314,6 +314,7 @@ public class ProjectRestService extends SecuredRestService {
                 } catch (ApplicationApiNotSynchedException e) {
                     logger.warn(e.getMessage());
                 }
+                applicationContext.getProjectRegistry().release(applicationSid);
                 return Response.ok().build();
             } catch (ApplicationAlreadyExists e) {
                 return Response.status(Status.CONFLICT).build();
@@ -339,7 +340,7 @@ public class ProjectRestService extends SecuredRestService {
                     logger.info("project '" + applicationSid + "' upgraded to version " + RvdConfiguration.getRvdProjectVersion());
                 }
                 // re-build project
-                BuildService buildService = new BuildService(workspaceStorage);
+                BuildService buildService = new BuildService(workspaceStorage, applicationContext.getCompiledProjectCache());
                 buildService.buildProject(applicationSid, activeProject);
                 if(logger.isInfoEnabled()) {
                     logger.info("project '" + applicationSid + "' built");
@@ -366,6 +367,8 @@ public class ProjectRestService extends SecuredRestService {
                 ProjectApplicationsApi applicationsApi = new ProjectApplicationsApi(getUserIdentityContext(),applicationContext);
                 applicationsApi.removeApplication(applicationSid);
                 projectService.deleteProject(applicationSid);
+                applicationContext.getCompiledProjectCache().invalidate(applicationSid);
+                applicationContext.getProjectRegistry().release(applicationSid);
                 return Response.ok().build();
             } catch (StorageException e) {
                 logger.error("Error deleting project '" + applicationSid + "'", e);
@@ -630,7 +633,7 @@ public class ProjectRestService extends SecuredRestService {
             ProjectDoesNotExist {
         secure();
         assertProjectAvailable(applicationSid);
-        BuildService buildService = new BuildService(workspaceStorage);
+        BuildService buildService = new BuildService(workspaceStorage, applicationContext.getCompiledProjectCache());
         try {
             buildService.buildProject(applicationSid, activeProject);
             return Response.ok().build();
@@ -291,7 +291,7 @@ public class RasRestService extends SecuredRestService {
         if(logger.isInfoEnabled()) {
             logger.info("uploading new ras app");
         }
-        BuildService buildService = new BuildService(workspaceStorage);
+        BuildService buildService = new BuildService(workspaceStorage, applicationContext.getCompiledProjectCache());
         //RvdUser loggedUser = (RvdUser) securityContext.getUserPrincipal();
         ProjectApplicationsApi applicationsApi = null;
         String applicationSid = null;
@@ -65,6 +65,7 @@ import org.restcomm.connect.rvd.utils.RvdUtils;
 public class RvdController extends SecuredRestService {
     static final Logger logger = Logger.getLogger(RvdController.class.getName());
     Pattern appIdPattern = Pattern.compile("^apps\\/([a-zA-Z0-9]+)(\\/|$)");
+    static final long LOG_FLUSH_TIMEOUT_MILLIS = 2000;
 
     private RvdConfiguration rvdSettings;
     private ProjectAwareRvdContext rvdContext;
@@ -408,6 +409,7 @@ public class RvdController extends SecuredRestService {
             InputStream logStream;
             try {
                 // TODO make sure getLogFilePath() returns the right value here
+                rvdContext.getProjectLogger().flush(LOG_FLUSH_TIMEOUT_MILLIS); // let queued entries reach the file
                 logStream = new FileInputStream(rvdContext.getProjectLogger().getLogFilePath());
                 return Response.ok(logStream, "text/plain").header("Cache-Control", "no-cache, no-store, must-revalidate")
                         .header("Pragma", "no-cache").build();
@@ -1,14 +1,26 @@
 package org.restcomm.connect.rvd.interpreter;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.net.SocketTimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,7 +29,9 @@ import javax.ws.rs.core.MultivaluedMap;
 
 import java.net.URLEncoder;
 
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.log4j.Logger;
 import org.restcomm.connect.rvd.ApplicationContext;
 import org.restcomm.connect.rvd.ProjectAwareRvdContext;
@@ -29,10 +43,10 @@ import org.restcomm.connect.rvd.exceptions.UndefinedTarget;
 import org.restcomm.connect.rvd.interpreter.exceptions.BadExternalServiceResponse;
 import org.restcomm.connect.rvd.interpreter.exceptions.InvalidAccessOperationAction;
 import org.restcomm.connect.rvd.model.ModelMarshaler;
-import org.restcomm.connect.rvd.model.StepJsonDeserializer;
 import org.restcomm.connect.rvd.model.client.Step;
 import org.restcomm.connect.rvd.model.rcml.RcmlResponse;
 import org.restcomm.connect.rvd.model.rcml.RcmlStep;
+import org.restcomm.connect.rvd.model.server.CompiledProject;
 import org.restcomm.connect.rvd.model.server.NodeName;
 import org.restcomm.connect.rvd.model.server.ProjectOptions;
 import org.restcomm.connect.rvd.model.steps.dial.ClientNounConverter;
@@ -46,6 +60,7 @@ import org.restcomm.connect.rvd.model.steps.dial.RcmlSipuriNoun;
 import org.restcomm.connect.rvd.model.steps.dial.SipuriNounConverter;
 import org.restcomm.connect.rvd.model.steps.email.RcmlEmailStep;
 import org.restcomm.connect.rvd.model.steps.es.AccessOperation;
+import org.restcomm.connect.rvd.model.steps.es.ExternalServiceResponse;
 import org.restcomm.connect.rvd.model.steps.es.ExternalServiceStep;
 import org.restcomm.connect.rvd.model.steps.es.ValueExtractor;
 import org.restcomm.connect.rvd.model.steps.fax.FaxStepConverter;
@@ -71,11 +86,10 @@ import org.restcomm.connect.rvd.model.steps.ussdsay.UssdSayRcml;
 import org.restcomm.connect.rvd.model.steps.ussdsay.UssdSayStepConverter;
 import org.restcomm.connect.rvd.storage.FsProjectStorage;
 import org.restcomm.connect.rvd.storage.WorkspaceStorage;
+import org.restcomm.connect.rvd.storage.exceptions.StorageEntityNotFound;
 import org.restcomm.connect.rvd.storage.exceptions.StorageException;
 import org.restcomm.connect.rvd.utils.RvdUtils;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -111,8 +125,9 @@ public class Interpreter {
     private WorkspaceStorage workspaceStorage;
     private ModelMarshaler marshaler;
 
-    private XStream xstream;
-    private Gson gson;
+    // configured once, XStream is thread-safe for marshalling
+    private static final XStream xstream = createXStream();
+    private CompiledProject project;
     private String targetParam;
     private Target target;
     private String appName;
@@ -124,6 +139,8 @@ public class Interpreter {
     private String rcmlResult;
     private Map<String, String> variables = new HashMap<String, String>();
     private List<NodeName> nodeNames;
+    // ExternalService requests running in parallel, keyed by step
+    private Map<Step, Future<ExternalServiceResponse>> prefetchedResponses = new IdentityHashMap<Step, Future<ExternalServiceResponse>>();
 
     public static String rcmlOnException() {
         return "<Response><Hangup/></Response>";
@@ -144,12 +161,10 @@ public class Interpreter {
         this.applicationContext = applicationContext;
 
         this.contextPath = httpRequest.getContextPath();
-        init();
     }
 
-    // common intializations for all constructors
-    private void init() {
-        xstream = new XStream();
+    private static XStream createXStream() {
+        XStream xstream = new XStream();
         xstream.registerConverter(new SayStepConverter());
         xstream.registerConverter(new PlayStepConverter());
         xstream.registerConverter(new RedirectStepConverter());
@@ -218,7 +233,7 @@ public class Interpreter {
         xstream.aliasField("Uri", RcmlDialStep.class, "sipuri");
 
         // xstream.aliasField(alias, definedIn, fieldName);
-        gson = new GsonBuilder().registerTypeAdapter(Step.class, new StepJsonDeserializer()).create();
+        return xstream;
     }
 
     public RvdConfiguration getRvdSettings() {
@@ -265,7 +280,8 @@ public class Interpreter {
     public String interpret() throws RvdException {
         String response = null;
 
-        ProjectOptions projectOptions = FsProjectStorage.loadProjectOptions(appName, workspaceStorage); //rvdContext.getRuntimeProjectOptions();
+        project = applicationContext.getCompiledProjectCache().get(appName, workspaceStorage);
+        ProjectOptions projectOptions = project.getOptions();
         nodeNames = projectOptions.getNodeNames();
 
         if (targetParam == null || "".equals(targetParam)) {
@@ -331,7 +347,9 @@ public class Interpreter {
 
             if (rcmlModel == null )
                 rcmlModel = new RcmlResponse();
-            List<String> nodeStepnames = FsProjectStorage.loadNodeStepnames(appName, target.getNodename(), workspaceStorage);
+            List<String> nodeStepnames = project.getNodeStepnames(target.getNodename());
+            if (nodeStepnames == null)
+                throw new StorageEntityNotFound("Module " + target.getNodename() + " does not exist in project " + appName);
 
             // if no starting step has been specified in the target, use the first step of the node as default
             if (target.getStepname() == null && !nodeStepnames.isEmpty())
@@ -346,8 +364,10 @@ public class Interpreter {
                 rcmlModel.steps.add( rcmlStep );
             }
 
+            cancelPrefetchedResponses();
             boolean startstep_found = false;
-            for (String stepname : nodeStepnames) {
+            for (int i = 0; i < nodeStepnames.size(); i++) {
+                String stepname = nodeStepnames.get(i);
 
                 if (stepname.equals(target.getStepname()))
                     startstep_found = true;
@@ -355,6 +375,8 @@ public class Interpreter {
                 if (startstep_found) {
                     // we found our starting step. Let's start processing
                     Step step = loadStep(stepname);
+                    if (step instanceof ExternalServiceStep && !prefetchedResponses.containsKey(step))
+                        prefetchExternalServices(nodeStepnames, i);
                     String rerouteTo = step.process(this, httpRequest); // is meaningful only for some of the steps like ExternalService steps
                     // check if we have to break the currently rendered module
                     if ( rerouteTo != null )
@@ -372,10 +394,94 @@ public class Interpreter {
         return rcmlResult; // this is in case of an error
     }
 
-    private Step loadStep(String stepname) throws StorageException  {
-        String stepfile_json = FsProjectStorage.loadStep(appName, target.getNodename(), stepname, workspaceStorage);
-        Step step = gson.fromJson(stepfile_json, Step.class);
+    /**
+     * Starts the requests of consecutive ExternalService steps in parallel, starting from the step at 'index'. The
+     * batch stops at a step that is not a GET or uses a variable assigned by a previous step in it, and right after a
+     * step that may continue to another module. Requests are built here, so they see the variables as they are now.
+     * Responses are processed in step order by {@link ExternalServiceStep#process}. Nothing happens unless parallel
+     * requests are enabled.
+     */
+    private void prefetchExternalServices(List<String> nodeStepnames, int index) throws StorageException, InterpreterException {
+        final ExecutorService executor = applicationContext.getExternalServiceExecutor();
+        final CloseableHttpClient client = applicationContext.getExternalServiceClient();
+        if (executor == null || client == null)
+            return;
+
+        List<ExternalServiceStep> batch = new ArrayList<ExternalServiceStep>();
+        Set<String> assigned = new HashSet<String>();
+        for (int i = index; i < nodeStepnames.size(); i++) {
+            Step step = loadStep(nodeStepnames.get(i));
+            if (!(step instanceof ExternalServiceStep))
+                break;
+            ExternalServiceStep esStep = (ExternalServiceStep) step;
+            if (!esStep.isPrefetchable() || esStep.dependsOn(assigned))
+                break;
+            batch.add(esStep);
+            assigned.addAll(esStep.getAssignedVariables());
+            if (esStep.mayReroute())
+                break;
+        }
+        if (batch.size() < 2)
+            return; // nothing to gain
+
+        for (final ExternalServiceStep esStep : batch) {
+            final HttpUriRequest request = esStep.buildRequest(this, httpRequest);
+            final boolean keepBody = esStep.isResponseLogged(this);
+            Future<ExternalServiceResponse> future;
+            try {
+                future = executor.submit(new Callable<ExternalServiceResponse>() {
+                    @Override
+                    public ExternalServiceResponse call() throws Exception {
+                        return esStep.execute(client, request, keepBody);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // too many requests in flight, the rest of the batch runs when its steps are processed
+                return;
+            }
+            esStep.logRequest(this, request);
+            prefetchedResponses.put(esStep, future);
+        }
+    }
 
+    /**
+     * Returns the response of a request started by prefetchExternalServices() or null if there is none for this step.
+     * Blocks until the response is available, at most as long as the timeout of the external service requests.
+     */
+    public ExternalServiceResponse takePrefetchedResponse(ExternalServiceStep step) throws IOException {
+        Future<ExternalServiceResponse> future = prefetchedResponses.remove(step);
+        if (future == null)
+            return null;
+        try {
+            int timeout = applicationContext.getConfiguration().getExternalServiceTimeout();
+            return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new SocketTimeoutException("Timed out waiting for the response of ExternalService step " + step.getName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for ExternalService step " + step.getName(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // requests of a module we are leaving are of no use any more
+    private void cancelPrefetchedResponses() {
+        for (Future<ExternalServiceResponse> future : prefetchedResponses.values())
+            future.cancel(true);
+        prefetchedResponses.clear();
+    }
+
+    private Step loadStep(String stepname) throws StorageException  {
+        Step step = project.getStep(target.getNodename(), stepname);
+        if (step == null)
+            throw new StorageEntityNotFound("Step " + target.getNodename() + "." + stepname + " does not exist in project " + appName);
         return step;
     }
 
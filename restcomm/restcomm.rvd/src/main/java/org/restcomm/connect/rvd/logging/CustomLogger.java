@@ -20,19 +20,15 @@
 
 package org.restcomm.connect.rvd.logging;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
-import org.restcomm.connect.rvd.RvdConfiguration;
-import org.restcomm.connect.rvd.concurrency.LogRotationSemaphore;
+import org.restcomm.connect.rvd.model.ModelMarshaler;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Date;
 
 /**
  * A logger service for an RVD project. It is supposed to help the designer of an application for easy testing debugging without the need
  * to ssh on the server and scan through log files. Each project/app has its own application log.
+ * Entries are handed to a LogAppender: done() only queues them, the file is written and rotated asynchronously.
  * @author "Tsakiridis Orestis"
  *
  */
@@ -41,30 +37,14 @@ public class CustomLogger {
 
     protected static final int MAX_TAGS = 5;
 
-    int backlogCount = RvdConfiguration.PROJECT_LOG_BACKLOG_COUNT; // number rotated log files in addition to the main log file (total files = backlogSize + 1)
-    int triggerRotationSize = RvdConfiguration.PROJECT_LOG_ROTATION_SIZE; // the size of the main log file in bytes that will trigger the rotation when exceeded
-    String logFilenameBase; // the full path of the main log file without the extension e.g. /home/user/workspace/APxxx/project (without '.log')
-    File mainLogFile;
-
-    LogRotationSemaphore semaphore;
+    LogAppender appender;
 
     protected Object payload;
     protected String[] tags;
     protected int tagCount = 0;
 
-    public CustomLogger(String logFilenameBase, LogRotationSemaphore semaphore ) {
-        this.logFilenameBase = logFilenameBase;
-        mainLogFile = new File(logFilenameBase + ".log");
-        this.semaphore = semaphore;
-    }
-
-    public CustomLogger(String logFilenameBase, int maxSize,  int backlogCount, LogRotationSemaphore semaphore) {
-        this(logFilenameBase, semaphore);
-        if (maxSize <= 0 || backlogCount <= 0)
-            throw new IllegalArgumentException("Cannot initialize CustomLogger");
-
-        this.triggerRotationSize = maxSize;
-        this.backlogCount = backlogCount;
+    public CustomLogger(LogAppender appender) {
+        this.appender = appender;
     }
 
     public CustomLogger log(Object payload) {
@@ -92,92 +72,28 @@ public class CustomLogger {
     }
 
     public void done() {
-        Date date = new Date();
-        StringBuffer buffer = new StringBuffer();
-        buffer.append("[" + date.toString() + "]");
-        for ( String tag : tags ) {
-            if (tag == null)
-                break;
-            buffer.append( tag);
-        }
-        if ( buffer.length() > 0 )
-            buffer.append(" ");
-        append(buffer);
-        buffer.append(System.getProperty("line.separator"));  //add a newline
-        // data is ready for writing. Make sure no newlines are there
-
-        try {
-            FileUtils.writeStringToFile(mainLogFile, buffer.toString(), Charset.forName("UTF-8"), true);
-        } catch (IOException e) {
-            logger.warn("Error writing to application log to " + logFilenameBase, e);
-        }
-
-        // check for log retation
-        if (needsRotate())
-            rotate();
+        // tags array is not reused, a new one is allocated by log()
+        appender.append(new LogEntry(new Date(), tags, payload, payloadMarshaler()));
     }
 
-    protected void append(StringBuffer buffer) {
-        buffer.append(String.valueOf(payload));
+    // the marshaler to render the payload with when the entry is written. If null the payload is logged as is.
+    protected ModelMarshaler payloadMarshaler() {
+        return null;
     }
 
     public String getLogFilePath() {
-        return mainLogFile.getPath();
-    }
-
-    // clear the log file
-    // TODO check this method for concurrency issues
-    public void reset() {
-        try {
-            FileUtils.writeStringToFile(mainLogFile, "");
-        } catch (IOException e) {
-            logger.warn("Error clearing application log to " + logFilenameBase, e);
-        }
+        return appender.getLogFilePath();
     }
 
-    // do we need to rotate the application log files ?
-    boolean needsRotate() {
-        long length = mainLogFile.length();
-        if ( length >  triggerRotationSize) {
-            return true;
-        }
-        return false;
+    /**
+     * Waits for the queued entries to reach the log file. Use it before reading the file.
+     */
+    public boolean flush(long timeoutMillis) {
+        return appender.flush(timeoutMillis);
     }
 
-    void rotate() {
-        /*  Rotation algorithm
-            create project-new.log (should atomic on FS level and fail if it already exists)
-            rename project-n-1.log -> project-n.log
-            rename project-n-2.log -> project-n-1.log
-            copy project.log -> project1.log
-            rename project-new.log -> project.log
-        */
-        synchronized (semaphore) {
-            try {
-                // create a new blank file (it will become the new mainlog file)
-                // TODO make sure file creation fails if the file is already there.
-                // TODO abort rotation in case another rotation is already in place i.e. project-new.log already exists
-                File newfile = new File(logFilenameBase + "-new.log");
-                newfile.createNewFile();
-
-                // increase index of all backlog files (rename)
-                for (int i = backlogCount - 1; i >= 1; i--) {
-                    File backlogFile = new File(logFilenameBase + "-" + i + ".log");
-                    if (backlogFile.exists())
-                        backlogFile.renameTo(new File(logFilenameBase + "-" + (i + 1) + ".log"));
-                }
-                // copy main log file to the backlog
-                mainLogFile.renameTo(new File(logFilenameBase + "-1.log"));
-                // rename the new blank file to the name of the main log file
-                newfile.renameTo(mainLogFile);
-
-            } catch (IOException e) {
-                throw new RuntimeException("Error rotating application log files for project " + logFilenameBase, e);
-            }
-        }
+    // clear the log file
+    public void reset() {
+        appender.reset();
     }
-
-
-
-
 }
@@ -0,0 +1,271 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.restcomm.connect.rvd.logging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.concurrency.LogRotationSemaphore;
+
+/**
+ * Asynchronous appender for an application log file. Loggers only queue entries in a bounded buffer. A single
+ * writer thread renders them and appends them through a FileChannel that stays open as long as there is traffic.
+ * Rotation is triggered by the number of bytes written, so the log file is not stat'ed for every entry. When the
+ * buffer is full new entries are dropped and counted.
+ *
+ * There should be a single appender per log file. The project one is kept in ResidentProjectInfo.
+ */
+public class LogAppender {
+    static final Logger logger = Logger.getLogger(LogAppender.class.getName());
+
+    static final long IDLE_CLOSE_MILLIS = 5000; // the log file is closed after that long without entries
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String logFilenameBase; // the full path of the main log file without the extension
+    private final File mainLogFile;
+    private final int triggerRotationSize; // the size of the main log file in bytes that will trigger the rotation when exceeded
+    private final int backlogCount; // number of rotated log files in addition to the main log file
+    private final LogRotationSemaphore semaphore; // guards the file, the channel and the written counter
+    private final BlockingQueue<LogEntry> buffer;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+
+    private FileChannel channel;
+    private long size; // bytes in the main log file, tracked while the channel is open
+    private long written;
+    private long reportedDropped;
+    private volatile boolean closed = false;
+
+    public LogAppender(String logFilenameBase, int triggerRotationSize, int backlogCount, int bufferSize, LogRotationSemaphore semaphore) {
+        if (triggerRotationSize <= 0 || backlogCount <= 0 || bufferSize <= 0)
+            throw new IllegalArgumentException("Cannot initialize LogAppender");
+        this.logFilenameBase = logFilenameBase;
+        this.mainLogFile = new File(logFilenameBase + ".log");
+        this.triggerRotationSize = triggerRotationSize;
+        this.backlogCount = backlogCount;
+        this.semaphore = semaphore;
+        this.buffer = new ArrayBlockingQueue<LogEntry>(bufferSize);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "rvd-log-writer-" + logFilenameBase);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues an entry for writing. Never blocks.
+     *
+     * @return false if the buffer was full and the entry was dropped
+     */
+    boolean append(LogEntry entry) {
+        if (buffer.offer(entry)) {
+            accepted.incrementAndGet();
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Waits until all entries queued so far have been written.
+     *
+     * @return false if they were not written within timeoutMillis
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = accepted.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (semaphore) {
+            while (written < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                try {
+                    semaphore.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // clear the log file
+    public void reset() {
+        synchronized (semaphore) {
+            closeChannel();
+            try {
+                FileUtils.writeStringToFile(mainLogFile, "");
+            } catch (IOException e) {
+                logger.warn("Error clearing application log to " + logFilenameBase, e);
+            }
+        }
+    }
+
+    // writes what is queued, within a second, and stops the writer thread
+    public void close() {
+        flush(1000);
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getLogFilePath() {
+        return mainLogFile.getPath();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getWrittenCount() {
+        synchronized (semaphore) {
+            return written;
+        }
+    }
+
+    private void writeLoop() {
+        List<LogEntry> batch = new ArrayList<LogEntry>();
+        List<ByteBuffer> rendered = new ArrayList<ByteBuffer>();
+        while (!closed) {
+            try {
+                LogEntry entry = buffer.poll(IDLE_CLOSE_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    synchronized (semaphore) {
+                        closeChannel();
+                    }
+                    continue;
+                }
+                batch.add(entry);
+                buffer.drainTo(batch);
+                for (LogEntry item : batch) {
+                    try {
+                        rendered.add(UTF8.encode(item.render()));
+                    } catch (RuntimeException e) {
+                        logger.warn("Error rendering application log entry for " + logFilenameBase, e);
+                    }
+                }
+                write(rendered, batch.size());
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                batch.clear();
+                rendered.clear();
+            }
+        }
+        synchronized (semaphore) {
+            closeChannel();
+        }
+    }
+
+    private void write(List<ByteBuffer> entries, int processed) {
+        synchronized (semaphore) {
+            for (ByteBuffer bytes : entries) {
+                try {
+                    if (channel == null)
+                        openChannel();
+                    size += bytes.remaining();
+                    while (bytes.hasRemaining())
+                        channel.write(bytes);
+                } catch (IOException e) {
+                    logger.warn("Error writing to application log to " + logFilenameBase, e);
+                    closeChannel();
+                }
+                // check for log rotation
+                if (size > triggerRotationSize)
+                    rotate();
+            }
+            written += processed;
+            semaphore.notifyAll();
+        }
+        long droppedNow = dropped.get();
+        if (droppedNow > reportedDropped) {
+            logger.warn((droppedNow - reportedDropped) + " application log entries dropped for " + logFilenameBase + " (buffer full)");
+            reportedDropped = droppedNow;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = new FileOutputStream(mainLogFile, true).getChannel();
+        size = channel.size();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Error closing application log " + logFilenameBase, e);
+            }
+            channel = null;
+        }
+    }
+
+    private void rotate() {
+        /*  Rotation algorithm
+            create project-new.log (should atomic on FS level and fail if it already exists)
+            rename project-n-1.log -> project-n.log
+            rename project-n-2.log -> project-n-1.log
+            copy project.log -> project1.log
+            rename project-new.log -> project.log
+        */
+        closeChannel();
+        try {
+            // create a new blank file (it will become the new mainlog file)
+            File newfile = new File(logFilenameBase + "-new.log");
+            newfile.createNewFile();
+
+            // increase index of all backlog files (rename)
+            for (int i = backlogCount - 1; i >= 1; i--) {
+                File backlogFile = new File(logFilenameBase + "-" + i + ".log");
+                if (backlogFile.exists())
+                    backlogFile.renameTo(new File(logFilenameBase + "-" + (i + 1) + ".log"));
+            }
+            // copy main log file to the backlog
+            mainLogFile.renameTo(new File(logFilenameBase + "-1.log"));
+            // rename the new blank file to the name of the main log file
+            newfile.renameTo(mainLogFile);
+        } catch (IOException e) {
+            logger.error("Error rotating application log files for project " + logFilenameBase, e);
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.restcomm.connect.rvd.logging;
+
+import java.util.Date;
+
+import org.restcomm.connect.rvd.model.ModelMarshaler;
+
+/**
+ * A single application log entry waiting in the LogAppender buffer. It is rendered by the writer thread.
+ */
+class LogEntry {
+    private final Date date;
+    private final String[] tags;
+    private final Object payload;
+    private final ModelMarshaler marshaler; // if null, the payload is logged as is
+
+    LogEntry(Date date, String[] tags, Object payload, ModelMarshaler marshaler) {
+        this.date = date;
+        this.tags = tags;
+        this.payload = payload;
+        this.marshaler = marshaler;
+    }
+
+    String render() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("[" + date.toString() + "]");
+        for ( String tag : tags ) {
+            if (tag == null)
+                break;
+            buffer.append( tag);
+        }
+        buffer.append(" ");
+        if (marshaler != null)
+            buffer.append(marshaler.toData(payload));
+        else
+            buffer.append(String.valueOf(payload));
+        buffer.append(System.getProperty("line.separator"));  //add a newline
+        return buffer.toString();
+    }
+}
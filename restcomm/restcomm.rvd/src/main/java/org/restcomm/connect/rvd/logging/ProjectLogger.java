@@ -20,10 +20,6 @@
 
 package org.restcomm.connect.rvd.logging;
 
-import java.io.File;
-
-import org.restcomm.connect.rvd.RvdConfiguration;
-import org.restcomm.connect.rvd.concurrency.LogRotationSemaphore;
 import org.restcomm.connect.rvd.model.ModelMarshaler;
 
 /**
@@ -37,12 +33,8 @@ public class ProjectLogger extends CustomLogger {
     private ModelMarshaler marshaler;
     private boolean useMarshaler;
 
-    public ProjectLogger(String projectName, RvdConfiguration settings, ModelMarshaler marshaler, LogRotationSemaphore semaphore) {
-        this(settings.getProjectBasePath(projectName) + File.separator + RvdConfiguration.PROJECT_LOG_FILENAME, marshaler, semaphore);
-    }
-
-    public ProjectLogger(String logFilenameBase, ModelMarshaler marshaler, LogRotationSemaphore semaphore) {
-        super(logFilenameBase, semaphore);
+    public ProjectLogger(LogAppender appender, ModelMarshaler marshaler) {
+        super(appender);
         this.marshaler = marshaler;
         this.useMarshaler = true;
     }
@@ -77,13 +69,10 @@ public class ProjectLogger extends CustomLogger {
         return tag(name, null);
     }
 
+    // marshaling is deferred to the log writer thread
     @Override
-    protected void append(StringBuffer buffer) {
-        if(useMarshaler){
-            buffer.append(marshaler.toData(payload));
-        } else {
-            buffer.append(String.valueOf(payload));
-        }
+    protected ModelMarshaler payloadMarshaler() {
+        return useMarshaler ? marshaler : null;
     }
 
 }
@@ -5,6 +5,11 @@ public class RvdConfig {
     private String workspaceBackupLocation;
     private String sslMode;
     private String restcommBaseUrl;
+    private Integer esMaxConnections;
+    private Integer esMaxConnectionsPerRoute;
+    private Integer esIdleTimeout;
+    private Integer esTimeout;
+    private Boolean esParallelRequests;
 
     public RvdConfig() {
     }
@@ -31,4 +36,24 @@ public class RvdConfig {
     public String getRestcommBaseUrl() {
         return restcommBaseUrl;
     }
+
+    public Integer getEsMaxConnections() {
+        return esMaxConnections;
+    }
+
+    public Integer getEsMaxConnectionsPerRoute() {
+        return esMaxConnectionsPerRoute;
+    }
+
+    public Integer getEsIdleTimeout() {
+        return esIdleTimeout;
+    }
+
+    public Integer getEsTimeout() {
+        return esTimeout;
+    }
+
+    public Boolean getEsParallelRequests() {
+        return esParallelRequests;
+    }
 }
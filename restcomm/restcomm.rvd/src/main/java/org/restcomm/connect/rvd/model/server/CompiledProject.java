@@ -0,0 +1,78 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.restcomm.connect.rvd.model.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.restcomm.connect.rvd.model.client.Step;
+
+/**
+ * Built project with all node and step files already deserialized. It is what the interpreter runs and is kept
+ * in memory by CompiledProjectCache. Steps are shared between concurrent interpreter runs and should be treated
+ * as read-only.
+ */
+public class CompiledProject {
+
+    private final ProjectOptions options;
+    private final Map<String, List<String>> nodeStepnames;
+    private final Map<String, Step> steps;
+    private final long timestamp;
+
+    /**
+     * @param timestamp last modification time of the built project options file this image was created from
+     */
+    public CompiledProject(ProjectOptions options, long timestamp) {
+        this.options = options;
+        this.nodeStepnames = new HashMap<String, List<String>>();
+        this.steps = new HashMap<String, Step>();
+        this.timestamp = timestamp;
+    }
+
+    public void addNode(String nodeName, List<String> stepnames) {
+        nodeStepnames.put(nodeName, Collections.unmodifiableList(stepnames));
+    }
+
+    public void addStep(String nodeName, String stepName, Step step) {
+        steps.put(nodeName + "." + stepName, step);
+    }
+
+    public ProjectOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return the step names of the node in execution order or null if there is no such node
+     */
+    public List<String> getNodeStepnames(String nodeName) {
+        return nodeStepnames.get(nodeName);
+    }
+
+    public Step getStep(String nodeName, String stepName) {
+        return steps.get(nodeName + "." + stepName);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
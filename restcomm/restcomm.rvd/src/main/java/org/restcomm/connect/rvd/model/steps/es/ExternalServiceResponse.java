@@ -0,0 +1,47 @@
+package org.restcomm.connect.rvd.model.steps.es;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Outcome of the HTTP request of an ExternalService step. The JSON payload is parsed straight from the response
+ * stream. The raw body is only kept when it has to be written to the project log.
+ */
+public class ExternalServiceResponse {
+    private final int statusCode;
+    private final String statusLine;
+    private final JsonElement json;
+    private final String body;
+    private final long elapsedMillis;
+
+    public ExternalServiceResponse(int statusCode, String statusLine, JsonElement json, String body, long elapsedMillis) {
+        this.statusCode = statusCode;
+        this.statusLine = statusLine;
+        this.json = json;
+        this.body = body;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getStatusLine() {
+        return statusLine;
+    }
+
+    public JsonElement getJson() {
+        return json;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isError() {
+        return statusCode >= 400 && statusCode < 600;
+    }
+}
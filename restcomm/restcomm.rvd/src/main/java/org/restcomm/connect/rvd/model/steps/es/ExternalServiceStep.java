@@ -1,13 +1,20 @@
 package org.restcomm.connect.rvd.model.steps.es;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.http.Consts;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -18,8 +25,10 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
@@ -46,6 +55,8 @@ public class ExternalServiceStep extends Step {
     public static final String CONTENT_TYPE_JSON = "application/json";
 
     static final Logger logger = Logger.getLogger(ExternalServiceStep.class.getName());
+    // same variable syntax as Interpreter.populateVariables()
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$([A-Za-z]+[A-Za-z0-9_]*)");
 
     private String url; // supports RVD variable expansion when executing the HTTP request
     private String method;
@@ -173,242 +184,320 @@ public class ExternalServiceStep extends Step {
      */
     @Override
     public String process(Interpreter interpreter, HttpServletRequest httpRequest ) throws InterpreterException {
-
-        //ExternalServiceStep esStep = (ExternalServiceStep) step;
-        String next = null;
         try {
+            ExternalServiceResponse response = interpreter.takePrefetchedResponse(this);
+            if (response == null) {
+                HttpUriRequest request = buildRequest(interpreter, httpRequest);
+                logRequest(interpreter, request);
+                CloseableHttpClient client = interpreter.getApplicationContext().getExternalServiceClient();
+                if (client != null)
+                    response = execute(client, request, isResponseLogged(interpreter));
+                else {
+                    // no shared client around (i.e. tests). Use a throwaway one.
+                    client = interpreter.getApplicationContext().getHttpClientBuilder().buildHttpClient();
+                    try {
+                        response = execute(client, request, isResponseLogged(interpreter));
+                    } finally {
+                        HttpClientUtils.closeQuietly(client);
+                    }
+                }
+            }
+            return processResponse(interpreter, response);
+        } catch (JsonSyntaxException e) {
+            throw new BadExternalServiceResponse("External Service request received a malformed JSON response" );
+        } catch (IOException e) {
+            throw new ESRequestException("Error processing ExternalService step " + getName(), e);
+        }
+    }
 
-            // *** Build the request uri ***
+    /**
+     * Builds the HTTP request for this step. Variables are expanded using the current state of the interpreter.
+     */
+    public HttpUriRequest buildRequest(Interpreter interpreter, HttpServletRequest httpRequest) throws InterpreterException {
 
-            URI url;
-            try {
-                URIBuilder uri_builder = new URIBuilder(interpreter.populateVariables(getUrl()) ); // supports RVD variable expansion
+        // *** Build the request uri ***
 
-                // if this is a relative url fill in missing fields from the request
-                if (uri_builder.getHost() == null ) {
-                    if(logger.isDebugEnabled()) {
-                        logger.debug("External Service: Relative url is used. Will override from http request to RVD controller");
-                    }
-                    uri_builder.setScheme(httpRequest.getScheme());
-                    uri_builder.setHost(httpRequest.getServerName());
-                    uri_builder.setPort(httpRequest.getServerPort());
-                    if (  ! uri_builder.getPath().startsWith("/") )
-                        uri_builder.setPath("/" + uri_builder.getPath());
+        URI url;
+        try {
+            URIBuilder uri_builder = new URIBuilder(interpreter.populateVariables(getUrl()) ); // supports RVD variable expansion
+
+            // if this is a relative url fill in missing fields from the request
+            if (uri_builder.getHost() == null ) {
+                if(logger.isDebugEnabled()) {
+                    logger.debug("External Service: Relative url is used. Will override from http request to RVD controller");
                 }
+                uri_builder.setScheme(httpRequest.getScheme());
+                uri_builder.setHost(httpRequest.getServerName());
+                uri_builder.setPort(httpRequest.getServerPort());
+                if (  ! uri_builder.getPath().startsWith("/") )
+                    uri_builder.setPath("/" + uri_builder.getPath());
+            }
 
-                // for GET requests add  url parameters
-                if ( getMethod() == null || "GET".equals(getMethod()) || "DELETE".equals(getMethod()) )
-                    for ( UrlParam urlParam : getUrlParams() )
-                        uri_builder.addParameter(urlParam.getName(), interpreter.populateVariables(urlParam.getValue()) );
+            // for GET requests add  url parameters
+            if ( getMethod() == null || "GET".equals(getMethod()) || "DELETE".equals(getMethod()) )
+                for ( UrlParam urlParam : getUrlParams() )
+                    uri_builder.addParameter(urlParam.getName(), interpreter.populateVariables(urlParam.getValue()) );
 
-                url = uri_builder.build();
-            } catch (URISyntaxException e) {
-                throw new ErrorParsingExternalServiceUrl( "URL: " + getUrl(), e);
-            }
+            url = uri_builder.build();
+        } catch (URISyntaxException e) {
+            throw new ErrorParsingExternalServiceUrl( "URL: " + getUrl(), e);
+        }
 
+        // *** Setup the request object ***
 
-            // *** Make the request and get a status code and a response. Build a JsonElement from the response  ***
+        if ( "POST".equals(getMethod()) || "PUT".equals(getMethod()) ) {
+            HttpEntityEnclosingRequestBase request;
+            if ( "POST".equals(getMethod()) )
+                request = new HttpPost(url);
+            else
+                request = new HttpPut(url);
 
-            CloseableHttpClient client = interpreter.getApplicationContext().getHttpClientBuilder().buildHttpClient();
-            CloseableHttpResponse response;
-            int statusCode;
-            JsonElement response_element = null;
+            String body = interpreter.populateVariables(requestBody);
 
-            if(logger.isInfoEnabled()) {
-                logger.info("Requesting from url: " + url);
-            }
-            if(logger.isDebugEnabled()) {
-                logger.debug("Requesting from url: " + url);
-            }
-            if ( interpreter.getRvdContext().getProjectSettings().getLogging() )
-                interpreter.getProjectLogger().log("Requesting from url: " + url).tag("app",interpreter.getAppName()).tag("ES").tag("REQUEST").done();
-
-            if ( "POST".equals(getMethod()) || "PUT".equals(getMethod()) ) {
-
-                // Setup request object
-                HttpEntityEnclosingRequestBase request;
-                if ( "POST".equals(getMethod()) )
-                    request = new HttpPost(url);
-                else
-                    request = new HttpPut(url);
-
-                String body = interpreter.populateVariables(requestBody);
-
-                if ( RvdUtils.isEmpty(getContentType()) || getContentType().equals(CONTENT_TYPE_WWWFORM) ) {
-                    // use www-form url-encoded content type
-                    if ( !RvdUtils.isEmpty(this.populatePostBodyFromParams) && this.populatePostBodyFromParams ) {
-                        List <NameValuePair> values = new ArrayList <NameValuePair>();
-                        for ( UrlParam urlParam : getUrlParams() )
-                            values.add(new BasicNameValuePair(urlParam.getName(), interpreter.populateVariables(urlParam.getValue()) ));
-                        request.setEntity(new UrlEncodedFormEntity(values));
-                    } else {
-                        request.addHeader("Content-Type","application/x-www-form-urlencoded");
-                        StringEntity stringBody = new StringEntity(body,"UTF-8");
-                        request.setEntity(stringBody);
-                    }
-                } else
-                if ( getContentType().equals(CONTENT_TYPE_JSON) ) {
-                    // send the request as JSON
-                    request.addHeader("Content-Type","application/json");
-                    StringEntity stringBody = new StringEntity(body,"UTF-8");
-                    request.setEntity(stringBody);
+            if ( RvdUtils.isEmpty(getContentType()) || getContentType().equals(CONTENT_TYPE_WWWFORM) ) {
+                // use www-form url-encoded content type
+                if ( !RvdUtils.isEmpty(this.populatePostBodyFromParams) && this.populatePostBodyFromParams ) {
+                    List <NameValuePair> values = new ArrayList <NameValuePair>();
+                    for ( UrlParam urlParam : getUrlParams() )
+                        values.add(new BasicNameValuePair(urlParam.getName(), interpreter.populateVariables(urlParam.getValue()) ));
+                    request.setEntity(new UrlEncodedFormEntity(values));
                 } else {
-                    // unknown content type found. Use this content type and hope for the best
-                    logger.warn( "Unknown content type found when POSTing to " + url +" : " + getContentType() );
-                    request.addHeader("Content-Type", getContentType());
+                    request.addHeader("Content-Type","application/x-www-form-urlencoded");
                     StringEntity stringBody = new StringEntity(body,"UTF-8");
                     request.setEntity(stringBody);
                 }
-
-                // Add authentication headers if present
-                if ( !RvdUtils.isEmpty(getUsername()) )
-                    request.addHeader("Authorization", "Basic " + RvdUtils.buildHttpAuthorizationToken(getUsername(), getPassword()));
-
-                response = client.execute( request );
             } else
-            if ( getMethod() == null || getMethod().equals("GET") || getMethod().equals("DELETE") ) {
-                HttpRequestBase request;
-                if ( getMethod() == null || getMethod().equals("GET") )
-                    request = new HttpGet( url );
-                else
-                    request = new HttpDelete( url );
-
-                if ( !RvdUtils.isEmpty(getUsername()) )
-                    request.addHeader("Authorization", "Basic " + RvdUtils.buildHttpAuthorizationToken(getUsername(), getPassword()));
-                response = client.execute( request );
-            } else
-                throw new InterpreterException("Unknonwn HTTP method specified: " + getMethod() );
+            if ( getContentType().equals(CONTENT_TYPE_JSON) ) {
+                // send the request as JSON
+                request.addHeader("Content-Type","application/json");
+                StringEntity stringBody = new StringEntity(body,"UTF-8");
+                request.setEntity(stringBody);
+            } else {
+                // unknown content type found. Use this content type and hope for the best
+                logger.warn( "Unknown content type found when POSTing to " + url +" : " + getContentType() );
+                request.addHeader("Content-Type", getContentType());
+                StringEntity stringBody = new StringEntity(body,"UTF-8");
+                request.setEntity(stringBody);
+            }
 
-            // got response
-            try {
+            // Add authentication headers if present
+            if ( !RvdUtils.isEmpty(getUsername()) )
+                request.addHeader("Authorization", "Basic " + RvdUtils.buildHttpAuthorizationToken(getUsername(), getPassword()));
+            return request;
+        } else
+        if ( getMethod() == null || getMethod().equals("GET") || getMethod().equals("DELETE") ) {
+            HttpRequestBase request;
+            if ( getMethod() == null || getMethod().equals("GET") )
+                request = new HttpGet( url );
+            else
+                request = new HttpDelete( url );
+
+            if ( !RvdUtils.isEmpty(getUsername()) )
+                request.addHeader("Authorization", "Basic " + RvdUtils.buildHttpAuthorizationToken(getUsername(), getPassword()));
+            return request;
+        } else
+            throw new InterpreterException("Unknonwn HTTP method specified: " + getMethod() );
+    }
 
-                statusCode = response.getStatusLine().getStatusCode();
+    public void logRequest(Interpreter interpreter, HttpUriRequest request) {
+        if(logger.isInfoEnabled()) {
+            logger.info("Requesting from url: " + request.getURI());
+        }
+        if ( interpreter.getRvdContext().getProjectSettings().getLogging() )
+            interpreter.getProjectLogger().log("Requesting from url: " + request.getURI()).tag("app",interpreter.getAppName()).tag("ES").tag("REQUEST").done();
+    }
 
-                // In  case of error in the service no need to proceed. Just continue the "onException" module if set
-                if (statusCode >= 400 && statusCode < 600) {
-                    if (logger.isInfoEnabled()) {
-                        logger.info("Remote service failed with: " + response.getStatusLine());
-                    }
-                    if (!RvdUtils.isEmpty(getExceptionNext()))
-                        return getExceptionNext();
-                    else
-                        throw new RemoteServiceError("Service " + url + " failed with: " + response.getStatusLine() + ". Throwing an error since no 'On Remote Exception' has been defined.");
-                }
+    public boolean isResponseLogged(Interpreter interpreter) {
+        return interpreter.getRvdContext().getProjectSettings().getLogging();
+    }
 
-                // Parse the response if (a) there are assignments or (b) there is dynamic or mapped routing
-                if (getAssignments() != null && getAssignments().size() > 0
-                        || getDoRouting() && ("responseBased".equals(getNextType()) || "mapped".equals(getNextType()))) {
-                    HttpEntity entity = response.getEntity();
-                    if (entity != null) {
-                        JsonParser parser = new JsonParser();
-                        String entity_string = EntityUtils.toString(entity);
-                        //logger.info("ES: Received " + entity_string.length() + " bytes");
-                        //logger.debug("ES Response: " + entity_string);
-                        if (interpreter.getRvdContext().getProjectSettings().getLogging())
-                            interpreter.getProjectLogger().log(entity_string).tag("app", interpreter.getAppName()).tag("ES").tag("RESPONSE").done();
-                        response_element = parser.parse(entity_string);
-                    }
-                } else if (logger.isDebugEnabled()) {
-                    logger.debug("ES: No parsing will be done to the response");
-                }
-            } finally {
-                if (response != null) {
-                    response.close();
-                    HttpClientUtils.closeQuietly(client);
-                    client = null;
+    /**
+     * Executes the request and parses the response. It does not touch the interpreter so it is safe to run it
+     * from a different thread. The client is not closed since it is typically the shared pooled one.
+     *
+     * @param keepBody if true the response body is kept as a string so that it can be logged
+     */
+    public ExternalServiceResponse execute(CloseableHttpClient client, HttpUriRequest request, boolean keepBody) throws IOException {
+        long start = System.currentTimeMillis();
+        CloseableHttpResponse response = client.execute(request);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            JsonElement json = null;
+            String body = null;
+            HttpEntity entity = response.getEntity();
+            // Parse the response if (a) there are assignments or (b) there is dynamic or mapped routing. No need to in case of error.
+            if (entity != null && !(statusCode >= 400 && statusCode < 600) && isResponseParsed()) {
+                ContentType contentType = ContentType.get(entity);
+                Charset charset = (contentType != null && contentType.getCharset() != null) ? contentType.getCharset() : Consts.ISO_8859_1;
+                if (keepBody) {
+                    body = EntityUtils.toString(entity, charset);
+                    json = new JsonParser().parse(body);
+                } else {
+                    json = new JsonParser().parse(new InputStreamReader(entity.getContent(), charset));
                 }
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("ES: No parsing will be done to the response");
+            }
+            return new ExternalServiceResponse(statusCode, response.getStatusLine().toString(), json, body, System.currentTimeMillis() - start);
+        } finally {
+            // release the connection back to the pool
+            EntityUtils.consumeQuietly(response.getEntity());
+            response.close();
+        }
+    }
+
+    private String processResponse(Interpreter interpreter, ExternalServiceResponse response) throws InterpreterException {
+        String next = null;
+        JsonElement response_element = response.getJson();
+
+        if ( interpreter.getRvdContext().getProjectSettings().getLogging() ) {
+            interpreter.getProjectLogger().log("ES step " + getName() + " got " + response.getStatusCode() + " in " + response.getElapsedMillis() + " ms").tag("app",interpreter.getAppName()).tag("ES").tag("TIMING").done();
+            if (response.getBody() != null)
+                interpreter.getProjectLogger().log(response.getBody()).tag("app", interpreter.getAppName()).tag("ES").tag("RESPONSE").done();
+        }
+        if(logger.isDebugEnabled()) {
+            logger.debug("ES step " + getName() + " took " + response.getElapsedMillis() + " ms");
+        }
+
+        // In  case of error in the service no need to proceed. Just continue the "onException" module if set
+        if (response.isError()) {
+            if (logger.isInfoEnabled()) {
+                logger.info("Remote service failed with: " + response.getStatusLine());
             }
+            if (!RvdUtils.isEmpty(getExceptionNext()))
+                return getExceptionNext();
+            else
+                throw new RemoteServiceError("Service " + getUrl() + " failed with: " + response.getStatusLine() + ". Throwing an error since no 'On Remote Exception' has been defined.");
+        }
 
-            // *** Determine what to do next. Find the next module name or whether to continue in the current module ***
-
-            if (getDoRouting()) {
-                if ("fixed".equals(getNextType()))
-                    next = getNext();
-                else if ("responseBased".equals(getNextType()) || "mapped".equals(getNextType())) {
-                    String nextValue = interpreter.evaluateExtractorExpression(getNextValueExtractor(), response_element);
-
-                    if ("responseBased".equals(getNextType())) {
-                        next = interpreter.getNodeNameByLabel(nextValue);
-                    } else if ("mapped".equals(getNextType())) {
-                        if (getRouteMappings() != null) {
-                            for (RouteMapping mapping : getRouteMappings()) {
-                                if (nextValue != null && nextValue.equals(mapping.getValue())) {
-                                    next = mapping.getNext();
-                                    break;
-                                }
+        // *** Determine what to do next. Find the next module name or whether to continue in the current module ***
+
+        if (getDoRouting()) {
+            if ("fixed".equals(getNextType()))
+                next = getNext();
+            else if ("responseBased".equals(getNextType()) || "mapped".equals(getNextType())) {
+                String nextValue = interpreter.evaluateExtractorExpression(getNextValueExtractor(), response_element);
+
+                if ("responseBased".equals(getNextType())) {
+                    next = interpreter.getNodeNameByLabel(nextValue);
+                } else if ("mapped".equals(getNextType())) {
+                    if (getRouteMappings() != null) {
+                        for (RouteMapping mapping : getRouteMappings()) {
+                            if (nextValue != null && nextValue.equals(mapping.getValue())) {
+                                next = mapping.getNext();
+                                break;
                             }
                         }
                     }
                 }
-                // if no next route has been found throw an error
-                if ("fixed".equals(getNextType()) && RvdUtils.isEmpty(next)) {
-                    throw new InterpreterException("No valid module could be found for ES routing"); // use a general exception for now.
+            }
+            // if no next route has been found throw an error
+            if ("fixed".equals(getNextType()) && RvdUtils.isEmpty(next)) {
+                throw new InterpreterException("No valid module could be found for ES routing"); // use a general exception for now.
+            }
+            if (logger.isInfoEnabled()) {
+                logger.info("Routing enabled. Chosen target: " + next);
+            }
+        }
+
+        // *** Perform the assignments ***
+
+        if ( getDoRouting() && ("responseBased".equals(getNextType()) || "mapped".equals(getNextType())) ) {
+            for ( Assignment assignment : getAssignments() ) {
+                if(logger.isDebugEnabled()) {
+                    logger.debug("working on variable " + assignment.getDestVariable() );
+                    logger.debug( "moduleNameScope: " + assignment.getModuleNameScope());
+                }
+                if ( assignment.getModuleNameScope() == null || assignment.getModuleNameScope().equals(next) ) {
+                    assign(interpreter, assignment, response_element);
+                } else if(logger.isDebugEnabled()) {
+                    logger.debug("skipped assignment to " + assignment.getDestVariable() );
                 }
-                if (logger.isInfoEnabled()) {
-                    logger.info("Routing enabled. Chosen target: " + next);
+            }
+        }  else {
+            for ( Assignment assignment : getAssignments() ) {
+                if(logger.isDebugEnabled()) {
+                    logger.debug("working on variable " + assignment.getDestVariable() );
                 }
+                assign(interpreter, assignment, response_element);
             }
+        }
+        if(logger.isDebugEnabled()) {
+            logger.debug("variables after processing ExternalService step: " + interpreter.getVariables().toString() );
+        }
+        return next;
+    }
 
-            // *** Perform the assignments ***
+    private void assign(Interpreter interpreter, Assignment assignment, JsonElement response_element) throws InterpreterException {
+        String value = null;
+        try {
+            value = interpreter.evaluateExtractorExpression(assignment.getValueExtractor(), response_element);
+        } catch ( BadExternalServiceResponse e ) {
+            logger.error("Could not parse variable "  + assignment.getDestVariable() + ". Variable not found in response");
+            throw e;
+        }
 
-            try {
-                if ( getDoRouting() && ("responseBased".equals(getNextType()) || "mapped".equals(getNextType())) ) {
-                    for ( Assignment assignment : getAssignments() ) {
-                        if(logger.isDebugEnabled()) {
-                            logger.debug("working on variable " + assignment.getDestVariable() );
-                            logger.debug( "moduleNameScope: " + assignment.getModuleNameScope());
-                        }
-                        if ( assignment.getModuleNameScope() == null || assignment.getModuleNameScope().equals(next) ) {
-                            String value = null;
-                            try {
-                                value = interpreter.evaluateExtractorExpression(assignment.getValueExtractor(), response_element);
-                            } catch ( BadExternalServiceResponse e ) {
-                                logger.error("Could not parse variable "  + assignment.getDestVariable() + ". Variable not found in response");
-                                throw e;
-                            }
+        if ( "application".equals(assignment.getScope()) )
+            interpreter.putStickyVariable(assignment.getDestVariable(), value);
+        if ( "module".equals(assignment.getScope()) )
+            interpreter.putModuleVariable(assignment.getDestVariable(), value);
+    }
 
-                            if ( "application".equals(assignment.getScope()) )
-                                interpreter.putStickyVariable(assignment.getDestVariable(), value);
-                            if ( "module".equals(assignment.getScope()) )
-                                interpreter.putModuleVariable(assignment.getDestVariable(), value);
+    // the response is only needed if (a) there are assignments or (b) there is dynamic or mapped routing
+    private boolean isResponseParsed() {
+        return getAssignments() != null && getAssignments().size() > 0
+                || getDoRouting() && ("responseBased".equals(getNextType()) || "mapped".equals(getNextType()));
+    }
 
-                            //interpreter.putVariable(assignment.getDestVariable(), value );
-                        } else if(logger.isDebugEnabled()) {
-                            logger.debug("skipped assignment to " + assignment.getDestVariable() );
-                        }
-                    }
-                }  else {
-                    for ( Assignment assignment : getAssignments() ) {
-                        if(logger.isDebugEnabled()) {
-                            logger.debug("working on variable " + assignment.getDestVariable() );
-                        }
-                        String value = null;
-                        try {
-                            value = interpreter.evaluateExtractorExpression(assignment.getValueExtractor(), response_element);
-                        } catch ( BadExternalServiceResponse e ) {
-                            logger.error("Could not parse variable "  + assignment.getDestVariable() + ". Variable not found in response");
-                            throw e;
-                        }
+    /**
+     * Returns true if the request of this step is a GET, the only one that can be sent ahead of time and thrown away
+     * if the application takes another route.
+     */
+    public boolean isPrefetchable() {
+        return getMethod() == null || "GET".equals(getMethod());
+    }
 
-                        if ( "application".equals(assignment.getScope()) )
-                            interpreter.putStickyVariable(assignment.getDestVariable(), value);
-                        if ( "module".equals(assignment.getScope()) )
-                            interpreter.putModuleVariable(assignment.getDestVariable(), value);
+    /**
+     * Returns true if this step may continue to a module other than the current one.
+     */
+    public boolean mayReroute() {
+        return (getDoRouting() != null && getDoRouting()) || !RvdUtils.isEmpty(getExceptionNext());
+    }
 
-                        //interpreter.putVariable(assignment.getDestVariable(), value );
-                    }
-                }
-                if(logger.isDebugEnabled()) {
-                    logger.debug("variables after processing ExternalService step: " + interpreter.getVariables().toString() );
-                }
-            } catch (JsonSyntaxException e) {
-                throw new BadExternalServiceResponse("External Service request received a malformed JSON response" );
-            }
+    /**
+     * Names of the variables this step assigns from the response
+     */
+    public Set<String> getAssignedVariables() {
+        Set<String> names = new HashSet<String>();
+        if (getAssignments() != null)
+            for (Assignment assignment : getAssignments())
+                names.add(assignment.getDestVariable());
+        return names;
+    }
 
-        } catch (IOException e) {
-            throw new ESRequestException("Error processing ExternalService step " + getName(), e);
+    /**
+     * Returns true if the request of this step refers to any of the given variables.
+     */
+    public boolean dependsOn(Set<String> variableNames) {
+        if (variableNames.isEmpty())
+            return false;
+        List<String> texts = new ArrayList<String>();
+        texts.add(url);
+        texts.add(requestBody);
+        texts.add(username);
+        texts.add(password);
+        if (urlParams != null)
+            for (UrlParam urlParam : urlParams)
+                texts.add(urlParam.getValue());
+        for (String text : texts) {
+            if (text == null)
+                continue;
+            Matcher matcher = VARIABLE_PATTERN.matcher(text);
+            while (matcher.find())
+                if (variableNames.contains(matcher.group(1)))
+                    return true;
         }
-        return next;
+        return false;
     }
 
 }
@@ -0,0 +1,79 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+
+package org.restcomm.connect.rvd.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.restcomm.connect.rvd.model.client.Step;
+import org.restcomm.connect.rvd.model.server.CompiledProject;
+import org.restcomm.connect.rvd.model.server.NodeName;
+import org.restcomm.connect.rvd.model.server.ProjectOptions;
+import org.restcomm.connect.rvd.storage.exceptions.StorageException;
+
+/**
+ * Keeps the compiled image of each built project in memory so that the interpreter does not have to read and
+ * parse node and step files on every request. BuildService puts a fresh image after each build. Images are
+ * also checked against the timestamp of the built project options file, so projects rebuilt, imported or
+ * upgraded behind the cache's back are reloaded on next access.
+ */
+public class CompiledProjectCache {
+    static final Logger logger = Logger.getLogger(CompiledProjectCache.class.getName());
+
+    private Map<String, CompiledProject> projects = new ConcurrentHashMap<String, CompiledProject>();
+
+    public CompiledProject get(String projectName, WorkspaceStorage workspaceStorage) throws StorageException {
+        long timestamp = FsProjectStorage.getProjectOptionsTimestamp(projectName, workspaceStorage);
+        CompiledProject compiled = projects.get(projectName);
+        if (compiled == null || compiled.getTimestamp() != timestamp) {
+            compiled = load(projectName, timestamp, workspaceStorage);
+            projects.put(projectName, compiled);
+        }
+        return compiled;
+    }
+
+    public void put(String projectName, CompiledProject compiled) {
+        projects.put(projectName, compiled);
+    }
+
+    public void invalidate(String projectName) {
+        projects.remove(projectName);
+    }
+
+    private CompiledProject load(String projectName, long timestamp, WorkspaceStorage workspaceStorage) throws StorageException {
+        if(logger.isDebugEnabled()) {
+            logger.debug("Loading compiled image of project " + projectName);
+        }
+        ProjectOptions options = FsProjectStorage.loadProjectOptions(projectName, workspaceStorage);
+        CompiledProject compiled = new CompiledProject(options, timestamp);
+        for (NodeName nodeName : options.getNodeNames()) {
+            List<String> stepnames = FsProjectStorage.loadNodeStepnames(projectName, nodeName.getName(), workspaceStorage);
+            compiled.addNode(nodeName.getName(), stepnames);
+            for (String stepname : stepnames) {
+                Step step = FsProjectStorage.loadNodeStep(projectName, nodeName.getName(), stepname, workspaceStorage);
+                compiled.addStep(nodeName.getName(), stepname, step);
+            }
+        }
+        return compiled;
+    }
+}
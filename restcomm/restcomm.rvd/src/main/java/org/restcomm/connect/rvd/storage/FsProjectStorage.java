@@ -208,6 +208,11 @@ public class FsProjectStorage {
         workspaceStorage.storeEntity(projectOptions, ProjectOptions.class, "project", projectName+"/data");
     }
 
+    // The project options file is written last when building. Its timestamp identifies the build.
+    public static long getProjectOptionsTimestamp(String projectName, WorkspaceStorage workspaceStorage) {
+        return workspaceStorage.entityLastModified("project", projectName+"/data");
+    }
+
     public static void storeNodeStepnames(Node node, String projectName, WorkspaceStorage storage) throws StorageException {
         List<String> stepnames = new ArrayList<String>();
         for ( Step step : node.getSteps() ) {
@@ -515,6 +520,10 @@ public class FsProjectStorage {
         //return storageBase.loadProjectFile(projectName, "data", nodeName + "." + stepName);
         return storage.loadEntityString(nodeName + "." + stepName, projectName+"/data");
     }
+
+    public static Step loadNodeStep(String projectName, String nodeName, String stepName, WorkspaceStorage storage) throws StorageException {
+        return storage.loadEntity(nodeName + "." + stepName, projectName+"/data", Step.class);
+    }
 }
 
 
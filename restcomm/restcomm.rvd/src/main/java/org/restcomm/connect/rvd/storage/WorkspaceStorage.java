@@ -32,6 +32,16 @@ public class WorkspaceStorage {
         return file.exists();
     }
 
+    /**
+     * @return the last modification time of the entity file or 0 if it does not exist
+     */
+    public long entityLastModified(String entityName, String relativePath) {
+        if ( !relativePath.startsWith( "/") )
+            relativePath = File.separator + relativePath;
+        String pathname = rootPath + relativePath + File.separator + entityName;
+        return new File(pathname).lastModified();
+    }
+
     public <T> T loadEntity(String entityName, String relativePath, Class<T> entityClass) throws StorageException {
         // make sure relativePaths (path within the workspace) start with "/"
         if ( !relativePath.startsWith( "/") )
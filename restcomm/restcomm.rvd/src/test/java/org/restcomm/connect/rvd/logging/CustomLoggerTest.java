@@ -39,6 +39,7 @@ import java.io.IOException;
 public class CustomLoggerTest {
 
     CustomLogger customLogger;
+    LogAppender appender;
     File logDir;
     String basepath;
 
@@ -47,11 +48,13 @@ public class CustomLoggerTest {
         logDir = TestUtils.createRandomDir("logtest");
         LogRotationSemaphore semaphore = new LogRotationSemaphore();
         basepath = logDir.getPath() + "/rvd";
-        customLogger = new CustomLogger(logDir.getPath() + "/rvd", 1000, 3, semaphore );
+        appender = new LogAppender(logDir.getPath() + "/rvd", 1000, 3, 100, semaphore );
+        customLogger = new CustomLogger(appender);
     }
 
     @After
     public void after() throws IOException {
+        appender.close();
         FileUtils.deleteDirectory( logDir);
     }
 
@@ -59,6 +62,7 @@ public class CustomLoggerTest {
     @Test
     public void testBasicLogging() throws IOException {
         customLogger.log("hello world").done();
+        customLogger.flush(5000);
         String content = FileUtils.readFileToString(new File(basepath + ".log"));
         Assert.assertTrue(content.endsWith("hello world\n"));
     }
@@ -68,6 +72,7 @@ public class CustomLoggerTest {
         for (int i=0; i < 40; i ++) {
             customLogger.log(i + " - A really loooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooong message").done();
         }
+        customLogger.flush(5000);
         String content = FileUtils.readFileToString(new File(basepath + ".log"));
         Assert.assertTrue(content.contains("39 - A really"));
         Assert.assertTrue(content.contains("35 - A really"));
@@ -86,10 +91,13 @@ public class CustomLoggerTest {
     @Test
     public void test1MBSize() throws IOException {
         LogRotationSemaphore semaphore = new LogRotationSemaphore();
-        customLogger = new CustomLogger(logDir.getPath() + "/rvd", 1000000, 3, semaphore );
+        appender.close();
+        appender = new LogAppender(logDir.getPath() + "/rvd", 1000000, 3, 10000, semaphore );
+        customLogger = new CustomLogger(appender);
         for (int i=0; i < 10000; i ++) {
             customLogger.log(i + " - A really loooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooooong message").done();
         }
+        customLogger.flush(10000);
         String content = FileUtils.readFileToString(new File(basepath + ".log"));
         Assert.assertTrue(content.contains("9999 - A really"));
         Assert.assertTrue(content.contains("6377 - A really"));
@@ -99,6 +107,23 @@ public class CustomLoggerTest {
 
     }
 
+    @Test
+    public void testDropOnOverflow() throws IOException {
+        LogRotationSemaphore semaphore = new LogRotationSemaphore();
+        appender.close();
+        appender = new LogAppender(logDir.getPath() + "/rvd", 1000000, 3, 10, semaphore );
+        customLogger = new CustomLogger(appender);
+        // hold the writer so that the buffer fills up
+        synchronized (semaphore) {
+            for (int i=0; i < 100; i ++) {
+                customLogger.log(i + " - message").done();
+            }
+        }
+        customLogger.flush(5000);
+        Assert.assertTrue(appender.getDroppedCount() > 0);
+        Assert.assertEquals(100, appender.getDroppedCount() + appender.getWrittenCount());
+    }
+
     // TODO
     //    @Test
     //    public void testMultithreadedRotation() {}
@@ -27,6 +27,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.restcomm.connect.rvd.TestUtils;
 import org.restcomm.connect.rvd.concurrency.LogRotationSemaphore;
+import org.restcomm.connect.rvd.concurrency.ProjectRegistry;
 import org.restcomm.connect.rvd.model.ModelMarshaler;
 
 import java.io.File;
@@ -44,6 +45,7 @@ public class ProjectLoggerTest {
     File workspaceDir;
     File projectDir;
     ProjectLogger logger;
+    LogAppender appender;
 
     @Before
     public void before() throws IOException {
@@ -51,11 +53,13 @@ public class ProjectLoggerTest {
         ModelMarshaler marshaller = new ModelMarshaler();
         projectDir = TestUtils.createDefaultProject("AP123", "owner@telestax.com", workspaceDir, marshaller);
         LogRotationSemaphore semaphore = new LogRotationSemaphore();
-        logger = new ProjectLogger(projectDir.getPath() + "/rvd",marshaller, semaphore); // .../rvd.log
+        appender = new LogAppender(projectDir.getPath() + "/rvd", 300000, 3, 100, semaphore); // .../rvd.log
+        logger = new ProjectLogger(appender, marshaller);
     }
 
     @After
     public void after() throws IOException {
+        appender.close();
         FileUtils.deleteDirectory(workspaceDir);
     }
 
@@ -63,22 +67,42 @@ public class ProjectLoggerTest {
     @Test
     public void testMessageMarshalling() throws IOException {
         logger.log("hello world").done();
+        logger.flush(5000);
         File logfile = new File(logger.getLogFilePath());
         String content = FileUtils.readFileToString(logfile);
         Assert.assertTrue(content.contains("\"hello world\""));
-        logfile.delete();
+        logger.reset();
 
         // do not marshall message ('false' parameter)
         logger.log("http://test.com/script.php?a=1&b=2", false).done();
+        logger.flush(5000);
         content = FileUtils.readFileToString(logfile);
         Assert.assertTrue(content.contains("http://test.com/script.php?a=1&b=2"));
-        logfile.delete();
+        logger.reset();
         // DO marshal message
         logger.log("http://test.com/script.php?a=1&b=2").done();
+        logger.flush(5000);
         content = FileUtils.readFileToString(logfile);
         Assert.assertTrue(content.contains("http://test.com/script.php?a\\u003d1\\u0026b\\u003d2"));
-        logfile.delete();
+        logger.reset();
     }
 
+    @Test
+    public void releasingAProjectStopsItsLogWriter() {
+        ProjectRegistry registry = new ProjectRegistry();
+        String logFilenameBase = projectDir.getPath() + "/released";
+        registry.getProjectSemaphores("AP123").getLogAppender(logFilenameBase);
+        Assert.assertTrue(writerRunning(logFilenameBase));
+        registry.release("AP123");
+        Assert.assertFalse(writerRunning(logFilenameBase));
+    }
+
+    private boolean writerRunning(String logFilenameBase) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().equals("rvd-log-writer-" + logFilenameBase))
+                return true;
+        }
+        return false;
+    }
 
 }
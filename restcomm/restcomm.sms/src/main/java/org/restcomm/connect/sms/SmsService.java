@@ -27,11 +27,12 @@ import akka.actor.UntypedActorContext;
 import akka.actor.UntypedActorFactory;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
 import org.apache.commons.configuration.Configuration;
 import org.joda.time.DateTime;
 import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.commons.throttling.AccountLimiter;
+import org.restcomm.connect.commons.throttling.LimitExceededException;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.commons.util.UriUtils;
 import org.restcomm.connect.dao.AccountsDao;
 import org.restcomm.connect.dao.ApplicationsDao;
@@ -47,7 +48,6 @@ import org.restcomm.connect.dao.entities.Notification;
 import org.restcomm.connect.dao.entities.SmsMessage;
 import org.restcomm.connect.dao.entities.SmsMessage.Direction;
 import org.restcomm.connect.dao.entities.SmsMessage.Status;
-import org.restcomm.connect.extension.api.ExtensionResponse;
 import org.restcomm.connect.extension.api.ExtensionType;
 import org.restcomm.connect.extension.api.RestcommExtensionException;
 import org.restcomm.connect.extension.api.RestcommExtensionGeneric;
@@ -110,6 +110,8 @@ public final class SmsService extends UntypedActor {
     //List of extensions for SmsService
     List<RestcommExtensionGeneric> extensions;
 
+    private final AccountLimiter limiter;
+
     public SmsService(final ActorSystem system, final Configuration configuration, final SipFactory factory,
             final DaoManager storage, final ServletContext servletContext) {
         super();
@@ -122,6 +124,7 @@ public final class SmsService extends UntypedActor {
         this.storage = storage;
         this.servletContext = servletContext;
         monitoringService = (ActorRef) servletContext.getAttribute(MonitoringService.class.getName());
+        limiter = (AccountLimiter) servletContext.getAttribute(AccountLimiter.class.getName());
         // final Configuration runtime = configuration.subset("runtime-settings");
         // TODO this.useTo = runtime.getBoolean("use-to");
         patchForNatB2BUASessions = runtime.getBoolean("patch-for-nat-b2bua-sessions", true);
@@ -270,10 +273,9 @@ public final class SmsService extends UntypedActor {
         final SipURI uri = (SipURI) request.getRequestURI();
         final String to = uri.getUser();
         // Format the destination to an E.164 phone number.
-        final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
         String phone = to;
         try {
-            phone = phoneNumberUtil.format(phoneNumberUtil.parse(to, "US"), PhoneNumberFormat.E164);
+            phone = PhoneNumberNormalizer.getInstance().e164(to);
         } catch (Exception e) {}
         // Try to find an application defined for the phone number.
         final IncomingPhoneNumbersDao numbers = storage.getIncomingPhoneNumbersDao();
@@ -326,16 +328,7 @@ public final class SmsService extends UntypedActor {
     }
 
     private boolean executePreOutboundAction(final Object message) {
-        if (extensions != null && extensions.size() > 0) {
-            for (RestcommExtensionGeneric extension : extensions) {
-                if (extension.isEnabled()) {
-                    ExtensionResponse response = extension.preOutboundAction(message);
-                    if (!response.isAllowed())
-                        return false;
-                }
-            }
-        }
-        return true;
+        return ExtensionController.getInstance().getExecutor().preOutboundAction(extensions, message);
     }
 
     private boolean executePostOutboundAction(final Object message) {
@@ -349,7 +342,12 @@ public final class SmsService extends UntypedActor {
         final ActorRef self = self();
         final ActorRef sender = sender();
         if (CreateSmsSession.class.equals(klass)) {
-            if (executePreOutboundAction(message)) {
+            final CreateSmsSession request = (CreateSmsSession) message;
+            if (limiter != null && !limiter.tryAcquireSms(request.getAccountSid())) {
+                final SmsServiceResponse<ActorRef> response = new SmsServiceResponse<ActorRef>(new LimitExceededException(
+                        "Outbound SMS rate exceeded for account " + request.getAccountSid()));
+                sender.tell(response, self);
+            } else if (executePreOutboundAction(message)) {
                 final ActorRef session = session();
                 final SmsServiceResponse<ActorRef> response = new SmsServiceResponse<ActorRef>(session);
                 sender.tell(response, self);
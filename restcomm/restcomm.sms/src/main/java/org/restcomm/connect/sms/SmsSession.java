@@ -37,6 +37,7 @@ import org.restcomm.connect.dao.DaoManager;
 import org.restcomm.connect.dao.RegistrationsDao;
 import org.restcomm.connect.dao.entities.Client;
 import org.restcomm.connect.dao.entities.Registration;
+import org.restcomm.connect.dao.entities.SmsMessage;
 import org.restcomm.connect.commons.patterns.Observe;
 import org.restcomm.connect.commons.patterns.Observing;
 import org.restcomm.connect.commons.patterns.StopObserving;
@@ -44,6 +45,7 @@ import org.restcomm.connect.sms.smpp.SmppClientOpsThread;
 import org.restcomm.connect.sms.smpp.SmppInboundMessageEntity;
 import org.restcomm.connect.sms.smpp.SmppMessageHandler;
 import org.restcomm.connect.sms.smpp.SmppOutboundMessageEntity;
+import org.restcomm.connect.sms.smpp.SmppSubmitResult;
 import org.restcomm.connect.telephony.api.TextMessage;
 
 import javax.servlet.ServletContext;
@@ -54,6 +56,7 @@ import javax.servlet.sip.SipServletResponse;
 import javax.servlet.sip.SipSession;
 import javax.servlet.sip.SipURI;
 import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -205,6 +208,18 @@ public final class SmsSession extends UntypedActor {
             response(message);
         } else if (message instanceof SmppInboundMessageEntity) {
             inbound(message);
+        } else if (message instanceof SmppSubmitResult) {
+            smppResponse(message);
+        }
+    }
+
+    private void smppResponse(final Object message) {
+        final SmppSubmitResult result = (SmppSubmitResult) message;
+        final SmsSessionResponse response = new SmsSessionResponse(info(), result.succeeded());
+        // Notify the observers.
+        final ActorRef self = self();
+        for (final ActorRef observer : observers) {
+            observer.tell(response, self);
         }
     }
 
@@ -329,14 +344,17 @@ public final class SmsSession extends UntypedActor {
         }}
 
     private boolean sendUsingSmpp(String from, String to, String body, Charset encoding) {
-        if ((SmppClientOpsThread.getSmppSession() != null && SmppClientOpsThread.getSmppSession().isBound()) && smppMessageHandler != null) {
+        if (SmppClientOpsThread.getSessionPool().isBound() && smppMessageHandler != null) {
             if(logger.isInfoEnabled()) {
                 logger.info("SMPP session is available and connected, outbound message will be forwarded to :  " + to );
                 logger.info("Encoding:  " + encoding );
             }
             try {
-                final SmppOutboundMessageEntity sms = new SmppOutboundMessageEntity(to, from, body, encoding);
-                smppMessageHandler.tell(sms, null);
+                // the record is updated when the delivery receipt arrives
+                final SmppOutboundMessageEntity sms = new SmppOutboundMessageEntity(to, from, body, encoding,
+                        (SmsMessage) attributes.get("record"), (URI) attributes.get("callback"));
+                // the outcome of the submission comes back as an SmppSubmitResult
+                smppMessageHandler.tell(sms, self());
             }catch (final Exception exception) {
                 // Log the exception.
                 logger.error("There was an error sending SMS to SMPP endpoint : " + exception);
@@ -25,6 +25,7 @@ import akka.actor.ActorRef;
 import com.cloudhopper.commons.charset.CharsetUtil;
 import com.cloudhopper.commons.charset.Charset;
 import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppConstants;
 import com.cloudhopper.smpp.SmppSession;
 import com.cloudhopper.smpp.SmppSessionConfiguration;
 import com.cloudhopper.smpp.SmppSessionHandler;
@@ -35,10 +36,13 @@ import com.cloudhopper.smpp.pdu.EnquireLink;
 import com.cloudhopper.smpp.pdu.EnquireLinkResp;
 import com.cloudhopper.smpp.pdu.PduRequest;
 import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
 import com.cloudhopper.smpp.type.Address;
 import com.cloudhopper.smpp.type.RecoverablePduException;
 import com.cloudhopper.smpp.type.UnrecoverablePduException;
 import org.apache.log4j.Logger;
+import org.restcomm.connect.dao.entities.SmsMessage;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
@@ -58,16 +62,20 @@ public class SmppClientOpsThread implements Runnable {
     private List<ChangeRequest> pendingChanges = new CopyOnWriteArrayList<ChangeRequest>();
     private Object waitObject = new Object();
     private final DefaultSmppClient clientBootstrap;
-    private static SmppSession getSmppSession;
+    // bound sessions used for sending SMS from Restcomm to the smpp endpoint
+    private static final SmppSessionPool sessionPool = new SmppSessionPool();
     protected volatile boolean started = true;
     private static int sipPort;
 
     private final ActorRef smppMessageHandler;
+    private final SmppMessageReassembler reassembler;
 
-    public SmppClientOpsThread(DefaultSmppClient clientBootstrap, int sipPort, final ActorRef smppMessageHandler) {
+    public SmppClientOpsThread(DefaultSmppClient clientBootstrap, int sipPort, final ActorRef smppMessageHandler,
+            final SmppMessageReassembler reassembler) {
         this.clientBootstrap = clientBootstrap;
         this.sipPort = sipPort;
         this.smppMessageHandler = smppMessageHandler;
+        this.reassembler = reassembler;
     }
 
 
@@ -198,6 +206,7 @@ public class SmppClientOpsThread implements Runnable {
                                 esme.getSystemId()), e);
                 // For all other exceptions lets close session and re-try
                 // connect
+                sessionPool.remove(smppSession);
                 smppSession.close();
                 this.scheduleConnect(esme);
             }
@@ -210,6 +219,7 @@ public class SmppClientOpsThread implements Runnable {
                                     : smppSession.getStateName())));
 
             if (smppSession != null) {
+                sessionPool.remove(smppSession);
                 smppSession.close();
             }
             this.scheduleConnect(esme);
@@ -261,12 +271,13 @@ public class SmppClientOpsThread implements Runnable {
             session0 = clientBootstrap.bind(config0, sessionHandler);
 
 
-            //getting session to be used to process SMS received from Restcomm
-            getSmppSession = session0;
-
             // Set in ESME
             esme.setSmppSession((DefaultSmppSession) session0);
 
+            //make the session available for SMS sent from Restcomm
+            sessionPool.add(session0);
+            smppMessageHandler.tell(new SmppSessionAvailable(esme.getName()), null);
+
             // Finally set Enquire Link schedule
             this.scheduleEnquireLink(esme);
         } catch (Exception e) {
@@ -313,6 +324,7 @@ public class SmppClientOpsThread implements Runnable {
             logger.error("ChannelUnexpectedlyClosed for Smpp "
                     + this.esme.getName()
                     + " Closing Smpp session and restrting BIND process again");
+            sessionPool.remove(this.esme.getSmppSession());
             this.esme.getSmppSession().close();
 
             // Schedule the connection again
@@ -322,19 +334,34 @@ public class SmppClientOpsThread implements Runnable {
         @Override
         public void fireExpectedPduResponseReceived(
                 PduAsyncResponse pduAsyncResponse) {
-            // TODO : SMPP Response received. Does RestComm need confirmation
-            // for this?
-            logger.warn("ExpectedPduResponseReceived received for Smpp "
-                    + this.esme.getName() + " PduAsyncResponse="
-                    + pduAsyncResponse);
+            final PduRequest request = pduAsyncResponse.getRequest();
+            final PduResponse response = pduAsyncResponse.getResponse();
+            if (request instanceof SubmitSm) {
+                // correlate the response with the SmsSession that sent the message
+                final int status = response.getCommandStatus();
+                final String messageId = response instanceof SubmitSmResp ? ((SubmitSmResp) response).getMessageId() : null;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("SubmitSmResp received for Smpp " + this.esme.getName() + " status=" + status
+                            + " messageId=" + messageId + " in " + pduAsyncResponse.getProcessingTime() + " ms");
+                }
+                smppMessageHandler.tell(new SmppSubmitResult((SmppSubmission) request.getReferenceObject(),
+                        status == SmppConstants.STATUS_OK, status, messageId), null);
+            } else {
+                logger.warn("ExpectedPduResponseReceived received for Smpp "
+                        + this.esme.getName() + " PduAsyncResponse="
+                        + pduAsyncResponse);
+            }
         }
 
         @Override
         public void firePduRequestExpired(PduRequest pduRequest) {
-            // TODO : SMPP request Expired. RestComm needs to notify Application
-            // about SMS failure
             logger.warn("PduRequestExpired for Smpp " + this.esme.getName()
                     + " PduRequest=" + pduRequest);
+            if (pduRequest instanceof SubmitSm) {
+                // the SMSC did not answer in time, report the message as failed
+                smppMessageHandler.tell(new SmppSubmitResult((SmppSubmission) pduRequest.getReferenceObject(), false,
+                        SmppConstants.STATUS_DELIVERYFAILURE, null), null);
+            }
         }
 
         @Override
@@ -351,8 +378,33 @@ public class SmppClientOpsThread implements Runnable {
             } else {
 
                 DeliverSm deliverSm = (DeliverSm) pduRequest;
+                // receipts of messages sent earlier update their status instead of reaching an application
+                if (SmppDeliveryReceipt.isReceipt(deliverSm)) {
+                    final SmppDeliveryReceipt receipt = SmppDeliveryReceipt.parse(deliverSm);
+                    if (receipt != null) {
+                        smppMessageHandler.tell(receipt, null);
+                    } else {
+                        logger.warn("Ignoring delivery receipt that could not be parsed: " + deliverSm);
+                    }
+                    return response;
+                }
                 try {
-                    String decodedPduMessage = CharsetUtil.CHARSET_MODIFIED_UTF8.decode(deliverSm.getShortMessage());
+                    // segments of a concatenated message are kept until the whole message is there
+                    byte[] shortMessage = reassembler.reassemble(deliverSm);
+                    if (shortMessage == null) {
+                        return response;
+                    }
+                    String decodedPduMessage = CharsetUtil.CHARSET_MODIFIED_UTF8.decode(shortMessage);
+                    // a reassembled message can be longer than the stored body
+                    if (decodedPduMessage.length() > SmsMessage.MAX_BODY_LENGTH) {
+                        logger.warn("Truncating incoming SMPP message of " + decodedPduMessage.length() + " characters to "
+                                + SmsMessage.MAX_BODY_LENGTH);
+                        int end = SmsMessage.MAX_BODY_LENGTH;
+                        if (Character.isHighSurrogate(decodedPduMessage.charAt(end - 1))) {
+                            end--;
+                        }
+                        decodedPduMessage = decodedPduMessage.substring(0, end);
+                    }
                     String destSmppAddress = deliverSm.getDestAddress().getAddress();
                     String sourceSmppAddress = deliverSm.getSourceAddress().getAddress();
                     Charset charset;
@@ -394,6 +446,7 @@ public class SmppClientOpsThread implements Runnable {
                     e);
             // TODO is this ok?
 
+            sessionPool.remove(this.esme.getSmppSession());
             this.esme.getSmppSession().close();
 
             // Schedule the connection again
@@ -409,6 +462,7 @@ public class SmppClientOpsThread implements Runnable {
                             + " Closing Smpp session and restrting BIND process again",
                     e);
 
+            sessionPool.remove(this.esme.getSmppSession());
             this.esme.getSmppSession().close();
 
             // Schedule the connection again
@@ -418,7 +472,11 @@ public class SmppClientOpsThread implements Runnable {
 
     //smpp session to be used for sending SMS from Restcomm to smpp endpoint
     public static SmppSession getSmppSession() {
-        return getSmppSession;
+        return sessionPool.getBoundSession();
+    }
+
+    public static SmppSessionPool getSessionPool() {
+        return sessionPool;
     }
 
     public void sendSmppMessageToRestcomm(String smppMessage, String smppTo, String smppFrom, Charset charset) throws IOException, ServletException {
@@ -0,0 +1,139 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2013, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.restcomm.connect.sms.smpp;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.tlv.TlvConvertException;
+
+/**
+ * A delivery receipt the SMSC sent as a deliver_sm for a message submitted earlier. The receipted message id and
+ * state are taken from the optional parameters when present, otherwise from the "id:... stat:..." text of the
+ * short message.
+ */
+public final class SmppDeliveryReceipt {
+
+    // message_state values of SMPP 3.4 section 5.2.28
+    private static final int STATE_ENROUTE = 1;
+    private static final int STATE_DELIVERED = 2;
+    private static final int STATE_ACCEPTED = 6;
+
+    private static final Pattern ID = Pattern.compile("id:(\\S+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern STAT = Pattern.compile("stat:(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private final String messageId;
+    private final String state;
+    private final boolean delivered;
+    private final boolean isFinal;
+
+    public SmppDeliveryReceipt(final String messageId, final String state, final boolean delivered, final boolean isFinal) {
+        this.messageId = messageId;
+        this.state = state;
+        this.delivered = delivered;
+        this.isFinal = isFinal;
+    }
+
+    /**
+     * @return true if the deliver_sm is a receipt rather than a mobile originated message
+     */
+    public static boolean isReceipt(final DeliverSm deliverSm) {
+        return (deliverSm.getEsmClass() & SmppConstants.ESM_CLASS_MT_MASK) == SmppConstants.ESM_CLASS_MT_SMSC_DELIVERY_RECEIPT;
+    }
+
+    /**
+     * @return the receipt carried by the deliver_sm, or null if it is not a receipt or can't be understood
+     */
+    public static SmppDeliveryReceipt parse(final DeliverSm deliverSm) {
+        if (!isReceipt(deliverSm)) {
+            return null;
+        }
+        String messageId = null;
+        String state = null;
+        Integer messageState = null;
+        final Tlv receiptedId = deliverSm.getOptionalParameter(SmppConstants.TAG_RECEIPTED_MSG_ID);
+        final Tlv stateTlv = deliverSm.getOptionalParameter(SmppConstants.TAG_MSG_STATE);
+        try {
+            if (receiptedId != null) {
+                messageId = receiptedId.getValueAsString();
+            }
+            if (stateTlv != null) {
+                messageState = stateTlv.getValueAsUnsignedByte();
+            }
+        } catch (TlvConvertException e) {
+            messageId = null;
+            messageState = null;
+        }
+        final byte[] shortMessage = deliverSm.getShortMessage();
+        if (shortMessage != null && shortMessage.length > 0) {
+            final String text = CharsetUtil.decode(shortMessage, CharsetUtil.CHARSET_GSM);
+            Matcher matcher = ID.matcher(text);
+            if (messageId == null && matcher.find()) {
+                messageId = matcher.group(1);
+            }
+            matcher = STAT.matcher(text);
+            if (matcher.find()) {
+                state = matcher.group(1).toUpperCase();
+            }
+        }
+        if (messageId == null || (state == null && messageState == null)) {
+            return null;
+        }
+        if (messageState != null) {
+            final boolean isFinal = messageState != STATE_ENROUTE && messageState != STATE_ACCEPTED;
+            return new SmppDeliveryReceipt(messageId, state == null ? String.valueOf(messageState) : state,
+                    messageState == STATE_DELIVERED, isFinal);
+        }
+        // DELIVRD, or a failure: EXPIRED, DELETED, UNDELIV, UNKNOWN, REJECTD
+        final boolean isFinal = !"ENROUTE".equals(state) && !"ACCEPTD".equals(state);
+        return new SmppDeliveryReceipt(messageId, state, "DELIVRD".equals(state), isFinal);
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public boolean isDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return false for intermediate notifications like ENROUTE, which don't change the status of the message
+     */
+    public boolean isFinal() {
+        return isFinal;
+    }
+
+    @Override
+    public String toString() {
+        return "SmppDeliveryReceipt[messageId=" + messageId + ",state=" + state + "]";
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2013, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.restcomm.connect.sms.smpp;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.restcomm.connect.dao.entities.SmsMessage;
+
+/**
+ * Maps the ids the SMSC assigned to submitted messages back to their SmsMessage records, so that delivery receipts
+ * can update them. Entries are kept until their receipt arrives or for at most the configured time to live, and
+ * their number is bounded. Only used from the SmppMessageHandler actor.
+ */
+public final class SmppDeliveryTracker {
+
+    private final long timeToLive;
+    private final int maxEntries;
+    // ordered by insertion, which is also expiry order since all entries have the same time to live
+    private final Map<String, Delivery> deliveries = new LinkedHashMap<String, Delivery>();
+    private long dropped;
+
+    public SmppDeliveryTracker(final long timeToLive, final int maxEntries) {
+        this.timeToLive = timeToLive;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Starts waiting for the receipts of a message, one per segment.
+     */
+    public void track(final SmsMessage record, final URI statusCallback, final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        final Delivery delivery = new Delivery(record, statusCallback, messageIds.size(),
+                System.currentTimeMillis() + timeToLive);
+        for (final String messageId : messageIds) {
+            deliveries.put(key(messageId), delivery);
+        }
+        purge();
+    }
+
+    /**
+     * @return the delivery whose final status is known with this receipt, null if it is unknown or still waits for
+     *         the receipts of other segments
+     */
+    public Delivery receipt(final SmppDeliveryReceipt receipt) {
+        if (!receipt.isFinal()) {
+            return null;
+        }
+        Delivery delivery = deliveries.remove(key(receipt.getMessageId()));
+        if (delivery == null) {
+            // some SMSCs report the id in hex in the submit_sm_resp and in decimal in the receipt, or the reverse
+            final String alternative = alternativeKey(receipt.getMessageId());
+            if (alternative != null) {
+                delivery = deliveries.remove(alternative);
+            }
+        }
+        if (delivery == null || delivery.status != null) {
+            return null;
+        }
+        if (!receipt.isDelivered()) {
+            delivery.status = SmsMessage.Status.FAILED;
+            return delivery;
+        }
+        delivery.pending--;
+        if (delivery.pending == 0) {
+            delivery.status = SmsMessage.Status.DELIVERED;
+            return delivery;
+        }
+        return null;
+    }
+
+    /**
+     * Drops the entries whose receipt did not arrive in time and the oldest ones above the size limit.
+     */
+    public void purge() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Delivery> iterator = deliveries.values().iterator();
+        int size = deliveries.size();
+        while (iterator.hasNext()) {
+            final Delivery delivery = iterator.next();
+            if (size <= maxEntries && delivery.expires > now) {
+                break;
+            }
+            iterator.remove();
+            size--;
+            dropped++;
+        }
+    }
+
+    public int size() {
+        return deliveries.size();
+    }
+
+    /**
+     * @return the number of message ids dropped without a receipt
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    private static String key(final String messageId) {
+        return messageId.trim().toLowerCase();
+    }
+
+    private static String alternativeKey(final String messageId) {
+        final String id = key(messageId);
+        try {
+            if (id.matches("\\d+")) {
+                return Long.toHexString(Long.parseLong(id));
+            } else if (id.matches("[0-9a-f]+")) {
+                return Long.toString(Long.parseLong(id, 16));
+            }
+        } catch (NumberFormatException e) {
+            // longer than a long, can't be the same id
+        }
+        return null;
+    }
+
+    /**
+     * A message waiting for the receipts of its segments.
+     */
+    public static final class Delivery {
+        private final SmsMessage record;
+        private final URI statusCallback;
+        private final long expires;
+        private int pending;
+        private SmsMessage.Status status;
+
+        private Delivery(final SmsMessage record, final URI statusCallback, final int segments, final long expires) {
+            this.record = record;
+            this.statusCallback = statusCallback;
+            this.pending = segments;
+            this.expires = expires;
+        }
+
+        public SmsMessage getRecord() {
+            return record;
+        }
+
+        public URI getStatusCallback() {
+            return statusCallback;
+        }
+
+        public SmsMessage.Status getStatus() {
+            return status;
+        }
+    }
+}
@@ -53,6 +53,7 @@ import org.restcomm.connect.interpreter.rcml.GetNextVerb;
 import org.restcomm.connect.interpreter.rcml.Parser;
 import org.restcomm.connect.interpreter.rcml.Tag;
 import org.restcomm.connect.commons.patterns.Observe;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 
 import akka.actor.Actor;
 import akka.actor.ActorRef;
@@ -62,9 +63,6 @@ import akka.actor.UntypedActorContext;
 import akka.actor.UntypedActorFactory;
 
 import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
-import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 import org.restcomm.connect.sms.api.CreateSmsSession;
 import org.restcomm.connect.sms.api.DestroySmsSession;
 import org.restcomm.connect.sms.api.GetLastSmsRequest;
@@ -231,10 +229,8 @@ public class SmppInterpreter extends UntypedActor  {
 
     protected String format(final String number) {
         if(normalizeNumber) {
-            final PhoneNumberUtil numbersUtil = PhoneNumberUtil.getInstance();
             try {
-                final PhoneNumber result = numbersUtil.parse(number, "US");
-                return numbersUtil.format(result, PhoneNumberFormat.E164);
+                return PhoneNumberNormalizer.getInstance().e164(number, accountId);
             } catch (final NumberParseException ignored) {
                 return null;
             }
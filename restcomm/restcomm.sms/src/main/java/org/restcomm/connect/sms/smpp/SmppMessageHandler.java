@@ -2,6 +2,7 @@ package org.restcomm.connect.sms.smpp;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.actor.UntypedActor;
 import akka.actor.UntypedActorContext;
@@ -9,6 +10,8 @@ import akka.actor.UntypedActorFactory;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
 import com.cloudhopper.smpp.pdu.SubmitSm;
 import com.cloudhopper.smpp.type.Address;
 import com.cloudhopper.smpp.type.RecoverablePduException;
@@ -16,21 +19,29 @@ import com.cloudhopper.smpp.type.SmppChannelException;
 import com.cloudhopper.smpp.type.SmppInvalidArgumentException;
 import com.cloudhopper.smpp.type.SmppTimeoutException;
 import com.cloudhopper.smpp.type.UnrecoverablePduException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import org.restcomm.connect.monitoringservice.MonitoringService;
+import org.restcomm.connect.commons.common.http.StatusCallbackQueue;
+import org.restcomm.connect.commons.throttling.AccountLimiter;
+import org.restcomm.connect.commons.throttling.LimitExceededException;
 import org.apache.commons.configuration.Configuration;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
 import org.restcomm.connect.dao.AccountsDao;
 import org.restcomm.connect.dao.ApplicationsDao;
 import org.restcomm.connect.dao.DaoManager;
 import org.restcomm.connect.dao.IncomingPhoneNumbersDao;
 import org.restcomm.connect.dao.entities.Application;
 import org.restcomm.connect.dao.entities.IncomingPhoneNumber;
+import org.restcomm.connect.dao.entities.SmsMessage;
 import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.http.client.Downloader;
+import org.restcomm.connect.http.client.HttpRequestDescriptor;
 import org.restcomm.connect.interpreter.StartInterpreter;
 import org.restcomm.connect.sms.api.CreateSmsSession;
 import org.restcomm.connect.sms.api.DestroySmsSession;
 import org.restcomm.connect.sms.api.SmsServiceResponse;
 import org.restcomm.connect.sms.SmsSession;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.commons.util.UriUtils;
 
 import javax.servlet.ServletContext;
@@ -39,10 +50,24 @@ import javax.servlet.sip.SipServlet;
 import javax.servlet.sip.SipURI;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import scala.concurrent.duration.Duration;
 
 public class SmppMessageHandler extends UntypedActor  {
 
+    private static final int DEFAULT_MAX_PENDING_SUBMITS = 10000;
+    private static final long DEFAULT_RECEIPT_TTL = 3600000;
+    private static final int DEFAULT_MAX_TRACKED_MESSAGES = 100000;
+    private static final int DEFAULT_RECEIPT_BATCH_SIZE = 100;
+    private static final long DEFAULT_RECEIPT_FLUSH_INTERVAL = 1000;
+
     private final LoggingAdapter logger = Logging.getLogger(getContext().system(), this);
     private final ActorSystem system = getContext().system();
     private final ServletContext servletContext;
@@ -50,6 +75,20 @@ public class SmppMessageHandler extends UntypedActor  {
     private final Configuration configuration;
     private final SipFactory sipFactory;
     private final ActorRef monitoringService;
+    private final AccountLimiter limiter;
+    // messages waiting for a free slot in the send windows of the smpp sessions
+    private final Queue<SubmitSm> pendingSubmits = new LinkedList<SubmitSm>();
+    private final int maxPendingSubmits;
+    private final SmppSegmentation.Mode concatenation;
+    private int lastReference;
+    // delivery receipts: tracked message ids and the status changes waiting to be stored
+    private final boolean requestReceipts;
+    private final SmppDeliveryTracker deliveryTracker;
+    private final List<SmppDeliveryTracker.Delivery> pendingDeliveries = new ArrayList<SmppDeliveryTracker.Delivery>();
+    private final int receiptBatchSize;
+    private final long receiptFlushInterval;
+    private Cancellable receiptFlush;
+    private ActorRef downloader;
 
     public SmppMessageHandler(final ServletContext servletContext) {
         this.servletContext = servletContext;
@@ -57,6 +96,33 @@ public class SmppMessageHandler extends UntypedActor  {
         this.configuration = (Configuration) servletContext.getAttribute(Configuration.class.getName());
         this.sipFactory = (SipFactory) servletContext.getAttribute(SipFactory.class.getName());
         this.monitoringService = (ActorRef) servletContext.getAttribute(MonitoringService.class.getName());
+        this.limiter = (AccountLimiter) servletContext.getAttribute(AccountLimiter.class.getName());
+        final Configuration smpp = configuration.subset("smpp");
+        this.maxPendingSubmits = smpp.getInt("outbound-queue-size", DEFAULT_MAX_PENDING_SUBMITS);
+        this.concatenation = SmppSegmentation.Mode.fromConfiguration(smpp.getString("concatenation"));
+        this.requestReceipts = smpp.getBoolean("delivery-receipts", true);
+        this.deliveryTracker = new SmppDeliveryTracker(smpp.getLong("delivery-receipt-ttl", DEFAULT_RECEIPT_TTL),
+                smpp.getInt("delivery-receipt-max-messages", DEFAULT_MAX_TRACKED_MESSAGES));
+        this.receiptBatchSize = smpp.getInt("delivery-receipt-batch-size", DEFAULT_RECEIPT_BATCH_SIZE);
+        this.receiptFlushInterval = smpp.getLong("delivery-receipt-flush-interval", DEFAULT_RECEIPT_FLUSH_INTERVAL);
+    }
+
+    @Override
+    public void preStart() {
+        if (requestReceipts) {
+            downloader = downloader();
+            receiptFlush = system.scheduler().schedule(Duration.create(receiptFlushInterval, TimeUnit.MILLISECONDS),
+                    Duration.create(receiptFlushInterval, TimeUnit.MILLISECONDS), self(), new FlushDeliveries(),
+                    system.dispatcher());
+        }
+    }
+
+    @Override
+    public void postStop() {
+        if (receiptFlush != null) {
+            receiptFlush.cancel();
+        }
+        flushDeliveries();
     }
 
     @Override
@@ -73,8 +139,24 @@ public class SmppMessageHandler extends UntypedActor  {
             if(logger.isInfoEnabled()) {
                 logger.info("SmppMessageHandler processing Outbound Message " + message.toString());
             }
-            outbound((SmppOutboundMessageEntity) message);
+            outbound((SmppOutboundMessageEntity) message, sender);
+        } else if (message instanceof SmppSubmitResult) {
+            onSubmitResult((SmppSubmitResult) message);
+        } else if (message instanceof SmppSessionAvailable) {
+            sendPendingSubmits();
+        } else if (message instanceof SmppDeliveryReceipt) {
+            onDeliveryReceipt((SmppDeliveryReceipt) message);
+        } else if (message instanceof FlushDeliveries) {
+            flushDeliveries();
+            deliveryTracker.purge();
         } else if (message instanceof CreateSmsSession) {
+            final String accountSid = ((CreateSmsSession) message).getAccountSid();
+            if (limiter != null && !limiter.tryAcquireSms(accountSid)) {
+                final SmsServiceResponse<ActorRef> response = new SmsServiceResponse<ActorRef>(new LimitExceededException(
+                        "Outbound SMS rate exceeded for account " + accountSid));
+                sender.tell(response, self);
+                return;
+            }
             final ActorRef session = session();
             final SmsServiceResponse<ActorRef> response = new  SmsServiceResponse<ActorRef>(session);
             sender.tell(response, self);
@@ -109,10 +191,8 @@ public class SmppMessageHandler extends UntypedActor  {
         String to = request.getSmppTo();
         String phone = to;
 
-        final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
-
         try {
-            phone = phoneNumberUtil.format(phoneNumberUtil.parse(to, "US"), PhoneNumberUtil.PhoneNumberFormat.E164);
+            phone = PhoneNumberNormalizer.getInstance().e164(to);
         } catch (Exception e) {}
         // Try to find an application defined for the phone number.
         final IncomingPhoneNumbersDao numbers = storage.getIncomingPhoneNumbersDao();
@@ -192,35 +272,196 @@ public class SmppMessageHandler extends UntypedActor  {
         }));
     }
 
-    public void outbound(SmppOutboundMessageEntity request) throws SmppInvalidArgumentException, IOException {
+    public void outbound(SmppOutboundMessageEntity request, ActorRef smsSession) throws SmppInvalidArgumentException, IOException {
 //        if(logger.isInfoEnabled()) {
 //            logger.info("Message is Received by the SmppSessionOutbound Class");
 //        }
 
         byte[] textBytes;
+        byte dataCoding;
         int smppTonNpiValue =  Integer.parseInt(SmppService.getSmppTonNpiValue()) ;
-        // add delivery receipt
-        //submit0.setRegisteredDelivery(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED);
-        SubmitSm submit0 = new SubmitSm();
-        submit0.setSourceAddress(new Address((byte)smppTonNpiValue, (byte) smppTonNpiValue, request.getSmppFrom() ));
-        submit0.setDestAddress(new Address((byte)smppTonNpiValue, (byte)smppTonNpiValue, request.getSmppTo()));
-        if (CharsetUtil.CHARSET_UCS_2 == request.getSmppEncoding()) {
-            submit0.setDataCoding(DataCoding.DATA_CODING_UCS2);
-            textBytes = request.getSmppContent().getBytes();
+        final boolean ucs2 = CharsetUtil.CHARSET_UCS_2 == request.getSmppEncoding();
+        if (ucs2) {
+            dataCoding = DataCoding.DATA_CODING_UCS2;
         } else {
-            submit0.setDataCoding(DataCoding.DATA_CODING_GSM7);
-            textBytes = CharsetUtil.encode(request.getSmppContent(), request.getSmppEncoding());
+            dataCoding = DataCoding.DATA_CODING_GSM7;
         }
-        submit0.setShortMessage(textBytes);
-        try {
-            if(logger.isInfoEnabled()) {
-                logger.info("Sending SubmitSM for " + request);
+        textBytes = CharsetUtil.encode(request.getSmppContent(), request.getSmppEncoding());
+        // long messages are sent as concatenated segments, one submit_sm each
+        final List<byte[]> segments = SmppSegmentation.split(textBytes, concatenation, !ucs2);
+        // the responses are correlated back to the originating session through the reference object
+        final SmppSubmission submission = new SmppSubmission(smsSession, request.getRecord(), request.getStatusCallback(),
+                segments.size());
+        // only stored messages have a status to update
+        final boolean receipt = requestReceipts && request.getRecord() != null;
+        final int reference = segments.size() > 1 ? nextReference() : 0;
+        if(logger.isInfoEnabled()) {
+            logger.info("Sending SubmitSM for " + request + " in " + segments.size() + " segment(s)");
+        }
+        final List<SubmitSm> submits = new ArrayList<SubmitSm>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            SubmitSm submit0 = new SubmitSm();
+            if (receipt) {
+                submit0.setRegisteredDelivery(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED);
+            }
+            submit0.setSourceAddress(new Address((byte)smppTonNpiValue, (byte) smppTonNpiValue, request.getSmppFrom() ));
+            submit0.setDestAddress(new Address((byte)smppTonNpiValue, (byte)smppTonNpiValue, request.getSmppTo()));
+            submit0.setDataCoding(dataCoding);
+            if (segments.size() > 1) {
+                SmppSegmentation.apply(submit0, concatenation, segments.get(i), reference, segments.size(), i + 1);
+            } else {
+                submit0.setShortMessage(segments.get(i));
+            }
+            submit0.setReferenceObject(submission);
+            submits.add(submit0);
+        }
+        // a message goes out whole or not at all, so the queue must have room for every segment before any is sent
+        if (pendingSubmits.size() + submits.size() > maxPendingSubmits) {
+            logger.warning("SMPP outbound queue is full (" + maxPendingSubmits + " messages), dropping message to " + request.getSmppTo());
+            for (final SubmitSm submit : submits) {
+                failed(submit, SmppConstants.STATUS_THROTTLED);
             }
-            SmppClientOpsThread.getSmppSession().submit(submit0, 10000); //send message through SMPP connector
+            return;
+        }
+        for (final SubmitSm submit : submits) {
+            // segments are pipelined, keeping the order of the messages, queued ones go first
+            if (!pendingSubmits.isEmpty() || !send(submit)) {
+                pendingSubmits.add(submit);
+            }
+        }
+    }
+
+    private int nextReference() {
+        lastReference = (lastReference + 1) % (concatenation.maxReference() + 1);
+        return lastReference;
+    }
+
+    /**
+     * Sends the message asynchronously through a session with a free window slot. The response arrives later
+     * as an SmppSubmitResult.
+     *
+     * @return false if all send windows are full and the message has to wait
+     */
+    private boolean send(final SubmitSm submit) {
+        final SmppSession session = SmppClientOpsThread.getSessionPool().acquire();
+        if (session == null) {
+            return false;
+        }
+        // the sequence number is per session, a message retried on another one needs a new number
+        submit.removeSequenceNumber();
+        try {
+            // the pool only hands out sessions with free slots, so don't wait for one
+            session.sendRequestPdu(submit, 0, false);
+        } catch (SmppTimeoutException e) {
+            // the window was filled in the meantime
+            return false;
         } catch (RecoverablePduException | UnrecoverablePduException
-                | SmppTimeoutException | SmppChannelException
-                | InterruptedException e) {
+                | SmppChannelException | InterruptedException e) {
             logger.error("SMPP message cannot be sent : " + e );
+            failed(submit, SmppConstants.STATUS_SYSERR);
+        }
+        return true;
+    }
+
+    private void sendPendingSubmits() {
+        while (!pendingSubmits.isEmpty() && send(pendingSubmits.peek())) {
+            pendingSubmits.poll();
         }
     }
+
+    private void failed(final SubmitSm submit, final int commandStatus) {
+        segmentDone(new SmppSubmitResult((SmppSubmission) submit.getReferenceObject(), false, commandStatus, null));
+    }
+
+    private void onSubmitResult(final SmppSubmitResult result) {
+        if (!result.succeeded()) {
+            logger.warning("SMPP message was not accepted by the SMSC : " + result);
+        }
+        segmentDone(result);
+        // a window slot has been released
+        sendPendingSubmits();
+    }
+
+    // tells the SmsSession once all segments of its message are done
+    private void segmentDone(final SmppSubmitResult result) {
+        final SmppSubmission submission = result.getSubmission();
+        if (submission != null && submission.segmentDone(result)) {
+            final List<String> messageIds = submission.getMessageIds();
+            if (requestReceipts && submission.succeeded() && submission.getRecord() != null) {
+                deliveryTracker.track(submission.getRecord(), submission.getStatusCallback(), messageIds);
+            }
+            if (submission.getSmsSession() != null) {
+                submission.getSmsSession().tell(new SmppSubmitResult(submission, submission.succeeded(), submission.getCommandStatus(),
+                        messageIds.isEmpty() ? null : messageIds.get(0)), self());
+            }
+        }
+    }
+
+    private void onDeliveryReceipt(final SmppDeliveryReceipt receipt) {
+        final SmppDeliveryTracker.Delivery delivery = deliveryTracker.receipt(receipt);
+        if (delivery == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("No pending message for " + receipt);
+            }
+            return;
+        }
+        pendingDeliveries.add(delivery);
+        if (pendingDeliveries.size() >= receiptBatchSize) {
+            flushDeliveries();
+        }
+    }
+
+    // stores the statuses reported since the last flush in one batch and fires the status callbacks
+    private void flushDeliveries() {
+        if (pendingDeliveries.isEmpty()) {
+            return;
+        }
+        final Map<Sid, SmsMessage.Status> statuses = new LinkedHashMap<Sid, SmsMessage.Status>();
+        for (final SmppDeliveryTracker.Delivery delivery : pendingDeliveries) {
+            statuses.put(delivery.getRecord().getSid(), delivery.getStatus());
+        }
+        try {
+            storage.getSmsMessagesDao().updateSmsMessageStatuses(statuses);
+        } catch (final Exception exception) {
+            logger.error("Could not store the status of " + statuses.size() + " SMPP messages : " + exception);
+        }
+        for (final SmppDeliveryTracker.Delivery delivery : pendingDeliveries) {
+            if (delivery.getStatusCallback() != null) {
+                final List<NameValuePair> parameters = callbackParameters(delivery);
+                // queued with the other callbacks of the message, so a receipt is not sent before its submit status
+                if (!StatusCallbackQueue.getInstance().send(delivery.getRecord().getSid().toString(),
+                        delivery.getStatusCallback(), "POST", parameters)) {
+                    downloader.tell(new HttpRequestDescriptor(delivery.getStatusCallback(), "POST", parameters), null);
+                }
+            }
+        }
+        pendingDeliveries.clear();
+    }
+
+    private List<NameValuePair> callbackParameters(final SmppDeliveryTracker.Delivery delivery) {
+        final SmsMessage record = delivery.getRecord();
+        final List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+        parameters.add(new BasicNameValuePair("SmsSid", record.getSid().toString()));
+        parameters.add(new BasicNameValuePair("AccountSid", record.getAccountSid().toString()));
+        parameters.add(new BasicNameValuePair("From", record.getSender()));
+        parameters.add(new BasicNameValuePair("To", record.getRecipient()));
+        parameters.add(new BasicNameValuePair("Body", record.getBody()));
+        parameters.add(new BasicNameValuePair("SmsStatus", delivery.getStatus().toString()));
+        return parameters;
+    }
+
+    private ActorRef downloader() {
+        return getContext().actorOf(new Props(new UntypedActorFactory() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public UntypedActor create() throws Exception {
+                return new Downloader();
+            }
+        }));
+    }
+
+    // periodic tick that stores the statuses of a batch that did not fill up
+    private static final class FlushDeliveries {
+    }
 }
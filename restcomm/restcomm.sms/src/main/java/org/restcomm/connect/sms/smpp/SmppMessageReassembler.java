@@ -0,0 +1,135 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2013, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.connect.sms.smpp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.cloudhopper.smpp.pdu.BaseSm;
+
+/**
+ * Collects the segments of inbound concatenated messages until all of them have arrived. Segments are grouped by
+ * source address, destination address and reference number. The buffer is bounded: incomplete messages are
+ * dropped after a timeout and the oldest one is dropped when the buffer is full.
+ */
+public class SmppMessageReassembler {
+
+    private static final Logger logger = Logger.getLogger(SmppMessageReassembler.class);
+
+    private final long timeout;
+    private final int maxMessages;
+    // insertion ordered, so the oldest incomplete message comes first
+    private final LinkedHashMap<String, Parts> incomplete = new LinkedHashMap<String, Parts>();
+    private long dropped;
+
+    /**
+     * @param timeout milliseconds to wait for the missing segments of a message
+     * @param maxMessages incomplete messages kept at most
+     */
+    public SmppMessageReassembler(final long timeout, final int maxMessages) {
+        this.timeout = timeout;
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * @return the whole short message, without user data headers, or null if segments are still missing
+     */
+    public byte[] reassemble(final BaseSm pdu) {
+        final SmppSegmentation.Segment segment = SmppSegmentation.parse(pdu);
+        if (segment == null) {
+            return SmppSegmentation.payload(pdu);
+        }
+        final String key = pdu.getSourceAddress().getAddress() + "|" + pdu.getDestAddress().getAddress() + "|"
+                + segment.getReference();
+        return add(key, segment, System.currentTimeMillis());
+    }
+
+    synchronized byte[] add(final String key, final SmppSegmentation.Segment segment, final long now) {
+        expire(now);
+        Parts parts = incomplete.get(key);
+        if (parts == null || parts.segments.length != segment.getTotal()) {
+            if (parts == null && incomplete.size() >= maxMessages) {
+                final Iterator<Map.Entry<String, Parts>> oldest = incomplete.entrySet().iterator();
+                logger.warn("SMPP reassembly buffer is full, dropping incomplete message " + oldest.next().getKey());
+                oldest.remove();
+                dropped++;
+            }
+            parts = new Parts(segment.getTotal(), now);
+            // re-insert so that the message keeps its place in the expiration order
+            incomplete.remove(key);
+            incomplete.put(key, parts);
+        }
+        if (parts.segments[segment.getSequence() - 1] == null) {
+            parts.segments[segment.getSequence() - 1] = segment.getPayload();
+            parts.received++;
+        }
+        if (parts.received < parts.segments.length) {
+            return null;
+        }
+        incomplete.remove(key);
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        for (final byte[] payload : parts.segments) {
+            message.write(payload, 0, payload.length);
+        }
+        return message.toByteArray();
+    }
+
+    private void expire(final long now) {
+        final Iterator<Map.Entry<String, Parts>> it = incomplete.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Parts> entry = it.next();
+            if (now - entry.getValue().created < timeout) {
+                break;
+            }
+            logger.warn("Segments of SMPP message " + entry.getKey() + " did not arrive in time, " + entry.getValue().received
+                    + " of " + entry.getValue().segments.length + " received");
+            it.remove();
+            dropped++;
+        }
+    }
+
+    public synchronized int size() {
+        return incomplete.size();
+    }
+
+    /**
+     * @return incomplete messages dropped because they expired or the buffer was full
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    private static final class Parts {
+        private final byte[][] segments;
+        private final long created;
+        private int received;
+
+        private Parts(final int total, final long created) {
+            this.segments = new byte[total][];
+            this.created = created;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.restcomm.connect.sms.smpp;
 
 import com.cloudhopper.commons.charset.Charset;
+import org.restcomm.connect.dao.entities.SmsMessage;
+
+import java.net.URI;
 
 public class SmppOutboundMessageEntity {
 
@@ -9,14 +12,24 @@ public class SmppOutboundMessageEntity {
     private final String smppFrom;
     private final String smppContent;
     private final Charset smppEncoding;
+    // the record and callback to update once the delivery receipt arrives
+    private final SmsMessage record;
+    private final URI statusCallback;
 
 
     public SmppOutboundMessageEntity(String smppTo, String smppFrom, String smppContent, Charset smppEncoding){
+        this(smppTo, smppFrom, smppContent, smppEncoding, null, null);
+    }
+
+    public SmppOutboundMessageEntity(String smppTo, String smppFrom, String smppContent, Charset smppEncoding,
+            SmsMessage record, URI statusCallback){
 
         this.smppTo = smppTo;
         this.smppFrom = smppFrom;
         this.smppContent = smppContent;
         this.smppEncoding = smppEncoding;
+        this.record = record;
+        this.statusCallback = statusCallback;
 
     }
 
@@ -35,6 +48,12 @@ public class SmppOutboundMessageEntity {
     public final Charset getSmppEncoding(){
         return smppEncoding;
     }
+    public final SmsMessage getRecord(){
+        return record;
+    }
+    public final URI getStatusCallback(){
+        return statusCallback;
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,241 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2013, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.connect.sms.smpp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cloudhopper.commons.util.ByteArrayUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.tlv.TlvConvertException;
+import com.cloudhopper.smpp.type.SmppInvalidArgumentException;
+
+/**
+ * Splits long messages into concatenated segments and parses the concatenation info of received segments.
+ * Segments are linked either with a User Data Header (8 bit or 16 bit reference number) or with the sar_* TLVs.
+ */
+public final class SmppSegmentation {
+
+    public enum Mode {
+        UDH8, UDH16, SAR;
+
+        public static Mode fromConfiguration(final String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return UDH8;
+            }
+            return Mode.valueOf(value.trim().toUpperCase());
+        }
+
+        int maxReference() {
+            return this == UDH8 ? 0xFF : 0xFFFF;
+        }
+    }
+
+    /**
+     * Concatenation info of a received segment
+     */
+    public static final class Segment {
+        private final int reference;
+        private final int total;
+        private final int sequence;
+        private final byte[] payload;
+
+        Segment(final int reference, final int total, final int sequence, final byte[] payload) {
+            this.reference = reference;
+            this.total = total;
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+
+        public int getReference() {
+            return reference;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getSequence() {
+            return sequence;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static final int MAX_OCTETS = 140;
+    private static final int MAX_SEPTETS = 160;
+    private static final byte GSM_ESCAPE = 0x1B;
+    private static final byte IEI_CONCAT_8BIT = 0x00;
+    private static final byte IEI_CONCAT_16BIT = 0x08;
+
+    private SmppSegmentation() {
+        super();
+    }
+
+    /**
+     * Splits the encoded text into segments that fit in a short message together with the concatenation header.
+     *
+     * @param gsm true if the text is GSM 7 bit, one byte per septet as cloudhopper encodes it. Otherwise the text is
+     *            treated as big endian UCS-2 and split on even boundaries, keeping surrogate pairs together.
+     * @return the text itself if it fits in a single message
+     */
+    public static List<byte[]> split(final byte[] text, final Mode mode, final boolean gsm) {
+        final List<byte[]> segments = new ArrayList<byte[]>();
+        if (text.length <= (gsm ? MAX_SEPTETS : MAX_OCTETS)) {
+            segments.add(text);
+            return segments;
+        }
+        final int headerLength = headerLength(mode);
+        int max = gsm ? (MAX_OCTETS - headerLength) * 8 / 7 : MAX_OCTETS - headerLength;
+        if (!gsm) {
+            max -= max % 2;
+        }
+        int start = 0;
+        while (start < text.length) {
+            int end = Math.min(start + max, text.length);
+            // don't separate a GSM escape from the character it escapes
+            if (gsm && end < text.length && text[end - 1] == GSM_ESCAPE) {
+                end--;
+            }
+            // nor a UTF-16 high surrogate from the low surrogate that follows it
+            if (!gsm && end < text.length && isHighSurrogate(text[end - 2])) {
+                end -= 2;
+            }
+            segments.add(Arrays.copyOfRange(text, start, end));
+            start = end;
+        }
+        return segments;
+    }
+
+    private static boolean isHighSurrogate(final byte highOrder) {
+        return (highOrder & 0xFC) == 0xD8;
+    }
+
+    /**
+     * Sets the segment as the short message of the pdu and adds the concatenation info.
+     *
+     * @param sequence 1 based
+     */
+    public static void apply(final BaseSm pdu, final Mode mode, final byte[] segment, final int reference, final int total,
+            final int sequence) throws SmppInvalidArgumentException {
+        if (mode == Mode.SAR) {
+            pdu.setShortMessage(segment);
+            pdu.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, ByteArrayUtil.toByteArray((short) reference)));
+            pdu.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_TOTAL_SEGMENTS, new byte[] {(byte) total}));
+            pdu.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[] {(byte) sequence}));
+            return;
+        }
+        final byte[] header;
+        if (mode == Mode.UDH8) {
+            header = new byte[] {5, IEI_CONCAT_8BIT, 3, (byte) reference, (byte) total, (byte) sequence};
+        } else {
+            header = new byte[] {6, IEI_CONCAT_16BIT, 4, (byte) (reference >> 8), (byte) reference, (byte) total, (byte) sequence};
+        }
+        final byte[] shortMessage = new byte[header.length + segment.length];
+        System.arraycopy(header, 0, shortMessage, 0, header.length);
+        System.arraycopy(segment, 0, shortMessage, header.length, segment.length);
+        pdu.setShortMessage(shortMessage);
+        pdu.setEsmClass((byte) (pdu.getEsmClass() | SmppConstants.ESM_CLASS_UDHI_MASK));
+    }
+
+    /**
+     * @return the concatenation info of the pdu or null if it is a message of its own. In the later case the
+     *         short message is returned as is by {@link #payload(BaseSm)}.
+     */
+    public static Segment parse(final BaseSm pdu) {
+        final byte[] shortMessage = pdu.getShortMessage();
+        if ((pdu.getEsmClass() & SmppConstants.ESM_CLASS_UDHI_MASK) != 0 && shortMessage != null && shortMessage.length > 0) {
+            final int headerEnd = 1 + (shortMessage[0] & 0xFF);
+            if (headerEnd > shortMessage.length) {
+                return null;
+            }
+            final byte[] payload = Arrays.copyOfRange(shortMessage, headerEnd, shortMessage.length);
+            int i = 1;
+            while (i + 1 < headerEnd) {
+                final byte iei = shortMessage[i];
+                final int length = shortMessage[i + 1] & 0xFF;
+                final int data = i + 2;
+                if (data + length > headerEnd) {
+                    break;
+                }
+                if (iei == IEI_CONCAT_8BIT && length == 3) {
+                    return segment(shortMessage[data] & 0xFF, shortMessage[data + 1] & 0xFF, shortMessage[data + 2] & 0xFF, payload);
+                } else if (iei == IEI_CONCAT_16BIT && length == 4) {
+                    final int reference = ((shortMessage[data] & 0xFF) << 8) | (shortMessage[data + 1] & 0xFF);
+                    return segment(reference, shortMessage[data + 2] & 0xFF, shortMessage[data + 3] & 0xFF, payload);
+                }
+                i = data + length;
+            }
+            return null;
+        }
+        final Tlv reference = pdu.getOptionalParameter(SmppConstants.TAG_SAR_MSG_REF_NUM);
+        final Tlv total = pdu.getOptionalParameter(SmppConstants.TAG_SAR_TOTAL_SEGMENTS);
+        final Tlv sequence = pdu.getOptionalParameter(SmppConstants.TAG_SAR_SEGMENT_SEQNUM);
+        if (reference != null && total != null && sequence != null) {
+            try {
+                return segment(reference.getValueAsUnsignedShort(), total.getValueAsUnsignedByte(),
+                        sequence.getValueAsUnsignedByte(), shortMessage == null ? new byte[0] : shortMessage);
+            } catch (TlvConvertException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the short message without the user data header, if any
+     */
+    public static byte[] payload(final BaseSm pdu) {
+        final byte[] shortMessage = pdu.getShortMessage();
+        if ((pdu.getEsmClass() & SmppConstants.ESM_CLASS_UDHI_MASK) != 0 && shortMessage != null && shortMessage.length > 0) {
+            final int headerEnd = 1 + (shortMessage[0] & 0xFF);
+            if (headerEnd <= shortMessage.length) {
+                return Arrays.copyOfRange(shortMessage, headerEnd, shortMessage.length);
+            }
+        }
+        return shortMessage;
+    }
+
+    private static Segment segment(final int reference, final int total, final int sequence, final byte[] payload) {
+        // a single part or broken numbering is handled as a message of its own
+        if (total < 2 || sequence < 1 || sequence > total) {
+            return null;
+        }
+        return new Segment(reference, total, sequence, payload);
+    }
+
+    private static int headerLength(final Mode mode) {
+        switch (mode) {
+            case UDH8:
+                return 6;
+            case UDH16:
+                return 7;
+            default:
+                return 0;
+        }
+    }
+}
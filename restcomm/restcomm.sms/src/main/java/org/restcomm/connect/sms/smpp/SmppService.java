@@ -166,14 +166,20 @@ public final class SmppService extends UntypedActor {
 
             long enquireLinkDelay = smppConfiguration.getLong("connections.connection(" + count + ").enquirelinkdelay");
 
-            Smpp smpp = new Smpp(name, systemId, peerIp, peerPort, bindtype, password, systemType, interfaceVersion, address,
-                    connectTimeout, windowSize, windowWaitTimeout, requestExpiryTimeout, windowMonitorInterval,
-                    countersEnabled, logBytes, enquireLinkDelay);
+            // number of sessions bound to this SMSC. Outbound messages are spread over all of them
+            int sessions = smppConfiguration.getInt("connections.connection(" + count + ").sessions", 1);
 
-            this.smppList.add(smpp);
+            for (int session = 0; session < sessions; session++) {
+                String sessionName = session == 0 ? name : name + "-" + session;
+                Smpp smpp = new Smpp(sessionName, systemId, peerIp, peerPort, bindtype, password, systemType, interfaceVersion, address,
+                        connectTimeout, windowSize, windowWaitTimeout, requestExpiryTimeout, windowMonitorInterval,
+                        countersEnabled, logBytes, enquireLinkDelay);
 
-            if(logger.isInfoEnabled()) {
-                logger.info("creating new SMPP connection " + smpp);
+                this.smppList.add(smpp);
+
+                if(logger.isInfoEnabled()) {
+                    logger.info("creating new SMPP connection " + smpp);
+                }
             }
 
         }
@@ -212,11 +218,15 @@ public final class SmppService extends UntypedActor {
         // threads it will ever use, despite the "max pool size", etc. set on
         // the executor passed in here
 
-        // Setting expected session to be 25. May be this should be
-        // configurable?
-        this.clientBootstrap = new DefaultSmppClient(this.executor, 25, monitorExecutor);
+        // Setting expected session to be at least 25 or the number of configured sessions
+        this.clientBootstrap = new DefaultSmppClient(this.executor, Math.max(25, this.smppList.size()), monitorExecutor);
+
+        // inbound concatenated messages wait here for their missing segments
+        SmppMessageReassembler reassembler = new SmppMessageReassembler(smppConfiguration.getLong("reassembly-timeout", 60000),
+                smppConfiguration.getInt("reassembly-max-messages", 1000));
 
-        this.smppClientOpsThread = new SmppClientOpsThread(this.clientBootstrap, outboundInterface("udp").getPort(), smppMessageHandler);
+        this.smppClientOpsThread = new SmppClientOpsThread(this.clientBootstrap, outboundInterface("udp").getPort(), smppMessageHandler,
+                reassembler);
 
         (new Thread(this.smppClientOpsThread)).start();
 
@@ -0,0 +1,107 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2013, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.connect.sms.smpp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.cloudhopper.smpp.SmppSession;
+
+/**
+ * Bound SMPP sessions used for outbound messages. Sessions are handed out round-robin, skipping the ones that are
+ * not bound or whose send window is full, so that several sessions to the same SMSC share the load.
+ */
+public class SmppSessionPool {
+
+    private final List<SmppSession> sessions = new CopyOnWriteArrayList<SmppSession>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public void add(final SmppSession session) {
+        if (session != null && !sessions.contains(session)) {
+            sessions.add(session);
+        }
+    }
+
+    public void remove(final SmppSession session) {
+        if (session != null) {
+            sessions.remove(session);
+        }
+    }
+
+    /**
+     * @return true if at least one session is bound
+     */
+    public boolean isBound() {
+        for (final SmppSession session : sessions) {
+            if (session.isBound()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a bound session, regardless of its window, or null if there is none
+     */
+    public SmppSession getBoundSession() {
+        for (final SmppSession session : sessions) {
+            if (session.isBound()) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a bound session with at least one free slot in its send window or null if all windows are full
+     */
+    public SmppSession acquire() {
+        final Object[] snapshot = sessions.toArray();
+        if (snapshot.length == 0) {
+            return null;
+        }
+        final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % snapshot.length;
+        for (int i = 0; i < snapshot.length; i++) {
+            final SmppSession session = (SmppSession) snapshot[(start + i) % snapshot.length];
+            if (session.isBound() && session.getSendWindow().getFreeSize() > 0) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of requests sent and not yet acknowledged over all sessions
+     */
+    public int getPendingRequests() {
+        int pending = 0;
+        for (final SmppSession session : sessions) {
+            pending += session.getSendWindow().getSize();
+        }
+        return pending;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
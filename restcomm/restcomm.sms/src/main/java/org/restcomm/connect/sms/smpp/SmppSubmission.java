@@ -0,0 +1,107 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2013, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.connect.sms.smpp;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import akka.actor.ActorRef;
+
+import org.restcomm.connect.dao.entities.SmsMessage;
+
+import com.cloudhopper.smpp.SmppConstants;
+
+/**
+ * An outbound message sent as one or more submit_sm. It is the reference object of each submit_sm and collects
+ * their responses, so that the SmsSession gets a single answer once all segments have been acknowledged. Only
+ * used from the SmppMessageHandler actor.
+ */
+public final class SmppSubmission {
+
+    private final ActorRef smsSession;
+    private final SmsMessage record;
+    private final URI statusCallback;
+    private final int segments;
+    private final List<String> messageIds = new ArrayList<String>();
+    private int pending;
+    private boolean succeeded = true;
+    private int commandStatus = SmppConstants.STATUS_OK;
+
+    public SmppSubmission(final ActorRef smsSession, final SmsMessage record, final URI statusCallback, final int segments) {
+        this.smsSession = smsSession;
+        this.record = record;
+        this.statusCallback = statusCallback;
+        this.segments = segments;
+        this.pending = segments;
+    }
+
+    /**
+     * @return true if this was the last outstanding segment
+     */
+    boolean segmentDone(final SmppSubmitResult result) {
+        if (result.getMessageId() != null) {
+            messageIds.add(result.getMessageId());
+        }
+        if (!result.succeeded() && succeeded) {
+            succeeded = false;
+            commandStatus = result.getCommandStatus();
+        }
+        pending--;
+        return pending == 0;
+    }
+
+    public ActorRef getSmsSession() {
+        return smsSession;
+    }
+
+    /**
+     * @return the stored message, null if the message is not recorded
+     */
+    public SmsMessage getRecord() {
+        return record;
+    }
+
+    public URI getStatusCallback() {
+        return statusCallback;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public boolean succeeded() {
+        return succeeded;
+    }
+
+    public int getCommandStatus() {
+        return commandStatus;
+    }
+
+    /**
+     * @return the ids the SMSC assigned to the segments
+     */
+    public List<String> getMessageIds() {
+        return Collections.unmodifiableList(messageIds);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2013, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.connect.sms.smpp;
+
+/**
+ * Outcome of an asynchronous submit_sm. It is sent to the SmppMessageHandler which, once all segments of the
+ * message are done, sends the overall outcome to the SmsSession that originated the message.
+ */
+public final class SmppSubmitResult {
+
+    private final SmppSubmission submission;
+    private final boolean succeeded;
+    private final int commandStatus;
+    private final String messageId;
+
+    public SmppSubmitResult(final SmppSubmission submission, final boolean succeeded, final int commandStatus, final String messageId) {
+        this.submission = submission;
+        this.succeeded = succeeded;
+        this.commandStatus = commandStatus;
+        this.messageId = messageId;
+    }
+
+    public SmppSubmission getSubmission() {
+        return submission;
+    }
+
+    public boolean succeeded() {
+        return succeeded;
+    }
+
+    public int getCommandStatus() {
+        return commandStatus;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    @Override
+    public String toString() {
+        return "SmppSubmitResult[succeeded=" + succeeded + ",commandStatus=" + commandStatus + ",messageId=" + messageId + "]";
+    }
+}
@@ -24,6 +24,7 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.actor.ReceiveTimeout;
+import akka.actor.Terminated;
 import akka.actor.UntypedActor;
 import akka.actor.UntypedActorContext;
 import akka.actor.UntypedActorFactory;
@@ -31,14 +32,15 @@ import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.util.Timeout;
 import com.google.i18n.phonenumbers.NumberParseException;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
 import gov.nist.javax.sip.header.UserAgent;
 import org.apache.commons.configuration.Configuration;
 import org.joda.time.DateTime;
 import org.restcomm.connect.commons.configuration.RestcommConfiguration;
 import org.restcomm.connect.commons.dao.Sid;
 import org.restcomm.connect.commons.patterns.StopObserving;
+import org.restcomm.connect.commons.throttling.AccountLimiter;
+import org.restcomm.connect.commons.throttling.LimitExceededException;
+import org.restcomm.connect.commons.util.PhoneNumberNormalizer;
 import org.restcomm.connect.commons.util.SdpUtils;
 import org.restcomm.connect.commons.util.UriUtils;
 import org.restcomm.connect.dao.AccountsDao;
@@ -55,7 +57,6 @@ import org.restcomm.connect.dao.entities.IncomingPhoneNumber;
 import org.restcomm.connect.dao.entities.Notification;
 import org.restcomm.connect.dao.entities.Registration;
 import org.restcomm.connect.extension.api.CallRequest;
-import org.restcomm.connect.extension.api.ExtensionResponse;
 import org.restcomm.connect.extension.api.ExtensionType;
 import org.restcomm.connect.extension.api.RestcommExtensionException;
 import org.restcomm.connect.extension.api.RestcommExtensionGeneric;
@@ -178,6 +179,10 @@ public final class CallManager extends UntypedActor {
     //List of extensions for CallManager
     List<RestcommExtensionGeneric> extensions;
 
+    // In-memory per account limits, outbound calls holding a permit are watched until they stop
+    private final AccountLimiter limiter;
+    private boolean outboundPermitPending;
+
     // used for sending warning and error logs to notification engine and to the console
     private void sendNotification(String errMessage, int errCode, String errType, boolean createNotification) {
         NotificationsDao notifications = storage.getNotificationsDao();
@@ -276,6 +281,7 @@ public final class CallManager extends UntypedActor {
 
         //Monitoring Service
         this.monitoring = (ActorRef) context.getAttribute(MonitoringService.class.getName());
+        this.limiter = (AccountLimiter) context.getAttribute(AccountLimiter.class.getName());
 
         extensions = ExtensionController.getInstance().getExtensions(ExtensionType.CallManager);
         if (logger.isInfoEnabled()) {
@@ -663,10 +669,9 @@ public final class CallManager extends UntypedActor {
                                              final ApplicationsDao applications, String phone) {
         boolean isFoundHostedApp = false;
         // Format the destination to an E.164 phone number.
-        final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
         String formatedPhone = null;
         try {
-            formatedPhone = phoneNumberUtil.format(phoneNumberUtil.parse(phone, "US"), PhoneNumberFormat.E164);
+            formatedPhone = PhoneNumberNormalizer.getInstance().e164(phone);
         } catch (Exception e) {
         }
         IncomingPhoneNumber number = null;
@@ -837,6 +842,10 @@ public final class CallManager extends UntypedActor {
         } else if (CreateCall.class.equals(klass)) {
             this.createCallRequest = (CreateCall) message;
             outbound(message, sender);
+        } else if (message instanceof Terminated) {
+            if (limiter != null) {
+                limiter.detachCall(((Terminated) message).getActor());
+            }
         } else if (ExecuteCallScript.class.equals(klass)) {
             execute(message);
         } else if (UpdateCallScript.class.equals(klass)) {
@@ -1169,6 +1178,28 @@ public final class CallManager extends UntypedActor {
 
     private void outbound(final Object message, final ActorRef sender) throws ServletParseException {
         final CreateCall request = (CreateCall) message;
+        final String accountSid = request.accountId() != null ? request.accountId().toString() : null;
+        if (limiter != null) {
+            if (!limiter.tryAcquireCall(accountSid)) {
+                final String errMsg = "Outbound call limit exceeded for account " + accountSid;
+                logger.warning(errMsg);
+                sender.tell(new CallManagerResponse<ActorRef>(new LimitExceededException(errMsg), this.createCallRequest), self());
+                return;
+            }
+            outboundPermitPending = true;
+        }
+        try {
+            outboundByType(request, sender);
+        } finally {
+            // No call was created for this request, give the permit back
+            if (outboundPermitPending) {
+                outboundPermitPending = false;
+                limiter.releaseCall(accountSid);
+            }
+        }
+    }
+
+    private void outboundByType(final CreateCall request, final ActorRef sender) throws ServletParseException {
         CallRequest callRequest = new CallRequest(request.from(), request.to(), CallRequest.Type.valueOf(request.type().name()), request.accountId(), request.isFromApi(), request.parentCallSid() != null);
         switch (request.type()) {
             case CLIENT: {
@@ -1211,16 +1242,7 @@ public final class CallManager extends UntypedActor {
     }
 
     private boolean executePreOutboundAction(final Object message) {
-        if (extensions != null && extensions.size() > 0) {
-            for (RestcommExtensionGeneric extension : extensions) {
-                if (extension.isEnabled()) {
-                    ExtensionResponse response = extension.preOutboundAction(message);
-                    if (!response.isAllowed())
-                        return false;
-                }
-            }
-        }
-        return true;
+        return ExtensionController.getInstance().getExecutor().preOutboundAction(extensions, message);
     }
 
     private boolean executePostOutboundAction(final CallRequest callRequest) {
@@ -1447,6 +1469,11 @@ public final class CallManager extends UntypedActor {
         if (request.parentCallSid() != null) {
             init.setParentCallSid(request.parentCallSid());
         }
+        if (outboundPermitPending) {
+            outboundPermitPending = false;
+            limiter.attachCall(call, request.accountId() != null ? request.accountId().toString() : null);
+            getContext().watch(call);
+        }
         call.tell(init, self);
         return call;
     }
@@ -274,4 +274,26 @@ public class RestcommCallsTool {
 
         return jsonArray;
     }
+
+    /**
+     * Polls the recordings of the call until the first one is stored under fileUriPrefix, e.g. after a background
+     * upload, or the timeout expires. The last response is returned either way.
+     */
+    public JsonArray getCallRecordings(String deploymentUrl, String username, String authToken, String callWithRecordingsSid,
+            String fileUriPrefix, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        JsonArray recordings = getCallRecordings(deploymentUrl, username, authToken, callWithRecordingsSid);
+        while (!storedUnder(recordings, fileUriPrefix) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            recordings = getCallRecordings(deploymentUrl, username, authToken, callWithRecordingsSid);
+        }
+        return recordings;
+    }
+
+    private boolean storedUnder(JsonArray recordings, String fileUriPrefix) {
+        if (recordings == null || recordings.size() == 0)
+            return false;
+        JsonElement fileUri = recordings.get(0).getAsJsonObject().get("file_uri");
+        return fileUri != null && !fileUri.isJsonNull() && fileUri.getAsString().startsWith(fileUriPrefix);
+    }
 }
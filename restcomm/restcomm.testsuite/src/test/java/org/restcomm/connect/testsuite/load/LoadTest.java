@@ -0,0 +1,296 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.testsuite.load;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.test.api.ArquillianResource;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.jboss.shrinkwrap.resolver.api.maven.archive.ShrinkWrapMaven;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.restcomm.connect.commons.Version;
+import org.restcomm.connect.testsuite.tools.MonitoringServiceTool;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Drives Restcomm with SIP load from {@link SipLoadGenerator}. Media is handled by MockMediaGateway, and the RCML,
+ * the audio files and the speech synthesizer are served by a WireMock stub, so nothing outside the JVM is needed.
+ * <p>
+ * Each scenario places calls to an application running one verb and reports the call setup latency percentiles, the
+ * actor mailbox depth, the garbage collections and the database statements. The scenarios only run with the load
+ * profile, and their load is small by default; size it with system properties, for example
+ * <code>mvn test -Pload -Dtest=LoadTest -Dload.calls=2000 -Dload.cps=50 -Dload.concurrency=500 -Dload.scenarios=dial</code>.
+ */
+@RunWith(Arquillian.class)
+public class LoadTest {
+    private final static Logger logger = Logger.getLogger(LoadTest.class.getName());
+
+    private static final String version = Version.getVersion();
+
+    private static final int CALLS = Integer.getInteger("load.calls", 20);
+    private static final int CPS = Integer.getInteger("load.cps", 5);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 10);
+    private static final long HOLD_TIME = Long.getLong("load.hold-time", 2000);
+    private static final List<String> SCENARIOS = Arrays.asList(System.getProperty("load.scenarios",
+            "say,play,gather,dial,conference").split(","));
+
+    // Incoming number 1111 of restcomm.script_dialTest_new points to http://127.0.0.1:8090/1111
+    private static final String NUMBER = "sip:1111@127.0.0.1:5080";
+    private static final String AUDIO = "http://127.0.0.1:8090/audio/load.wav";
+
+    @ArquillianResource
+    URL deploymentUrl;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8090);
+
+    private String adminAccountSid = "ACae6e420f425248d6a26948c17a9e2acf";
+    private String adminAuthToken = "77f8c12cc7b8f8423e5c38b035249166";
+
+    private SipLoadGenerator generator;
+
+    @Before
+    public void before() throws Exception {
+        stubFor(get(urlPathEqualTo("/audio/load.wav")).willReturn(aResponse().withStatus(200)
+                .withHeader("Content-Type", "audio/wav").withBody(wav())));
+        stubFor(post(urlPathEqualTo("/tts")).willReturn(aResponse().withStatus(200)
+                .withHeader("Content-Type", "audio/wav").withBody(wav())));
+        stubFor(post(urlPathEqualTo("/gather")).willReturn(aResponse().withStatus(200)
+                .withHeader("Content-Type", "text/xml").withBody("<Response><Hangup/></Response>")));
+        generator = new SipLoadGenerator("127.0.0.1", 5090);
+        generator.start();
+    }
+
+    @After
+    public void after() throws Exception {
+        if (generator != null) {
+            generator.stop();
+        }
+        wireMockRule.resetRequests();
+        // the next scenario starts once Restcomm is done with the calls of this one
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (MonitoringServiceTool.getInstance().getLiveCalls(deploymentUrl.toString(), adminAccountSid,
+                adminAuthToken) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    public void say() throws Exception {
+        run("say", "<Response><Say>Thank you for calling the load test.</Say></Response>");
+    }
+
+    @Test
+    public void play() throws Exception {
+        run("play", "<Response><Play>" + AUDIO + "</Play></Response>");
+    }
+
+    @Test
+    public void gather() throws Exception {
+        run("gather", "<Response><Gather action=\"http://127.0.0.1:8090/gather\" numDigits=\"1\" timeout=\"1\"><Play>"
+                + AUDIO + "</Play></Gather><Hangup/></Response>");
+    }
+
+    @Test
+    public void dial() throws Exception {
+        run("dial", "<Response><Dial timeout=\"10\"><Sip>sip:load@127.0.0.1:5090</Sip></Dial></Response>");
+    }
+
+    @Test
+    public void conference() throws Exception {
+        run("conference", "<Response><Dial><Conference>load</Conference></Dial></Response>");
+    }
+
+    private void run(final String scenario, final String rcml) throws Exception {
+        Assume.assumeTrue(SCENARIOS.contains(scenario));
+        stubFor(get(urlPathEqualTo("/1111")).willReturn(aResponse().withStatus(200)
+                .withHeader("Content-Type", "text/xml").withBody(rcml)));
+
+        final Map<String, Integer> before = metrics();
+        final long[] gcBefore = gc();
+        final int[] peaks = new int[2];
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Map<String, Integer> metrics = metrics();
+                    peaks[0] = Math.max(peaks[0], value(metrics, "LiveCalls"));
+                    peaks[1] = Math.max(peaks[1], value(metrics, "MailboxDepth"));
+                } catch (final Exception exception) {
+                    logger.warn("Could not sample the metrics: " + exception.getMessage());
+                }
+            }
+        }, 0, 500, TimeUnit.MILLISECONDS);
+
+        final SipLoadGenerator.Report report;
+        try {
+            final long timeout = TimeUnit.SECONDS.toMillis(60) + CALLS * 1000L / Math.max(1, CPS) + HOLD_TIME * 2;
+            report = generator.run(NUMBER, CALLS, CPS, CONCURRENCY, HOLD_TIME, timeout);
+        } finally {
+            sampler.shutdownNow();
+        }
+        final long[] gcAfter = gc();
+        final Map<String, Integer> after = metrics();
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append(String.format("Load scenario %s: %d calls at %d CPS with at most %d in progress, %d s hold time%n",
+                scenario, CALLS, CPS, CONCURRENCY, TimeUnit.MILLISECONDS.toSeconds(HOLD_TIME)));
+        buffer.append(String.format("  completed %d, failed %d in %d ms (%.1f CPS)%n", report.getCompleted(),
+                report.getFailed(), report.getElapsed(), report.getTotal() * 1000.0 / Math.max(1, report.getElapsed())));
+        buffer.append(String.format("  call setup latency p50 %d ms, p90 %d ms, p99 %d ms, max %d ms%n",
+                report.getLatency(50), report.getLatency(90), report.getLatency(99), report.getLatency(100)));
+        buffer.append(String.format("  peak live calls %d, peak queued actor messages %d, deepest mailbox %d%n", peaks[0],
+                peaks[1], value(after, "MaxMailboxDepth")));
+        buffer.append(String.format("  GC %d collections, %d ms%n", gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]));
+        buffer.append(String.format("  DB statements %d, %.1f per call%n", delta(before, after, "DbStatements"),
+                delta(before, after, "DbStatements") / (double) Math.max(1, CALLS)));
+        for (final String statement : busiestStatements(before, after, 10)) {
+            buffer.append(String.format("    %6d %s%n", delta(before, after, statement),
+                    statement.substring("DbStatements.".length())));
+        }
+        logger.info(buffer.toString());
+
+        assertEquals(0, report.getFailed());
+        assertEquals(CALLS, report.getCompleted());
+    }
+
+    private Map<String, Integer> metrics() {
+        final JsonObject metrics = MonitoringServiceTool.getInstance()
+                .getMetrics(deploymentUrl.toString(), adminAccountSid, adminAuthToken).getAsJsonObject("Metrics");
+        final Map<String, Integer> values = new HashMap<String, Integer>();
+        for (final Map.Entry<String, JsonElement> entry : metrics.entrySet()) {
+            if (entry.getValue().isJsonPrimitive()) {
+                values.put(entry.getKey(), entry.getValue().getAsInt());
+            }
+        }
+        return values;
+    }
+
+    private static int value(final Map<String, Integer> metrics, final String name) {
+        final Integer value = metrics.get(name);
+        return value == null ? 0 : value;
+    }
+
+    private static int delta(final Map<String, Integer> before, final Map<String, Integer> after, final String name) {
+        return value(after, name) - value(before, name);
+    }
+
+    private static List<String> busiestStatements(final Map<String, Integer> before, final Map<String, Integer> after,
+            final int limit) {
+        final List<String> statements = new ArrayList<String>();
+        for (final String name : after.keySet()) {
+            if (name.startsWith("DbStatements.") && delta(before, after, name) > 0) {
+                statements.add(name);
+            }
+        }
+        Collections.sort(statements, new Comparator<String>() {
+            @Override
+            public int compare(final String first, final String second) {
+                return delta(before, after, second) - delta(before, after, first);
+            }
+        });
+        return statements.subList(0, Math.min(limit, statements.size()));
+    }
+
+    // Restcomm runs in this JVM, so the collectors seen here are its collectors
+    private static long[] gc() {
+        long count = 0;
+        long time = 0;
+        for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[] { count, time };
+    }
+
+    // half a second of 8 kHz 16 bit mono silence
+    private static byte[] wav() {
+        final int samples = 4000;
+        final ByteBuffer buffer = ByteBuffer.allocate(44 + samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + samples * 2).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1).putInt(8000).putInt(16000)
+                .putShort((short) 2).putShort((short) 16);
+        buffer.put("data".getBytes()).putInt(samples * 2);
+        return buffer.array();
+    }
+
+    @Deployment(name = "LoadTest", managed = true, testable = false)
+    public static WebArchive createWebArchiveNoGw() throws Exception {
+        logger.info("Packaging Test App");
+        WebArchive archive = ShrinkWrap.create(WebArchive.class, "restcomm.war");
+        final WebArchive restcommArchive = ShrinkWrapMaven.resolver()
+                .resolve("org.restcomm:restcomm-connect.application:war:" + version).withoutTransitivity()
+                .asSingle(WebArchive.class);
+        archive = archive.merge(restcommArchive);
+        archive.delete("/WEB-INF/sip.xml");
+        archive.delete("/WEB-INF/conf/restcomm.xml");
+        archive.delete("/WEB-INF/data/hsql/restcomm.script");
+        archive.addAsWebInfResource("sip.xml");
+        // synthesize speech with the stub instead of VoiceRSS
+        final InputStream configuration = LoadTest.class.getResourceAsStream("/restcomm.xml");
+        try {
+            archive.addAsWebInfResource(new StringAsset(IOUtils.toString(configuration).replace("http://api.voicerss.org",
+                    "http://127.0.0.1:8090/tts")), "conf/restcomm.xml");
+        } finally {
+            IOUtils.closeQuietly(configuration);
+        }
+        archive.addAsWebInfResource("restcomm.script_dialTest_new", "data/hsql/restcomm.script");
+        archive.addAsWebInfResource("load_application.conf", "classes/application.conf");
+        logger.info("Packaged Test App");
+        return archive;
+    }
+}
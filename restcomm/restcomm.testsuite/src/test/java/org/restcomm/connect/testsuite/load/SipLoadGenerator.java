@@ -0,0 +1,367 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.testsuite.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sip.ClientTransaction;
+import javax.sip.Dialog;
+import javax.sip.DialogTerminatedEvent;
+import javax.sip.IOExceptionEvent;
+import javax.sip.ListeningPoint;
+import javax.sip.RequestEvent;
+import javax.sip.ResponseEvent;
+import javax.sip.ServerTransaction;
+import javax.sip.SipFactory;
+import javax.sip.SipListener;
+import javax.sip.SipProvider;
+import javax.sip.SipStack;
+import javax.sip.TimeoutEvent;
+import javax.sip.TransactionTerminatedEvent;
+import javax.sip.address.Address;
+import javax.sip.address.AddressFactory;
+import javax.sip.header.CSeqHeader;
+import javax.sip.header.CallIdHeader;
+import javax.sip.header.ContactHeader;
+import javax.sip.header.ContentTypeHeader;
+import javax.sip.header.FromHeader;
+import javax.sip.header.HeaderFactory;
+import javax.sip.header.MaxForwardsHeader;
+import javax.sip.header.ToHeader;
+import javax.sip.header.ViaHeader;
+import javax.sip.message.MessageFactory;
+import javax.sip.message.Request;
+import javax.sip.message.Response;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An in-JVM SIP user agent that places calls to Restcomm at a fixed rate with a cap on the calls in progress, and
+ * answers the calls Restcomm places to it (the B legs of a Dial). Each outgoing call is acknowledged when answered and
+ * hung up after a hold time unless Restcomm hangs up first. The time from the INVITE to the 200 OK is recorded as the
+ * call setup latency.
+ */
+public final class SipLoadGenerator implements SipListener {
+    private static final Logger logger = Logger.getLogger(SipLoadGenerator.class);
+
+    private static final String SDP = "v=0\r\no=user1 53655765 2353687637 IN IP4 127.0.0.1\r\ns=-\r\n"
+            + "c=IN IP4 127.0.0.1\r\nt=0 0\r\nm=audio 6000 RTP/AVP 0\r\na=rtpmap:0 PCMU/8000\r\n";
+
+    private final String host;
+    private final int port;
+    private final ConcurrentMap<String, LoadCall> calls;
+    private final AtomicLong tags;
+    private SipStack stack;
+    private SipProvider provider;
+    private AddressFactory addresses;
+    private HeaderFactory headers;
+    private MessageFactory messages;
+    private ScheduledExecutorService timer;
+
+    // the run in progress
+    private volatile Semaphore slots;
+    private volatile CountDownLatch done;
+    private volatile long holdTime;
+    private volatile Report report;
+
+    public SipLoadGenerator(final String host, final int port) {
+        super();
+        this.host = host;
+        this.port = port;
+        this.calls = new ConcurrentHashMap<String, LoadCall>();
+        this.tags = new AtomicLong();
+    }
+
+    public void start() throws Exception {
+        final SipFactory factory = SipFactory.getInstance();
+        factory.setPathName("gov.nist");
+        final Properties properties = new Properties();
+        // SipFactory hands out the stack it already has for a name, even a stopped one
+        properties.setProperty("javax.sip.STACK_NAME", "SipLoadGenerator-" + port + "-" + System.nanoTime());
+        properties.setProperty("javax.sip.AUTOMATIC_DIALOG_SUPPORT", "on");
+        properties.setProperty("gov.nist.javax.sip.THREAD_POOL_SIZE", "16");
+        properties.setProperty("gov.nist.javax.sip.REENTRANT_LISTENER", "true");
+        properties.setProperty("gov.nist.javax.sip.TRACE_LEVEL", "0");
+        stack = factory.createSipStack(properties);
+        addresses = factory.createAddressFactory();
+        headers = factory.createHeaderFactory();
+        messages = factory.createMessageFactory();
+        final ListeningPoint point = stack.createListeningPoint(host, port, ListeningPoint.UDP);
+        provider = stack.createSipProvider(point);
+        provider.addSipListener(this);
+        timer = Executors.newScheduledThreadPool(2);
+    }
+
+    public void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        if (stack != null) {
+            stack.stop();
+        }
+    }
+
+    /**
+     * Places calls to a SIP URI and waits for all of them to end.
+     *
+     * @param to the request URI, for example sip:1111@127.0.0.1:5080
+     * @param total how many calls to place
+     * @param cps how many calls to place per second
+     * @param concurrency how many calls may be in progress at once; the rate drops when they are all busy
+     * @param holdTime how long to stay on an answered call before hanging up, in milliseconds
+     * @param timeout how long to wait for the calls to end, in milliseconds
+     */
+    public Report run(final String to, final int total, final int cps, final int concurrency, final long holdTime,
+            final long timeout) throws Exception {
+        this.slots = new Semaphore(concurrency);
+        this.done = new CountDownLatch(total);
+        this.holdTime = holdTime;
+        this.report = new Report(total);
+        final long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, cps);
+        final long start = System.nanoTime();
+        for (int index = 0; index < total; index++) {
+            final long wait = start + index * interval - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            slots.acquire();
+            try {
+                invite(to);
+            } catch (final Exception exception) {
+                logger.warn("Could not place call " + index, exception);
+                report.failed.incrementAndGet();
+                slots.release();
+                done.countDown();
+            }
+        }
+        if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+            logger.warn(done.getCount() + " calls did not end in time");
+        }
+        report.elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        calls.clear();
+        return report;
+    }
+
+    private void invite(final String to) throws Exception {
+        final Address target = addresses.createAddress(to);
+        final Address local = addresses.createAddress("sip:load@" + host + ":" + port);
+        final CallIdHeader callId = provider.getNewCallId();
+        final FromHeader from = headers.createFromHeader(local, String.valueOf(tags.incrementAndGet()));
+        final ToHeader toHeader = headers.createToHeader(target, null);
+        final CSeqHeader cseq = headers.createCSeqHeader(1L, Request.INVITE);
+        final MaxForwardsHeader maxForwards = headers.createMaxForwardsHeader(70);
+        final List<ViaHeader> vias = new ArrayList<ViaHeader>();
+        vias.add(headers.createViaHeader(host, port, ListeningPoint.UDP, null));
+        final ContentTypeHeader contentType = headers.createContentTypeHeader("application", "sdp");
+        final Request invite = messages.createRequest(target.getURI(), Request.INVITE, callId, cseq, from, toHeader, vias,
+                maxForwards, contentType, SDP.getBytes());
+        invite.addHeader(headers.createContactHeader(local));
+        final LoadCall call = new LoadCall();
+        calls.put(callId.getCallId(), call);
+        final ClientTransaction transaction = provider.getNewClientTransaction(invite);
+        call.started = System.nanoTime();
+        transaction.sendRequest();
+    }
+
+    private void end(final String callId, final boolean completed) {
+        final LoadCall call = calls.remove(callId);
+        if (call != null) {
+            if (completed) {
+                report.completed.incrementAndGet();
+            } else {
+                report.failed.incrementAndGet();
+            }
+            slots.release();
+            done.countDown();
+        }
+    }
+
+    private void hangup(final String callId, final Dialog dialog) {
+        try {
+            final Request bye = dialog.createRequest(Request.BYE);
+            dialog.sendRequest(provider.getNewClientTransaction(bye));
+        } catch (final Exception exception) {
+            // Restcomm hung up first
+            if (logger.isDebugEnabled()) {
+                logger.debug("Could not hang up " + callId + ": " + exception.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void processRequest(final RequestEvent event) {
+        final Request request = event.getRequest();
+        final String method = request.getMethod();
+        final String callId = ((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId();
+        try {
+            ServerTransaction transaction = event.getServerTransaction();
+            if (transaction == null && !Request.ACK.equals(method)) {
+                transaction = provider.getNewServerTransaction(request);
+            }
+            if (Request.INVITE.equals(method)) {
+                // a B leg placed by Restcomm
+                final Response ringing = messages.createResponse(Response.RINGING, request);
+                ((ToHeader) ringing.getHeader(ToHeader.NAME)).setTag(String.valueOf(tags.incrementAndGet()));
+                transaction.sendResponse(ringing);
+                final Response ok = messages.createResponse(Response.OK, request);
+                ((ToHeader) ok.getHeader(ToHeader.NAME)).setTag(((ToHeader) ringing.getHeader(ToHeader.NAME)).getTag());
+                final ContactHeader contact = headers.createContactHeader(addresses.createAddress("sip:load@" + host + ":"
+                        + port));
+                ok.addHeader(contact);
+                ok.setContent(SDP.getBytes(), headers.createContentTypeHeader("application", "sdp"));
+                transaction.sendResponse(ok);
+            } else if (Request.BYE.equals(method) || Request.CANCEL.equals(method)) {
+                transaction.sendResponse(messages.createResponse(Response.OK, request));
+                end(callId, true);
+            } else if (!Request.ACK.equals(method)) {
+                transaction.sendResponse(messages.createResponse(Response.OK, request));
+            }
+        } catch (final Exception exception) {
+            logger.warn("Could not answer " + method + " for " + callId, exception);
+        }
+    }
+
+    @Override
+    public void processResponse(final ResponseEvent event) {
+        final Response response = event.getResponse();
+        final CSeqHeader cseq = (CSeqHeader) response.getHeader(CSeqHeader.NAME);
+        final String callId = ((CallIdHeader) response.getHeader(CallIdHeader.NAME)).getCallId();
+        final int status = response.getStatusCode();
+        if (Request.BYE.equals(cseq.getMethod())) {
+            end(callId, status < 300);
+            return;
+        }
+        if (!Request.INVITE.equals(cseq.getMethod()) || status < 200) {
+            return;
+        }
+        final LoadCall call = calls.get(callId);
+        if (status >= 300) {
+            end(callId, false);
+        } else if (call != null && !call.answered) {
+            call.answered = true;
+            report.latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - call.started));
+            try {
+                final Dialog dialog = event.getDialog() != null ? event.getDialog() : event.getClientTransaction().getDialog();
+                dialog.sendAck(dialog.createAck(cseq.getSeqNumber()));
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (calls.containsKey(callId)) {
+                            hangup(callId, dialog);
+                        }
+                    }
+                }, holdTime, TimeUnit.MILLISECONDS);
+            } catch (final Exception exception) {
+                logger.warn("Could not acknowledge " + callId, exception);
+                end(callId, false);
+            }
+        }
+    }
+
+    @Override
+    public void processTimeout(final TimeoutEvent event) {
+        if (event.getClientTransaction() != null) {
+            final Request request = event.getClientTransaction().getRequest();
+            end(((CallIdHeader) request.getHeader(CallIdHeader.NAME)).getCallId(), false);
+        }
+    }
+
+    @Override
+    public void processIOException(final IOExceptionEvent event) {
+        logger.warn("SIP I/O error with " + event.getHost() + ":" + event.getPort());
+    }
+
+    @Override
+    public void processTransactionTerminated(final TransactionTerminatedEvent event) {
+    }
+
+    @Override
+    public void processDialogTerminated(final DialogTerminatedEvent event) {
+    }
+
+    private static final class LoadCall {
+        private volatile long started;
+        private volatile boolean answered;
+    }
+
+    /**
+     * The outcome of a run: completed and failed calls and the call setup latencies.
+     */
+    public static final class Report {
+        private final int total;
+        private final AtomicInteger completed;
+        private final AtomicInteger failed;
+        private final List<Long> latencies;
+        private volatile long elapsed;
+
+        private Report(final int total) {
+            super();
+            this.total = total;
+            this.completed = new AtomicInteger();
+            this.failed = new AtomicInteger();
+            this.latencies = Collections.synchronizedList(new ArrayList<Long>());
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the call setup latency at that percentile in milliseconds, -1 if no call was answered
+         */
+        public long getLatency(final double percentile) {
+            final List<Long> sorted;
+            synchronized (latencies) {
+                sorted = new ArrayList<Long>(latencies);
+            }
+            if (sorted.isEmpty()) {
+                return -1;
+            }
+            Collections.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+            return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+        }
+    }
+}
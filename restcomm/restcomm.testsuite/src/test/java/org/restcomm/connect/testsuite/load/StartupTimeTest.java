@@ -0,0 +1,88 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.testsuite.load;
+
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+
+import org.apache.log4j.Logger;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.test.api.ArquillianResource;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.jboss.shrinkwrap.resolver.api.maven.archive.ShrinkWrapMaven;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.restcomm.connect.commons.Version;
+import org.restcomm.connect.testsuite.tools.MonitoringServiceTool;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that Restcomm starts on the embedded database within a time budget, in milliseconds, that can be set with
+ * <code>-Dstartup.budget=</code>. The budget is for the bootstrapper, the container startup is not part of it.
+ */
+@RunWith(Arquillian.class)
+public class StartupTimeTest {
+    private final static Logger logger = Logger.getLogger(StartupTimeTest.class.getName());
+
+    private static final String version = Version.getVersion();
+
+    private static final int BUDGET = Integer.getInteger("startup.budget", 30000);
+
+    @ArquillianResource
+    URL deploymentUrl;
+
+    private String adminAccountSid = "ACae6e420f425248d6a26948c17a9e2acf";
+    private String adminAuthToken = "77f8c12cc7b8f8423e5c38b035249166";
+
+    @Test
+    public void startsWithinBudget() throws Exception {
+        final JsonObject metrics = MonitoringServiceTool.getInstance()
+                .getMetrics(deploymentUrl.toString(), adminAccountSid, adminAuthToken).getAsJsonObject("Metrics");
+        logger.info("Startup metrics: " + metrics);
+        assertTrue("StartupTime is not reported", metrics.has("StartupTime"));
+        assertTrue("StartupTimeStorage is not reported", metrics.has("StartupTimeStorage"));
+        final int startupTime = metrics.get("StartupTime").getAsInt();
+        assertTrue("Restcomm started in " + startupTime + " ms, over the budget of " + BUDGET + " ms", startupTime <= BUDGET);
+        // the storage system starts next to the actor system, the whole startup is not the sum of its phases
+        assertTrue(metrics.get("StartupTimeStorage").getAsInt() <= startupTime);
+    }
+
+    @Deployment(name = "StartupTimeTest", managed = true, testable = false)
+    public static WebArchive createWebArchiveNoGw() throws Exception {
+        logger.info("Packaging Test App");
+        WebArchive archive = ShrinkWrap.create(WebArchive.class, "restcomm.war");
+        final WebArchive restcommArchive = ShrinkWrapMaven.resolver()
+                .resolve("org.restcomm:restcomm-connect.application:war:" + version).withoutTransitivity()
+                .asSingle(WebArchive.class);
+        archive = archive.merge(restcommArchive);
+        archive.delete("/WEB-INF/sip.xml");
+        archive.delete("/WEB-INF/conf/restcomm.xml");
+        archive.delete("/WEB-INF/data/hsql/restcomm.script");
+        archive.addAsWebInfResource("sip.xml");
+        archive.addAsWebInfResource("restcomm.xml", "conf/restcomm.xml");
+        archive.addAsWebInfResource("restcomm.script_dialTest_new", "data/hsql/restcomm.script");
+        logger.info("Packaged Test App");
+        return archive;
+    }
+}
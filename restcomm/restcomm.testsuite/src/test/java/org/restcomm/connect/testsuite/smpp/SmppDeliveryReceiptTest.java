@@ -0,0 +1,301 @@
+package org.restcomm.connect.testsuite.smpp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.entities.SmsMessage;
+import org.restcomm.connect.sms.smpp.SmppDeliveryReceipt;
+import org.restcomm.connect.sms.smpp.SmppDeliveryTracker;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppServerConfiguration;
+import com.cloudhopper.smpp.SmppServerHandler;
+import com.cloudhopper.smpp.SmppServerSession;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppServer;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
+import com.cloudhopper.smpp.pdu.BaseBind;
+import com.cloudhopper.smpp.pdu.BaseBindResp;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.type.Address;
+import com.cloudhopper.smpp.type.SmppProcessingException;
+
+/**
+ * Parses delivery receipts and matches them to submitted messages, against a stub SMSC that sends a receipt for
+ * each submit_sm it acknowledges.
+ */
+public class SmppDeliveryReceiptTest {
+
+    private final static Logger logger = Logger.getLogger(SmppDeliveryReceiptTest.class);
+
+    private static final int PORT = 2778;
+    private static final int MESSAGES = 5000;
+
+    private static DefaultSmppServer smsc;
+    private static DefaultSmppClient client;
+    private static ScheduledExecutorService smscSender;
+
+    @BeforeClass
+    public static void startSmsc() throws Exception {
+        smscSender = Executors.newScheduledThreadPool(2);
+        SmppServerConfiguration configuration = new SmppServerConfiguration();
+        configuration.setHost("127.0.0.1");
+        configuration.setPort(PORT);
+        configuration.setMaxConnectionSize(10);
+        configuration.setNonBlockingSocketsEnabled(true);
+        configuration.setDefaultWindowSize(100);
+        smsc = new DefaultSmppServer(configuration, new ReceiptingSmscHandler(), (ThreadPoolExecutor) Executors.newCachedThreadPool(),
+                (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1));
+        smsc.start();
+        client = new DefaultSmppClient((ThreadPoolExecutor) Executors.newCachedThreadPool(), 1);
+    }
+
+    @AfterClass
+    public static void stopSmsc() {
+        client.destroy();
+        smsc.destroy();
+        smscSender.shutdownNow();
+    }
+
+    private static SmsMessage record() {
+        final SmsMessage.Builder builder = SmsMessage.builder();
+        builder.setSid(Sid.generate(Sid.Type.SMS_MESSAGE));
+        builder.setAccountSid(Sid.generate(Sid.Type.ACCOUNT));
+        builder.setApiVersion("2012-04-24");
+        builder.setSender("9999");
+        builder.setRecipient("7777");
+        builder.setBody("Hello");
+        builder.setStatus(SmsMessage.Status.SENDING);
+        builder.setDirection(SmsMessage.Direction.OUTBOUND_API);
+        return builder.build();
+    }
+
+    private static DeliverSm receipt(String messageId, String stat) {
+        DeliverSm deliverSm = new DeliverSm();
+        deliverSm.setEsmClass(SmppConstants.ESM_CLASS_MT_SMSC_DELIVERY_RECEIPT);
+        deliverSm.setSourceAddress(new Address((byte) 1, (byte) 1, "7777"));
+        deliverSm.setDestAddress(new Address((byte) 1, (byte) 1, "9999"));
+        String text = "id:" + messageId + " sub:001 dlvrd:001 submit date:1610191200 done date:1610191201 stat:" + stat
+                + " err:000 text:Hello";
+        try {
+            deliverSm.setShortMessage(CharsetUtil.encode(text, CharsetUtil.CHARSET_GSM));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return deliverSm;
+    }
+
+    @Test
+    public void parsesTextReceipts() {
+        SmppDeliveryReceipt delivered = SmppDeliveryReceipt.parse(receipt("1a2b", "DELIVRD"));
+        assertEquals("1a2b", delivered.getMessageId());
+        assertTrue(delivered.isDelivered());
+        assertTrue(delivered.isFinal());
+        SmppDeliveryReceipt undelivered = SmppDeliveryReceipt.parse(receipt("1a2b", "UNDELIV"));
+        assertFalse(undelivered.isDelivered());
+        assertTrue(undelivered.isFinal());
+        assertFalse(SmppDeliveryReceipt.parse(receipt("1a2b", "ENROUTE")).isFinal());
+    }
+
+    @Test
+    public void optionalParametersTakePrecedence() {
+        DeliverSm deliverSm = receipt("ignored", "UNDELIV");
+        deliverSm.addOptionalParameter(new Tlv(SmppConstants.TAG_RECEIPTED_MSG_ID, "abc\0".getBytes()));
+        deliverSm.addOptionalParameter(new Tlv(SmppConstants.TAG_MSG_STATE, new byte[] {2}));
+        SmppDeliveryReceipt receipt = SmppDeliveryReceipt.parse(deliverSm);
+        assertEquals("abc", receipt.getMessageId());
+        assertTrue(receipt.isDelivered());
+    }
+
+    @Test
+    public void mobileOriginatedMessageIsNotAReceipt() throws Exception {
+        DeliverSm deliverSm = new DeliverSm();
+        deliverSm.setShortMessage(CharsetUtil.encode("id:1 stat:DELIVRD", CharsetUtil.CHARSET_GSM));
+        assertFalse(SmppDeliveryReceipt.isReceipt(deliverSm));
+        assertNull(SmppDeliveryReceipt.parse(deliverSm));
+    }
+
+    @Test
+    public void messageIsDeliveredOnceAllSegmentsAre() {
+        SmppDeliveryTracker tracker = new SmppDeliveryTracker(60000, 100);
+        SmsMessage record = record();
+        tracker.track(record, null, Arrays.asList("1", "2"));
+        assertNull(tracker.receipt(SmppDeliveryReceipt.parse(receipt("1", "DELIVRD"))));
+        SmppDeliveryTracker.Delivery delivery = tracker.receipt(SmppDeliveryReceipt.parse(receipt("2", "DELIVRD")));
+        assertEquals(record, delivery.getRecord());
+        assertEquals(SmsMessage.Status.DELIVERED, delivery.getStatus());
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void failedSegmentFailsTheMessage() {
+        SmppDeliveryTracker tracker = new SmppDeliveryTracker(60000, 100);
+        tracker.track(record(), null, Arrays.asList("1", "2"));
+        assertEquals(SmsMessage.Status.FAILED, tracker.receipt(SmppDeliveryReceipt.parse(receipt("1", "REJECTD"))).getStatus());
+        assertNull(tracker.receipt(SmppDeliveryReceipt.parse(receipt("2", "DELIVRD"))));
+    }
+
+    @Test
+    public void hexAndDecimalIdsMatch() {
+        SmppDeliveryTracker tracker = new SmppDeliveryTracker(60000, 100);
+        tracker.track(record(), null, Collections.singletonList("FF"));
+        assertNotNull(tracker.receipt(SmppDeliveryReceipt.parse(receipt("255", "DELIVRD"))));
+    }
+
+    @Test
+    public void trackedIdsAreBounded() throws Exception {
+        SmppDeliveryTracker tracker = new SmppDeliveryTracker(60000, 1000);
+        for (int i = 0; i < 100000; i++) {
+            tracker.track(record(), null, Collections.singletonList(String.valueOf(i)));
+        }
+        assertEquals(1000, tracker.size());
+        assertEquals(99000, tracker.getDropped());
+        tracker = new SmppDeliveryTracker(50, 1000);
+        tracker.track(record(), null, Collections.singletonList("1"));
+        final long deadline = System.currentTimeMillis() + 5000;
+        tracker.purge();
+        while (tracker.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            tracker.purge();
+        }
+        assertEquals(0, tracker.size());
+        assertEquals(1, tracker.getDropped());
+    }
+
+    @Test
+    public void receiptsUnderSustainedLoad() throws Exception {
+        final SmppDeliveryTracker tracker = new SmppDeliveryTracker(60000, 10000);
+        // the tracker is confined to one thread, like it is to the SmppMessageHandler actor
+        final ExecutorService handler = Executors.newSingleThreadExecutor();
+        final CountDownLatch done = new CountDownLatch(MESSAGES);
+        final AtomicInteger delivered = new AtomicInteger();
+        final AtomicInteger maxTracked = new AtomicInteger();
+
+        SmppSessionConfiguration config = new SmppSessionConfiguration();
+        config.setName("receipt-test");
+        config.setType(SmppBindType.TRANSCEIVER);
+        config.setHost("127.0.0.1");
+        config.setPort(PORT);
+        config.setSystemId("test");
+        config.setPassword("test");
+        config.setWindowSize(50);
+        config.getLoggingOptions().setLogPdu(false);
+        SmppSession session = client.bind(config, new DefaultSmppSessionHandler() {
+            @Override
+            public void fireExpectedPduResponseReceived(final PduAsyncResponse pduAsyncResponse) {
+                final SmsMessage record = (SmsMessage) pduAsyncResponse.getRequest().getReferenceObject();
+                final String messageId = ((SubmitSmResp) pduAsyncResponse.getResponse()).getMessageId();
+                handler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        tracker.track(record, null, Collections.singletonList(messageId));
+                        maxTracked.set(Math.max(maxTracked.get(), tracker.size()));
+                    }
+                });
+            }
+
+            @Override
+            public PduResponse firePduRequestReceived(PduRequest pduRequest) {
+                final SmppDeliveryReceipt receipt = SmppDeliveryReceipt.parse((DeliverSm) pduRequest);
+                handler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SmppDeliveryTracker.Delivery delivery = tracker.receipt(receipt);
+                        if (delivery != null && delivery.getStatus() == SmsMessage.Status.DELIVERED) {
+                            delivered.incrementAndGet();
+                        }
+                        done.countDown();
+                    }
+                });
+                return pduRequest.createResponse();
+            }
+        });
+
+        for (int i = 0; i < MESSAGES; i++) {
+            SubmitSm submit = new SubmitSm();
+            submit.setSourceAddress(new Address((byte) 1, (byte) 1, "9999"));
+            submit.setDestAddress(new Address((byte) 1, (byte) 1, "7777"));
+            submit.setRegisteredDelivery(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED);
+            submit.setShortMessage(("message " + i).getBytes());
+            submit.setReferenceObject(record());
+            session.sendRequestPdu(submit, 10000, false);
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        handler.shutdown();
+        assertTrue(handler.awaitTermination(10, TimeUnit.SECONDS));
+        logger.info("Tracked at most " + maxTracked.get() + " message ids for " + MESSAGES + " messages");
+        assertEquals(MESSAGES, delivered.get());
+        assertEquals(0, tracker.size());
+        assertEquals(0, tracker.getDropped());
+
+        session.unbind(1000);
+        session.destroy();
+    }
+
+    private static class ReceiptingSmscHandler implements SmppServerHandler {
+        private final AtomicInteger messageIds = new AtomicInteger();
+
+        @Override
+        public void sessionBindRequested(Long sessionId, SmppSessionConfiguration sessionConfiguration, BaseBind bindRequest) throws SmppProcessingException {
+        }
+
+        @Override
+        public void sessionCreated(Long sessionId, final SmppServerSession session, BaseBindResp preparedBindResponse) throws SmppProcessingException {
+            session.serverReady(new DefaultSmppSessionHandler() {
+                @Override
+                public PduResponse firePduRequestReceived(PduRequest pduRequest) {
+                    final PduResponse response = pduRequest.createResponse();
+                    if (response instanceof SubmitSmResp) {
+                        final String id = String.valueOf(messageIds.incrementAndGet());
+                        ((SubmitSmResp) response).setMessageId(id);
+                        smscSender.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    session.sendRequestPdu(receipt(id, "DELIVRD"), 10000, false);
+                                } catch (Exception e) {
+                                    logger.error("Stub SMSC could not send the delivery receipt", e);
+                                }
+                            }
+                        }, 50, TimeUnit.MILLISECONDS);
+                    }
+                    return response;
+                }
+            });
+        }
+
+        @Override
+        public void sessionDestroyed(Long sessionId, SmppServerSession session) {
+            session.destroy();
+        }
+    }
+}
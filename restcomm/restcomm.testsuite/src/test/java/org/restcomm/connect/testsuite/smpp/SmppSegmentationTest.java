@@ -0,0 +1,116 @@
+package org.restcomm.connect.testsuite.smpp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.restcomm.connect.sms.smpp.SmppMessageReassembler;
+import org.restcomm.connect.sms.smpp.SmppSegmentation;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.type.Address;
+
+/**
+ * Splits long messages with each concatenation mode and puts them back together with the reassembler.
+ */
+public class SmppSegmentationTest {
+
+    private static String text(int length) {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            buffer.append((char) ('a' + i % 26));
+        }
+        return buffer.toString();
+    }
+
+    private static DeliverSm deliverSm(SmppSegmentation.Mode mode, byte[] segment, int reference, int total, int sequence) throws Exception {
+        DeliverSm deliverSm = new DeliverSm();
+        deliverSm.setSourceAddress(new Address((byte) 1, (byte) 1, "9999"));
+        deliverSm.setDestAddress(new Address((byte) 1, (byte) 1, "7777"));
+        SmppSegmentation.apply(deliverSm, mode, segment, reference, total, sequence);
+        return deliverSm;
+    }
+
+    @Test
+    public void shortMessageIsNotSplit() {
+        byte[] bytes = CharsetUtil.encode(text(160), CharsetUtil.CHARSET_GSM);
+        assertEquals(1, SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH8, true).size());
+    }
+
+    @Test
+    public void gsmSegmentSizeDependsOnHeader() {
+        byte[] bytes = CharsetUtil.encode(text(400), CharsetUtil.CHARSET_GSM);
+        List<byte[]> udh8 = SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH8, true);
+        assertEquals(3, udh8.size());
+        assertEquals(153, udh8.get(0).length);
+        assertEquals(152, SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH16, true).get(0).length);
+        assertEquals(160, SmppSegmentation.split(bytes, SmppSegmentation.Mode.SAR, true).get(0).length);
+    }
+
+    @Test
+    public void escapeIsKeptWithItsCharacter() {
+        // '{' is encoded as an escape followed by a second septet
+        byte[] bytes = CharsetUtil.encode(text(152) + "{" + text(20), CharsetUtil.CHARSET_GSM);
+        List<byte[]> segments = SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH8, true);
+        assertEquals(152, segments.get(0).length);
+    }
+
+    @Test
+    public void ucs2SegmentsHaveEvenLength() {
+        byte[] bytes = CharsetUtil.encode(text(100), CharsetUtil.CHARSET_UCS_2);
+        List<byte[]> segments = SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH16, false);
+        assertEquals(132, segments.get(0).length);
+    }
+
+    @Test
+    public void surrogatePairsAreKeptTogether() {
+        // the pair would start at byte 132 of the 134 that fit next to the 8 bit header
+        byte[] bytes = CharsetUtil.encode(text(66) + "\uD83D\uDE00" + text(20), CharsetUtil.CHARSET_UCS_2);
+        List<byte[]> segments = SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH8, false);
+        assertEquals(132, segments.get(0).length);
+        assertEquals((byte) 0xD8, segments.get(1)[0]);
+    }
+
+    @Test
+    public void segmentsAreReassembledInAnyOrder() throws Exception {
+        for (SmppSegmentation.Mode mode : SmppSegmentation.Mode.values()) {
+            byte[] bytes = CharsetUtil.encode(text(400), CharsetUtil.CHARSET_GSM);
+            List<byte[]> segments = SmppSegmentation.split(bytes, mode, true);
+            SmppMessageReassembler reassembler = new SmppMessageReassembler(60000, 10);
+            assertNull(reassembler.reassemble(deliverSm(mode, segments.get(2), 200, segments.size(), 3)));
+            assertNull(reassembler.reassemble(deliverSm(mode, segments.get(0), 200, segments.size(), 1)));
+            assertEquals(1, reassembler.size());
+            assertArrayEquals(bytes, reassembler.reassemble(deliverSm(mode, segments.get(1), 200, segments.size(), 2)));
+            assertEquals(0, reassembler.size());
+        }
+    }
+
+    @Test
+    public void incompleteMessagesExpire() throws Exception {
+        byte[] bytes = CharsetUtil.encode(text(400), CharsetUtil.CHARSET_GSM);
+        List<byte[]> segments = SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH8, true);
+        // without any time to wait for the missing segments, a message expires as soon as another one arrives
+        SmppMessageReassembler reassembler = new SmppMessageReassembler(0, 10);
+        assertNull(reassembler.reassemble(deliverSm(SmppSegmentation.Mode.UDH8, segments.get(0), 1, segments.size(), 1)));
+        assertEquals(0, reassembler.getDropped());
+        assertNull(reassembler.reassemble(deliverSm(SmppSegmentation.Mode.UDH8, segments.get(1), 2, segments.size(), 1)));
+        assertEquals(1, reassembler.size());
+        assertEquals(1, reassembler.getDropped());
+    }
+
+    @Test
+    public void bufferIsBounded() throws Exception {
+        byte[] bytes = CharsetUtil.encode(text(400), CharsetUtil.CHARSET_GSM);
+        List<byte[]> segments = SmppSegmentation.split(bytes, SmppSegmentation.Mode.UDH8, true);
+        SmppMessageReassembler reassembler = new SmppMessageReassembler(60000, 2);
+        for (int reference = 0; reference < 3; reference++) {
+            reassembler.reassemble(deliverSm(SmppSegmentation.Mode.UDH8, segments.get(0), reference, segments.size(), 1));
+        }
+        assertEquals(2, reassembler.size());
+        assertEquals(1, reassembler.getDropped());
+    }
+}
@@ -153,7 +153,6 @@ public class DialRecordingS3UploadTest {
 		if (georgeSipStack != null) {
 			georgeSipStack.dispose();
 		}
-		Thread.sleep(1000);
 		wireMockRule.resetRequests();
 		Thread.sleep(4000);
 	}
@@ -223,8 +222,9 @@ public class DialRecordingS3UploadTest {
 		assertTrue(aliceCall.waitForDisconnect(30 * 1000));
 		assertTrue(aliceCall.respondToDisconnect());
 
-		//Check recording
-		JsonArray recording = RestcommCallsTool.getInstance().getCallRecordings(deploymentUrl.toString(),adminAccountSid,adminAuthToken,callSid);
+		//Check recording, the upload to S3 completes in the background
+		JsonArray recording = RestcommCallsTool.getInstance().getCallRecordings(deploymentUrl.toString(),adminAccountSid,adminAuthToken,callSid,
+				"http://127.0.0.1:8090/s3", 10000);
 		assertNotNull(recording);
 		assertEquals(1, recording.size());
 		double duration = recording.get(0).getAsJsonObject().get("duration").getAsDouble();
@@ -301,8 +301,9 @@ public class DialRecordingS3UploadTest {
 		assertTrue(bobCall.waitForDisconnect(30 * 1000));
 		assertTrue(bobCall.respondToDisconnect());
 
-		//Check recording
-		JsonArray recording = RestcommCallsTool.getInstance().getCallRecordings(deploymentUrl.toString(),adminAccountSid,adminAuthToken,callSid);
+		//Check recording, the upload to S3 completes in the background
+		JsonArray recording = RestcommCallsTool.getInstance().getCallRecordings(deploymentUrl.toString(),adminAccountSid,adminAuthToken,callSid,
+				"http://127.0.0.1:8090/s3", 10000);
 		assertNotNull(recording);
 		assertEquals(1, recording.size());
 		double duration = recording.get(0).getAsJsonObject().get("duration").getAsDouble();
@@ -0,0 +1,273 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.ussd.telephony;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restcomm.connect.commons.annotations.concurrency.Immutable;
+import org.restcomm.connect.commons.annotations.concurrency.ThreadSafe;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.commons.util.UriUtils;
+import org.restcomm.connect.dao.DaoManager;
+import org.restcomm.connect.dao.entities.Account;
+import org.restcomm.connect.dao.entities.Application;
+import org.restcomm.connect.dao.entities.IncomingPhoneNumber;
+
+/**
+ * Resolves the application registered for a dialed USSD short code. Results are cached for a configurable time so that
+ * a burst of dialogs to the same code costs one round of lookups; concurrent dialogs for a code that is not cached yet
+ * wait for the same lookup. Numbers that are not registered are not kept, so a code works as soon as it is registered,
+ * and the REST API invalidates the codes whose number or application it updates or removes.
+ */
+@ThreadSafe
+public final class UssdApplicationResolver {
+
+    private final DaoManager storage;
+    private final long timeToLive;
+    private final int capacity;
+    private final ConcurrentMap<String, Entry> entries;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * @param storage the DAO manager used on a cache miss
+     * @param timeToLive how long a result is kept, in milliseconds; zero disables caching
+     * @param capacity the number of short codes kept before expired entries are swept
+     */
+    public UssdApplicationResolver(final DaoManager storage, final long timeToLive, final int capacity) {
+        super();
+        this.storage = storage;
+        this.timeToLive = timeToLive;
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<String, Entry>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * @return the application for the short code or null when the number is not registered
+     */
+    public Target resolve(final String number) {
+        return resolve(number, System.currentTimeMillis());
+    }
+
+    Target resolve(final String number, final long now) {
+        if (timeToLive <= 0) {
+            misses.incrementAndGet();
+            return lookup(number);
+        }
+        Entry entry = entries.get(number);
+        if (entry == null || entry.expires <= now) {
+            final Entry fresh = new Entry(number, now + timeToLive);
+            final boolean added = entry == null ? entries.putIfAbsent(number, fresh) == null : entries.replace(number, entry, fresh);
+            if (added) {
+                if (entries.size() > capacity) {
+                    sweep(now);
+                }
+                misses.incrementAndGet();
+                fresh.task.run();
+                entry = fresh;
+            } else {
+                // another dialog is resolving the same number
+                entry = entries.get(number);
+                if (entry == null) {
+                    misses.incrementAndGet();
+                    return lookup(number);
+                }
+                hits.incrementAndGet();
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        try {
+            final Target target = entry.task.get();
+            if (target == null) {
+                // the dialogs that waited for this lookup share it, the next ones look again
+                entries.remove(number, entry);
+            }
+            return target;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resolving USSD number " + number, exception);
+        } catch (final ExecutionException exception) {
+            // do not cache failures
+            entries.remove(number, entry);
+            final Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Could not resolve USSD number " + number, cause);
+        }
+    }
+
+    /**
+     * Drops what is cached for a short code, after its number was updated or removed.
+     */
+    public void invalidate(final String number) {
+        entries.remove(number);
+    }
+
+    /**
+     * Drops every cached short code, after an application that any of them may use was updated or removed.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void sweep(final long now) {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().expires <= now) {
+                iterator.remove();
+            }
+        }
+        if (entries.size() > capacity) {
+            entries.clear();
+        }
+    }
+
+    private Target lookup(final String id) {
+        final IncomingPhoneNumber number = storage.getIncomingPhoneNumbersDao().getIncomingPhoneNumber(id);
+        if (number == null) {
+            return null;
+        }
+        final Account account = storage.getAccountsDao().getAccount(number.getAccountSid());
+        final URI url;
+        final Sid sid = number.getUssdApplicationSid();
+        if (sid != null) {
+            final Application application = storage.getApplicationsDao().getApplication(sid);
+            url = application != null ? application.getRcmlUrl() : null;
+        } else {
+            url = number.getUssdUrl();
+        }
+        final String method = number.getUssdMethod();
+        return new Target(number.getAccountSid(), number.getApiVersion(), account != null ? account.getEmailAddress() : null,
+                resolve(url), method == null || method.isEmpty() ? "POST" : method, number.getUssdFallbackUrl(),
+                number.getUssdFallbackMethod(), number.getStatusCallback(), number.getStatusCallbackMethod());
+    }
+
+    private static URI resolve(final URI uri) {
+        // only relative URLs need the local HTTP connector
+        return uri == null || uri.isAbsolute() ? uri : UriUtils.resolve(uri);
+    }
+
+    private final class Entry {
+        private final FutureTask<Target> task;
+        private final long expires;
+
+        private Entry(final String number, final long expires) {
+            super();
+            this.task = new FutureTask<Target>(new Callable<Target>() {
+                @Override
+                public Target call() throws Exception {
+                    return lookup(number);
+                }
+            });
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The settings a USSD interpreter needs to run the application bound to a short code.
+     */
+    @Immutable
+    public static final class Target {
+        private final Sid accountSid;
+        private final String apiVersion;
+        private final String emailAddress;
+        private final URI url;
+        private final String method;
+        private final URI fallbackUrl;
+        private final String fallbackMethod;
+        private final URI statusCallback;
+        private final String statusCallbackMethod;
+
+        public Target(final Sid accountSid, final String apiVersion, final String emailAddress, final URI url,
+                final String method, final URI fallbackUrl, final String fallbackMethod, final URI statusCallback,
+                final String statusCallbackMethod) {
+            super();
+            this.accountSid = accountSid;
+            this.apiVersion = apiVersion;
+            this.emailAddress = emailAddress;
+            this.url = url;
+            this.method = method;
+            this.fallbackUrl = fallbackUrl;
+            this.fallbackMethod = fallbackMethod;
+            this.statusCallback = statusCallback;
+            this.statusCallbackMethod = statusCallbackMethod;
+        }
+
+        public Sid getAccountSid() {
+            return accountSid;
+        }
+
+        public String getApiVersion() {
+            return apiVersion;
+        }
+
+        public String getEmailAddress() {
+            return emailAddress;
+        }
+
+        public URI getUrl() {
+            return url;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public URI getFallbackUrl() {
+            return fallbackUrl;
+        }
+
+        public String getFallbackMethod() {
+            return fallbackMethod;
+        }
+
+        public URI getStatusCallback() {
+            return statusCallback;
+        }
+
+        public String getStatusCallbackMethod() {
+            return statusCallbackMethod;
+        }
+    }
+}
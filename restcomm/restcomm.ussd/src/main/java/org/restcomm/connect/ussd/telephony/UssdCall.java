@@ -69,6 +69,7 @@ import org.restcomm.connect.ussd.commons.UssdRestcommResponse;
 import org.restcomm.connect.ussd.interpreter.UssdInterpreter;
 
 import akka.actor.ActorRef;
+import akka.actor.ReceiveTimeout;
 import akka.actor.UntypedActor;
 import akka.actor.UntypedActorContext;
 import akka.event.Logging;
@@ -129,8 +130,14 @@ public class UssdCall extends UntypedActor  {
     private CallDetailRecordsDao callDetailrecordsDao;
     private CallDetailRecord outgoingCallRecord;
     private ActorRef ussdInterpreter;
+    // seconds without any message before the session is dropped, zero disables it
+    private final long sessionTimeout;
 
     public UssdCall(final SipFactory factory) {
+        this(factory, 0);
+    }
+
+    public UssdCall(final SipFactory factory, final long sessionTimeout) {
         super();
         final ActorRef source = self();
         // Initialize the states for the FSM.
@@ -174,6 +181,23 @@ public class UssdCall extends UntypedActor  {
         this.id = Sid.generate(Sid.Type.CALL);
         this.created = DateTime.now();
         this.observers = Collections.synchronizedList(new ArrayList<ActorRef>());
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    @Override
+    public void preStart() {
+        if (sessionTimeout > 0) {
+            getContext().setReceiveTimeout(Duration.create(sessionTimeout, TimeUnit.SECONDS));
+        }
+    }
+
+    private void expire() {
+        logger.info("USSD session " + id + " has been idle for " + sessionTimeout + " seconds, dropping it");
+        final SipSession session = invite != null ? invite.getSession() : outgoingInvite != null ? outgoingInvite.getSession() : null;
+        if (session != null && session.isValid()) {
+            session.invalidate();
+        }
+        getContext().stop(self());
     }
 
     private void observe(final Object message) {
@@ -311,6 +335,8 @@ public class UssdCall extends UntypedActor  {
             fsm.transition(message, inProgress);
         } else if (InitializeOutbound.class.equals(klass)) {
             fsm.transition(message, queued);
+        } else if (message instanceof ReceiveTimeout && sessionTimeout > 0) {
+            expire();
         }
     }
 
@@ -347,7 +373,7 @@ public class UssdCall extends UntypedActor  {
 
             } else if (message instanceof SipServletResponse) {
                 final UntypedActorContext context = getContext();
-                context.setReceiveTimeout(Duration.Undefined());
+                context.setReceiveTimeout(sessionTimeout > 0 ? Duration.create(sessionTimeout, TimeUnit.SECONDS) : Duration.Undefined());
             }
             // Notify the observers.
             external = CallStateChanged.State.RINGING;
@@ -676,7 +702,7 @@ public class UssdCall extends UntypedActor  {
             outgoingInvite.send();
             // Set the timeout period.
             final UntypedActorContext context = getContext();
-            context.setReceiveTimeout(Duration.create(timeout, TimeUnit.SECONDS));
+            context.setReceiveTimeout(Duration.create(Math.max(timeout, sessionTimeout), TimeUnit.SECONDS));
         }
     }
 
@@ -0,0 +1,167 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2014, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *
+ */
+package org.restcomm.connect.ussd.telephony;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.restcomm.connect.commons.dao.Sid;
+import org.restcomm.connect.dao.DaoManager;
+import org.restcomm.connect.dao.IncomingPhoneNumbersDao;
+import org.restcomm.connect.dao.entities.IncomingPhoneNumber;
+
+/**
+ * Drives thousands of concurrent dialogs through the short code cache and the Call-ID routing used by
+ * {@link UssdCallManager}.
+ */
+public class UssdApplicationResolverTest {
+
+    private static final int DIALOGS = 5000;
+    private static final int SHORT_CODES = 20;
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private DaoManager storage() {
+        final IncomingPhoneNumbersDao numbers = (IncomingPhoneNumbersDao) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { IncomingPhoneNumbersDao.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                        if ("getIncomingPhoneNumber".equals(method.getName())) {
+                            lookups.incrementAndGet();
+                            // a round trip to the database
+                            Thread.sleep(5);
+                            final String code = (String) args[0];
+                            return code.startsWith("*") ? number(code) : null;
+                        }
+                        return null;
+                    }
+                });
+        return (DaoManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DaoManager.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                        return "getIncomingPhoneNumbersDao".equals(method.getName()) ? numbers : null;
+                    }
+                });
+    }
+
+    private static IncomingPhoneNumber number(final String code) {
+        return new IncomingPhoneNumber(Sid.generate(Sid.Type.PHONE_NUMBER), DateTime.now(), DateTime.now(), code,
+                Sid.generate(Sid.Type.ACCOUNT), code, null, "2012-04-24", false, null, null, null, null, null, null, null,
+                null, null, null, null, null, null, URI.create("http://127.0.0.1:8080/ussd" + code.hashCode()), "", null,
+                null, null);
+    }
+
+    @Test
+    public void concurrentDialogsShareOneLookupPerShortCode() throws Exception {
+        final UssdApplicationResolver resolver = new UssdApplicationResolver(storage(), 60000, 1000);
+        final ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            final List<Future<UssdApplicationResolver.Target>> results = new ArrayList<Future<UssdApplicationResolver.Target>>();
+            for (int i = 0; i < DIALOGS; i++) {
+                final String code = "*" + (i % SHORT_CODES) + "#";
+                results.add(executor.submit(new Callable<UssdApplicationResolver.Target>() {
+                    @Override
+                    public UssdApplicationResolver.Target call() throws Exception {
+                        return resolver.resolve(code);
+                    }
+                }));
+            }
+            for (final Future<UssdApplicationResolver.Target> result : results) {
+                final UssdApplicationResolver.Target target = result.get();
+                assertNotNull(target);
+                assertEquals("POST", target.getMethod());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(SHORT_CODES, lookups.get());
+        assertEquals(SHORT_CODES, resolver.getMisses());
+        assertEquals(DIALOGS - SHORT_CODES, resolver.getHits());
+    }
+
+    @Test
+    public void unknownNumbersAreNotCached() {
+        final UssdApplicationResolver resolver = new UssdApplicationResolver(storage(), 60000, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertNull(resolver.resolve("1234"));
+        }
+        // a short code registered meanwhile is found by the next dialog
+        assertEquals(100, lookups.get());
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    public void entriesExpire() {
+        final UssdApplicationResolver resolver = new UssdApplicationResolver(storage(), 50, 1000);
+        resolver.resolve("*100#", 1000);
+        resolver.resolve("*100#", 1049);
+        assertEquals(1, lookups.get());
+        resolver.resolve("*100#", 1050);
+        assertEquals(2, lookups.get());
+        resolver.invalidate("*100#");
+        resolver.resolve("*100#", 1051);
+        assertEquals(3, lookups.get());
+        resolver.invalidateAll();
+        resolver.resolve("*100#", 1052);
+        assertEquals(4, lookups.get());
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        final UssdApplicationResolver resolver = new UssdApplicationResolver(storage(), 60000, 10);
+        for (int i = 0; i < 100; i++) {
+            resolver.resolve("*" + i + "#");
+        }
+        assertTrue(resolver.size() <= 10);
+    }
+
+    @Test
+    public void dialogsAreSpreadOverShards() {
+        final int shards = 4;
+        final int[] dialogs = new int[shards];
+        for (int i = 0; i < DIALOGS; i++) {
+            final String callId = Sid.generate(Sid.Type.CALL).toString() + "@127.0.0.1";
+            final int shard = UssdCallManager.shard(callId, shards);
+            // every message of a dialog lands on the same shard
+            assertEquals(shard, UssdCallManager.shard(callId, shards));
+            dialogs[shard]++;
+        }
+        for (final int count : dialogs) {
+            assertTrue(count > DIALOGS / shards / 2);
+        }
+    }
+}